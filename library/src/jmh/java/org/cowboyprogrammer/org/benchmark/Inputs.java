@@ -0,0 +1,84 @@
+/*
+ * Copyright (c) Jonas Kalderstam 2014.
+ *
+ * This program is free software: you can redistribute it and/or modify
+ * it under the terms of the GNU General Public License as published by
+ * the Free Software Foundation, either version 3 of the License, or
+ * (at your option) any later version.
+ *
+ * This program is distributed in the hope that it will be useful,
+ * but WITHOUT ANY WARRANTY; without even the implied warranty of
+ * MERCHANTABILITY or FITNESS FOR A PARTICULAR PURPOSE.  See the
+ * GNU General Public License for more details.
+ *
+ * You should have received a copy of the GNU General Public License
+ * along with this program.  If not, see <http://www.gnu.org/licenses/>.
+ */
+
+package org.cowboyprogrammer.org.benchmark;
+
+/**
+ * Org files of different shapes for the benchmarks. The same arguments
+ * always give the same text.
+ */
+final class Inputs {
+
+    static final String HEADER = "** TODO Call the plumber about the kitchen sink :home:urgent:";
+    static final String COMMENT = "# Remember to bring the receipt";
+    static final String TIMESTAMP = "SCHEDULED: <2014-03-05 Wed 10:00-11:30 +1w -2d>";
+    static final String TIMESTAMP_RANGE = "<2014-03-06 Thu 09:00>--<2014-03-08 Sat 17:00>";
+    static final String BODY = "  Some text in the body, which is no header, comment or timestamp.";
+
+    private Inputs() {
+    }
+
+    /**
+     * @param shape small: a short todo list. deep: chains of a hundred sub
+     *              headers. wide: many short top level headers. body: few
+     *              headers with long bodies.
+     */
+    static String create(final String shape) {
+        final StringBuilder sb = new StringBuilder();
+        if ("small".equals(shape)) {
+            for (int i = 0; i < 20; i++) {
+                entry(sb, 1 + i % 3, i, 2);
+            }
+        } else if ("deep".equals(shape)) {
+            for (int i = 0; i < 2000; i++) {
+                entry(sb, 1 + i % 100, i, 1);
+            }
+        } else if ("wide".equals(shape)) {
+            for (int i = 0; i < 20000; i++) {
+                entry(sb, 1, i, 1);
+            }
+        } else if ("body".equals(shape)) {
+            for (int i = 0; i < 20; i++) {
+                entry(sb, 1, i, 1000);
+            }
+        } else {
+            throw new IllegalArgumentException("Unknown shape: " + shape);
+        }
+        return sb.toString();
+    }
+
+    private static void entry(final StringBuilder sb, final int level, final int i,
+                              final int bodyLines) {
+        for (int s = 0; s < level; s++) {
+            sb.append('*');
+        }
+        sb.append(i % 2 == 0 ? " TODO" : " DONE").append(" Entry number ").append(i);
+        if (i % 3 == 0) {
+            sb.append(" :work:");
+        }
+        sb.append('\n');
+        if (i % 4 == 0) {
+            sb.append(COMMENT).append('\n');
+        }
+        if (i % 2 == 0) {
+            sb.append(TIMESTAMP).append('\n');
+        }
+        for (int b = 0; b < bodyLines; b++) {
+            sb.append(BODY).append('\n');
+        }
+    }
+}
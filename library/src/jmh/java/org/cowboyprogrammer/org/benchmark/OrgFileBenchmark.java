@@ -0,0 +1,89 @@
+/*
+ * Copyright (c) Jonas Kalderstam 2014.
+ *
+ * This program is free software: you can redistribute it and/or modify
+ * it under the terms of the GNU General Public License as published by
+ * the Free Software Foundation, either version 3 of the License, or
+ * (at your option) any later version.
+ *
+ * This program is distributed in the hope that it will be useful,
+ * but WITHOUT ANY WARRANTY; without even the implied warranty of
+ * MERCHANTABILITY or FITNESS FOR A PARTICULAR PURPOSE.  See the
+ * GNU General Public License for more details.
+ *
+ * You should have received a copy of the GNU General Public License
+ * along with this program.  If not, see <http://www.gnu.org/licenses/>.
+ */
+
+package org.cowboyprogrammer.org.benchmark;
+
+import org.cowboyprogrammer.org.OrgFile;
+import org.cowboyprogrammer.org.parser.OrgParser;
+import org.cowboyprogrammer.org.parser.RegexParser;
+import org.cowboyprogrammer.org.parser.ScannerParser;
+import org.openjdk.jmh.annotations.Benchmark;
+import org.openjdk.jmh.annotations.BenchmarkMode;
+import org.openjdk.jmh.annotations.Fork;
+import org.openjdk.jmh.annotations.Measurement;
+import org.openjdk.jmh.annotations.Mode;
+import org.openjdk.jmh.annotations.OutputTimeUnit;
+import org.openjdk.jmh.annotations.Param;
+import org.openjdk.jmh.annotations.Scope;
+import org.openjdk.jmh.annotations.Setup;
+import org.openjdk.jmh.annotations.State;
+import org.openjdk.jmh.annotations.Warmup;
+
+import java.io.BufferedReader;
+import java.io.IOException;
+import java.io.StringReader;
+import java.io.StringWriter;
+import java.text.ParseException;
+import java.util.concurrent.TimeUnit;
+
+/**
+ * Building a tree from text, and writing it back, for files of different
+ * shapes. See {@link Inputs#create(String)}.
+ */
+@State(Scope.Benchmark)
+@BenchmarkMode(Mode.AverageTime)
+@OutputTimeUnit(TimeUnit.MICROSECONDS)
+@Warmup(iterations = 5, time = 1)
+@Measurement(iterations = 5, time = 1)
+@Fork(1)
+public class OrgFileBenchmark {
+
+    @Param({"small", "deep", "wide", "body"})
+    public String shape;
+
+    @Param({"regex", "scanner"})
+    public String parserType;
+
+    private OrgParser parser;
+    private String content;
+    private OrgFile orgfile;
+
+    @Setup
+    public void setup() throws IOException, ParseException {
+        parser = "regex".equals(parserType) ? new RegexParser() : new ScannerParser();
+        content = Inputs.create(shape);
+        orgfile = parse();
+    }
+
+    @Benchmark
+    public OrgFile parse() throws IOException, ParseException {
+        return OrgFile.createFromBufferedReader(parser, "benchmark.org",
+                new BufferedReader(new StringReader(content)));
+    }
+
+    @Benchmark
+    public String treeToString() {
+        return orgfile.treeToString();
+    }
+
+    @Benchmark
+    public StringWriter writeTo() throws IOException {
+        final StringWriter writer = new StringWriter(content.length());
+        orgfile.writeTo(writer);
+        return writer;
+    }
+}
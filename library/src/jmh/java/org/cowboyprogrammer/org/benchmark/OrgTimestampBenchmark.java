@@ -0,0 +1,84 @@
+/*
+ * Copyright (c) Jonas Kalderstam 2014.
+ *
+ * This program is free software: you can redistribute it and/or modify
+ * it under the terms of the GNU General Public License as published by
+ * the Free Software Foundation, either version 3 of the License, or
+ * (at your option) any later version.
+ *
+ * This program is distributed in the hope that it will be useful,
+ * but WITHOUT ANY WARRANTY; without even the implied warranty of
+ * MERCHANTABILITY or FITNESS FOR A PARTICULAR PURPOSE.  See the
+ * GNU General Public License for more details.
+ *
+ * You should have received a copy of the GNU General Public License
+ * along with this program.  If not, see <http://www.gnu.org/licenses/>.
+ */
+
+package org.cowboyprogrammer.org.benchmark;
+
+import org.cowboyprogrammer.org.OrgTimestamp;
+import org.joda.time.DateTimeUtils;
+import org.joda.time.LocalDateTime;
+import org.openjdk.jmh.annotations.Benchmark;
+import org.openjdk.jmh.annotations.BenchmarkMode;
+import org.openjdk.jmh.annotations.Fork;
+import org.openjdk.jmh.annotations.Measurement;
+import org.openjdk.jmh.annotations.Mode;
+import org.openjdk.jmh.annotations.OutputTimeUnit;
+import org.openjdk.jmh.annotations.Param;
+import org.openjdk.jmh.annotations.Scope;
+import org.openjdk.jmh.annotations.Setup;
+import org.openjdk.jmh.annotations.State;
+import org.openjdk.jmh.annotations.Warmup;
+
+import java.util.concurrent.TimeUnit;
+
+/**
+ * Parsing and formatting timestamps, and finding their next repetition.
+ */
+@State(Scope.Benchmark)
+@BenchmarkMode(Mode.AverageTime)
+@OutputTimeUnit(TimeUnit.NANOSECONDS)
+@Warmup(iterations = 5, time = 1)
+@Measurement(iterations = 5, time = 1)
+@Fork(1)
+public class OrgTimestampBenchmark {
+
+    /**
+     * Repeater of the timestamp, which is dated years before now.
+     */
+    @Param({"+1w", "++1h", ".+1d", "+1m"})
+    public String repeat;
+
+    private OrgTimestamp timestamp;
+    private DateTimeUtils.MillisProvider clock;
+
+    @Setup
+    public void setup() {
+        timestamp = parse();
+        // Fixed, so every run repeats the same number of times
+        final long now = new LocalDateTime(2014, 3, 5, 12, 0).toDateTime().getMillis();
+        clock = new DateTimeUtils.MillisProvider() {
+            @Override
+            public long getMillis() {
+                return now;
+            }
+        };
+    }
+
+    @Benchmark
+    public OrgTimestamp parse() {
+        return new OrgTimestamp("<", "SCHEDULED", "2010-01-31", "10:00", "11:30", "-2d", repeat);
+    }
+
+    @Benchmark
+    public String format() {
+        return timestamp.toString();
+    }
+
+    @Benchmark
+    public LocalDateTime getNextFutureRepetition() {
+        return timestamp.getNextFutureRepetition(clock);
+    }
+}
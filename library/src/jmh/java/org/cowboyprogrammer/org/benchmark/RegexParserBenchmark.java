@@ -0,0 +1,117 @@
+/*
+ * Copyright (c) Jonas Kalderstam 2014.
+ *
+ * This program is free software: you can redistribute it and/or modify
+ * it under the terms of the GNU General Public License as published by
+ * the Free Software Foundation, either version 3 of the License, or
+ * (at your option) any later version.
+ *
+ * This program is distributed in the hope that it will be useful,
+ * but WITHOUT ANY WARRANTY; without even the implied warranty of
+ * MERCHANTABILITY or FITNESS FOR A PARTICULAR PURPOSE.  See the
+ * GNU General Public License for more details.
+ *
+ * You should have received a copy of the GNU General Public License
+ * along with this program.  If not, see <http://www.gnu.org/licenses/>.
+ */
+
+package org.cowboyprogrammer.org.benchmark;
+
+import org.cowboyprogrammer.org.OrgNode;
+import org.cowboyprogrammer.org.OrgTimestamp;
+import org.cowboyprogrammer.org.OrgTimestampRange;
+import org.cowboyprogrammer.org.parser.OrgLine;
+import org.cowboyprogrammer.org.parser.OrgParser;
+import org.cowboyprogrammer.org.parser.RegexParser;
+import org.cowboyprogrammer.org.parser.ScannerParser;
+import org.openjdk.jmh.annotations.Benchmark;
+import org.openjdk.jmh.annotations.BenchmarkMode;
+import org.openjdk.jmh.annotations.Fork;
+import org.openjdk.jmh.annotations.Measurement;
+import org.openjdk.jmh.annotations.Mode;
+import org.openjdk.jmh.annotations.OutputTimeUnit;
+import org.openjdk.jmh.annotations.Param;
+import org.openjdk.jmh.annotations.Scope;
+import org.openjdk.jmh.annotations.Setup;
+import org.openjdk.jmh.annotations.State;
+import org.openjdk.jmh.annotations.Warmup;
+
+import java.util.concurrent.TimeUnit;
+
+/**
+ * Each method of the parser on a single line. ScannerParser is included
+ * to compare with.
+ */
+@State(Scope.Benchmark)
+@BenchmarkMode(Mode.AverageTime)
+@OutputTimeUnit(TimeUnit.NANOSECONDS)
+@Warmup(iterations = 5, time = 1)
+@Measurement(iterations = 5, time = 1)
+@Fork(1)
+public class RegexParserBenchmark {
+
+    @Param({"regex", "scanner"})
+    public String parserType;
+
+    private OrgParser parser;
+
+    @Setup
+    public void setup() {
+        parser = "regex".equals(parserType) ? new RegexParser() : new ScannerParser();
+    }
+
+    @Benchmark
+    public boolean isHeaderLine() {
+        return parser.isHeaderLine(Inputs.HEADER);
+    }
+
+    @Benchmark
+    public boolean isHeaderLineOfBody() {
+        return parser.isHeaderLine(Inputs.BODY);
+    }
+
+    @Benchmark
+    public OrgNode createFromHeader() {
+        return parser.createFromHeader(Inputs.HEADER);
+    }
+
+    @Benchmark
+    public boolean isCommentLine() {
+        return parser.isCommentLine(Inputs.COMMENT);
+    }
+
+    @Benchmark
+    public boolean isTimestampLine() {
+        return parser.isTimestampLine(Inputs.TIMESTAMP);
+    }
+
+    @Benchmark
+    public boolean isTimestampRangeLine() {
+        return parser.isTimestampRangeLine(Inputs.TIMESTAMP_RANGE);
+    }
+
+    @Benchmark
+    public OrgTimestamp getTimestamp() {
+        return parser.getTimestamp(Inputs.TIMESTAMP);
+    }
+
+    @Benchmark
+    public OrgTimestampRange getTimestampRange() {
+        return parser.getTimestampRange(Inputs.TIMESTAMP_RANGE);
+    }
+
+    @Benchmark
+    public OrgLine classifyBody() {
+        return parser.classify(Inputs.BODY);
+    }
+
+    @Benchmark
+    public OrgLine classifyHeader() {
+        return parser.classify(Inputs.HEADER);
+    }
+
+    @Benchmark
+    public String[] parseTags() {
+        return RegexParser.parseTags(":home:urgent:work:");
+    }
+}
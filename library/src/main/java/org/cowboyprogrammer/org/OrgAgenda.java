@@ -0,0 +1,350 @@
+/*
+ * Copyright (c) Jonas Kalderstam 2014.
+ *
+ * This program is free software: you can redistribute it and/or modify
+ * it under the terms of the GNU General Public License as published by
+ * the Free Software Foundation, either version 3 of the License, or
+ * (at your option) any later version.
+ *
+ * This program is distributed in the hope that it will be useful,
+ * but WITHOUT ANY WARRANTY; without even the implied warranty of
+ * MERCHANTABILITY or FITNESS FOR A PARTICULAR PURPOSE.  See the
+ * GNU General Public License for more details.
+ *
+ * You should have received a copy of the GNU General Public License
+ * along with this program.  If not, see <http://www.gnu.org/licenses/>.
+ */
+
+package org.cowboyprogrammer.org;
+
+import org.joda.time.Chronology;
+import org.joda.time.DateTimeUtils;
+import org.joda.time.LocalDate;
+import org.joda.time.LocalDateTime;
+import org.joda.time.LocalTime;
+import org.joda.time.ReadablePeriod;
+import org.joda.time.chrono.ISOChronology;
+
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.Collection;
+import java.util.Collections;
+import java.util.Comparator;
+import java.util.List;
+
+/**
+ * All timestamps and timestamp ranges of one or many files, sorted by time
+ * so that everything between two dates is found without walking the
+ * trees.
+ * <p/>
+ * Each item covers a period of time: a timestamp without a time covers the
+ * whole day, one with an end time lasts until then, and a range lasts from
+ * its start to its end. A deadline with a warning period also covers the
+ * warning period before it. An item is found if its period overlaps the
+ * period asked for.
+ * <p/>
+ * Items which do not repeat are sorted by start, together with the
+ * largest end of every part of that order, so a query is a binary search
+ * plus a walk over the matching items only. Repeating timestamps have no
+ * end, and all their occurrences in the period are calculated on each
+ * query instead; there are usually few of them.
+ * <p/>
+ * Inactive timestamps are included, see {@link OrgTimestamp#isInactive()}.
+ * The agenda is not updated when the trees change.
+ */
+public class OrgAgenda {
+
+    private static final Chronology UTC = ISOChronology.getInstanceUTC();
+    private static final long DAY = 24 * 60 * 60 * 1000L;
+
+    // Items which do not repeat, by start
+    private final Item[] items;
+    private final long[] starts;
+    private final long[] ends;
+    // Largest end in each part of items, as a binary tree where node i has
+    // children 2i and 2i + 1, and leaves start at leaves
+    private final long[] maxEnds;
+    private final int leaves;
+    // Timestamps with a repeater
+    private final List<Item> repeating = new ArrayList<Item>();
+
+    public OrgAgenda(final OrgFile... files) {
+        this(Arrays.asList(files));
+    }
+
+    public OrgAgenda(final Collection<? extends OrgFile> files) {
+        final List<Item> single = new ArrayList<Item>();
+        for (final OrgFile file : files) {
+            add(file, single);
+        }
+        Collections.sort(single, new Comparator<Item>() {
+            @Override
+            public int compare(final Item a, final Item b) {
+                return Long.compare(a.start, b.start);
+            }
+        });
+
+        items = single.toArray(new Item[single.size()]);
+        starts = new long[items.length];
+        ends = new long[items.length];
+        for (int i = 0; i < items.length; i++) {
+            starts[i] = items[i].start;
+            ends[i] = items[i].end;
+        }
+
+        int size = 1;
+        while (size < items.length) {
+            size *= 2;
+        }
+        leaves = size;
+        maxEnds = new long[2 * size];
+        Arrays.fill(maxEnds, Long.MIN_VALUE);
+        System.arraycopy(ends, 0, maxEnds, size, ends.length);
+        for (int i = size - 1; i > 0; i--) {
+            maxEnds[i] = Math.max(maxEnds[2 * i], maxEnds[2 * i + 1]);
+        }
+    }
+
+    private void add(final OrgNode node, final List<Item> single) {
+        for (final OrgTimestamp ts : node.getTimestamps()) {
+            final Item item = new Item(node, ts, null, ts.getDate(), end(ts, ts.getDate()));
+            if (ts.getRepeatPeriod() != null && OrgTimestamp.isForward(ts.getRepeatPeriod())) {
+                repeating.add(item);
+            } else {
+                single.add(item);
+            }
+        }
+        for (final OrgTimestampRange range : node.getTimestampRanges()) {
+            final long end = range.hasTime()
+                    ? millis(range.getEnddate())
+                    : millis(range.getEnddate()) + DAY - 1;
+            single.add(new Item(node, null, range, range.getStartdate(), end));
+        }
+        for (final OrgNode child : node.getSubNodes()) {
+            add(child, single);
+        }
+    }
+
+    /**
+     * @return the number of timestamps and ranges, counting a repeating
+     * timestamp once
+     */
+    public int size() {
+        return items.length + repeating.size();
+    }
+
+    /**
+     * @return all items of the day, see {@link #getItems(LocalDateTime, LocalDateTime)}
+     */
+    public List<Item> getItems(final LocalDate day) {
+        return getItems(day, day);
+    }
+
+    /**
+     * @return all items from the start of the first day to the end of the
+     * last day, see {@link #getItems(LocalDateTime, LocalDateTime)}
+     */
+    public List<Item> getItems(final LocalDate first, final LocalDate last) {
+        return getItems(first.toLocalDateTime(LocalTime.MIDNIGHT),
+                last.plusDays(1).toLocalDateTime(LocalTime.MIDNIGHT).minusMillis(1));
+    }
+
+    /**
+     * @param from first time to include
+     * @param to   last time to include
+     *
+     * @return all items which overlap the period, sorted by date. A
+     * repeating timestamp is included once for every time it occurs.
+     */
+    public List<Item> getItems(final LocalDateTime from, final LocalDateTime to) {
+        return getItems(from, to, OrgTimestamp.SYSTEM_CLOCK);
+    }
+
+    /**
+     * See {@link #getItems(LocalDateTime, LocalDateTime)}. The occurrences
+     * of a repeating timestamp are the same as those of
+     * {@link OrgTimestamp#getOccurrences(LocalDateTime, LocalDateTime, DateTimeUtils.MillisProvider)}.
+     *
+     * @param clock gives the current time, only used by ".+" repeaters
+     */
+    public List<Item> getItems(final LocalDateTime from, final LocalDateTime to,
+                               final DateTimeUtils.MillisProvider clock) {
+        if (clock == null) {
+            throw new NullPointerException("Not allowed to be null!");
+        }
+        final long start = millis(from);
+        final long end = millis(to);
+        final List<Item> result = new ArrayList<Item>();
+        if (start > end) {
+            return result;
+        }
+        final OrgEvents.AgendaEvent event = OrgEvents.beginAgenda();
+
+        // Items which start before the end of the period
+        int count = Arrays.binarySearch(starts, end);
+        if (count < 0) {
+            count = -count - 1;
+        } else {
+            while (count < starts.length && starts[count] == end) {
+                count++;
+            }
+        }
+        collect(1, 0, leaves, count, start, result);
+
+        for (final Item item : repeating) {
+            occurrences(item, start, end, clock, result);
+        }
+
+        Collections.sort(result, new Comparator<Item>() {
+            @Override
+            public int compare(final Item a, final Item b) {
+                return a.date.compareTo(b.date);
+            }
+        });
+        OrgEvents.endAgenda(event, from, to, result.size(), repeating.size());
+        return result;
+    }
+
+    /**
+     * Add the items among the first count, in the part of the tree below
+     * index, which end at start or later.
+     */
+    private void collect(final int index, final int from, final int to, final int count,
+                         final long start, final List<Item> result) {
+        if (from >= count || maxEnds[index] < start) {
+            return;
+        }
+        if (to - from == 1) {
+            result.add(items[from]);
+            return;
+        }
+        final int middle = (from + to) / 2;
+        collect(2 * index, from, middle, count, start, result);
+        collect(2 * index + 1, middle, to, count, start, result);
+    }
+
+    /**
+     * Add each time the repeating item occurs in the period.
+     */
+    private static void occurrences(final Item item, final long start, final long end,
+                                    final DateTimeUtils.MillisProvider clock,
+                                    final List<Item> result) {
+        final OrgTimestamp ts = item.timestamp;
+        final ReadablePeriod period = ts.getRepeatPeriod();
+        final long length = item.end - item.start;
+        // The warning period, if any
+        final long before = millis(ts.getDate()) - item.start;
+        final LocalDateTime base = ts.getRepeatBase(clock);
+
+        // Start at the first occurrence which ends in the period
+        long n = OrgTimestamp.occurrencesUntil(base, period,
+                new LocalDateTime(start + before - length, UTC));
+        if (!base.equals(ts.getDate())) {
+            // A ".+" repeater after its date: the date itself, then every
+            // period after today
+            occurrence(item, ts.getDate(), before, length, start, end, result);
+            n = Math.max(1, n);
+        }
+        // Counted from the base, so the 31st is not pulled earlier by short
+        // months
+        while (occurrence(item, OrgTimestamp.getOccurrence(base, period, n), before, length,
+                start, end, result)) {
+            n++;
+        }
+    }
+
+    /**
+     * Add the item occurring at date, if it overlaps the period.
+     *
+     * @return false if it starts after the period
+     */
+    private static boolean occurrence(final Item item, final LocalDateTime date, final long before,
+                                      final long length, final long start, final long end,
+                                      final List<Item> result) {
+        final long occurrenceStart = millis(date) - before;
+        if (occurrenceStart > end) {
+            return false;
+        }
+        if (occurrenceStart + length >= start) {
+            result.add(new Item(item.node, item.timestamp, null, date, occurrenceStart + length));
+        }
+        return true;
+    }
+
+    /**
+     * The last moment the timestamp covers, if it occurs at date.
+     */
+    private static long end(final OrgTimestamp ts, final LocalDateTime date) {
+        if (ts.getEndTime() != null) {
+            return millis(date.withFields(ts.getEndTime()));
+        } else if (ts.hasTime()) {
+            return millis(date);
+        }
+        return millis(date) + DAY - 1;
+    }
+
+    private static long millis(final LocalDateTime date) {
+        return UTC.set(date, 0L);
+    }
+
+    /**
+     * A timestamp or range in the agenda.
+     */
+    public static class Item {
+        private final OrgNode node;
+        private final OrgTimestamp timestamp;
+        private final OrgTimestampRange range;
+        private final LocalDateTime date;
+        // The period covered, including any warning period
+        final long start;
+        final long end;
+
+        Item(final OrgNode node, final OrgTimestamp timestamp, final OrgTimestampRange range,
+             final LocalDateTime date, final long end) {
+            this.node = node;
+            this.timestamp = timestamp;
+            this.range = range;
+            this.date = date;
+            this.end = end;
+            if (timestamp != null && timestamp.getType() == OrgTimestamp.Type.DEADLINE
+                    && timestamp.getWarningPeriod() != null) {
+                start = millis(date.minus(timestamp.getWarningPeriod()));
+            } else {
+                start = millis(date);
+            }
+        }
+
+        public OrgNode getNode() {
+            return node;
+        }
+
+        /**
+         * @return the timestamp, or null if this is a range
+         */
+        public OrgTimestamp getTimestamp() {
+            return timestamp;
+        }
+
+        /**
+         * @return the range, or null if this is a timestamp
+         */
+        public OrgTimestampRange getRange() {
+            return range;
+        }
+
+        /**
+         * @return PLAIN, SCHEDULED or DEADLINE. Always PLAIN for ranges.
+         */
+        public OrgTimestamp.Type getType() {
+            return timestamp == null ? OrgTimestamp.Type.PLAIN : timestamp.getType();
+        }
+
+        /**
+         * @return when this occurs, which for a repeating timestamp is the
+         * time of this occurrence rather than the date of the timestamp
+         */
+        public LocalDateTime getDate() {
+            return date;
+        }
+    }
+}
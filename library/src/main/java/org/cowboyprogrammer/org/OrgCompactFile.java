@@ -0,0 +1,683 @@
+/*
+ * Copyright (c) Jonas Kalderstam 2014.
+ *
+ * This program is free software: you can redistribute it and/or modify
+ * it under the terms of the GNU General Public License as published by
+ * the Free Software Foundation, either version 3 of the License, or
+ * (at your option) any later version.
+ *
+ * This program is distributed in the hope that it will be useful,
+ * but WITHOUT ANY WARRANTY; without even the implied warranty of
+ * MERCHANTABILITY or FITNESS FOR A PARTICULAR PURPOSE.  See the
+ * GNU General Public License for more details.
+ *
+ * You should have received a copy of the GNU General Public License
+ * along with this program.  If not, see <http://www.gnu.org/licenses/>.
+ */
+
+package org.cowboyprogrammer.org;
+
+import org.cowboyprogrammer.org.parser.OrgEventHandler;
+import org.cowboyprogrammer.org.parser.OrgEventParser;
+import org.cowboyprogrammer.org.parser.OrgParser;
+import org.cowboyprogrammer.org.parser.OrgSymbols;
+import org.cowboyprogrammer.org.util.StringUtils;
+
+import java.io.BufferedReader;
+import java.io.IOException;
+import java.nio.file.Path;
+import java.text.ParseException;
+import java.util.AbstractList;
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.Collections;
+import java.util.List;
+
+/**
+ * A read only org file which takes far less memory than {@link OrgFile},
+ * for files too large to keep as a tree of OrgNodes.
+ * <p/>
+ * The nodes are numbered in the same order as in the file, with the file
+ * itself as number 0, and everything about them is kept in arrays indexed
+ * by number: the level, parent, first child and next sibling, the TODO
+ * keyword and tags as ids in the parser's {@link OrgSymbols}, and where
+ * the title, comments and body start in one shared buffer of text. Only
+ * timestamps are kept as objects, and only for the nodes which have them.
+ * <p/>
+ * {@link Node} has the same getters as OrgNode, and is created when asked
+ * for. Use {@link #toOrgFile()} or {@link Node#toOrgNode()} to get a tree
+ * which can be edited.
+ */
+public class OrgCompactFile {
+
+    private final OrgParser parser;
+    private final OrgSymbols symbols;
+    private final String filename;
+    private final int size;
+
+    private final int[] levels;
+    private final int[] parents;
+    private final int[] firstChildren;
+    private final int[] nextSiblings;
+    // Symbol id, or -1 for none
+    private final int[] todos;
+    // Node i has tags tagIds[tagStarts[i]] until tagIds[tagStarts[i + 1]]
+    private final int[] tagStarts;
+    private final int[] tagIds;
+    // Title, comments and body of node i start at textStarts[3 * i],
+    // [3 * i + 1] and [3 * i + 2] in text, each ending where the next starts
+    private final int[] textStarts;
+    private final char[] text;
+    // Same layout as tags
+    private final int[] timestampStarts;
+    private final OrgTimestamp[] timestamps;
+    private final int[] rangeStarts;
+    private final OrgTimestampRange[] ranges;
+
+    private OrgCompactFile(final Builder b) {
+        parser = b.parser;
+        symbols = b.symbols;
+        filename = b.filename;
+        size = b.size;
+        levels = Arrays.copyOf(b.levels, size);
+        parents = Arrays.copyOf(b.parents, size);
+        firstChildren = Arrays.copyOf(b.firstChildren, size);
+        nextSiblings = Arrays.copyOf(b.nextSiblings, size);
+        todos = Arrays.copyOf(b.todos, size);
+        tagStarts = Arrays.copyOf(b.tagStarts, size + 1);
+        tagStarts[size] = b.tagCount;
+        tagIds = Arrays.copyOf(b.tagIds, b.tagCount);
+        textStarts = Arrays.copyOf(b.textStarts, 3 * size + 1);
+        textStarts[3 * size] = b.text.length();
+        text = new char[b.text.length()];
+        b.text.getChars(0, text.length, text, 0);
+        timestampStarts = Arrays.copyOf(b.timestampStarts, size + 1);
+        timestampStarts[size] = b.timestamps.size();
+        timestamps = b.timestamps.toArray(new OrgTimestamp[b.timestamps.size()]);
+        rangeStarts = Arrays.copyOf(b.rangeStarts, size + 1);
+        rangeStarts[size] = b.ranges.size();
+        ranges = b.ranges.toArray(new OrgTimestampRange[b.ranges.size()]);
+    }
+
+    /**
+     * Read an org file.
+     *
+     * @param parser   used to parse the lines. Its OrgSymbols, if any, keep
+     *                 the tags and TODO keywords.
+     * @param filename the filename without the path part
+     * @param br       the contents of the file, closed afterwards
+     */
+    public static OrgCompactFile createFromBufferedReader(final OrgParser parser, final String filename,
+                                                          final BufferedReader br)
+            throws IOException, ParseException {
+        final Builder builder = new Builder(parser, filename);
+        OrgEventParser.parse(parser, br, builder);
+        return new OrgCompactFile(builder);
+    }
+
+    /**
+     * Read an org file, which is read as UTF-8.
+     */
+    public static OrgCompactFile createFromPath(final OrgParser parser, final Path path)
+            throws IOException, ParseException {
+        final Builder builder = new Builder(parser, path.getFileName().toString());
+        OrgEventParser.parse(parser, path, builder);
+        return new OrgCompactFile(builder);
+    }
+
+    /**
+     * The same file as orgfile, which is not changed. Timestamps and ranges
+     * are copied, so orgfile, its nodes and their timestamps can be changed
+     * afterwards without changing the compact file.
+     */
+    public static OrgCompactFile fromOrgFile(final OrgFile orgfile) {
+        final Builder builder = new Builder(orgfile.getParser(), orgfile.getFilename());
+        builder.addTree(orgfile);
+        return new OrgCompactFile(builder);
+    }
+
+    /**
+     * @return the number of nodes, including the file itself
+     */
+    public int size() {
+        return size;
+    }
+
+    public String getFilename() {
+        return filename;
+    }
+
+    public OrgParser getParser() {
+        return parser;
+    }
+
+    /**
+     * @return the table of the tags and TODO keywords
+     */
+    public OrgSymbols getSymbols() {
+        return symbols;
+    }
+
+    /**
+     * @return the file itself, which is node 0
+     */
+    public Node getRoot() {
+        return new Node(0);
+    }
+
+    /**
+     * @param index between 0 and size - 1, in the same order as in the file
+     */
+    public Node getNode(final int index) {
+        if (index < 0 || index >= size) {
+            throw new IndexOutOfBoundsException("No node " + index + " of " + size);
+        }
+        return new Node(index);
+    }
+
+    /**
+     * Write the whole file, the same as {@link OrgFile#writeTo(Appendable)}
+     * would.
+     */
+    public void writeTo(final Appendable out) throws IOException {
+        writeTree(0, out);
+    }
+
+    public String treeToString() {
+        final StringBuilder sb = new StringBuilder(text.length + 64 * size);
+        try {
+            writeTo(sb);
+        } catch (IOException e) {
+            // Not possible with a StringBuilder
+            throw new IllegalStateException(e);
+        }
+        return sb.toString();
+    }
+
+    /**
+     * @return a tree of OrgNodes which can be edited, without any
+     * connection to this file
+     */
+    public OrgFile toOrgFile() {
+        final OrgFile orgfile = new OrgFile(parser, filename);
+        copyTo(0, orgfile);
+        return orgfile;
+    }
+
+    private void writeTree(final int index, final Appendable out) throws IOException {
+        writeHeader(index, out);
+        writeBody(index, out);
+        for (int child = firstChildren[index]; child >= 0; child = nextSiblings[child]) {
+            out.append('\n');
+            writeTree(child, out);
+        }
+    }
+
+    /**
+     * Same as {@link OrgNode#writeHeader(Appendable)}.
+     */
+    private void writeHeader(final int index, final Appendable out) throws IOException {
+        if (levels[index] < 1) {
+            return;
+        }
+        for (int i = 0; i < levels[index]; i++) {
+            out.append('*');
+        }
+        out.append(' ');
+        if (todos[index] >= 0) {
+            out.append(symbols.getSymbol(todos[index])).append(' ');
+        }
+        appendText(out, 3 * index);
+        if (tagStarts[index] < tagStarts[index + 1]) {
+            out.append(" :");
+            for (int t = tagStarts[index]; t < tagStarts[index + 1]; t++) {
+                out.append(symbols.getSymbol(tagIds[t])).append(':');
+            }
+        }
+        out.append('\n');
+    }
+
+    /**
+     * Same as {@link OrgNode#writeBody(Appendable)}.
+     */
+    private void writeBody(final int index, final Appendable out) throws IOException {
+        appendText(out, 3 * index + 1);
+        for (int t = timestampStarts[index]; t < timestampStarts[index + 1]; t++) {
+            out.append(timestamps[t].toString()).append('\n');
+        }
+        for (int t = rangeStarts[index]; t < rangeStarts[index + 1]; t++) {
+            out.append(ranges[t].toString()).append('\n');
+        }
+        appendText(out, 3 * index + 2);
+    }
+
+    private void appendText(final Appendable out, final int part) throws IOException {
+        for (int i = textStarts[part]; i < textStarts[part + 1]; i++) {
+            out.append(text[i]);
+        }
+    }
+
+    private String getText(final int part) {
+        return new String(text, textStarts[part], textStarts[part + 1] - textStarts[part]);
+    }
+
+    private void copyTo(final int index, final OrgNode node) {
+        node.setLevel(levels[index]);
+        node.setTodo(todos[index] < 0 ? null : symbols.getSymbol(todos[index]));
+        node.setTitle(getText(3 * index));
+        for (int t = tagStarts[index]; t < tagStarts[index + 1]; t++) {
+            node.getTags().add(symbols.getSymbol(tagIds[t]));
+        }
+        node.setComments(getText(3 * index + 1));
+        for (int t = timestampStarts[index]; t < timestampStarts[index + 1]; t++) {
+            // Copies, so that changing them does not change this file
+            node.addTimestamp(new OrgTimestamp(timestamps[t]));
+        }
+        for (int t = rangeStarts[index]; t < rangeStarts[index + 1]; t++) {
+            node.addTimestampRange(new OrgTimestampRange(ranges[t]));
+        }
+        node.setBody(getText(3 * index + 2));
+        // Same as parsed
+        node.clearDirty();
+        for (int child = firstChildren[index]; child >= 0; child = nextSiblings[child]) {
+            final OrgNode childNode = new OrgNode(parser);
+            copyTo(child, childNode);
+            childNode.setParent(node);
+            node.getSubNodes().add(childNode);
+        }
+    }
+
+    /**
+     * A node of the file, with the same getters as OrgNode. It holds
+     * nothing but its number, so it is cheap to create and to throw away.
+     * Two views of the same node are equal.
+     */
+    public final class Node {
+
+        private final int index;
+
+        private Node(final int index) {
+            this.index = index;
+        }
+
+        /**
+         * @return the number of this node in the file
+         */
+        public int getIndex() {
+            return index;
+        }
+
+        public OrgCompactFile getFile() {
+            return OrgCompactFile.this;
+        }
+
+        public int getLevel() {
+            return levels[index];
+        }
+
+        public String getTodo() {
+            return todos[index] < 0 ? null : symbols.getSymbol(todos[index]);
+        }
+
+        /**
+         * @return the symbol id of the TODO keyword, or -1 if there is none
+         */
+        public int getTodoId() {
+            return todos[index];
+        }
+
+        public String getTitle() {
+            return getText(3 * index);
+        }
+
+        public List<String> getTags() {
+            return new SymbolList(tagStarts[index], tagStarts[index + 1]);
+        }
+
+        /**
+         * Tags defined on this node AND any parents.
+         */
+        public List<String> getAllTags() {
+            final List<String> result = new ArrayList<String>();
+            for (int i = index; i >= 0; i = parents[i]) {
+                result.addAll(new SymbolList(tagStarts[i], tagStarts[i + 1]));
+            }
+            return result;
+        }
+
+        /**
+         * @return true if the node has the tag itself, without creating any
+         * Strings
+         */
+        public boolean hasTag(final String tag) {
+            final int id = symbols.getId(tag);
+            for (int t = tagStarts[index]; id >= 0 && t < tagStarts[index + 1]; t++) {
+                if (tagIds[t] == id) {
+                    return true;
+                }
+            }
+            return false;
+        }
+
+        public String getComments() {
+            return getText(3 * index + 1);
+        }
+
+        public String getBody() {
+            return getText(3 * index + 2);
+        }
+
+        /**
+         * The lines of the body, without newlines.
+         */
+        public List<String> getBodyLines() {
+            final String body = getBody();
+            if (body.isEmpty()) {
+                return Collections.emptyList();
+            }
+            // A newline ends the last line rather than starting another
+            final int end = body.endsWith("\n") ? body.length() - 1 : body.length();
+            return Arrays.asList(body.substring(0, end).split("\n", -1));
+        }
+
+        /**
+         * @return the timestamps of this file, which must not be changed.
+         * {@link #toOrgNode()} gives copies which can be.
+         */
+        public List<OrgTimestamp> getTimestamps() {
+            return Collections.unmodifiableList(Arrays.asList(timestamps)
+                    .subList(timestampStarts[index], timestampStarts[index + 1]));
+        }
+
+        /**
+         * @return the ranges of this file, see {@link #getTimestamps()}
+         */
+        public List<OrgTimestampRange> getTimestampRanges() {
+            return Collections.unmodifiableList(Arrays.asList(ranges)
+                    .subList(rangeStarts[index], rangeStarts[index + 1]));
+        }
+
+        /**
+         * @return the parent, or null for the file itself
+         */
+        public Node getParent() {
+            return parents[index] < 0 ? null : new Node(parents[index]);
+        }
+
+        public List<Node> getSubNodes() {
+            final List<Node> result = new ArrayList<Node>();
+            for (int child = firstChildren[index]; child >= 0; child = nextSiblings[child]) {
+                result.add(new Node(child));
+            }
+            return result;
+        }
+
+        /**
+         * Get the header of this entry for org-mode.
+         */
+        public String getOrgHeader() {
+            final StringBuilder sb = new StringBuilder();
+            try {
+                writeHeader(index, sb);
+            } catch (IOException e) {
+                // Not possible with a StringBuilder
+                throw new IllegalStateException(e);
+            }
+            return sb.toString().trim();
+        }
+
+        /**
+         * Get body of this entry for org-mode.
+         */
+        public String getOrgBody() {
+            final StringBuilder sb = new StringBuilder();
+            try {
+                writeBody(index, sb);
+            } catch (IOException e) {
+                // Not possible with a StringBuilder
+                throw new IllegalStateException(e);
+            }
+            return sb.toString();
+        }
+
+        /**
+         * Write the entire sub tree including this.
+         */
+        public void writeTo(final Appendable out) throws IOException {
+            writeTree(index, out);
+        }
+
+        public String treeToString() {
+            final StringBuilder sb = new StringBuilder();
+            try {
+                writeTo(sb);
+            } catch (IOException e) {
+                // Not possible with a StringBuilder
+                throw new IllegalStateException(e);
+            }
+            return sb.toString();
+        }
+
+        /**
+         * @return a copy of the sub tree including this as OrgNodes, without
+         * a parent. An OrgFile for the file itself.
+         */
+        public OrgNode toOrgNode() {
+            if (index == 0) {
+                return toOrgFile();
+            }
+            final OrgNode node = new OrgNode(parser);
+            copyTo(index, node);
+            return node;
+        }
+
+        @Override
+        public String toString() {
+            return getOrgHeader() + getOrgBody();
+        }
+
+        @Override
+        public boolean equals(final Object o) {
+            if (!(o instanceof Node)) {
+                return false;
+            }
+            final Node other = (Node) o;
+            return other.index == index && other.getFile() == getFile();
+        }
+
+        @Override
+        public int hashCode() {
+            return index;
+        }
+    }
+
+    private final class SymbolList extends AbstractList<String> {
+        private final int start;
+        private final int end;
+
+        SymbolList(final int start, final int end) {
+            this.start = start;
+            this.end = end;
+        }
+
+        @Override
+        public String get(final int i) {
+            if (i < 0 || i >= end - start) {
+                throw new IndexOutOfBoundsException("No tag " + i);
+            }
+            return symbols.getSymbol(tagIds[start + i]);
+        }
+
+        @Override
+        public int size() {
+            return end - start;
+        }
+    }
+
+    /**
+     * Fills the arrays, from events or from a tree.
+     */
+    private static final class Builder implements OrgEventHandler {
+        private final OrgParser parser;
+        private final OrgSymbols symbols;
+        private final String filename;
+        private int size = 0;
+
+        private int[] levels = new int[64];
+        private int[] parents = new int[64];
+        private int[] firstChildren = new int[64];
+        private int[] nextSiblings = new int[64];
+        private int[] todos = new int[64];
+        private int[] tagStarts = new int[65];
+        private int[] tagIds = new int[64];
+        private int tagCount = 0;
+        private int[] textStarts = new int[3 * 64 + 1];
+        private final StringBuilder text = new StringBuilder();
+        private int[] timestampStarts = new int[65];
+        private final List<OrgTimestamp> timestamps = new ArrayList<OrgTimestamp>();
+        private int[] rangeStarts = new int[65];
+        private final List<OrgTimestampRange> ranges = new ArrayList<OrgTimestampRange>();
+
+        // Nodes which have not ended, and the last child of each
+        private int[] open = new int[16];
+        private int[] lastChildren = new int[16];
+        private int depth = 0;
+        // True until the current node has a non-blank line in its body
+        private boolean bodyBlank = true;
+
+        Builder(final OrgParser parser, final String filename) {
+            if (parser == null) {
+                throw new NullPointerException("Not allowed to be null!");
+            }
+            this.parser = parser;
+            this.symbols = parser.getSymbols() != null ? parser.getSymbols() : new OrgSymbols();
+            this.filename = filename;
+            // The file itself
+            add(0, null, "", Collections.<String>emptyList());
+        }
+
+        private void add(final int level, final String todo, final String title,
+                         final List<String> tags) {
+            if (size == levels.length) {
+                final int capacity = size * 2;
+                levels = Arrays.copyOf(levels, capacity);
+                parents = Arrays.copyOf(parents, capacity);
+                firstChildren = Arrays.copyOf(firstChildren, capacity);
+                nextSiblings = Arrays.copyOf(nextSiblings, capacity);
+                todos = Arrays.copyOf(todos, capacity);
+                tagStarts = Arrays.copyOf(tagStarts, capacity + 1);
+                textStarts = Arrays.copyOf(textStarts, 3 * capacity + 1);
+                timestampStarts = Arrays.copyOf(timestampStarts, capacity + 1);
+                rangeStarts = Arrays.copyOf(rangeStarts, capacity + 1);
+            }
+            final int index = size++;
+            levels[index] = level;
+            firstChildren[index] = -1;
+            nextSiblings[index] = -1;
+            todos[index] = todo == null ? -1 : symbols.getId(symbols.intern(todo));
+
+            tagStarts[index] = tagCount;
+            for (final String tag : tags) {
+                if (tagCount == tagIds.length) {
+                    tagIds = Arrays.copyOf(tagIds, tagCount * 2);
+                }
+                tagIds[tagCount++] = symbols.getId(symbols.intern(tag));
+            }
+            timestampStarts[index] = timestamps.size();
+            rangeStarts[index] = ranges.size();
+
+            textStarts[3 * index] = text.length();
+            text.append(title);
+            textStarts[3 * index + 1] = text.length();
+            textStarts[3 * index + 2] = text.length();
+            bodyBlank = true;
+
+            if (index == 0) {
+                parents[index] = -1;
+            } else {
+                // Last of its siblings so far
+                final int parent = open[depth - 1];
+                parents[index] = parent;
+                if (lastChildren[depth - 1] < 0) {
+                    firstChildren[parent] = index;
+                } else {
+                    nextSiblings[lastChildren[depth - 1]] = index;
+                }
+                lastChildren[depth - 1] = index;
+            }
+            if (depth == open.length) {
+                open = Arrays.copyOf(open, depth * 2);
+                lastChildren = Arrays.copyOf(lastChildren, depth * 2);
+            }
+            open[depth] = index;
+            lastChildren[depth] = -1;
+            depth++;
+        }
+
+        /**
+         * Add the node and its sub nodes, see fromOrgFile.
+         */
+        void addTree(final OrgNode node) {
+            if (node.getLevel() > 0) {
+                add(node.getLevel(), node.getTodo(), node.getTitle(), node.getTags());
+            }
+            final int index = size - 1;
+            text.append(node.getComments());
+            textStarts[3 * index + 2] = text.length();
+            // Copies, so that changing the tree does not change this file
+            for (final OrgTimestamp ts : node.getTimestamps()) {
+                timestamps.add(new OrgTimestamp(ts));
+            }
+            for (final OrgTimestampRange range : node.getTimestampRanges()) {
+                ranges.add(new OrgTimestampRange(range));
+            }
+            text.append(node.getBody());
+            for (final OrgNode child : node.getSubNodes()) {
+                addTree(child);
+            }
+            depth--;
+        }
+
+        @Override
+        public void startNode(final int level, final String todo, final String title,
+                              final List<String> tags) {
+            add(level, todo, title, tags);
+        }
+
+        @Override
+        public void bodyLine(final String line) {
+            text.append(line).append('\n');
+            bodyBlank = bodyBlank && StringUtils.isBlank(line);
+        }
+
+        /**
+         * Same as OrgNode.addBodyLine: a comment clears a body which is only
+         * blank lines, and is part of the body after that.
+         */
+        @Override
+        public void comment(final String line) {
+            if (!bodyBlank) {
+                bodyLine(line);
+                return;
+            }
+            text.setLength(textStarts[3 * (size - 1) + 2]);
+            text.append(line).append('\n');
+            textStarts[3 * (size - 1) + 2] = text.length();
+        }
+
+        @Override
+        public void timestamp(final OrgTimestamp timestamp) {
+            timestamps.add(timestamp);
+        }
+
+        @Override
+        public void timestampRange(final OrgTimestampRange timestampRange) {
+            ranges.add(timestampRange);
+        }
+
+        @Override
+        public void endNode(final int level) {
+            depth--;
+        }
+    }
+}
@@ -0,0 +1,259 @@
+/*
+ * Copyright (c) Jonas Kalderstam 2014.
+ *
+ * This program is free software: you can redistribute it and/or modify
+ * it under the terms of the GNU General Public License as published by
+ * the Free Software Foundation, either version 3 of the License, or
+ * (at your option) any later version.
+ *
+ * This program is distributed in the hope that it will be useful,
+ * but WITHOUT ANY WARRANTY; without even the implied warranty of
+ * MERCHANTABILITY or FITNESS FOR A PARTICULAR PURPOSE.  See the
+ * GNU General Public License for more details.
+ *
+ * You should have received a copy of the GNU General Public License
+ * along with this program.  If not, see <http://www.gnu.org/licenses/>.
+ */
+
+package org.cowboyprogrammer.org;
+
+import org.cowboyprogrammer.org.parser.OrgParser;
+
+import java.io.IOException;
+import java.nio.file.FileVisitResult;
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.nio.file.SimpleFileVisitor;
+import java.nio.file.attribute.BasicFileAttributes;
+import java.util.ArrayList;
+import java.util.Collections;
+import java.util.Comparator;
+import java.util.List;
+import java.util.concurrent.Callable;
+import java.util.concurrent.ExecutionException;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.Executors;
+import java.util.concurrent.Future;
+
+/**
+ * All org files in a directory tree, parsed concurrently. A file which can
+ * not be read or parsed does not stop the others from loading; its error is
+ * kept in its {@link Entry} instead. The same goes for a sub directory which
+ * can not be listed, which is an entry without a file.
+ * <p/>
+ * Entries are always sorted by path, no matter in which order the files
+ * finished parsing.
+ */
+public class OrgCorpus {
+
+    private final Path root;
+    private final List<Entry> entries;
+
+    private OrgCorpus(final Path root, final List<Entry> entries) {
+        this.root = root;
+        this.entries = Collections.unmodifiableList(entries);
+    }
+
+    /**
+     * Load all files ending in ".org" below dir, using the given number of
+     * threads.
+     *
+     * @param parser
+     *         The OrgParser to use. It is shared by all threads.
+     * @param dir
+     *         The directory to search, including sub directories
+     * @param threads
+     *         How many files to parse at the same time
+     *
+     * @throws IOException if the directory itself can not be listed
+     */
+    public static OrgCorpus load(final OrgParser parser, final Path dir, final int threads)
+            throws IOException {
+        if (threads < 1) {
+            throw new IllegalArgumentException("Need at least one thread");
+        }
+        final ExecutorService executor = Executors.newFixedThreadPool(threads);
+        try {
+            return load(parser, dir, executor);
+        } finally {
+            executor.shutdown();
+        }
+    }
+
+    /**
+     * Load all files ending in ".org" below dir on the given executor, which
+     * is left running. Any executor works, for example one with virtual
+     * threads on Java 21.
+     *
+     * @param parser
+     *         The OrgParser to use. It is shared by all threads.
+     * @param dir
+     *         The directory to search, including sub directories
+     * @param executor
+     *         Where to parse the files
+     *
+     * @throws IOException if the directory itself can not be listed
+     */
+    public static OrgCorpus load(final OrgParser parser, final Path dir, final ExecutorService executor)
+            throws IOException {
+        if (parser == null || dir == null || executor == null) {
+            throw new NullPointerException("Not allowed to be null!");
+        }
+
+        final List<Entry> entries = new ArrayList<Entry>();
+        final List<Path> paths = findOrgFiles(dir, entries);
+        final List<Future<OrgFile>> futures = new ArrayList<Future<OrgFile>>(paths.size());
+        for (final Path path : paths) {
+            futures.add(executor.submit(new Callable<OrgFile>() {
+                @Override
+                public OrgFile call() throws Exception {
+                    return OrgFile.createFromFile(parser, path.toFile());
+                }
+            }));
+        }
+
+        for (int i = 0; i < paths.size(); i++) {
+            try {
+                entries.add(new Entry(paths.get(i), futures.get(i).get(), null));
+            } catch (ExecutionException e) {
+                entries.add(new Entry(paths.get(i), null, e.getCause()));
+            } catch (InterruptedException e) {
+                for (final Future<OrgFile> future : futures) {
+                    future.cancel(true);
+                }
+                Thread.currentThread().interrupt();
+                throw new IOException("Interrupted while loading " + dir, e);
+            }
+        }
+
+        // The failed directories go among the files
+        Collections.sort(entries, new Comparator<Entry>() {
+            @Override
+            public int compare(final Entry a, final Entry b) {
+                return a.getPath().compareTo(b.getPath());
+            }
+        });
+        return new OrgCorpus(dir, entries);
+    }
+
+    /**
+     * Regular files ending in ".org" below dir, sorted.
+     *
+     * @param failures gets an entry for each file or directory below dir
+     *                 which can not be visited
+     */
+    static List<Path> findOrgFiles(final Path dir, final List<Entry> failures) throws IOException {
+        final List<Path> paths = new ArrayList<Path>();
+        Files.walkFileTree(dir, new SimpleFileVisitor<Path>() {
+            @Override
+            public FileVisitResult visitFile(final Path file, final BasicFileAttributes attrs) {
+                if (attrs.isRegularFile() && file.getFileName().toString().endsWith(".org")) {
+                    paths.add(file);
+                }
+                return FileVisitResult.CONTINUE;
+            }
+
+            @Override
+            public FileVisitResult visitFileFailed(final Path file, final IOException e)
+                    throws IOException {
+                if (file.equals(dir)) {
+                    // Nothing to load at all
+                    throw e;
+                }
+                failures.add(new Entry(file, null, e));
+                return FileVisitResult.CONTINUE;
+            }
+
+            @Override
+            public FileVisitResult postVisitDirectory(final Path subdir, final IOException e)
+                    throws IOException {
+                if (e == null) {
+                    return FileVisitResult.CONTINUE;
+                } else if (subdir.equals(dir)) {
+                    throw e;
+                }
+                // Listing stopped part way
+                failures.add(new Entry(subdir, null, e));
+                return FileVisitResult.CONTINUE;
+            }
+        });
+        Collections.sort(paths);
+        return paths;
+    }
+
+    /**
+     * The directory which was loaded.
+     */
+    public Path getRoot() {
+        return root;
+    }
+
+    /**
+     * One entry per file found, and per sub directory which could not be
+     * listed, sorted by path.
+     */
+    public List<Entry> getEntries() {
+        return entries;
+    }
+
+    /**
+     * The files which were parsed without errors, sorted by path.
+     */
+    public List<OrgFile> getFiles() {
+        final List<OrgFile> files = new ArrayList<OrgFile>(entries.size());
+        for (final Entry entry : entries) {
+            if (entry.getFile() != null) {
+                files.add(entry.getFile());
+            }
+        }
+        return files;
+    }
+
+    /**
+     * The entries of files and directories which could not be loaded,
+     * sorted by path.
+     */
+    public List<Entry> getFailures() {
+        final List<Entry> failures = new ArrayList<Entry>();
+        for (final Entry entry : entries) {
+            if (entry.getError() != null) {
+                failures.add(entry);
+            }
+        }
+        return failures;
+    }
+
+    /**
+     * The outcome of loading a single file. Exactly one of file and error
+     * is set.
+     */
+    public static final class Entry {
+        private final Path path;
+        private final OrgFile file;
+        private final Throwable error;
+
+        Entry(final Path path, final OrgFile file, final Throwable error) {
+            this.path = path;
+            this.file = file;
+            this.error = error;
+        }
+
+        public Path getPath() {
+            return path;
+        }
+
+        /**
+         * @return the parsed file, or null if it failed
+         */
+        public OrgFile getFile() {
+            return file;
+        }
+
+        /**
+         * @return why the file could not be loaded, or null
+         */
+        public Throwable getError() {
+            return error;
+        }
+    }
+}
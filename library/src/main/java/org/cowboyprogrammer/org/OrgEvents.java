@@ -0,0 +1,312 @@
+/*
+ * Copyright (c) Jonas Kalderstam 2014.
+ *
+ * This program is free software: you can redistribute it and/or modify
+ * it under the terms of the GNU General Public License as published by
+ * the Free Software Foundation, either version 3 of the License, or
+ * (at your option) any later version.
+ *
+ * This program is distributed in the hope that it will be useful,
+ * but WITHOUT ANY WARRANTY; without even the implied warranty of
+ * MERCHANTABILITY or FITNESS FOR A PARTICULAR PURPOSE.  See the
+ * GNU General Public License for more details.
+ *
+ * You should have received a copy of the GNU General Public License
+ * along with this program.  If not, see <http://www.gnu.org/licenses/>.
+ */
+
+package org.cowboyprogrammer.org;
+
+import org.cowboyprogrammer.org.util.StringUtils;
+import org.joda.time.LocalDateTime;
+import org.joda.time.ReadablePeriod;
+
+import java.io.IOException;
+
+import jdk.jfr.Category;
+import jdk.jfr.DataAmount;
+import jdk.jfr.Description;
+import jdk.jfr.Event;
+import jdk.jfr.Label;
+import jdk.jfr.Name;
+import jdk.jfr.Threshold;
+
+/**
+ * Java Flight Recorder events for parsing files, writing trees, agenda
+ * queries and repeating timestamps, so they can be seen next to GC and
+ * CPU in a recording. They are all in the category "Org Parser".
+ * <p/>
+ * Each begin method returns null unless a recording has the event
+ * enabled, and the end methods do nothing with null, so when nothing is
+ * recorded the cost is a check of a flag. Where jdk.jfr is missing, like
+ * on Android, the events are never created and their classes never
+ * loaded.
+ */
+final class OrgEvents {
+
+    private static final String CATEGORY = "Org Parser";
+    private static final boolean AVAILABLE = isAvailable();
+
+    private OrgEvents() {
+    }
+
+    private static boolean isAvailable() {
+        try {
+            Class.forName("jdk.jfr.Event");
+            return true;
+        } catch (ClassNotFoundException e) {
+            return false;
+        } catch (LinkageError e) {
+            return false;
+        }
+    }
+
+    /**
+     * @return a started event, or null if it is not recorded
+     */
+    static ParseEvent beginParse() {
+        if (!AVAILABLE) {
+            return null;
+        }
+        final ParseEvent event = new ParseEvent();
+        if (!event.isEnabled()) {
+            return null;
+        }
+        event.begin();
+        return event;
+    }
+
+    static void endParse(final ParseEvent event, final OrgFile orgfile) {
+        if (event == null) {
+            return;
+        }
+        event.end();
+        if (event.shouldCommit()) {
+            event.file = orgfile.getFilename();
+            event.lines = orgfile.subtreeLines;
+            event.commit();
+        }
+    }
+
+    /**
+     * @return a started event, or null if it is not recorded
+     */
+    static WriteEvent beginWrite() {
+        if (!AVAILABLE) {
+            return null;
+        }
+        final WriteEvent event = new WriteEvent();
+        if (!event.isEnabled()) {
+            return null;
+        }
+        event.begin();
+        return event;
+    }
+
+    /**
+     * @return out, or if the event is recorded, out counting the
+     * characters written to it
+     */
+    static Appendable counting(final WriteEvent event, final Appendable out) {
+        if (event == null) {
+            return out;
+        }
+        return new CountingAppendable(event, out);
+    }
+
+    static void endWrite(final WriteEvent event, final OrgNode node, final long characters) {
+        if (event != null) {
+            event.characters = characters;
+        }
+        endWrite(event, node);
+    }
+
+    static void endWrite(final WriteEvent event, final OrgNode node) {
+        if (event == null) {
+            return;
+        }
+        event.end();
+        if (event.shouldCommit()) {
+            OrgNode root = node;
+            while (root.getParent() != null) {
+                root = root.getParent();
+            }
+            if (root instanceof OrgFile) {
+                event.file = ((OrgFile) root).getFilename();
+            }
+            if (!(node instanceof OrgFile)) {
+                event.title = node.getTitle();
+            }
+            event.commit();
+        }
+    }
+
+    /**
+     * @return a started event, or null if it is not recorded
+     */
+    static RepetitionsEvent beginRepetitions() {
+        if (!AVAILABLE) {
+            return null;
+        }
+        final RepetitionsEvent event = new RepetitionsEvent();
+        if (!event.isEnabled()) {
+            return null;
+        }
+        event.begin();
+        return event;
+    }
+
+    static void endRepetitions(final RepetitionsEvent event, final LocalDateTime date,
+                               final ReadablePeriod period, final long repetitions) {
+        if (event == null) {
+            return;
+        }
+        event.end();
+        if (event.shouldCommit()) {
+            event.date = String.valueOf(date);
+            event.period = String.valueOf(period);
+            event.repetitions = repetitions;
+            event.commit();
+        }
+    }
+
+    /**
+     * @return a started event, or null if it is not recorded
+     */
+    static AgendaEvent beginAgenda() {
+        if (!AVAILABLE) {
+            return null;
+        }
+        final AgendaEvent event = new AgendaEvent();
+        if (!event.isEnabled()) {
+            return null;
+        }
+        event.begin();
+        return event;
+    }
+
+    static void endAgenda(final AgendaEvent event, final LocalDateTime from, final LocalDateTime to,
+                          final int items, final int repeating) {
+        if (event == null) {
+            return;
+        }
+        event.end();
+        if (event.shouldCommit()) {
+            event.from = String.valueOf(from);
+            event.to = String.valueOf(to);
+            event.items = items;
+            event.repeating = repeating;
+            event.commit();
+        }
+    }
+
+    @Name("org.cowboyprogrammer.org.Parse")
+    @Label("Parse")
+    @Category(CATEGORY)
+    @Description("Parsing a file into a tree of nodes")
+    static class ParseEvent extends Event {
+        @Label("File")
+        String file;
+
+        @Label("Size")
+        @Description("The text in UTF-8, counting one byte for each line ending")
+        @DataAmount(DataAmount.BYTES)
+        long bytes;
+
+        @Label("Lines")
+        int lines;
+
+        @Label("Nodes")
+        int nodes;
+
+        void addLine(final String line) {
+            bytes += StringUtils.utf8Length(line) + 1;
+        }
+    }
+
+    @Name("org.cowboyprogrammer.org.Write")
+    @Label("Write")
+    @Category(CATEGORY)
+    @Description("Writing a tree of nodes as text, by treeToString or writeToBuffer")
+    static class WriteEvent extends Event {
+        @Label("File")
+        String file;
+
+        @Label("Title")
+        @Description("The node at the top of the tree, none if it is the file")
+        String title;
+
+        @Label("Characters")
+        long characters;
+    }
+
+    @Name("org.cowboyprogrammer.org.Repetitions")
+    @Label("Repetitions")
+    @Category(CATEGORY)
+    @Description("Finding how many times a repeating timestamp has repeated")
+    @Threshold("1 ms")
+    static class RepetitionsEvent extends Event {
+        @Label("Date")
+        String date;
+
+        @Label("Period")
+        String period;
+
+        @Label("Repetitions")
+        long repetitions;
+    }
+
+    @Name("org.cowboyprogrammer.org.Agenda")
+    @Label("Agenda")
+    @Category(CATEGORY)
+    @Description("Finding the agenda items of a period")
+    @Threshold("1 ms")
+    static class AgendaEvent extends Event {
+        @Label("From")
+        String from;
+
+        @Label("To")
+        String to;
+
+        @Label("Items")
+        int items;
+
+        @Label("Repeating")
+        @Description("Repeating timestamps, whose occurrences were calculated")
+        int repeating;
+    }
+
+    private static final class CountingAppendable implements Appendable {
+        private final WriteEvent event;
+        private final Appendable out;
+
+        CountingAppendable(final WriteEvent event, final Appendable out) {
+            this.event = event;
+            this.out = out;
+        }
+
+        @Override
+        public Appendable append(final CharSequence csq) throws IOException {
+            final CharSequence text = csq == null ? "null" : csq;
+            event.characters += text.length();
+            out.append(text);
+            return this;
+        }
+
+        @Override
+        public Appendable append(final CharSequence csq, final int start, final int end)
+                throws IOException {
+            final CharSequence text = csq == null ? "null" : csq;
+            event.characters += end - start;
+            out.append(text, start, end);
+            return this;
+        }
+
+        @Override
+        public Appendable append(final char c) throws IOException {
+            event.characters++;
+            out.append(c);
+            return this;
+        }
+    }
+}
@@ -18,13 +18,27 @@
 package org.cowboyprogrammer.org;
 
 import org.cowboyprogrammer.org.parser.OrgParser;
+import org.cowboyprogrammer.org.parser.ParseListener;
+import org.cowboyprogrammer.org.parser.ParseStatistics;
+import org.cowboyprogrammer.org.util.Utf8LineReader;
 
 import java.io.*;
+import java.nio.channels.FileChannel;
+import java.nio.charset.Charset;
+import java.nio.file.Path;
+import java.nio.file.StandardOpenOption;
 import java.text.ParseException;
-import java.util.Stack;
+import java.util.List;
+import java.util.Spliterator;
+import java.util.Spliterators;
+import java.util.concurrent.ForkJoinPool;
+import java.util.stream.Stream;
+import java.util.stream.StreamSupport;
 
 public class OrgFile extends OrgNode {
 
+    private static final Charset UTF8 = Charset.forName("UTF-8");
+
     // File where this lives
     private String filename;
 
@@ -51,63 +65,64 @@ public class OrgFile extends OrgNode {
         if (null == filename || br == null) {
             throw new NullPointerException("Can't read a null buffer");
         }
-        // Need these to handle org parsing
-        final OrgFile orgfile = new OrgFile(parser, filename);
-        final Stack<OrgNode> stack = new Stack<OrgNode>();
-        // Root is file
-        stack.push(orgfile);
-
-        String line, sepline = null;
-
-        try {
-            while ((line = br.readLine()) != null) {
-                // See what we are reading
-                if (parser.isHeaderLine(line)) {
-                    // Destroy separator line
-                    sepline = null;
-                    // Header of node
-                    // Create new node
-                    final OrgNode node = parser.createFromHeader(line);
-
-                    // Find parent
-                    while (node.getLevel() <= stack.peek().getLevel()) {
-                        stack.pop();
-                    }
+        return new OrgTreeBuilder(parser, filename).parse(br);
+    }
 
-                    // Assign parent
-                    node.setParent(stack.peek());
-                    // Assign child
-                    stack.peek().getSubNodes().add(node);
-                    // Add to stack
-                    stack.push(node);
-                    /*
-                    Sep line handles a possible separator line between the
-                    body of the previous item and the header of the next item
-                    . One separator line is allowed,
-                    and will thus get "eaten" during parsing.
-                     */
-                } else if (sepline != null && line.isEmpty()) {
-                    // Another empty line, put last one in node
-                    stack.peek().addBodyLine(sepline);
-                    sepline = line;
-                } else if (sepline == null && line.isEmpty()) {
-                    // Possibly a separator line. Keep track of it.
-                    sepline = line;
-                } else {
-                    // Body of node - OK to place in file
-                    // Put sepline there first if not empty
-                    if (sepline != null) {
-                        stack.peek().addBodyLine(sepline);
-                        sepline = null;
-                    }
-                    stack.peek().addBodyLine(line);
-                }
-            }
-        } finally {
-            br.close();
+    /**
+     * Read an org file while measuring it, see {@link ParseStatistics}.
+     *
+     * @param filename
+     *         The filename without the path part
+     * @param br
+     *         A buffered reader of the file contents
+     * @param listener
+     *         Told about every line as it is parsed
+     *
+     * @return an OrgFile object containing the file's contents
+     *
+     * @throws ParseException
+     * @throws IOException
+     */
+    public static OrgFile createFromBufferedReader(final OrgParser parser, final String filename,
+                                                   final BufferedReader br, final ParseListener listener)
+            throws IOException, ParseException {
+        if (null == filename || br == null) {
+            throw new NullPointerException("Can't read a null buffer");
         }
+        final OrgTreeBuilder builder = new OrgTreeBuilder(parser, filename);
+        builder.setParseListener(listener);
+        return builder.parse(br);
+    }
 
-        return orgfile;
+    /**
+     * Read an org file in lossless mode. Every node keeps the text it was
+     * parsed from, and when it is written that text is used instead of what
+     * the node would otherwise write, unless the node has changed. So writing
+     * the tree gives back the same text, except that all lines end with
+     * "\n", and only changed nodes are formatted again. If only the header
+     * of a node has changed, the rest of its text is still kept.
+     * <p/>
+     * This takes about twice the memory of a normal parse.
+     *
+     * @param filename
+     *         The filename without the path part
+     * @param br
+     *         A buffered reader of the file contents
+     * @param lossless
+     *         True to keep the text of each node
+     *
+     * @return an OrgFile object containing the file's contents
+     *
+     * @throws ParseException
+     * @throws IOException
+     */
+    public static OrgFile createFromBufferedReader(final OrgParser parser, final String filename,
+                                                   final BufferedReader br, final boolean lossless)
+            throws IOException, ParseException {
+        if (null == filename || br == null) {
+            throw new NullPointerException("Can't read a null buffer");
+        }
+        return new OrgTreeBuilder(parser, filename, lossless).parse(br);
     }
 
     /**
@@ -166,6 +181,213 @@ public class OrgFile extends OrgNode {
         return createFromFile(parser, new File(filepath));
     }
 
+    /**
+     * Read an org file. The file is read in large chunks and is always
+     * decoded as UTF-8, regardless of the platform's default charset.
+     *
+     * @param parser
+     *         The OrgParser to use
+     * @param path
+     *         The file to open and parse
+     *
+     * @return an OrgFile object containing the file's contents
+     *
+     * @throws ParseException
+     * @throws IOException
+     */
+    public static OrgFile createFromPath(final OrgParser parser, final Path path) throws IOException, ParseException {
+        if (path == null) {
+            throw new NullPointerException("Can't read a null path");
+        }
+        return new OrgTreeBuilder(parser, path.getFileName().toString())
+                .parse(FileChannel.open(path, StandardOpenOption.READ));
+    }
+
+    /**
+     * Read an org file, which is decoded as UTF-8. See
+     * {@link #createFromBufferedReader(OrgParser, String, BufferedReader, boolean)}
+     * for lossless mode.
+     *
+     * @param parser
+     *         The OrgParser to use
+     * @param path
+     *         The file to open and parse
+     * @param lossless
+     *         True to keep the text of each node
+     *
+     * @return an OrgFile object containing the file's contents
+     *
+     * @throws ParseException
+     * @throws IOException
+     */
+    public static OrgFile createFromPath(final OrgParser parser, final Path path, final boolean lossless)
+            throws IOException, ParseException {
+        if (path == null) {
+            throw new NullPointerException("Can't read a null path");
+        }
+        return new OrgTreeBuilder(parser, path.getFileName().toString(), lossless)
+                .parse(FileChannel.open(path, StandardOpenOption.READ));
+    }
+
+    /**
+     * Read an org file, using all threads of the pool. The file is split in
+     * front of level 1 headers and the parts are parsed concurrently. The
+     * result is the same as from {@link #createFromPath(OrgParser, Path)}.
+     * Small files are not split at all.
+     *
+     * @param parser
+     *         The OrgParser to use. It must be safe to use from several
+     *         threads at once, which RegexParser and ScannerParser are.
+     * @param path
+     *         The file to open and parse
+     * @param pool
+     *         The pool to parse on, for example ForkJoinPool.commonPool()
+     *
+     * @return an OrgFile object containing the file's contents
+     *
+     * @throws ParseException
+     * @throws IOException
+     */
+    public static OrgFile createFromPath(final OrgParser parser, final Path path, final ForkJoinPool pool)
+            throws IOException, ParseException {
+        if (path == null || pool == null) {
+            throw new NullPointerException("Not allowed to be null!");
+        }
+        return ParallelOrgFileReader.read(parser, path, pool);
+    }
+
+    /**
+     * Read the top level nodes of an org file one at a time, see
+     * {@link OrgSubtreeIterator}.
+     *
+     * @param parser
+     *         The OrgParser to use
+     * @param filename
+     *         The filename without the path part
+     * @param br
+     *         A buffered reader of the file contents
+     */
+    public static OrgSubtreeIterator iterateFromBufferedReader(final OrgParser parser, final String filename,
+                                                               final BufferedReader br) {
+        return new OrgSubtreeIterator(parser, filename, br);
+    }
+
+    /**
+     * Read the top level nodes of an org file one at a time, see
+     * {@link OrgSubtreeIterator}. The file is decoded as UTF-8.
+     *
+     * @param parser
+     *         The OrgParser to use
+     * @param path
+     *         The file to open and parse
+     *
+     * @throws IOException
+     */
+    public static OrgSubtreeIterator iterateFromPath(final OrgParser parser, final Path path) throws IOException {
+        if (path == null) {
+            throw new NullPointerException("Can't read a null path");
+        }
+        return new OrgSubtreeIterator(parser, path.getFileName().toString(),
+                new Utf8LineReader(FileChannel.open(path, StandardOpenOption.READ)));
+    }
+
+    /**
+     * Same as {@link #iterateFromBufferedReader(OrgParser, String, BufferedReader)}
+     * but as a sequential Stream. Closing the stream closes the reader.
+     */
+    public static Stream<OrgNode> streamFromBufferedReader(final OrgParser parser, final String filename,
+                                                           final BufferedReader br) {
+        return toStream(iterateFromBufferedReader(parser, filename, br));
+    }
+
+    /**
+     * Same as {@link #iterateFromPath(OrgParser, Path)} but as a sequential
+     * Stream. Closing the stream closes the file.
+     */
+    public static Stream<OrgNode> streamFromPath(final OrgParser parser, final Path path) throws IOException {
+        return toStream(iterateFromPath(parser, path));
+    }
+
+    private static Stream<OrgNode> toStream(final OrgSubtreeIterator iterator) {
+        return StreamSupport.stream(Spliterators.spliteratorUnknownSize(iterator,
+                Spliterator.ORDERED | Spliterator.NONNULL), false)
+                .onClose(new Runnable() {
+                    @Override
+                    public void run() {
+                        try {
+                            iterator.close();
+                        } catch (IOException e) {
+                            throw new UncheckedIOException(e);
+                        }
+                    }
+                });
+    }
+
+    /**
+     * Update this tree after lines of the file were replaced, for example in
+     * an editor. Only the nodes which contain the edit are parsed again, so
+     * the time taken depends on the size of those nodes rather than the
+     * whole file. The result is the same as parsing all lines again.
+     * <p/>
+     * This only works if the tree has not been changed since it was parsed,
+     * other than by this method. If the tree was not parsed from a file, or
+     * lines does not match the edit, the whole file is parsed again.
+     *
+     * @param lines
+     *         All lines of the file after the edit, without line endings
+     * @param firstLine
+     *         Index of the first line which was replaced
+     * @param removed
+     *         How many lines of the old file were replaced
+     * @param added
+     *         How many lines replaced them
+     *
+     * @throws ParseException
+     */
+    public void applyEdit(final List<String> lines, final int firstLine, final int removed,
+                          final int added) throws ParseException {
+        if (lines == null) {
+            throw new NullPointerException("Not allowed to be null!");
+        }
+        OrgTreeEditor.apply(this, lines, firstLine, removed, added);
+    }
+
+    /**
+     * Save changes to the file this was read from, which is written as
+     * UTF-8. See {@link #saveChanges(Path, Charset)}.
+     */
+    public void saveChanges(final Path path) throws IOException {
+        saveChanges(path, UTF8);
+    }
+
+    /**
+     * Save changes to the file this was read from. Only entries which are
+     * dirty, see {@link OrgNode#isDirty()}, are written again. The lines of
+     * all other entries are copied from the file as they are, so the time
+     * taken depends mostly on how much has changed rather than on the size of
+     * the file. The file is replaced atomically where the file system allows
+     * it.
+     * <p/>
+     * The file must not have been changed by anybody else since it was read
+     * or saved. Entries which were parsed again by
+     * {@link #applyEdit(List, int, int, int)} are always written. The charset
+     * must be the one the file was read with, and one where line endings are
+     * the same as in ASCII, like UTF-8.
+     *
+     * @param path
+     *         The file this was read from
+     * @param charset
+     *         Used for the entries which are written again
+     *
+     * @throws IOException
+     */
+    public void saveChanges(final Path path, final Charset charset) throws IOException {
+        if (path == null || charset == null) {
+            throw new NullPointerException("Not allowed to be null!");
+        }
+        OrgFilePatcher.save(this, path, charset);
+    }
+
     /**
      * Last modified time of the parsed file. Only valid for existing files, else -1.
      */
@@ -202,7 +424,7 @@ public class OrgFile extends OrgNode {
      */
     public void writeToBuffer(final BufferedWriter bw) throws IOException {
         // Write the org tree
-        bw.write(this.treeToString());
+        writeTo(bw);
 
     }
 
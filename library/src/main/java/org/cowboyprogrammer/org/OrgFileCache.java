@@ -0,0 +1,243 @@
+/*
+ * Copyright (c) Jonas Kalderstam 2014.
+ *
+ * This program is free software: you can redistribute it and/or modify
+ * it under the terms of the GNU General Public License as published by
+ * the Free Software Foundation, either version 3 of the License, or
+ * (at your option) any later version.
+ *
+ * This program is distributed in the hope that it will be useful,
+ * but WITHOUT ANY WARRANTY; without even the implied warranty of
+ * MERCHANTABILITY or FITNESS FOR A PARTICULAR PURPOSE.  See the
+ * GNU General Public License for more details.
+ *
+ * You should have received a copy of the GNU General Public License
+ * along with this program.  If not, see <http://www.gnu.org/licenses/>.
+ */
+
+package org.cowboyprogrammer.org;
+
+import org.cowboyprogrammer.org.parser.OrgParser;
+
+import java.io.BufferedInputStream;
+import java.io.BufferedOutputStream;
+import java.io.DataInputStream;
+import java.io.DataOutputStream;
+import java.io.File;
+import java.io.FileInputStream;
+import java.io.FileOutputStream;
+import java.io.IOException;
+import java.io.InputStream;
+import java.nio.charset.Charset;
+import java.nio.file.AtomicMoveNotSupportedException;
+import java.nio.file.Files;
+import java.nio.file.StandardCopyOption;
+import java.security.MessageDigest;
+import java.security.NoSuchAlgorithmException;
+import java.text.ParseException;
+import java.util.Arrays;
+
+/**
+ * Loads org files through a cache directory. The parsed tree of each file
+ * is stored there, and used instead of parsing the file again as long as
+ * the file has the same path, length and last modified time. Optionally,
+ * the contents must also have the same hash, which is slower but also
+ * catches changes which do not show in the modified time. A tree is also
+ * parsed again if it was cached with another kind of parser, or with other
+ * TODO keywords, see {@link OrgParser#getTodoKeywords()}.
+ * <p/>
+ * The cache is only an optimization: entries which can not be read or
+ * written are ignored, and the file is parsed as usual.
+ */
+public class OrgFileCache {
+
+    private static final int MAGIC = 0x4f524743;
+    // Increase when the format of the entries changes
+    private static final int VERSION = 5;
+    private static final Charset UTF8 = Charset.forName("UTF-8");
+    // Of SHA-256
+    private static final int HASH_LENGTH = 32;
+
+    private final OrgParser parser;
+    private final File dir;
+    private final boolean verifyContent;
+    // Which parser made the cached trees
+    private final String fingerprint;
+
+    /**
+     * Same as OrgFileCache(parser, dir, false).
+     */
+    public OrgFileCache(final OrgParser parser, final File dir) {
+        this(parser, dir, false);
+    }
+
+    /**
+     * @param parser        used to parse files which are not in the cache
+     * @param dir           directory of the cache, created if needed
+     * @param verifyContent if true, the contents of a file are hashed and
+     *                      compared as well
+     */
+    public OrgFileCache(final OrgParser parser, final File dir, final boolean verifyContent) {
+        if (parser == null || dir == null) {
+            throw new NullPointerException("Not allowed to be null!");
+        }
+        this.parser = parser;
+        this.dir = dir;
+        this.verifyContent = verifyContent;
+        this.fingerprint = parser.getClass().getName() + " " + parser.getTodoKeywords();
+    }
+
+    /**
+     * Same result as OrgFile.createFromFile, but from the cache if the file
+     * has not changed since it was last parsed.
+     */
+    public OrgFile load(final File file) throws IOException, ParseException {
+        final File source = file.getAbsoluteFile();
+        // Before parsing, so a change while parsing is not missed
+        final long length = source.length();
+        final long modified = source.lastModified();
+        final byte[] hash = verifyContent ? hash(source) : null;
+
+        final File entry = getEntry(source);
+        final OrgFile cached = read(entry, source, length, modified, hash);
+        if (cached != null) {
+            return cached;
+        }
+
+        final OrgFile orgfile = OrgFile.createFromFile(parser, source);
+        write(entry, orgfile, source, length, modified, hash);
+        return orgfile;
+    }
+
+    /**
+     * Remove the cached tree of the file, if any.
+     */
+    public boolean invalidate(final File file) {
+        return getEntry(file.getAbsoluteFile()).delete();
+    }
+
+    /**
+     * Where the tree of the file is cached.
+     */
+    File getEntry(final File source) {
+        return new File(dir, toHex(digest("SHA-1", source.getPath().getBytes(UTF8))) + ".orgcache");
+    }
+
+    private OrgFile read(final File entry, final File source, final long length, final long modified,
+                         final byte[] hash) {
+        if (!entry.isFile()) {
+            return null;
+        }
+        try {
+            final DataInputStream in = new DataInputStream(
+                    new BufferedInputStream(new FileInputStream(entry), 1 << 16));
+            try {
+                if (in.readInt() != MAGIC || in.readInt() != VERSION
+                        || !fingerprint.equals(in.readUTF())
+                        || !source.getPath().equals(in.readUTF())
+                        || in.readLong() != length || in.readLong() != modified) {
+                    return null;
+                }
+                final int hashLength = in.readInt();
+                if (hashLength != 0 && hashLength != HASH_LENGTH) {
+                    throw new IOException("Broken hash length: " + hashLength);
+                }
+                final byte[] storedHash = new byte[hashLength];
+                in.readFully(storedHash);
+                if (hash != null && !Arrays.equals(hash, storedHash)) {
+                    return null;
+                }
+                // The tree is smaller than the whole entry
+                return new OrgTreeReader(parser, in, entry.length()).read();
+            } finally {
+                in.close();
+            }
+        } catch (IOException e) {
+            // Broken entry, parse instead
+            return null;
+        } catch (RuntimeException e) {
+            // Broken entry, parse instead
+            return null;
+        }
+    }
+
+    private void write(final File entry, final OrgFile orgfile, final File source, final long length,
+                       final long modified, final byte[] hash) {
+        File temp = null;
+        try {
+            if (!dir.isDirectory() && !dir.mkdirs()) {
+                return;
+            }
+            temp = File.createTempFile("entry", ".tmp", dir);
+            final DataOutputStream out = new DataOutputStream(
+                    new BufferedOutputStream(new FileOutputStream(temp), 1 << 16));
+            try {
+                out.writeInt(MAGIC);
+                out.writeInt(VERSION);
+                out.writeUTF(fingerprint);
+                out.writeUTF(source.getPath());
+                out.writeLong(length);
+                out.writeLong(modified);
+                if (hash == null) {
+                    out.writeInt(0);
+                } else {
+                    out.writeInt(hash.length);
+                    out.write(hash);
+                }
+                new OrgTreeWriter(out).write(orgfile);
+            } finally {
+                out.close();
+            }
+            try {
+                Files.move(temp.toPath(), entry.toPath(), StandardCopyOption.REPLACE_EXISTING,
+                        StandardCopyOption.ATOMIC_MOVE);
+            } catch (AtomicMoveNotSupportedException e) {
+                Files.move(temp.toPath(), entry.toPath(), StandardCopyOption.REPLACE_EXISTING);
+            }
+            temp = null;
+        } catch (IOException e) {
+            // Nothing is lost, the file is just parsed again next time
+        } finally {
+            if (temp != null) {
+                temp.delete();
+            }
+        }
+    }
+
+    private static byte[] hash(final File file) throws IOException {
+        final MessageDigest digest = getDigest("SHA-256");
+        final InputStream in = new FileInputStream(file);
+        try {
+            final byte[] buffer = new byte[1 << 16];
+            int read;
+            while ((read = in.read(buffer)) >= 0) {
+                digest.update(buffer, 0, read);
+            }
+        } finally {
+            in.close();
+        }
+        return digest.digest();
+    }
+
+    private static byte[] digest(final String algorithm, final byte[] bytes) {
+        return getDigest(algorithm).digest(bytes);
+    }
+
+    private static MessageDigest getDigest(final String algorithm) {
+        try {
+            return MessageDigest.getInstance(algorithm);
+        } catch (NoSuchAlgorithmException e) {
+            // Every Java platform has SHA-1 and SHA-256
+            throw new IllegalStateException(e);
+        }
+    }
+
+    private static String toHex(final byte[] bytes) {
+        final StringBuilder sb = new StringBuilder(bytes.length * 2);
+        for (final byte b : bytes) {
+            sb.append(Character.forDigit((b >> 4) & 0xf, 16));
+            sb.append(Character.forDigit(b & 0xf, 16));
+        }
+        return sb.toString();
+    }
+}
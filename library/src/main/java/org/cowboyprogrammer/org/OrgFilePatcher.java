@@ -0,0 +1,354 @@
+/*
+ * Copyright (c) Jonas Kalderstam 2014.
+ *
+ * This program is free software: you can redistribute it and/or modify
+ * it under the terms of the GNU General Public License as published by
+ * the Free Software Foundation, either version 3 of the License, or
+ * (at your option) any later version.
+ *
+ * This program is distributed in the hope that it will be useful,
+ * but WITHOUT ANY WARRANTY; without even the implied warranty of
+ * MERCHANTABILITY or FITNESS FOR A PARTICULAR PURPOSE.  See the
+ * GNU General Public License for more details.
+ *
+ * You should have received a copy of the GNU General Public License
+ * along with this program.  If not, see <http://www.gnu.org/licenses/>.
+ */
+
+package org.cowboyprogrammer.org;
+
+import java.io.IOException;
+import java.nio.ByteBuffer;
+import java.nio.CharBuffer;
+import java.nio.channels.FileChannel;
+import java.nio.charset.Charset;
+import java.nio.file.AtomicMoveNotSupportedException;
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.nio.file.StandardCopyOption;
+import java.nio.file.StandardOpenOption;
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.List;
+
+/**
+ * Saves a tree to the file it was read from, where only changed entries are
+ * written again. The lines of every other entry are copied from the old
+ * file as they are, and runs of entries which follow each other in the old
+ * file are copied in one go.
+ * <p/>
+ * The result is the same text as writing the whole tree, except that the
+ * unchanged entries keep their exact formatting. The new file is written
+ * next to the old one and then moved over it, so the old file is intact if
+ * anything fails.
+ */
+final class OrgFilePatcher {
+
+    private static final int BUFFER_SIZE = 1 << 16;
+
+    private final OrgFile orgfile;
+    private final Path path;
+    private final Charset charset;
+
+    // All entries, in the order they are written
+    private final List<OrgNode> nodes = new ArrayList<OrgNode>();
+    // If the entry's lines are copied from the old file
+    private boolean[] copied;
+    // First line of each entry in the new file
+    private int[] starts;
+    // New text of the written entries, for those which keep their text
+    private String[] sources;
+    // Last written entry, and where its text starts
+    private int written = -1;
+    private int writtenStart;
+
+    // Lines of the old file whose offsets are needed, sorted
+    private int[] lines;
+    private long[] offsets;
+    // Line which ends at the end of the old file without a line ending
+    private int unterminatedLine = -1;
+
+    private FileChannel source;
+    private FileChannel target;
+    private final StringBuilder text = new StringBuilder();
+
+    private OrgFilePatcher(final OrgFile orgfile, final Path path, final Charset charset) {
+        this.orgfile = orgfile;
+        this.path = path;
+        this.charset = charset;
+    }
+
+    /**
+     * See {@link OrgFile#saveChanges(Path, Charset)}.
+     */
+    static void save(final OrgFile orgfile, final Path path, final Charset charset) throws IOException {
+        new OrgFilePatcher(orgfile, path, charset).save();
+    }
+
+    private void save() throws IOException {
+        collect(orgfile);
+        copied = new boolean[nodes.size()];
+        starts = new int[nodes.size()];
+        sources = new String[nodes.size()];
+        boolean copying = false;
+        for (int i = 0; i < nodes.size(); i++) {
+            final OrgNode node = nodes.get(i);
+            copied[i] = node.sourceStart >= 0 && node.ownLines >= 0 && !node.isDirty();
+            copying |= copied[i];
+        }
+
+        final Path dir = path.toAbsolutePath().getParent();
+        final Path temp = Files.createTempFile(dir, path.getFileName().toString(), ".tmp");
+        try {
+            keepPermissions(temp);
+            if (copying) {
+                source = FileChannel.open(path, StandardOpenOption.READ);
+            }
+            target = FileChannel.open(temp, StandardOpenOption.WRITE);
+            try {
+                if (copying) {
+                    findOffsets();
+                }
+                final int total = write();
+                target.force(true);
+                target.close();
+                if (source != null) {
+                    source.close();
+                }
+                move(temp);
+                update(total);
+            } finally {
+                target.close();
+                if (source != null) {
+                    source.close();
+                }
+            }
+        } finally {
+            Files.deleteIfExists(temp);
+        }
+    }
+
+    /**
+     * Temp files are only readable by the owner, the new file should not be.
+     */
+    private void keepPermissions(final Path temp) throws IOException {
+        if (Files.exists(path)) {
+            try {
+                Files.setPosixFilePermissions(temp, Files.getPosixFilePermissions(path));
+            } catch (UnsupportedOperationException e) {
+                // Not a posix file system
+            }
+        }
+    }
+
+    private void collect(final OrgNode node) {
+        nodes.add(node);
+        for (final OrgNode child : node.getSubNodes()) {
+            collect(child);
+        }
+    }
+
+    /**
+     * Find where the copied runs of lines start and end in the old file.
+     */
+    private void findOffsets() throws IOException {
+        final List<Integer> needed = new ArrayList<Integer>();
+        for (int i = 0; i < nodes.size(); i++) {
+            if (copied[i]) {
+                final OrgNode node = nodes.get(i);
+                needed.add(node.sourceStart);
+                needed.add(node.sourceStart + node.ownLines);
+            }
+        }
+        lines = new int[needed.size()];
+        for (int i = 0; i < lines.length; i++) {
+            lines[i] = needed.get(i);
+        }
+        Arrays.sort(lines);
+        offsets = new long[lines.length];
+
+        // Same line endings as BufferedReader: \n, \r and \r\n
+        final ByteBuffer buffer = ByteBuffer.allocate(BUFFER_SIZE);
+        final byte[] bytes = buffer.array();
+        int next = record(0, 0, 0);
+        int line = 0;
+        long lineStart = 0;
+        long pos = 0;
+        boolean cr = false;
+        scan:
+        while (true) {
+            buffer.clear();
+            final int read = source.read(buffer, pos);
+            if (read < 0) {
+                break;
+            }
+            for (int i = 0; i < read; i++) {
+                if (next == lines.length && !cr) {
+                    break scan;
+                }
+                final byte b = bytes[i];
+                if (b == '\n' && cr) {
+                    // Second half of \r\n, the line starts after it
+                    lineStart = pos + i + 1;
+                    for (int k = next - 1; k >= 0 && lines[k] == line; k--) {
+                        offsets[k] = lineStart;
+                    }
+                } else if (b == '\n' || b == '\r') {
+                    line++;
+                    lineStart = pos + i + 1;
+                    next = record(next, line, lineStart);
+                }
+                cr = b == '\r';
+            }
+            pos += read;
+        }
+
+        if (next < lines.length && pos > lineStart) {
+            // Last line has no line ending
+            line++;
+            unterminatedLine = line;
+            next = record(next, line, pos);
+        }
+        if (next < lines.length) {
+            throw new IOException("File has fewer lines than when it was read: " + path);
+        }
+    }
+
+    private int record(int next, final int line, final long offset) {
+        while (next < lines.length && lines[next] == line) {
+            offsets[next++] = offset;
+        }
+        return next;
+    }
+
+    private long offsetOf(final int line) {
+        return offsets[Arrays.binarySearch(lines, line)];
+    }
+
+    /**
+     * Write all entries to the target.
+     *
+     * @return the number of lines written
+     */
+    private int write() throws IOException {
+        int line = 0;
+        boolean lineStart = true;
+        boolean separate = false;
+        int i = 0;
+        while (i < nodes.size()) {
+            // Same separator as writeTo
+            if (separate || !lineStart) {
+                text.append('\n');
+                line++;
+                lineStart = true;
+            }
+            endWritten();
+            if (text.length() >= BUFFER_SIZE) {
+                flushText();
+            }
+
+            if (copied[i]) {
+                // Include all entries which follow in the old file too
+                final int from = nodes.get(i).sourceStart;
+                int to = from;
+                do {
+                    starts[i] = line + nodes.get(i).sourceStart - from;
+                    to += nodes.get(i).ownLines;
+                    i++;
+                } while (i < nodes.size() && copied[i] && nodes.get(i).sourceStart == to);
+
+                flushText();
+                copy(offsetOf(from), offsetOf(to));
+                line += to - from;
+                lineStart = to != unterminatedLine;
+                if (!lineStart) {
+                    line--;
+                }
+                separate = false;
+            } else {
+                final OrgNode node = nodes.get(i);
+                starts[i] = line;
+                written = i;
+                writtenStart = text.length();
+                separate = node.writeOwn(text);
+                for (int c = writtenStart; c < text.length(); c++) {
+                    if (text.charAt(c) == '\n') {
+                        line++;
+                    }
+                }
+                lineStart = text.length() == writtenStart || text.charAt(text.length() - 1) == '\n';
+                i++;
+            }
+        }
+        endWritten();
+        flushText();
+        return lineStart ? line : line + 1;
+    }
+
+    /**
+     * Keep the text of the last written entry, including the separator
+     * after it, if it keeps its text.
+     */
+    private void endWritten() {
+        if (written >= 0 && nodes.get(written).source != null) {
+            sources[written] = text.substring(writtenStart);
+        }
+        written = -1;
+    }
+
+    private void flushText() throws IOException {
+        if (text.length() == 0) {
+            return;
+        }
+        final ByteBuffer bytes = charset.encode(CharBuffer.wrap(text));
+        while (bytes.hasRemaining()) {
+            target.write(bytes);
+        }
+        text.setLength(0);
+    }
+
+    private void copy(long from, final long to) throws IOException {
+        while (from < to) {
+            final long count = source.transferTo(from, to - from, target);
+            if (count <= 0) {
+                throw new IOException("File changed while it was copied: " + path);
+            }
+            from += count;
+        }
+    }
+
+    private void move(final Path temp) throws IOException {
+        try {
+            Files.move(temp, path, StandardCopyOption.REPLACE_EXISTING,
+                    StandardCopyOption.ATOMIC_MOVE);
+        } catch (AtomicMoveNotSupportedException e) {
+            Files.move(temp, path, StandardCopyOption.REPLACE_EXISTING);
+        }
+    }
+
+    /**
+     * The entries now match the new file.
+     */
+    private void update(final int total) {
+        for (int i = 0; i < nodes.size(); i++) {
+            final OrgNode node = nodes.get(i);
+            final int end = i + 1 < nodes.size() ? starts[i + 1] : total;
+            node.sourceStart = starts[i];
+            node.ownLines = end - starts[i];
+            if (sources[i] != null) {
+                node.source = sources[i];
+            }
+            node.clearDirty();
+        }
+        countSubtreeLines(orgfile);
+    }
+
+    private static int countSubtreeLines(final OrgNode node) {
+        int lines = node.ownLines;
+        for (final OrgNode child : node.getSubNodes()) {
+            lines += countSubtreeLines(child);
+        }
+        node.subtreeLines = lines;
+        return lines;
+    }
+}
@@ -17,8 +17,12 @@
 
 package org.cowboyprogrammer.org;
 
+import org.cowboyprogrammer.org.parser.OrgLine;
 import org.cowboyprogrammer.org.parser.OrgParser;
+import org.cowboyprogrammer.org.parser.ParseListener;
+import org.cowboyprogrammer.org.util.LineBuffer;
 
+import java.io.IOException;
 import java.text.ParseException;
 import java.util.ArrayList;
 import java.util.List;
@@ -43,9 +47,22 @@ public class OrgNode {
     // Title of heading (includes anything that was not parsed)
     private String title = "";
     // Body of entry
-    private String body = "";
+    private final LineBuffer body = new LineBuffer();
     // Comments before body
-    private String comments = "";
+    private final LineBuffer comments = new LineBuffer();
+    // Lines in the parsed text: of this entry alone, and including all sub
+    // nodes. -1 if unknown. Used to find edited entries, see OrgTreeEditor.
+    int ownLines = -1;
+    int subtreeLines = -1;
+    // First line of this entry in the file on disk, as of the last time it
+    // was read or saved. -1 if unknown. Used by OrgFilePatcher.
+    int sourceStart = -1;
+    // Text this entry was parsed from, with a newline after every line.
+    // Only kept in lossless mode, else null.
+    String source = null;
+    // True if changed since it was parsed: the header, and everything else
+    private boolean headerDirty = false;
+    private boolean dirty = false;
 
     public OrgNode(OrgParser parser) {
         this.parser = parser;
@@ -64,6 +81,7 @@ public class OrgNode {
         for (final String tag : tags) {
             this.tags.add(tag);
         }
+        headerDirty = true;
     }
 
     /**
@@ -72,31 +90,80 @@ public class OrgNode {
      * have an ending newline character!
      */
     public void addBodyLine(final String line) throws ParseException {
+        addBodyLine(line, null);
+    }
+
+    /**
+     * Same as {@link #addBodyLine(String)}, and tells the listener how long
+     * it took. The line number is unknown, so it is given as -1.
+     *
+     * @param listener told about the line, or null
+     */
+    public void addBodyLine(final String line, final ParseListener listener) throws ParseException {
         if (line.endsWith("\n")) {
             throw new ParseException("Line should not end with newline!" +
                     " See BufferedReader's readline...", 0);
         }
+        final long start = listener == null ? 0 : System.nanoTime();
         // If empty, then we can add timestamps and comments
-        if (body.isEmpty() || body.matches("\\A\\s*\\z")) {
-            // Check if comment
-            if (parser.isCommentLine(line)) {
-                setComments(getComments() + line + "\n");
-                setBody("");
-                return;
-            } else if (parser.isTimestampLine(line)) {
-                // Don't keep spaces before timestamps
-                body = "";
-                addTimestamp(parser.getTimestamp(line));
-                return;
-            } else if (parser.isTimestampRangeLine(line)) {
-                // Don't keep spaces before timestamps
-                body = "";
-                addTimestampRange(parser.getTimestampRange(line));
+        if (body.isBlank()) {
+            final OrgLine orgLine = parser.classify(line);
+            if (listener != null) {
+                final long classified = System.nanoTime();
+                listener.lineClassified(-1, line, orgLine.getKind(), classified - start);
+                addBodyLine(orgLine);
+                listener.lineAdded(-1, line, System.nanoTime() - classified);
                 return;
             }
+            addBodyLine(orgLine);
+        } else {
+            if (listener != null) {
+                // Not classified at all
+                listener.lineClassified(-1, line, OrgLine.Kind.BODY, 0);
+            }
+            body.append(line);
+            dirty = true;
+            if (listener != null) {
+                listener.lineAdded(-1, line, System.nanoTime() - start);
+            }
+        }
+    }
+
+    /**
+     * Add a line which the parser has already classified to this entry's
+     * body. Comments and timestamps are only recognized before the body
+     * proper, after that they are added to the body like any other line.
+     */
+    public void addBodyLine(final OrgLine line) throws ParseException {
+        final String text = line.getText();
+        if (text.endsWith("\n")) {
+            throw new ParseException("Line should not end with newline!" +
+                    " See BufferedReader's readline...", 0);
+        }
+        dirty = true;
+        // If empty, then we can add timestamps and comments
+        if (body.isBlank()) {
+            switch (line.getKind()) {
+                case COMMENT:
+                    comments.append(text);
+                    body.clear();
+                    return;
+                case TIMESTAMP:
+                    // Don't keep spaces before timestamps
+                    body.clear();
+                    addTimestamp(line.getTimestamp());
+                    return;
+                case TIMESTAMP_RANGE:
+                    // Don't keep spaces before timestamps
+                    body.clear();
+                    addTimestampRange(line.getTimestampRange());
+                    return;
+                default:
+                    break;
+            }
         }
         // Nothing happened above, just add to body
-        body += line + "\n";
+        body.append(text);
     }
 
     /**
@@ -119,8 +186,16 @@ public class OrgNode {
     public String getOrgHeader() {
         final StringBuilder sb = new StringBuilder();
         getHeaderString(sb);
-        // Remove ending newline
-        return sb.toString().trim();
+        // Remove ending newline, same as trim()
+        int start = 0;
+        int end = sb.length();
+        while (start < end && sb.charAt(start) <= ' ') {
+            start++;
+        }
+        while (end > start && sb.charAt(end - 1) <= ' ') {
+            end--;
+        }
+        return sb.substring(start, end);
     }
 
     /**
@@ -128,50 +203,73 @@ public class OrgNode {
      */
     public String getOrgBody() {
         final StringBuilder sb = new StringBuilder();
-
-        sb.append(this.comments);
-//        if (this.comments.length() > 0) {
-//            sb.append("\n");
-//        }
-
-        for (OrgTimestamp t : timestamps) {
-            sb.append(t.toString()).append("\n");
-        }
-
-        for (OrgTimestampRange t : timestampRanges) {
-            sb.append(t.toString()).append("\n");
+        try {
+            writeBody(sb);
+        } catch (IOException e) {
+            // Not possible with a StringBuilder
+            throw new IllegalStateException(e);
         }
-
-        sb.append(this.body);
-
         return sb.toString();
     }
 
     /**
      * Append the header of this entry.
      * Will end with newline.
+     * <p/>
+     * Used for the header by getOrgHeader, toString(StringBuilder) and so
+     * by writeTo and treeToString.
      */
     protected void getHeaderString(final StringBuilder sb) {
+        try {
+            writeHeader(sb);
+        } catch (IOException e) {
+            // Not possible with a StringBuilder
+            throw new IllegalStateException(e);
+        }
+    }
+
+    /**
+     * Write the header of this entry, ending with a newline. Nothing for a
+     * file.
+     */
+    protected void writeHeader(final Appendable out) throws IOException {
         // No header without stars
         if (getLevel() < 1) {
             return;
         }
 
         for (int i = 0; i < getLevel(); i++) {
-            sb.append("*");
+            out.append('*');
         }
-        sb.append(" ");
+        out.append(' ');
         if (this.todo != null) {
-            sb.append(this.todo).append(" ");
+            out.append(this.todo).append(' ');
         }
-        sb.append(this.title);
+        out.append(this.title);
         if (!this.tags.isEmpty()) {
-            sb.append(" :");
+            out.append(" :");
             for (final String tag : this.tags) {
-                sb.append(tag).append(":");
+                out.append(tag).append(':');
             }
         }
-        sb.append("\n");
+        out.append('\n');
+    }
+
+    /**
+     * Write the comments, timestamps and body of this entry.
+     */
+    protected void writeBody(final Appendable out) throws IOException {
+        this.comments.appendTo(out);
+
+        for (OrgTimestamp t : timestamps) {
+            out.append(t.toString()).append('\n');
+        }
+
+        for (OrgTimestampRange t : timestampRanges) {
+            out.append(t.toString()).append('\n');
+        }
+
+        this.body.appendTo(out);
     }
 
     public int getLevel() {
@@ -184,10 +282,15 @@ public class OrgNode {
                     "Level not allowed to be negative. Only a file can be level 0.");
         }
         this.level = level;
+        headerDirty = true;
     }
 
     /**
      * Append the String representation of this specific entry.
+     * <p/>
+     * Used by writeTo and treeToString for every entry that is not written
+     * from the text it was parsed from, through getHeaderString and
+     * getOrgBody.
      */
     protected void toString(final StringBuilder sb) {
         getHeaderString(sb);
@@ -199,21 +302,124 @@ public class OrgNode {
      * this.
      */
     public String treeToString() {
+        final OrgEvents.WriteEvent event = OrgEvents.beginWrite();
         final StringBuilder sb = new StringBuilder();
         treeToString(sb);
+        OrgEvents.endWrite(event, this, sb.length());
         return sb.toString();
     }
 
     /**
      * Append a String representation of the entire sub tree including
      * this.
+     * <p/>
+     * Used by treeToString for this entry, and by writeTo and treeToString
+     * for every sub node.
      */
     protected void treeToString(final StringBuilder sb) {
-        this.toString(sb);
+        try {
+            writeTree(sb);
+        } catch (IOException e) {
+            // Not possible with a StringBuilder
+            throw new IllegalStateException(e);
+        }
+    }
+
+    /**
+     * Write the entire sub tree including this, same as treeToString but
+     * without building all of it in memory first. This entry is written
+     * first, followed by each of its sub trees, so give it a buffered
+     * writer rather than an unbuffered one. Each entry goes through
+     * toString(StringBuilder) and each sub tree through
+     * treeToString(StringBuilder), which is where a sub tree is built in
+     * memory before it is written.
+     */
+    public void writeTo(final Appendable out) throws IOException {
+        final OrgEvents.WriteEvent event = OrgEvents.beginWrite();
+        writeTree(OrgEvents.counting(event, out));
+        OrgEvents.endWrite(event, this);
+    }
+
+    private void writeTree(final Appendable out) throws IOException {
+        boolean separate = writeOwn(out);
+        StringBuilder sb = null;
         for (final OrgNode child : this.subNodes) {
-            sb.append("\n");
-            child.treeToString(sb);
+            if (separate) {
+                out.append('\n');
+            }
+            if (out instanceof StringBuilder) {
+                child.treeToString((StringBuilder) out);
+            } else {
+                if (sb == null) {
+                    sb = new StringBuilder();
+                } else {
+                    sb.setLength(0);
+                }
+                child.treeToString(sb);
+                out.append(sb);
+            }
+            separate = child.isOpenTree();
+        }
+    }
+
+    /**
+     * Write this entry alone. In lossless mode the text it was parsed from
+     * is written as it was, except for the header if only that has changed.
+     *
+     * @return true if a newline has to be written before the next entry
+     */
+    boolean writeOwn(final Appendable out) throws IOException {
+        final String text = getSource();
+        if (text != null) {
+            out.append(text);
+            // Includes the blank line before the next header, if any
+            return isOpen();
+        }
+        if (out instanceof StringBuilder) {
+            toString((StringBuilder) out);
+        } else {
+            final StringBuilder sb = new StringBuilder();
+            toString(sb);
+            out.append(sb);
+        }
+        return true;
+    }
+
+    /**
+     * @return true if a newline has to be written after this entry before
+     * the next, as it is not written from its text or that text lacks one
+     */
+    private boolean isOpen() {
+        return source == null || isBodyDirty()
+                || (source.length() > 0 && source.charAt(source.length() - 1) != '\n');
+    }
+
+    /**
+     * @return true if a newline has to be written after the sub tree of
+     * this before the next entry, as for the last entry in it
+     */
+    private boolean isOpenTree() {
+        OrgNode last = this;
+        while (!last.subNodes.isEmpty()) {
+            last = last.subNodes.get(last.subNodes.size() - 1);
         }
+        return last.isOpen();
+    }
+
+    /**
+     * @return the text of this entry in lossless mode, with any new header,
+     * or null if it is not kept or the rest has changed
+     */
+    String getSource() {
+        if (source == null || isBodyDirty()) {
+            return null;
+        } else if (!headerDirty || level == 0) {
+            return source;
+        }
+        final StringBuilder sb = new StringBuilder(source.length() + 16);
+        getHeaderString(sb);
+        sb.append(source, source.indexOf('\n') + 1, source.length());
+        return sb.toString();
     }
 
     /**
@@ -248,6 +454,7 @@ public class OrgNode {
         for (final OrgTimestamp ts : timestamps) {
             this.timestamps.add(ts);
         }
+        dirty = true;
     }
 
     public List<OrgTimestampRange> getTimestampRanges() {
@@ -258,6 +465,7 @@ public class OrgNode {
         for (final OrgTimestampRange tr : timestamps) {
             this.timestampRanges.add(tr);
         }
+        dirty = true;
     }
 
     public String getTodo() {
@@ -266,6 +474,7 @@ public class OrgNode {
 
     public void setTodo(final String todo) {
         this.todo = todo;
+        headerDirty = true;
     }
 
     public String getTitle() {
@@ -280,10 +489,18 @@ public class OrgNode {
                     "newline");
         }
         this.title = title;
+        headerDirty = true;
     }
 
     public String getBody() {
-        return body;
+        return body.toString();
+    }
+
+    /**
+     * The lines of the body, without newlines.
+     */
+    public List<String> getBodyLines() {
+        return body.getLines();
     }
 
     /**
@@ -294,7 +511,8 @@ public class OrgNode {
         if (body == null) {
             throw new NullPointerException("Not allowed to be null!");
         }
-        this.body = body;
+        this.body.set(body);
+        dirty = true;
     }
 
     public OrgNode getParent() {
@@ -311,7 +529,7 @@ public class OrgNode {
     }
 
     public String getComments() {
-        return comments;
+        return comments.toString();
     }
 
     /**
@@ -321,6 +539,61 @@ public class OrgNode {
         if (comments == null) {
             throw new NullPointerException("Not allowed to be null!");
         }
-        this.comments = comments;
+        this.comments.set(comments);
+        dirty = true;
+    }
+
+    /**
+     * True if this entry, not counting its sub nodes, has been changed since
+     * it was parsed. The setters and the timestamps' setters keep track of
+     * this, but changes made directly to the lists returned by getTags,
+     * getTimestamps etc have to be followed by {@link #markDirty()}.
+     * <p/>
+     * Adding, removing or moving sub nodes does not make the parent dirty.
+     */
+    public boolean isDirty() {
+        return headerDirty || isBodyDirty();
+    }
+
+    /**
+     * True if anything but the header has changed since this was parsed.
+     */
+    private boolean isBodyDirty() {
+        if (dirty) {
+            return true;
+        }
+        for (final OrgTimestamp ts : timestamps) {
+            if (ts.isDirty()) {
+                return true;
+            }
+        }
+        for (final OrgTimestampRange tr : timestampRanges) {
+            if (tr.isDirty()) {
+                return true;
+            }
+        }
+        return false;
+    }
+
+    /**
+     * Make sure this entry is written again on the next save.
+     */
+    public void markDirty() {
+        headerDirty = true;
+        dirty = true;
+    }
+
+    /**
+     * Mark this entry, and its timestamps, as unchanged.
+     */
+    void clearDirty() {
+        headerDirty = false;
+        dirty = false;
+        for (final OrgTimestamp ts : timestamps) {
+            ts.setDirty(false);
+        }
+        for (final OrgTimestampRange tr : timestampRanges) {
+            tr.setDirty(false);
+        }
     }
 }
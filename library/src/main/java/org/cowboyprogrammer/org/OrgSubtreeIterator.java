@@ -0,0 +1,118 @@
+/*
+ * Copyright (c) Jonas Kalderstam 2014.
+ *
+ * This program is free software: you can redistribute it and/or modify
+ * it under the terms of the GNU General Public License as published by
+ * the Free Software Foundation, either version 3 of the License, or
+ * (at your option) any later version.
+ *
+ * This program is distributed in the hope that it will be useful,
+ * but WITHOUT ANY WARRANTY; without even the implied warranty of
+ * MERCHANTABILITY or FITNESS FOR A PARTICULAR PURPOSE.  See the
+ * GNU General Public License for more details.
+ *
+ * You should have received a copy of the GNU General Public License
+ * along with this program.  If not, see <http://www.gnu.org/licenses/>.
+ */
+
+package org.cowboyprogrammer.org;
+
+import org.cowboyprogrammer.org.parser.OrgParser;
+import org.cowboyprogrammer.org.util.Utf8LineReader;
+
+import java.io.BufferedReader;
+import java.io.Closeable;
+import java.io.IOException;
+import java.io.UncheckedIOException;
+import java.text.ParseException;
+import java.util.ArrayDeque;
+import java.util.Iterator;
+import java.util.NoSuchElementException;
+import java.util.Queue;
+
+/**
+ * Reads an org file lazily and returns its top level nodes one at a time,
+ * each complete with all its sub nodes. A node is returned as soon as the
+ * next top level header has been read, so at most one of them is kept in
+ * memory.
+ * <p/>
+ * The parent of every returned node is an OrgFile which holds the body of
+ * the file, but not the nodes themselves.
+ * <p/>
+ * The input is closed when the end is reached, or by {@link #close()}.
+ * Errors while reading are thrown as UncheckedIOException, and lines which
+ * can not be parsed as IllegalArgumentException.
+ */
+public class OrgSubtreeIterator implements Iterator<OrgNode>, Closeable {
+
+    private final BufferedReader br;
+    private final Utf8LineReader reader;
+    private final Queue<OrgNode> completed = new ArrayDeque<OrgNode>();
+    private final OrgTreeBuilder builder;
+    private boolean finished = false;
+
+    OrgSubtreeIterator(final OrgParser parser, final String filename, final BufferedReader br) {
+        this(parser, filename, br, null);
+    }
+
+    OrgSubtreeIterator(final OrgParser parser, final String filename, final Utf8LineReader reader) {
+        this(parser, filename, null, reader);
+    }
+
+    private OrgSubtreeIterator(final OrgParser parser, final String filename,
+                               final BufferedReader br, final Utf8LineReader reader) {
+        if (null == filename || (br == null && reader == null)) {
+            throw new NullPointerException("Can't read a null buffer");
+        }
+        this.br = br;
+        this.reader = reader;
+        builder = new OrgTreeBuilder(parser, filename, completed, false);
+    }
+
+    @Override
+    public boolean hasNext() {
+        try {
+            while (completed.isEmpty() && !finished) {
+                final String line = br != null ? br.readLine() : reader.readLine();
+                if (line == null) {
+                    finished = true;
+                    builder.finish();
+                    close();
+                } else {
+                    builder.addLine(line);
+                }
+            }
+        } catch (IOException e) {
+            throw new UncheckedIOException(e);
+        } catch (ParseException e) {
+            throw new IllegalArgumentException(e.getMessage(), e);
+        }
+        return !completed.isEmpty();
+    }
+
+    @Override
+    public OrgNode next() {
+        if (!hasNext()) {
+            throw new NoSuchElementException();
+        }
+        return completed.remove();
+    }
+
+    /**
+     * The file the nodes belong to. Its body is complete once the first node
+     * has been returned.
+     */
+    public OrgFile getOrgFile() {
+        return builder.getOrgFile();
+    }
+
+    @Override
+    public void close() throws IOException {
+        finished = true;
+        if (br != null) {
+            br.close();
+        } else {
+            reader.close();
+        }
+    }
+}
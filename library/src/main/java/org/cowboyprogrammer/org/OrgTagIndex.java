@@ -0,0 +1,255 @@
+/*
+ * Copyright (c) Jonas Kalderstam 2014.
+ *
+ * This program is free software: you can redistribute it and/or modify
+ * it under the terms of the GNU General Public License as published by
+ * the Free Software Foundation, either version 3 of the License, or
+ * (at your option) any later version.
+ *
+ * This program is distributed in the hope that it will be useful,
+ * but WITHOUT ANY WARRANTY; without even the implied warranty of
+ * MERCHANTABILITY or FITNESS FOR A PARTICULAR PURPOSE.  See the
+ * GNU General Public License for more details.
+ *
+ * You should have received a copy of the GNU General Public License
+ * along with this program.  If not, see <http://www.gnu.org/licenses/>.
+ */
+
+package org.cowboyprogrammer.org;
+
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.BitSet;
+import java.util.Collection;
+import java.util.Collections;
+import java.util.HashMap;
+import java.util.List;
+import java.util.Map;
+import java.util.Set;
+
+/**
+ * Finds nodes by their tags without walking the trees. Every node of the
+ * indexed files gets an ordinal, in the same order as in the files, and the
+ * nodes with a tag are kept as a BitSet of ordinals. Sets are combined
+ * with the usual BitSet operations, or with {@link #match(String)}.
+ * <p/>
+ * Since the ordinals follow the files, the sub tree of a node is a range
+ * of ordinals. The nodes which inherit a tag, as in
+ * {@link OrgNode#getAllTags()}, are then the ranges of the nodes which have
+ * it, so they are found without looking at any parents.
+ * <p/>
+ * The index is not updated when the trees change. Files themselves are not
+ * included, only their nodes.
+ */
+public class OrgTagIndex {
+
+    private final List<OrgNode> nodes = new ArrayList<OrgNode>();
+    // The ordinal after the sub tree of each node
+    private int[] ends = new int[64];
+    // Each distinct tag has an id, which is its index in the lists
+    private final Map<String, Integer> ids = new HashMap<String, Integer>();
+    private final List<BitSet> tagged = new ArrayList<BitSet>();
+    // Filled in when first asked for
+    private final List<BitSet> inherited = new ArrayList<BitSet>();
+
+    public OrgTagIndex(final OrgFile... files) {
+        this(Arrays.asList(files));
+    }
+
+    public OrgTagIndex(final Collection<? extends OrgFile> files) {
+        for (final OrgFile file : files) {
+            for (final OrgNode node : file.getSubNodes()) {
+                add(node);
+            }
+        }
+        ends = Arrays.copyOf(ends, nodes.size());
+    }
+
+    private void add(final OrgNode node) {
+        final int ordinal = nodes.size();
+        nodes.add(node);
+        for (final String tag : node.getTags()) {
+            Integer id = ids.get(tag);
+            if (id == null) {
+                id = tagged.size();
+                ids.put(tag, id);
+                tagged.add(new BitSet());
+                inherited.add(null);
+            }
+            tagged.get(id).set(ordinal);
+        }
+        for (final OrgNode child : node.getSubNodes()) {
+            add(child);
+        }
+        if (ordinal >= ends.length) {
+            ends = Arrays.copyOf(ends, Math.max(ends.length * 2, nodes.size()));
+        }
+        ends[ordinal] = nodes.size();
+    }
+
+    /**
+     * @return the number of indexed nodes
+     */
+    public int size() {
+        return nodes.size();
+    }
+
+    public OrgNode getNode(final int ordinal) {
+        return nodes.get(ordinal);
+    }
+
+    /**
+     * @return the nodes in the set, in the same order as in the files
+     */
+    public List<OrgNode> getNodes(final BitSet set) {
+        final List<OrgNode> result = new ArrayList<OrgNode>(set.cardinality());
+        for (int i = set.nextSetBit(0); i >= 0 && i < nodes.size(); i = set.nextSetBit(i + 1)) {
+            result.add(nodes.get(i));
+        }
+        return result;
+    }
+
+    /**
+     * @return all tags which occur in the files
+     */
+    public Set<String> getTags() {
+        return Collections.unmodifiableSet(ids.keySet());
+    }
+
+    /**
+     * @return all nodes
+     */
+    public BitSet all() {
+        final BitSet set = new BitSet(nodes.size());
+        set.set(0, nodes.size());
+        return set;
+    }
+
+    /**
+     * @return the nodes which have the tag themselves
+     */
+    public BitSet tagged(final String tag) {
+        final Integer id = ids.get(tag);
+        if (id == null) {
+            return new BitSet();
+        }
+        return (BitSet) tagged.get(id).clone();
+    }
+
+    /**
+     * @return the nodes which have the tag, or have a parent with it
+     */
+    public BitSet inheriting(final String tag) {
+        final Integer id = ids.get(tag);
+        if (id == null) {
+            return new BitSet();
+        }
+        return (BitSet) getInherited(id).clone();
+    }
+
+    private synchronized BitSet getInherited(final int id) {
+        BitSet set = inherited.get(id);
+        if (set == null) {
+            set = new BitSet(nodes.size());
+            final BitSet direct = tagged.get(id);
+            int end = 0;
+            for (int i = direct.nextSetBit(0); i >= 0; i = direct.nextSetBit(i + 1)) {
+                // Sub trees of nodes already in the set are in it too
+                if (i >= end) {
+                    end = ends[i];
+                    set.set(i, end);
+                }
+            }
+            inherited.set(id, set);
+        }
+        return set;
+    }
+
+    /**
+     * @return the nodes which are in all sets
+     */
+    public BitSet and(final BitSet... sets) {
+        final BitSet result = all();
+        for (final BitSet set : sets) {
+            result.and(set);
+        }
+        return result;
+    }
+
+    /**
+     * @return the nodes which are in any of the sets
+     */
+    public BitSet or(final BitSet... sets) {
+        final BitSet result = new BitSet(nodes.size());
+        for (final BitSet set : sets) {
+            result.or(set);
+        }
+        return result;
+    }
+
+    /**
+     * @return the nodes which are not in the set
+     */
+    public BitSet not(final BitSet set) {
+        final BitSet result = all();
+        result.andNot(set);
+        return result;
+    }
+
+    /**
+     * Find nodes using the same syntax as a tags match in org-mode's agenda,
+     * where tags are inherited. For example "work+boss-urgent|home" finds
+     * nodes with work and boss but not urgent, and all nodes with home.
+     * Tags can also be separated by "&amp;", which is the same as "+".
+     *
+     * @throws IllegalArgumentException if the match is empty or malformed
+     */
+    public BitSet match(final String match) {
+        final BitSet result = new BitSet(nodes.size());
+        for (final String alternative : match.split("\\|", -1)) {
+            result.or(matchAll(alternative.trim()));
+        }
+        return result;
+    }
+
+    private BitSet matchAll(final String terms) {
+        if (terms.isEmpty()) {
+            throw new IllegalArgumentException("Empty tags match");
+        }
+        final BitSet result = all();
+        int i = 0;
+        while (i < terms.length()) {
+            boolean exclude = false;
+            final char c = terms.charAt(i);
+            if (c == '+' || c == '&') {
+                i++;
+            } else if (c == '-') {
+                exclude = true;
+                i++;
+            }
+            final int start = i;
+            while (i < terms.length() && isTagChar(terms.charAt(i))) {
+                i++;
+            }
+            if (start == i) {
+                throw new IllegalArgumentException("Expected a tag at " + start + " in: " + terms);
+            }
+            final BitSet set = getInheritedOrEmpty(terms.substring(start, i));
+            if (exclude) {
+                result.andNot(set);
+            } else {
+                result.and(set);
+            }
+        }
+        return result;
+    }
+
+    private BitSet getInheritedOrEmpty(final String tag) {
+        final Integer id = ids.get(tag);
+        return id == null ? new BitSet() : getInherited(id);
+    }
+
+    private static boolean isTagChar(final char c) {
+        return Character.isLetterOrDigit(c) || c == '_' || c == '@' || c == '#' || c == '%';
+    }
+}
@@ -21,8 +21,14 @@ import org.joda.time.*;
 import org.joda.time.format.DateTimeFormat;
 import org.joda.time.format.DateTimeFormatter;
 
+import org.joda.time.chrono.ISOChronology;
+
+import java.util.ArrayList;
 import java.util.Calendar;
+import java.util.Iterator;
+import java.util.List;
 import java.util.Locale;
+import java.util.NoSuchElementException;
 
 /**
  * This class represents a single timestamp. Not a duration.
@@ -33,6 +39,16 @@ public class OrgTimestamp {
     public static final String OUTDATETIMEFORMAT = "yyyy-MM-dd EEE HH:mm";
     public static final String OUTENDTIMEFORMAT = "-HH:mm";
 
+    // Local times as if they were in UTC, for arithmetic
+    private static final Chronology UTC = ISOChronology.getInstanceUTC();
+    // Follows DateTimeUtils.setCurrentMillisFixed and such, like now()
+    static final DateTimeUtils.MillisProvider SYSTEM_CLOCK = new DateTimeUtils.MillisProvider() {
+        @Override
+        public long getMillis() {
+            return DateTimeUtils.currentTimeMillis();
+        }
+    };
+
     public static final DateTimeFormatter INDATEFORMAT = DateTimeFormat
             .forPattern("yyyy-MM-dd");
     public static final DateTimeFormatter INTIMEFORMAT = DateTimeFormat
@@ -63,9 +79,29 @@ public class OrgTimestamp {
     // Decides braces: (false) <> vs [] (true)
     private boolean inactive = false;
 
+    // True if changed since it was parsed
+    private boolean dirty = false;
+
     public OrgTimestamp() {
     }
 
+    /**
+     * A copy of other, which can be changed without changing other.
+     */
+    public OrgTimestamp(final OrgTimestamp other) {
+        this();
+        type = other.type;
+        date = other.date;
+        endTime = other.endTime;
+        hasTime = other.hasTime;
+        repeater = other.repeater;
+        repeatPeriod = other.repeatPeriod;
+        warning = other.warning;
+        warningPeriod = other.warningPeriod;
+        inactive = other.inactive;
+        dirty = other.dirty;
+    }
+
     /**
      * @param millis   Milliseconds since the epoch.
      * @param withTime true if time part is considered valid.
@@ -82,7 +118,7 @@ public class OrgTimestamp {
                         final String time, final String timeEnd, final String warning,
                         final String repeat) {
         this();
-        this.date = INDATEFORMAT.parseLocalDateTime(date);
+        this.date = parseDateTime(date, time);
 
         if ("[".equals(active)) {
             inactive = true;
@@ -97,12 +133,10 @@ public class OrgTimestamp {
         }
 
         if (null != time) {
-            final LocalTime t = INTIMEFORMAT.parseLocalTime(time);
-            this.date = this.date.withTime(t.getHourOfDay(), t.getMinuteOfHour(), 0, 0);
             hasTime = true;
 
             if (null != timeEnd) {
-                setEndTime(INTIMEFORMAT.parseLocalTime(timeEnd));
+                setEndTime(parseTime(timeEnd));
             }
         }
 
@@ -113,30 +147,26 @@ public class OrgTimestamp {
         if (null != repeat) {
             setRepeat(repeat);
         }
+        // Just parsed
+        dirty = false;
     }
 
     /**
      * Move this timestamp one repetition.
      */
     public void toNextRepeat() {
-        if (repeater != null) {
-            if (repeater.startsWith("++")) {
-                final LocalDateTime now = LocalDateTime.now();
-                if (now.isAfter(date)) {
-                    // Just get it into the future
-                    while (now.isAfter(date)) {
-                        date = date.plus(repeatPeriod);
-                    }
-                } else {
-                    // Already in future, just jump
-                    date = date.plus(repeatPeriod);
-                }
-            } else if (repeater.startsWith(".+")) {
-                // Count from NOW
-                date = LocalDateTime.now().plus(repeatPeriod);
-            } else { // +
-                date = date.plus(repeatPeriod);
-            }
+        toNextRepeat(SYSTEM_CLOCK);
+    }
+
+    /**
+     * Move this timestamp one repetition.
+     *
+     * @param clock gives the current time
+     */
+    public void toNextRepeat(final DateTimeUtils.MillisProvider clock) {
+        if (repeats()) {
+            dirty = true;
+            date = getNextRepetition(clock);
         }
     }
 
@@ -145,30 +175,34 @@ public class OrgTimestamp {
      * it is already in the future. Null if no repeat.
      */
     public LocalDateTime getNextRepetition() {
-        if (repeater == null)
-            return null;
+        return getNextRepetition(SYSTEM_CLOCK);
+    }
 
-        final LocalDateTime now = LocalDateTime.now();
-        LocalDateTime next = date.withDayOfMonth(date.getDayOfMonth());
+    /**
+     * Return the next repetition of this time, even if
+     * it is already in the future. Null if no repeat.
+     *
+     * @param clock gives the current time
+     */
+    public LocalDateTime getNextRepetition(final DateTimeUtils.MillisProvider clock) {
+        if (!repeats())
+            return null;
 
+        final LocalDateTime now = new LocalDateTime(clock.getMillis());
         if (repeater.startsWith("++")) {
-            if (now.isAfter(next)) {
+            if (now.isAfter(date)) {
                 // Just get it into the future
-                while (now.isAfter(next)) {
-                    next = next.plus(repeatPeriod);
-                }
+                return getRepetition(date, repeatPeriod, repetitionsUntil(date, repeatPeriod, now));
             } else {
                 // Already in future, just jump
-                next = next.plus(repeatPeriod);
+                return getRepetition(date, repeatPeriod, 1);
             }
         } else if (repeater.startsWith(".+")) {
             // Count from NOW
-            next = now.plus(repeatPeriod);
+            return now.plus(repeatPeriod);
         } else { // + or
-            next = next.plus(repeatPeriod);
+            return getRepetition(date, repeatPeriod, 1);
         }
-
-        return next;
     }
 
     /**
@@ -177,28 +211,298 @@ public class OrgTimestamp {
      * return that.
      */
     public LocalDateTime getNextFutureRepetition() {
-        if (repeater == null) {
+        return getNextFutureRepetition(SYSTEM_CLOCK);
+    }
+
+    /**
+     * See {@link #getNextFutureRepetition()}.
+     *
+     * @param clock gives the current time
+     */
+    public LocalDateTime getNextFutureRepetition(final DateTimeUtils.MillisProvider clock) {
+        if (!repeats()) {
             return null;
         }
-        final LocalDateTime now = LocalDateTime.now();
+        final LocalDateTime now = new LocalDateTime(clock.getMillis());
         if (now.isBefore(date)) {
             // Already in future
             return date;
         }
         // In this case, + and ++ have the same behaviour
         if (repeater.startsWith("+")) {
-            LocalDateTime next = date.plus(repeatPeriod);
             // Just get it into the future
-            while (now.isAfter(next)) {
-                next = next.plus(repeatPeriod);
-            }
-            return next;
+            return getRepetition(date, repeatPeriod,
+                    Math.max(1, repetitionsUntil(date, repeatPeriod, now)));
         } else {
             // Count from NOW
             return now.plus(repeatPeriod);
         }
     }
 
+    /**
+     * The times this timestamp occurs between from and to, including both,
+     * in order. That is the date itself followed by its repetitions: every
+     * repeat period after the date, or for a ".+" repeater, every period
+     * after today at the time of the timestamp, see getRepeatBase. Nothing
+     * is calculated until it is asked for.
+     * <p/>
+     * Each occurrence is counted from the date, the way the agenda shows
+     * it. A monthly timestamp on the 31st occurs on the last day of
+     * shorter months and on the 31st after them, while toNextRepeat keeps
+     * the shorter day.
+     *
+     * @param clock gives the current time, only used by ".+" repeaters
+     */
+    public Iterator<LocalDateTime> getOccurrences(final LocalDateTime from, final LocalDateTime to,
+                                                  final DateTimeUtils.MillisProvider clock) {
+        if (from == null || to == null || clock == null) {
+            throw new NullPointerException("Not allowed to be null!");
+        }
+        final List<LocalDateTime> first = new ArrayList<LocalDateTime>(1);
+        if (!date.isBefore(from) && !date.isAfter(to)) {
+            first.add(date);
+        }
+        if (!repeats()) {
+            return first.iterator();
+        }
+        final LocalDateTime base = getRepeatBase(clock);
+        final ReadablePeriod period = repeatPeriod;
+        // First repetition which is not before from, or after the date
+        final long start = Math.max(1, occurrencesUntil(base, period,
+                from.isAfter(date) ? from : date.plusMillis(1)));
+        return new Iterator<LocalDateTime>() {
+            private final Iterator<LocalDateTime> dateItself = first.iterator();
+            private long count = start;
+            private LocalDateTime next = null;
+
+            @Override
+            public boolean hasNext() {
+                if (dateItself.hasNext()) {
+                    return true;
+                }
+                if (next == null && count >= 0) {
+                    next = getOccurrence(base, period, count);
+                    if (next.isAfter(to)) {
+                        count = -1;
+                        next = null;
+                    }
+                }
+                return next != null;
+            }
+
+            @Override
+            public LocalDateTime next() {
+                if (dateItself.hasNext()) {
+                    return dateItself.next();
+                }
+                if (!hasNext()) {
+                    throw new NoSuchElementException();
+                }
+                final LocalDateTime result = next;
+                next = null;
+                count++;
+                return result;
+            }
+
+            @Override
+            public void remove() {
+                throw new UnsupportedOperationException();
+            }
+        };
+    }
+
+    /**
+     * The time repetitions are counted from, by getOccurrences and the
+     * agenda. That is the date, or for a ".+" repeater, today at the time
+     * of the timestamp if that is later.
+     *
+     * @param clock gives the current time
+     */
+    LocalDateTime getRepeatBase(final DateTimeUtils.MillisProvider clock) {
+        if (repeater == null || !repeater.startsWith(".+")) {
+            return date;
+        }
+        final LocalDateTime today = new LocalDate(clock.getMillis())
+                .toLocalDateTime(date.toLocalTime());
+        return today.isAfter(date) ? today : date;
+    }
+
+    /**
+     * The same as {@link #getOccurrences(LocalDateTime, LocalDateTime, DateTimeUtils.MillisProvider)}
+     * with the system clock.
+     */
+    public Iterator<LocalDateTime> getOccurrences(final LocalDateTime from, final LocalDateTime to) {
+        return getOccurrences(from, to, SYSTEM_CLOCK);
+    }
+
+    /**
+     * The date after adding the period count times, without doing so count
+     * times. Adding a month to the 31st gives the last day of a shorter
+     * month, and later months keep that day.
+     */
+    static LocalDateTime getRepetition(final LocalDateTime date, final ReadablePeriod period,
+                                       final long count) {
+        if (period.size() != 1) {
+            // Made by a subclass, just add it
+            LocalDateTime next = date;
+            for (long i = 0; i < count; i++) {
+                next = next.plus(period);
+            }
+            return next;
+        }
+        final DurationFieldType unit = period.getFieldType(0);
+        final long amount = count * period.getValue(0);
+        if (amount != (int) amount) {
+            throw new ArithmeticException("Too many repetitions: " + count);
+        }
+        final int months = monthsOf(period);
+        if (months == 0 || date.getDayOfMonth() <= 28) {
+            // Every step is equally long, or days are never cut off
+            return date.withFieldAdded(unit, (int) amount);
+        }
+
+        if (months % 12 == 0 && date.getMonthOfYear() != 2) {
+            // Always the same month of the year, and only February changes
+            // length
+            return date.withFieldAdded(unit, (int) amount);
+        }
+
+        // The shortest month on the way decides the day. The calendar
+        // repeats every 4800 months, so after that the months are the same
+        // as the ones already seen. Other than February in leap years,
+        // the loop ends at the first shorter month, within a year.
+        int day = date.getDayOfMonth();
+        final long steps = Math.min(count, 4800 / gcd(Math.abs(months), 4800));
+        final int month = date.getYear() * 12 + date.getMonthOfYear() - 1;
+        for (long i = 1; i <= steps && day > 28; i++) {
+            final long m = month + i * months;
+            day = Math.min(day, daysInMonth(Math.floorDiv(m, 12L), (int) Math.floorMod(m, 12L) + 1));
+        }
+        return date.plusMonths((int) (count * months)).withDayOfMonth(day);
+    }
+
+    /**
+     * The date after adding the period count times at once. Unlike
+     * {@link #getRepetition(LocalDateTime, ReadablePeriod, long)}, a day
+     * cut off by a short month comes back in the longer months after it.
+     */
+    static LocalDateTime getOccurrence(final LocalDateTime date, final ReadablePeriod period,
+                                       final long count) {
+        if (period.size() != 1) {
+            // Made by a subclass, just add it
+            return getRepetition(date, period, count);
+        }
+        final long amount = count * period.getValue(0);
+        if (amount != (int) amount) {
+            throw new ArithmeticException("Too many repetitions: " + count);
+        }
+        return date.withFieldAdded(period.getFieldType(0), (int) amount);
+    }
+
+    /**
+     * The number of repetitions of the period after date which are needed
+     * to not be before now, without adding them one at a time.
+     */
+    static long repetitionsUntil(final LocalDateTime date, final ReadablePeriod period,
+                                 final LocalDateTime now) {
+        return countUntil(date, period, now, true);
+    }
+
+    /**
+     * The same as repetitionsUntil, for
+     * {@link #getOccurrence(LocalDateTime, ReadablePeriod, long)}.
+     */
+    static long occurrencesUntil(final LocalDateTime date, final ReadablePeriod period,
+                                 final LocalDateTime now) {
+        return countUntil(date, period, now, false);
+    }
+
+    /**
+     * @param repeated true to count repetitions, else occurrences
+     */
+    private static long countUntil(final LocalDateTime date, final ReadablePeriod period,
+                                   final LocalDateTime now, final boolean repeated) {
+        if (!now.isAfter(date) || !isForward(period)) {
+            return 0;
+        }
+        final OrgEvents.RepetitionsEvent event = OrgEvents.beginRepetitions();
+        long count = 0;
+        if (period.size() == 1 && period.getValue(0) > 0) {
+            final DurationField field = period.getFieldType(0).getField(UTC);
+            final long step = period.getValue(0);
+            if (monthsOf(period) == 0) {
+                // Fixed length, round up
+                final long difference = UTC.set(now, 0L) - UTC.set(date, 0L);
+                final long length = field.getUnitMillis() * step;
+                count = (difference + length - 1) / length;
+            } else {
+                // Cut off days can only make it come earlier
+                count = Math.max(0, field.getDifferenceAsLong(UTC.set(now, 0L), UTC.set(date, 0L)) / step - 1);
+            }
+        }
+        while (now.isAfter(repeated
+                ? getRepetition(date, period, count) : getOccurrence(date, period, count))) {
+            count++;
+        }
+        OrgEvents.endRepetitions(event, date, period, count);
+        return count;
+    }
+
+    /**
+     * @return true if repeating the period moves forward, which a repeater
+     * of zero like "+0d" does not
+     */
+    static boolean isForward(final ReadablePeriod period) {
+        boolean forward = false;
+        for (int i = 0; i < period.size(); i++) {
+            if (period.getValue(i) < 0) {
+                return false;
+            }
+            forward |= period.getValue(i) > 0;
+        }
+        return forward;
+    }
+
+    /**
+     * @return true if there is a repeater which moves the date
+     */
+    private boolean repeats() {
+        return repeater != null && isForward(repeatPeriod);
+    }
+
+    /**
+     * @return months in the period if it is counted in months or years,
+     * else 0
+     */
+    private static int monthsOf(final ReadablePeriod period) {
+        final DurationFieldType unit = period.getFieldType(0);
+        if (unit == DurationFieldType.months()) {
+            return period.getValue(0);
+        } else if (unit == DurationFieldType.years()) {
+            return 12 * period.getValue(0);
+        }
+        return 0;
+    }
+
+    private static int gcd(final int a, final int b) {
+        return b == 0 ? a : gcd(b, a % b);
+    }
+
+    private static int daysInMonth(final long year, final int month) {
+        switch (month) {
+            case 2:
+                final boolean leap = year % 4 == 0 && (year % 100 != 0 || year % 400 == 0);
+                return leap ? 29 : 28;
+            case 4:
+            case 6:
+            case 9:
+            case 11:
+                return 30;
+            default:
+                return 31;
+        }
+    }
+
     public LocalDateTime getWarningTime() {
         if (warning != null) {
             return date.minus(warningPeriod);
@@ -206,22 +510,132 @@ public class OrgTimestamp {
         return null;
     }
 
+    /**
+     * @param warning like "-2d"
+     */
     public void setWarning(final String warning) {
         this.warning = warning;
+        dirty = true;
         warningPeriod = parsePeriod(
-                Integer.parseInt(warning.substring(1, warning.length() - 1)),
-                warning.substring(warning.length() - 1));
+                parseNumber(warning, 1, warning.length() - 1),
+                unitOf(warning));
     }
 
+    /**
+     * @param repeat like "+1w", "++1w" or ".+1w". A repeater of zero, like
+     *               "+0d", is kept but never moves the date.
+     */
     public void setRepeat(final String repeat) {
         this.repeater = repeat;
+        dirty = true;
         int start = 1;
-        if ("+".equals(repeat.substring(1, 2))) {
+        if (repeat.charAt(1) == '+') {
             start = 2;
         }
         repeatPeriod = parsePeriod(
-                Integer.parseInt(repeat.substring(start, repeat.length() - 1)),
-                repeat.substring(repeat.length() - 1));
+                parseNumber(repeat, start, repeat.length() - 1),
+                unitOf(repeat));
+    }
+
+    /**
+     * Same as INDATEFORMAT.parseLocalDateTime followed by setting the time
+     * parsed with INTIMEFORMAT, if any. The common fixed width "yyyy-MM-dd"
+     * and "HH:mm" are read digit by digit without going through Joda's
+     * formatters.
+     *
+     * @param date like "2013-12-31"
+     * @param time like "12:30", or null
+     */
+    static LocalDateTime parseDateTime(final String date, final String time) {
+        final int year = digits(date, 0, 4);
+        final int month = digits(date, 5, 2);
+        final int day = digits(date, 8, 2);
+        if (date.length() == 10 && date.charAt(4) == '-' && date.charAt(7) == '-'
+                && year >= 0 && month >= 0 && day >= 0) {
+            if (time == null) {
+                return new LocalDateTime(year, month, day, 0, 0);
+            }
+            final int hour = digits(time, 0, 2);
+            final int minute = digits(time, 3, 2);
+            if (time.length() == 5 && time.charAt(2) == ':' && hour >= 0 && minute >= 0) {
+                return new LocalDateTime(year, month, day, hour, minute);
+            }
+        }
+
+        // Not the usual format, let Joda deal with it
+        final LocalDateTime result = INDATEFORMAT.parseLocalDateTime(date);
+        if (time == null) {
+            return result;
+        }
+        final LocalTime t = INTIMEFORMAT.parseLocalTime(time);
+        return result.withTime(t.getHourOfDay(), t.getMinuteOfHour(), 0, 0);
+    }
+
+    /**
+     * Same as INTIMEFORMAT.parseLocalTime, but reads "HH:mm" directly.
+     *
+     * @param time like "12:30"
+     */
+    static LocalTime parseTime(final String time) {
+        final int hour = digits(time, 0, 2);
+        final int minute = digits(time, 3, 2);
+        if (time.length() == 5 && time.charAt(2) == ':' && hour >= 0 && minute >= 0) {
+            return new LocalTime(hour, minute);
+        }
+        return INTIMEFORMAT.parseLocalTime(time);
+    }
+
+    /**
+     * The value of count ASCII digits starting at start, or -1 if there are
+     * not that many digits.
+     */
+    private static int digits(final String s, final int start, final int count) {
+        if (start + count > s.length()) {
+            return -1;
+        }
+        int value = 0;
+        for (int i = start; i < start + count; i++) {
+            final char c = s.charAt(i);
+            if (c < '0' || c > '9') {
+                return -1;
+            }
+            value = value * 10 + (c - '0');
+        }
+        return value;
+    }
+
+    /**
+     * Same as Integer.parseInt(s.substring(start, end)), without the substring.
+     */
+    private static int parseNumber(final String s, final int start, final int end) {
+        // Nine digits can not overflow
+        if (start < end && end - start <= 9) {
+            final int value = digits(s, start, end - start);
+            if (value >= 0) {
+                return value;
+            }
+        }
+        return Integer.parseInt(s.substring(start, end));
+    }
+
+    /**
+     * The last character of a repeater or warning, like "w" in "+1w".
+     */
+    private static String unitOf(final String s) {
+        switch (s.charAt(s.length() - 1)) {
+            case 'h':
+                return "h";
+            case 'd':
+                return "d";
+            case 'w':
+                return "w";
+            case 'm':
+                return "m";
+            case 'y':
+                return "y";
+            default:
+                return s.substring(s.length() - 1);
+        }
     }
 
     protected ReadablePeriod parsePeriod(final int t, final String w) {
@@ -310,6 +724,7 @@ public class OrgTimestamp {
 
     public void setType(final Type type) {
         this.type = type;
+        dirty = true;
     }
 
     public void setDate(final LocalDateTime date, final boolean withTime) {
@@ -318,6 +733,7 @@ public class OrgTimestamp {
         }
         this.date = date;
         hasTime = withTime;
+        dirty = true;
     }
 
     public LocalTime getEndTime() {
@@ -326,6 +742,7 @@ public class OrgTimestamp {
 
     public void setEndTime(final LocalTime endTime) {
         this.endTime = endTime;
+        dirty = true;
     }
 
     public boolean hasTime() {
@@ -336,6 +753,13 @@ public class OrgTimestamp {
         return repeater;
     }
 
+    /**
+     * @return the warning like "-2d", or null
+     */
+    public String getWarning() {
+        return warning;
+    }
+
     public ReadablePeriod getRepeatPeriod() {
         return repeatPeriod;
     }
@@ -350,6 +774,17 @@ public class OrgTimestamp {
 
     public void setInactive(final boolean inactive) {
         this.inactive = inactive;
+        dirty = true;
     }
 
+    /**
+     * True if this timestamp has been changed since it was parsed.
+     */
+    public boolean isDirty() {
+        return dirty;
+    }
+
+    void setDirty(final boolean dirty) {
+        this.dirty = dirty;
+    }
 }
@@ -18,7 +18,6 @@
 package org.cowboyprogrammer.org;
 
 import org.joda.time.LocalDateTime;
-import org.joda.time.LocalTime;
 import org.joda.time.format.DateTimeFormat;
 import org.joda.time.format.DateTimeFormatter;
 
@@ -43,23 +42,34 @@ public class OrgTimestampRange {
 
     private boolean hasTime = false;
 
+    // True if changed since it was parsed
+    private boolean dirty = false;
+
     public OrgTimestampRange() {
     }
 
+    /**
+     * A copy of other, which can be changed without changing other.
+     */
+    public OrgTimestampRange(final OrgTimestampRange other) {
+        this();
+        startdate = other.startdate;
+        enddate = other.enddate;
+        hasTime = other.hasTime;
+        dirty = other.dirty;
+    }
+
     public OrgTimestampRange(final String startDate, final String endDate, final String startTime,
                              final String endTime) {
         this();
-        startdate = INDATEFORMAT.parseLocalDateTime(startDate);
-        enddate = INDATEFORMAT.parseLocalDateTime(endDate);
-
         if (null != startTime && null != endTime) {
-            final LocalTime starttime = INTIMEFORMAT.parseLocalTime(startTime);
-            startdate = startdate.withTime(starttime.getHourOfDay(), starttime.getMinuteOfHour(), 0, 0);
-
-            final LocalTime endtime = INTIMEFORMAT.parseLocalTime(endTime);
-            enddate = enddate.withTime(endtime.getHourOfDay(), endtime.getMinuteOfHour(), 0, 0);
+            startdate = OrgTimestamp.parseDateTime(startDate, startTime);
+            enddate = OrgTimestamp.parseDateTime(endDate, endTime);
 
             hasTime = true;
+        } else {
+            startdate = OrgTimestamp.parseDateTime(startDate, null);
+            enddate = OrgTimestamp.parseDateTime(endDate, null);
         }
     }
 
@@ -96,6 +106,7 @@ public class OrgTimestampRange {
     public void setStartdate(final LocalDateTime startdate, final boolean withTime) {
         this.startdate = startdate;
         hasTime = withTime;
+        dirty = true;
     }
 
     public LocalDateTime getEnddate() {
@@ -105,6 +116,17 @@ public class OrgTimestampRange {
     public void setEnddate(final LocalDateTime enddate, final boolean withTime) {
         this.enddate = enddate;
         hasTime = withTime;
+        dirty = true;
     }
 
+    /**
+     * True if this range has been changed since it was parsed.
+     */
+    public boolean isDirty() {
+        return dirty;
+    }
+
+    void setDirty(final boolean dirty) {
+        this.dirty = dirty;
+    }
 }
@@ -0,0 +1,257 @@
+/*
+ * Copyright (c) Jonas Kalderstam 2014.
+ *
+ * This program is free software: you can redistribute it and/or modify
+ * it under the terms of the GNU General Public License as published by
+ * the Free Software Foundation, either version 3 of the License, or
+ * (at your option) any later version.
+ *
+ * This program is distributed in the hope that it will be useful,
+ * but WITHOUT ANY WARRANTY; without even the implied warranty of
+ * MERCHANTABILITY or FITNESS FOR A PARTICULAR PURPOSE.  See the
+ * GNU General Public License for more details.
+ *
+ * You should have received a copy of the GNU General Public License
+ * along with this program.  If not, see <http://www.gnu.org/licenses/>.
+ */
+
+package org.cowboyprogrammer.org;
+
+import org.cowboyprogrammer.org.parser.OrgEventHandler;
+import org.cowboyprogrammer.org.parser.OrgEventParser;
+import org.cowboyprogrammer.org.parser.OrgLine;
+import org.cowboyprogrammer.org.parser.OrgParser;
+import org.cowboyprogrammer.org.parser.ParseListener;
+import org.cowboyprogrammer.org.util.Utf8LineReader;
+
+import java.io.BufferedReader;
+import java.io.IOException;
+import java.nio.channels.ReadableByteChannel;
+import java.text.ParseException;
+import java.util.List;
+import java.util.Queue;
+import java.util.Stack;
+
+/**
+ * Builds the node tree of an OrgFile from the events of an
+ * {@link OrgEventParser}. Also records which lines each node was parsed
+ * from, and in lossless mode, their text.
+ */
+class OrgTreeBuilder implements OrgEventHandler {
+
+    private final OrgParser parser;
+    private final OrgFile orgfile;
+    private final Stack<OrgNode> stack = new Stack<OrgNode>();
+    // First line of each node in the stack
+    private final Stack<Integer> starts = new Stack<Integer>();
+    private final OrgEventParser eventParser;
+    // If set, completed top level nodes are moved here from the file
+    private final Queue<OrgNode> completed;
+    // If the text of each node is kept
+    private final boolean lossless;
+    // The node which the last line belongs to, and its text so far
+    private OrgNode sourceNode;
+    private final StringBuilder source = new StringBuilder();
+    // Recorded while parsing, if enabled
+    private OrgEvents.ParseEvent event;
+
+    OrgTreeBuilder(final OrgParser parser, final String filename) {
+        this(parser, filename, null, false);
+    }
+
+    OrgTreeBuilder(final OrgParser parser, final String filename, final boolean lossless) {
+        this(parser, filename, null, lossless);
+    }
+
+    /**
+     * @param completed if not null, each top level node is removed from the
+     *                  file and added to this queue as soon as it is
+     *                  complete. Its parent is still the file.
+     * @param lossless  if true, each node keeps the text it was parsed from
+     */
+    OrgTreeBuilder(final OrgParser parser, final String filename, final Queue<OrgNode> completed,
+                   final boolean lossless) {
+        this.parser = parser;
+        this.completed = completed;
+        this.lossless = lossless;
+        // Root is file
+        orgfile = new OrgFile(parser, filename);
+        orgfile.sourceStart = 0;
+        sourceNode = orgfile;
+        stack.push(orgfile);
+        starts.push(0);
+        eventParser = new OrgEventParser(parser, this);
+    }
+
+    /**
+     * @param listener told about every line from now on, or null
+     */
+    void setParseListener(final ParseListener listener) {
+        eventParser.setParseListener(listener);
+    }
+
+    /**
+     * Add the next line of the file, without its line ending.
+     */
+    void addLine(final String line) throws ParseException {
+        eventParser.addLine(line);
+        if (event != null) {
+            event.addLine(line);
+        }
+        if (lossless) {
+            // A header starts a new node, anything else belongs to the
+            // one on top
+            final OrgNode node = stack.peek();
+            if (node != sourceNode) {
+                endSource();
+                sourceNode = node;
+            }
+            source.append(line).append('\n');
+        }
+    }
+
+    private void endSource() {
+        if (lossless && sourceNode != null) {
+            sourceNode.source = source.toString();
+            source.setLength(0);
+            sourceNode = null;
+        }
+    }
+
+    /**
+     * @return the file built from all lines
+     */
+    OrgFile finish() throws ParseException {
+        eventParser.finish();
+        endFile();
+        OrgEvents.endParse(event, orgfile);
+        event = null;
+        return orgfile;
+    }
+
+    /**
+     * Parse and close the reader.
+     */
+    OrgFile parse(final BufferedReader br) throws IOException, ParseException {
+        event = OrgEvents.beginParse();
+        String line;
+        try {
+            while ((line = br.readLine()) != null) {
+                addLine(line);
+            }
+        } finally {
+            br.close();
+        }
+        return finish();
+    }
+
+    /**
+     * Parse and close the channel, which is read as UTF-8.
+     */
+    OrgFile parse(final ReadableByteChannel channel) throws IOException, ParseException {
+        event = OrgEvents.beginParse();
+        final Utf8LineReader reader = new Utf8LineReader(channel);
+        String line;
+        try {
+            while ((line = reader.readLine()) != null) {
+                addLine(line);
+            }
+        } finally {
+            reader.close();
+        }
+        return finish();
+    }
+
+    private void endFile() {
+        setLines(orgfile, 0, eventParser.getLineNumber());
+        endSource();
+        orgfile.clearDirty();
+    }
+
+    private static void setLines(final OrgNode node, final int start, final int end) {
+        node.subtreeLines = end - start;
+        if (node.ownLines < 0) {
+            // No sub nodes
+            node.ownLines = node.subtreeLines;
+        }
+    }
+
+    @Override
+    public void startNode(final int level, final String todo, final String title,
+                          final List<String> tags) {
+        final OrgNode node = new OrgNode(parser);
+        node.setLevel(level);
+        node.setTodo(todo);
+        node.setTitle(title);
+        node.getTags().addAll(tags);
+        startNode(node);
+    }
+
+    /**
+     * Adds the node made by the parser, so a parser can make its own kind
+     * of node.
+     */
+    @Override
+    public void startNode(final OrgNode node) {
+        if (event != null) {
+            event.nodes++;
+        }
+        final int line = eventParser.getLineNumber();
+        node.sourceStart = line;
+        if (stack.peek().ownLines < 0) {
+            // First sub node ends the parent's own lines
+            stack.peek().ownLines = line - starts.peek();
+        }
+
+        // Assign parent
+        node.setParent(stack.peek());
+        // Assign child
+        stack.peek().getSubNodes().add(node);
+        // Add to stack
+        stack.push(node);
+        starts.push(line);
+    }
+
+    @Override
+    public void bodyLine(final String line) throws ParseException {
+        stack.peek().addBodyLine(OrgLine.body(line));
+    }
+
+    @Override
+    public void comment(final String line) throws ParseException {
+        stack.peek().addBodyLine(OrgLine.comment(line));
+    }
+
+    @Override
+    public void timestamp(final OrgTimestamp timestamp) {
+        stack.peek().addTimestamp(timestamp);
+    }
+
+    @Override
+    public void timestampRange(final OrgTimestampRange timestampRange) {
+        stack.peek().addTimestampRange(timestampRange);
+    }
+
+    @Override
+    public void endNode(final int level) {
+        final OrgNode node = stack.pop();
+        setLines(node, starts.pop(), eventParser.getLineNumber());
+        if (node == sourceNode) {
+            endSource();
+        }
+        // Exactly as parsed
+        node.clearDirty();
+        if (completed != null && stack.size() == 1) {
+            // Always the last one
+            orgfile.getSubNodes().remove(orgfile.getSubNodes().size() - 1);
+            completed.add(node);
+        }
+    }
+
+    /**
+     * @return the file built from all lines so far
+     */
+    OrgFile getOrgFile() {
+        return orgfile;
+    }
+}
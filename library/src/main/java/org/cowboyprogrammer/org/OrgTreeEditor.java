@@ -0,0 +1,266 @@
+/*
+ * Copyright (c) Jonas Kalderstam 2014.
+ *
+ * This program is free software: you can redistribute it and/or modify
+ * it under the terms of the GNU General Public License as published by
+ * the Free Software Foundation, either version 3 of the License, or
+ * (at your option) any later version.
+ *
+ * This program is distributed in the hope that it will be useful,
+ * but WITHOUT ANY WARRANTY; without even the implied warranty of
+ * MERCHANTABILITY or FITNESS FOR A PARTICULAR PURPOSE.  See the
+ * GNU General Public License for more details.
+ *
+ * You should have received a copy of the GNU General Public License
+ * along with this program.  If not, see <http://www.gnu.org/licenses/>.
+ */
+
+package org.cowboyprogrammer.org;
+
+import java.text.ParseException;
+import java.util.List;
+
+/**
+ * Updates a parsed tree after some lines of its file were replaced, by
+ * parsing only the nodes which contain the edit.
+ * <p/>
+ * Every node knows how many lines it was parsed from, both on its own and
+ * together with its sub nodes. That is enough to find the deepest node
+ * containing the edit without looking at the other nodes' text. The edited
+ * range of sibling nodes is parsed on its own and replaces the old nodes.
+ * This gives the same tree as a full parse as long as the new nodes still
+ * belong to the same parent, and the header after them still belongs
+ * where it was. Otherwise the parent is parsed again instead, and so on up
+ * to the whole file.
+ */
+final class OrgTreeEditor {
+
+    private final OrgFile orgfile;
+    private final List<String> lines;
+    private final int delta;
+
+    private OrgTreeEditor(final OrgFile orgfile, final List<String> lines, final int delta) {
+        this.orgfile = orgfile;
+        this.lines = lines;
+        this.delta = delta;
+    }
+
+    /**
+     * See {@link OrgFile#applyEdit(List, int, int, int)}.
+     */
+    static void apply(final OrgFile orgfile, final List<String> lines, final int firstLine,
+                      final int removed, final int added) throws ParseException {
+        if (firstLine < 0 || removed < 0 || added < 0
+                || firstLine + added > lines.size()) {
+            throw new IllegalArgumentException("Edit is outside of the file");
+        }
+        final OrgTreeEditor editor = new OrgTreeEditor(orgfile, lines, added - removed);
+
+        if (orgfile.subtreeLines < 0 || orgfile.subtreeLines + added - removed != lines.size()) {
+            // Not parsed, or does not match the lines. Start over.
+            editor.reparseFile();
+            return;
+        }
+        editor.apply(firstLine, firstLine + removed);
+    }
+
+    /**
+     * @param first first replaced line, in the old file
+     * @param end   the line after the last replaced line, in the old file
+     */
+    private void apply(final int first, final int end) throws ParseException {
+        // Find the deepest node which contains the edit, but not its header
+        OrgNode parent = orgfile;
+        int parentStart = 0;
+        while (true) {
+            int childStart = parentStart + parent.ownLines;
+            OrgNode next = null;
+            int nextStart = -1;
+            for (final OrgNode child : parent.getSubNodes()) {
+                if (child.ownLines < 0 || child.subtreeLines < 0) {
+                    reparseFile();
+                    return;
+                }
+                if (childStart < first && end <= childStart + child.subtreeLines) {
+                    next = child;
+                    nextStart = childStart;
+                    break;
+                }
+                childStart += child.subtreeLines;
+            }
+            if (next == null) {
+                break;
+            }
+            parent = next;
+            parentStart = nextStart;
+        }
+
+        // Sub nodes of the parent which are touched by the edit
+        final List<OrgNode> children = parent.getSubNodes();
+        int from = -1;
+        int to = -1;
+        int regionStart = -1;
+        int regionEnd = -1;
+        int childStart = parentStart + parent.ownLines;
+        for (int i = 0; i < children.size(); i++) {
+            final int childEnd = childStart + children.get(i).subtreeLines;
+            if (childStart < first) {
+                from = i;
+                regionStart = childStart;
+            }
+            if (childStart < end || i == from) {
+                to = i;
+                regionEnd = childEnd;
+            }
+            childStart = childEnd;
+        }
+
+        if (from < 0) {
+            // The edit is in the parent's own lines
+            reparseNode(parent, parentStart);
+        } else if (!reparse(parent, from, to, regionStart, regionEnd)) {
+            reparseNode(parent, parentStart);
+        }
+    }
+
+    /**
+     * Parse the node and its sub nodes again, or if that is not possible, its
+     * parent.
+     */
+    private void reparseNode(final OrgNode node, final int start) throws ParseException {
+        OrgNode current = node;
+        int currentStart = start;
+        while (current != orgfile) {
+            final OrgNode parent = current.getParent();
+            final int index = parent.getSubNodes().indexOf(current);
+            if (reparse(parent, index, index, currentStart, currentStart + current.subtreeLines)) {
+                return;
+            }
+            currentStart = startOf(parent);
+            current = parent;
+        }
+        reparseFile();
+    }
+
+    /**
+     * Replace sub nodes from..to of parent by parsing their lines again.
+     *
+     * @param regionStart first line of the nodes, in the old file
+     * @param regionEnd   the line after the nodes, in the old file
+     *
+     * @return false if the result would differ from a full parse, in which
+     * case nothing was changed
+     */
+    private boolean reparse(final OrgNode parent, final int from, final int to,
+                            final int regionStart, final int regionEnd) throws ParseException {
+        final OrgTreeBuilder builder = newBuilder();
+        for (final String line : lines.subList(regionStart, regionEnd + delta)) {
+            builder.addLine(line);
+        }
+        final List<OrgNode> nodes = builder.finish().getSubNodes();
+
+        if (nodes.isEmpty() || builder.getOrgFile().ownLines != 0) {
+            // The first header is gone
+            return false;
+        }
+        for (final OrgNode node : nodes) {
+            if (node.getLevel() <= parent.getLevel()) {
+                // Would not be a sub node of parent
+                return false;
+            }
+        }
+        if (nodes.get(nodes.size() - 1).getLevel() < levelAfter(parent, to)) {
+            // The next header would become a sub node
+            return false;
+        }
+
+        final List<OrgNode> children = parent.getSubNodes();
+        children.subList(from, to + 1).clear();
+        children.addAll(from, nodes);
+        for (final OrgNode node : nodes) {
+            node.setParent(parent);
+            forgetSource(node);
+        }
+        for (OrgNode node = parent; node != null; node = node.getParent()) {
+            node.subtreeLines += delta;
+        }
+        return true;
+    }
+
+    /**
+     * Level of the header after sub node index of parent, or 0 if the file
+     * ends there.
+     */
+    private static int levelAfter(final OrgNode parent, final int index) {
+        if (index + 1 < parent.getSubNodes().size()) {
+            return parent.getSubNodes().get(index + 1).getLevel();
+        }
+        final OrgNode grandParent = parent.getParent();
+        if (grandParent == null) {
+            return 0;
+        }
+        return levelAfter(grandParent, grandParent.getSubNodes().indexOf(parent));
+    }
+
+    /**
+     * First line of the node in the old file.
+     */
+    private static int startOf(final OrgNode node) {
+        final OrgNode parent = node.getParent();
+        if (parent == null) {
+            return 0;
+        }
+        int start = startOf(parent) + parent.ownLines;
+        for (final OrgNode sibling : parent.getSubNodes()) {
+            if (sibling == node) {
+                break;
+            }
+            start += sibling.subtreeLines;
+        }
+        return start;
+    }
+
+    /**
+     * Keeps the text of the new nodes if the file was parsed that way.
+     */
+    private OrgTreeBuilder newBuilder() {
+        return new OrgTreeBuilder(orgfile.getParser(), orgfile.getFilename(), orgfile.source != null);
+    }
+
+    private void reparseFile() throws ParseException {
+        final OrgTreeBuilder builder = newBuilder();
+        for (final String line : lines) {
+            builder.addLine(line);
+        }
+        final OrgFile parsed = builder.finish();
+
+        orgfile.setComments(parsed.getComments());
+        orgfile.setBody(parsed.getBody());
+        orgfile.getTimestamps().clear();
+        orgfile.getTimestamps().addAll(parsed.getTimestamps());
+        orgfile.getTimestampRanges().clear();
+        orgfile.getTimestampRanges().addAll(parsed.getTimestampRanges());
+        orgfile.getSubNodes().clear();
+        for (final OrgNode node : parsed.getSubNodes()) {
+            node.setParent(orgfile);
+            forgetSource(node);
+            orgfile.getSubNodes().add(node);
+        }
+        orgfile.ownLines = parsed.ownLines;
+        orgfile.subtreeLines = parsed.subtreeLines;
+        orgfile.sourceStart = -1;
+        orgfile.source = parsed.source;
+        orgfile.clearDirty();
+    }
+
+    /**
+     * The new nodes were parsed from the edited lines, which are not on
+     * disk.
+     */
+    private static void forgetSource(final OrgNode node) {
+        node.sourceStart = -1;
+        for (final OrgNode child : node.getSubNodes()) {
+            forgetSource(child);
+        }
+    }
+}
@@ -0,0 +1,287 @@
+/*
+ * Copyright (c) Jonas Kalderstam 2014.
+ *
+ * This program is free software: you can redistribute it and/or modify
+ * it under the terms of the GNU General Public License as published by
+ * the Free Software Foundation, either version 3 of the License, or
+ * (at your option) any later version.
+ *
+ * This program is distributed in the hope that it will be useful,
+ * but WITHOUT ANY WARRANTY; without even the implied warranty of
+ * MERCHANTABILITY or FITNESS FOR A PARTICULAR PURPOSE.  See the
+ * GNU General Public License for more details.
+ *
+ * You should have received a copy of the GNU General Public License
+ * along with this program.  If not, see <http://www.gnu.org/licenses/>.
+ */
+
+package org.cowboyprogrammer.org;
+
+import org.cowboyprogrammer.org.parser.OrgParser;
+import org.cowboyprogrammer.org.parser.OrgSymbols;
+import org.joda.time.LocalDateTime;
+import org.joda.time.LocalTime;
+
+import java.io.ByteArrayInputStream;
+import java.io.DataInput;
+import java.io.DataInputStream;
+import java.io.IOException;
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.List;
+import java.util.Stack;
+
+/**
+ * Reads trees written by {@link OrgTreeWriter}. The nodes are not dirty
+ * after reading.
+ * <p/>
+ * Broken data, like a cache file which was cut off, is an IOException.
+ * Lengths and counts are checked against the size of the input before
+ * anything is allocated for them, and the tree is read without recursion,
+ * so that no length or depth can run out of memory or stack.
+ */
+public class OrgTreeReader {
+
+    // Strings of unknown size are read in parts of at most this many bytes
+    private static final int CHUNK = 1 << 16;
+
+    private final OrgParser parser;
+    private final DataInput in;
+    private final List<String> symbols = new ArrayList<String>();
+    private int version;
+    // Bytes left in the input
+    private long remaining;
+
+    /**
+     * Same as OrgTreeReader(parser, in, Long.MAX_VALUE), for input of
+     * unknown size.
+     */
+    public OrgTreeReader(final OrgParser parser, final DataInput in) {
+        this(parser, in, Long.MAX_VALUE);
+    }
+
+    /**
+     * @param parser given to the nodes which are read, as if they had been
+     *               parsed with it
+     * @param in     where to read from
+     * @param size   bytes left in the input, nothing longer than that is
+     *               read
+     */
+    public OrgTreeReader(final OrgParser parser, final DataInput in, final long size) {
+        if (parser == null || in == null) {
+            throw new NullPointerException("Not allowed to be null!");
+        }
+        if (size < 0) {
+            throw new IllegalArgumentException("Size can not be negative: " + size);
+        }
+        this.parser = parser;
+        this.in = in;
+        this.remaining = size;
+    }
+
+    /**
+     * Read a tree from the result of {@link OrgTreeWriter#toBytes(OrgFile)}.
+     */
+    public static OrgFile fromBytes(final OrgParser parser, final byte[] bytes) throws IOException {
+        return new OrgTreeReader(parser, new DataInputStream(new ByteArrayInputStream(bytes)),
+                bytes.length).read();
+    }
+
+    /**
+     * Read the next tree.
+     *
+     * @throws IOException if the data is not a tree of a supported version
+     */
+    public OrgFile read() throws IOException {
+        symbols.clear();
+        if (readInt() != OrgTreeWriter.MAGIC) {
+            throw new IOException("Not an org tree");
+        }
+        version = readVarint();
+        if (version < 1 || version > OrgTreeWriter.VERSION) {
+            throw new IOException("Unsupported version: " + version);
+        }
+        try {
+            final OrgFile orgfile = new OrgFile(parser, readString());
+            // Each node with the number of its children which are not read yet
+            final Stack<OrgNode> parents = new Stack<OrgNode>();
+            final Stack<Integer> unread = new Stack<Integer>();
+            parents.push(orgfile);
+            unread.push(readNode(orgfile));
+            while (!parents.isEmpty()) {
+                final int left = unread.pop();
+                if (left == 0) {
+                    parents.pop();
+                    continue;
+                }
+                unread.push(left - 1);
+                final OrgNode child = new OrgNode(parser);
+                final int children = readNode(child);
+                child.setParent(parents.peek());
+                parents.peek().getSubNodes().add(child);
+                parents.push(child);
+                unread.push(children);
+            }
+            return orgfile;
+        } catch (RuntimeException e) {
+            // Impossible dates, unknown symbols and such
+            throw new IOException("Not a valid tree", e);
+        }
+    }
+
+    /**
+     * Read the node without its children.
+     *
+     * @return the number of children which follow
+     */
+    private int readNode(final OrgNode node) throws IOException {
+        node.setLevel(readVarint());
+        node.setTodo(readInterned());
+        node.setTitle(readString());
+        final int tags = readCount();
+        for (int i = 0; i < tags; i++) {
+            node.getTags().add(readInterned());
+        }
+        node.setComments(readString());
+        node.setBody(readString());
+
+        final int timestamps = readCount();
+        for (int i = 0; i < timestamps; i++) {
+            final int flags = readByte();
+            final OrgTimestamp ts = new OrgTimestamp();
+            ts.setType(OrgTimestamp.Type.values()[flags & 3]);
+            ts.setInactive((flags & OrgTreeWriter.INACTIVE) != 0);
+            ts.setDate(readDate(), (flags & OrgTreeWriter.HAS_TIME) != 0);
+            if ((flags & OrgTreeWriter.HAS_END_TIME) != 0) {
+                ts.setEndTime(LocalTime.fromMillisOfDay(readVarint()));
+            }
+            final String repeat = readSymbol();
+            if (repeat != null) {
+                ts.setRepeat(repeat);
+            }
+            final String warning = readSymbol();
+            if (warning != null) {
+                ts.setWarning(warning);
+            }
+            node.addTimestamp(ts);
+        }
+
+        final int ranges = readCount();
+        for (int i = 0; i < ranges; i++) {
+            final OrgTimestampRange range = new OrgTimestampRange();
+            final boolean hasTime = readByte() != 0;
+            range.setStartdate(readDate(), hasTime);
+            range.setEnddate(readDate(), hasTime);
+            node.addTimestampRange(range);
+        }
+
+        node.ownLines = readVarint() - 1;
+        node.subtreeLines = readVarint() - 1;
+        if (version >= 2) {
+            node.sourceStart = readVarint() - 1;
+        }
+        if (version >= 3) {
+            node.source = readString();
+        }
+        // Same as when it was written
+        node.clearDirty();
+        return readCount();
+    }
+
+    private LocalDateTime readDate() throws IOException {
+        final int zigzag = readVarint();
+        final int year = (zigzag >>> 1) ^ -(zigzag & 1);
+        final int month = readByte();
+        final int day = readByte();
+        return new LocalDateTime(year, month, day, 0, 0).withMillisOfDay(readVarint());
+    }
+
+    private String readSymbol() throws IOException {
+        final int index = readVarint();
+        if (index == 0) {
+            return null;
+        } else if (index == 1) {
+            final String s = readString();
+            symbols.add(s);
+            return s;
+        }
+        return symbols.get(index - 2);
+    }
+
+    /**
+     * A symbol which the parser would have interned, see
+     * {@link OrgParser#getSymbols()}.
+     */
+    private String readInterned() throws IOException {
+        final String s = readSymbol();
+        final OrgSymbols table = parser.getSymbols();
+        return table == null ? s : table.intern(s);
+    }
+
+    private String readString() throws IOException {
+        final int length = readVarint();
+        if (length == 0) {
+            return null;
+        }
+        final int size = length - 1;
+        if (size < 0) {
+            throw new IOException("Length out of range: " + size);
+        }
+        take(size);
+        // Grows as it is read, so a broken length in input of unknown
+        // size ends at the end of the input rather than being allocated
+        byte[] bytes = new byte[Math.min(size, CHUNK)];
+        int read = 0;
+        while (read < size) {
+            if (read == bytes.length) {
+                bytes = Arrays.copyOf(bytes, (int) Math.min(size, 2L * bytes.length));
+            }
+            in.readFully(bytes, read, bytes.length - read);
+            read = bytes.length;
+        }
+        return new String(bytes, OrgTreeWriter.UTF8);
+    }
+
+    /**
+     * A number of things which follow, each taking at least one byte.
+     */
+    private int readCount() throws IOException {
+        final int count = readVarint();
+        if (count < 0 || count > remaining) {
+            throw new IOException("Count out of range: " + count);
+        }
+        return count;
+    }
+
+    private int readInt() throws IOException {
+        take(4);
+        return in.readInt();
+    }
+
+    private int readByte() throws IOException {
+        take(1);
+        return in.readUnsignedByte();
+    }
+
+    /**
+     * Count bytes about to be read.
+     */
+    private void take(final int bytes) throws IOException {
+        if (bytes > remaining) {
+            throw new IOException("Not a complete tree");
+        }
+        remaining -= bytes;
+    }
+
+    private int readVarint() throws IOException {
+        int value = 0;
+        for (int shift = 0; shift < 35; shift += 7) {
+            final int b = readByte();
+            value |= (b & 0x7f) << shift;
+            if ((b & 0x80) == 0) {
+                return value;
+            }
+        }
+        throw new IOException("Malformed varint");
+    }
+}
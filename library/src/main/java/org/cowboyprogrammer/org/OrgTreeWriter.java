@@ -0,0 +1,194 @@
+/*
+ * Copyright (c) Jonas Kalderstam 2014.
+ *
+ * This program is free software: you can redistribute it and/or modify
+ * it under the terms of the GNU General Public License as published by
+ * the Free Software Foundation, either version 3 of the License, or
+ * (at your option) any later version.
+ *
+ * This program is distributed in the hope that it will be useful,
+ * but WITHOUT ANY WARRANTY; without even the implied warranty of
+ * MERCHANTABILITY or FITNESS FOR A PARTICULAR PURPOSE.  See the
+ * GNU General Public License for more details.
+ *
+ * You should have received a copy of the GNU General Public License
+ * along with this program.  If not, see <http://www.gnu.org/licenses/>.
+ */
+
+package org.cowboyprogrammer.org;
+
+import org.joda.time.LocalDateTime;
+
+import java.io.ByteArrayOutputStream;
+import java.io.DataOutput;
+import java.io.DataOutputStream;
+import java.io.IOException;
+import java.nio.charset.Charset;
+import java.util.HashMap;
+import java.util.Map;
+
+/**
+ * Writes OrgFile trees in a compact binary format which
+ * {@link OrgTreeReader} reads back. This is much faster than writing the
+ * org text and parsing it again, and keeps everything the parser found,
+ * including what applyEdit needs.
+ * <p/>
+ * Each tree starts with a magic number and a format version. Numbers are
+ * written as varints. TODO keywords, tags, repeaters and warnings tend to
+ * repeat, so each distinct one is written once per tree and referred to by
+ * its index after that. The nodes follow in the same order as in the file.
+ * <p/>
+ * Version 2 added the first line of each node in its file, version 3 the
+ * text of lossless nodes.
+ */
+public class OrgTreeWriter {
+
+    static final int MAGIC = 0x4f524742;
+    static final int VERSION = 3;
+
+    // Bits of the flags of a timestamp, the type takes the lowest two
+    static final int INACTIVE = 1 << 2;
+    static final int HAS_TIME = 1 << 3;
+    static final int HAS_END_TIME = 1 << 4;
+
+    static final Charset UTF8 = Charset.forName("UTF-8");
+
+    private final DataOutput out;
+    private final Map<String, Integer> symbols = new HashMap<String, Integer>();
+
+    public OrgTreeWriter(final DataOutput out) {
+        if (out == null) {
+            throw new NullPointerException("Not allowed to be null!");
+        }
+        this.out = out;
+    }
+
+    /**
+     * @return the tree in binary form
+     */
+    public static byte[] toBytes(final OrgFile orgfile) {
+        final ByteArrayOutputStream bytes = new ByteArrayOutputStream();
+        try {
+            new OrgTreeWriter(new DataOutputStream(bytes)).write(orgfile);
+        } catch (IOException e) {
+            // Not possible in memory
+            throw new IllegalStateException(e);
+        }
+        return bytes.toByteArray();
+    }
+
+    /**
+     * Write the whole tree. Several trees can be written after each other.
+     */
+    public void write(final OrgFile orgfile) throws IOException {
+        symbols.clear();
+        out.writeInt(MAGIC);
+        writeVarint(VERSION);
+        writeString(orgfile.getFilename());
+        writeNode(orgfile);
+    }
+
+    private void writeNode(final OrgNode node) throws IOException {
+        writeVarint(node.getLevel());
+        writeSymbol(node.getTodo());
+        writeString(node.getTitle());
+        writeVarint(node.getTags().size());
+        for (final String tag : node.getTags()) {
+            writeSymbol(tag);
+        }
+        writeString(node.getComments());
+        writeString(node.getBody());
+
+        writeVarint(node.getTimestamps().size());
+        for (final OrgTimestamp ts : node.getTimestamps()) {
+            int flags = ts.getType().ordinal();
+            if (ts.isInactive()) {
+                flags |= INACTIVE;
+            }
+            if (ts.hasTime()) {
+                flags |= HAS_TIME;
+            }
+            if (ts.getEndTime() != null) {
+                flags |= HAS_END_TIME;
+            }
+            out.writeByte(flags);
+            writeDate(ts.getDate());
+            if (ts.getEndTime() != null) {
+                writeVarint(ts.getEndTime().getMillisOfDay());
+            }
+            writeSymbol(ts.getRepeat());
+            writeSymbol(ts.getWarning());
+        }
+
+        writeVarint(node.getTimestampRanges().size());
+        for (final OrgTimestampRange range : node.getTimestampRanges()) {
+            out.writeBoolean(range.hasTime());
+            writeDate(range.getStartdate());
+            writeDate(range.getEnddate());
+        }
+
+        // Unknown is -1
+        writeVarint(node.ownLines + 1);
+        writeVarint(node.subtreeLines + 1);
+        writeVarint(node.sourceStart + 1);
+        writeString(node.getSource());
+
+        writeVarint(node.getSubNodes().size());
+        for (final OrgNode child : node.getSubNodes()) {
+            writeNode(child);
+        }
+    }
+
+    private void writeDate(final LocalDateTime date) throws IOException {
+        // Years before 0 are possible but unlikely, so zigzag
+        final int year = date.getYear();
+        writeVarint((year << 1) ^ (year >> 31));
+        out.writeByte(date.getMonthOfYear());
+        out.writeByte(date.getDayOfMonth());
+        writeVarint(date.getMillisOfDay());
+    }
+
+    /**
+     * A string which is likely to repeat. 0 is null, 1 is a new symbol
+     * which follows, anything else refers to an earlier one.
+     */
+    private void writeSymbol(final String s) throws IOException {
+        if (s == null) {
+            writeVarint(0);
+            return;
+        }
+        final Integer index = symbols.get(s);
+        if (index != null) {
+            writeVarint(index + 2);
+        } else {
+            symbols.put(s, symbols.size());
+            writeVarint(1);
+            writeString(s);
+        }
+    }
+
+    /**
+     * 0 is null, else length + 1 followed by UTF-8.
+     */
+    private void writeString(final String s) throws IOException {
+        if (s == null) {
+            writeVarint(0);
+            return;
+        }
+        final byte[] bytes = s.getBytes(UTF8);
+        writeVarint(bytes.length + 1);
+        out.write(bytes);
+    }
+
+    /**
+     * Seven bits at a time, lowest first. The high bit is set on all but the
+     * last byte.
+     */
+    private void writeVarint(int value) throws IOException {
+        while ((value & ~0x7f) != 0) {
+            out.writeByte((value & 0x7f) | 0x80);
+            value >>>= 7;
+        }
+        out.writeByte(value);
+    }
+}
@@ -0,0 +1,216 @@
+/*
+ * Copyright (c) Jonas Kalderstam 2014.
+ *
+ * This program is free software: you can redistribute it and/or modify
+ * it under the terms of the GNU General Public License as published by
+ * the Free Software Foundation, either version 3 of the License, or
+ * (at your option) any later version.
+ *
+ * This program is distributed in the hope that it will be useful,
+ * but WITHOUT ANY WARRANTY; without even the implied warranty of
+ * MERCHANTABILITY or FITNESS FOR A PARTICULAR PURPOSE.  See the
+ * GNU General Public License for more details.
+ *
+ * You should have received a copy of the GNU General Public License
+ * along with this program.  If not, see <http://www.gnu.org/licenses/>.
+ */
+
+package org.cowboyprogrammer.org;
+
+import org.cowboyprogrammer.org.parser.OrgParser;
+import org.cowboyprogrammer.org.util.Utf8LineReader;
+
+import java.io.IOException;
+import java.nio.ByteBuffer;
+import java.nio.channels.FileChannel;
+import java.nio.channels.ReadableByteChannel;
+import java.nio.file.Path;
+import java.nio.file.StandardOpenOption;
+import java.text.ParseException;
+import java.util.ArrayList;
+import java.util.List;
+import java.util.concurrent.Callable;
+import java.util.concurrent.ExecutionException;
+import java.util.concurrent.ForkJoinPool;
+import java.util.concurrent.ForkJoinTask;
+
+/**
+ * Parses one large file in parallel. A level 1 header always ends every
+ * open node and the separator line before it, so the file can be cut in
+ * front of such headers and each chunk parsed on its own. The top level
+ * nodes of the chunks are then moved, in order, to the file of the first
+ * chunk, which also has the body of the file. The result is the same as
+ * parsing the whole file in one go.
+ */
+final class ParallelOrgFileReader {
+
+    // Chunks smaller than this are not worth a task of their own
+    static final long MIN_CHUNK_SIZE = 1 << 20;
+
+    private ParallelOrgFileReader() {
+    }
+
+    static OrgFile read(final OrgParser parser, final Path path, final ForkJoinPool pool)
+            throws IOException, ParseException {
+        final FileChannel channel = FileChannel.open(path, StandardOpenOption.READ);
+        try {
+            final long chunkSize = Math.max(MIN_CHUNK_SIZE,
+                    channel.size() / (4L * pool.getParallelism()));
+            return read(parser, path.getFileName().toString(), channel, pool, chunkSize);
+        } finally {
+            channel.close();
+        }
+    }
+
+    static OrgFile read(final OrgParser parser, final String filename, final FileChannel channel,
+                        final ForkJoinPool pool, final long chunkSize)
+            throws IOException, ParseException {
+        final long size = channel.size();
+        final List<Long> starts = findChunkStarts(parser, channel, size, chunkSize);
+        starts.add(size);
+
+        final List<ForkJoinTask<OrgFile>> tasks = new ArrayList<ForkJoinTask<OrgFile>>();
+        for (int i = 0; i < starts.size() - 1; i++) {
+            final long start = starts.get(i);
+            final long end = starts.get(i + 1);
+            tasks.add(pool.submit(new Callable<OrgFile>() {
+                @Override
+                public OrgFile call() throws Exception {
+                    return new OrgTreeBuilder(parser, filename)
+                            .parse(new ChannelRange(channel, start, end));
+                }
+            }));
+        }
+
+        // First chunk has the body of the file
+        final OrgFile orgfile = get(tasks.get(0));
+        for (int i = 1; i < tasks.size(); i++) {
+            final OrgFile chunk = get(tasks.get(i));
+            for (final OrgNode node : chunk.getSubNodes()) {
+                // Lines were counted from the start of the chunk
+                moveSource(node, orgfile.subtreeLines);
+                node.setParent(orgfile);
+                orgfile.getSubNodes().add(node);
+            }
+            orgfile.subtreeLines += chunk.subtreeLines;
+        }
+        return orgfile;
+    }
+
+    private static void moveSource(final OrgNode node, final int lines) {
+        node.sourceStart += lines;
+        for (final OrgNode child : node.getSubNodes()) {
+            moveSource(child, lines);
+        }
+    }
+
+    /**
+     * Offsets of level 1 headers which are at least chunkSize apart. The
+     * first chunk always starts at 0.
+     */
+    static List<Long> findChunkStarts(final OrgParser parser, final FileChannel channel,
+                                      final long size, final long chunkSize) throws IOException {
+        final List<Long> starts = new ArrayList<Long>();
+        starts.add(0L);
+
+        final ByteBuffer buffer = ByteBuffer.allocate(1 << 16);
+        final byte[] bytes = buffer.array();
+        // Only look at bytes where the next chunk may start
+        long pos = chunkSize - 1;
+        boolean lineStart = false;
+        scan:
+        while (pos < size) {
+            buffer.clear();
+            final int read = channel.read(buffer, pos);
+            if (read <= 0) {
+                break;
+            }
+            for (int i = 0; i < read; i++) {
+                final byte b = bytes[i];
+                if (lineStart && b == '*' && isLevelOneHeader(parser, channel, pos + i, size)) {
+                    starts.add(pos + i);
+                    pos = pos + i + chunkSize - 1;
+                    lineStart = false;
+                    continue scan;
+                }
+                lineStart = b == '\n' || b == '\r';
+            }
+            pos += read;
+        }
+        return starts;
+    }
+
+    private static boolean isLevelOneHeader(final OrgParser parser, final FileChannel channel,
+                                            final long pos, final long size) throws IOException {
+        final String line = new Utf8LineReader(new ChannelRange(channel, pos, size), 256).readLine();
+        return line != null && line.length() > 1
+                && (line.charAt(1) == ' ' || line.charAt(1) == '\t')
+                && parser.isHeaderLine(line);
+    }
+
+    private static OrgFile get(final ForkJoinTask<OrgFile> task) throws IOException, ParseException {
+        try {
+            return task.get();
+        } catch (InterruptedException e) {
+            Thread.currentThread().interrupt();
+            throw new IOException(e);
+        } catch (ExecutionException e) {
+            final Throwable cause = e.getCause();
+            if (cause instanceof IOException) {
+                throw (IOException) cause;
+            } else if (cause instanceof ParseException) {
+                throw (ParseException) cause;
+            } else if (cause instanceof RuntimeException) {
+                throw (RuntimeException) cause;
+            } else if (cause instanceof Error) {
+                throw (Error) cause;
+            }
+            throw new IOException(cause);
+        }
+    }
+
+    /**
+     * Part of a file which can be read concurrently with other parts. Closing
+     * it does not close the file.
+     */
+    private static class ChannelRange implements ReadableByteChannel {
+        private final FileChannel channel;
+        private final long end;
+        private long position;
+
+        ChannelRange(final FileChannel channel, final long start, final long end) {
+            this.channel = channel;
+            this.position = start;
+            this.end = end;
+        }
+
+        @Override
+        public int read(final ByteBuffer dst) throws IOException {
+            if (position >= end) {
+                return -1;
+            }
+            final int limit = dst.limit();
+            if (end - position < dst.remaining()) {
+                dst.limit(dst.position() + (int) (end - position));
+            }
+            try {
+                final int read = channel.read(dst, position);
+                if (read > 0) {
+                    position += read;
+                }
+                return read;
+            } finally {
+                dst.limit(limit);
+            }
+        }
+
+        @Override
+        public boolean isOpen() {
+            return channel.isOpen();
+        }
+
+        @Override
+        public void close() {
+        }
+    }
+}
@@ -0,0 +1,90 @@
+/*
+ * Copyright (c) Jonas Kalderstam 2014.
+ *
+ * This program is free software: you can redistribute it and/or modify
+ * it under the terms of the GNU General Public License as published by
+ * the Free Software Foundation, either version 3 of the License, or
+ * (at your option) any later version.
+ *
+ * This program is distributed in the hope that it will be useful,
+ * but WITHOUT ANY WARRANTY; without even the implied warranty of
+ * MERCHANTABILITY or FITNESS FOR A PARTICULAR PURPOSE.  See the
+ * GNU General Public License for more details.
+ *
+ * You should have received a copy of the GNU General Public License
+ * along with this program.  If not, see <http://www.gnu.org/licenses/>.
+ */
+
+package org.cowboyprogrammer.org.parser;
+
+import org.cowboyprogrammer.org.OrgNode;
+import org.cowboyprogrammer.org.OrgTimestamp;
+import org.cowboyprogrammer.org.OrgTimestampRange;
+
+import java.text.ParseException;
+import java.util.List;
+
+/**
+ * Receives the contents of an org file as it is being read, see
+ * {@link OrgEventParser}. Nothing is kept in memory unless the handler
+ * keeps it.
+ * <p/>
+ * Every node is announced by startNode and closed by endNode, and the
+ * nodes are nested just as in the tree built by OrgFile. Lines before the
+ * first header belong to the file itself and arrive before any startNode.
+ * Comments and timestamps are only reported before the body proper of a
+ * node, same as in OrgNode, and in that case blank lines in front of them
+ * are dropped.
+ */
+public interface OrgEventHandler {
+
+    /**
+     * A header was read.
+     *
+     * @param level number of stars, at least 1
+     * @param todo  TODO keyword or null
+     * @param title title of the header
+     * @param tags  tags of the header, possibly empty
+     */
+    void startNode(int level, String todo, String title, List<String> tags) throws ParseException;
+
+    /**
+     * A header was read. This is what the parser calls, the default passes
+     * the parts of the node on to the other startNode. Override it to keep
+     * the node itself, which is whatever the parser's createFromHeader
+     * made of the header.
+     *
+     * @param node the header, without any body or sub nodes
+     */
+    default void startNode(OrgNode node) throws ParseException {
+        startNode(node.getLevel(), node.getTodo(), node.getTitle(), node.getTags());
+    }
+
+    /**
+     * @param line a line of the body proper, without ending newline
+     */
+    void bodyLine(String line) throws ParseException;
+
+    /**
+     * @param line a comment before the body proper, without ending newline
+     */
+    void comment(String line) throws ParseException;
+
+    /**
+     * @param timestamp a timestamp before the body proper
+     */
+    void timestamp(OrgTimestamp timestamp) throws ParseException;
+
+    /**
+     * @param timestampRange a timestamp range before the body proper
+     */
+    void timestampRange(OrgTimestampRange timestampRange) throws ParseException;
+
+    /**
+     * The node started by the matching startNode is complete, including all
+     * of its sub nodes.
+     *
+     * @param level number of stars of the node
+     */
+    void endNode(int level) throws ParseException;
+}
@@ -0,0 +1,294 @@
+/*
+ * Copyright (c) Jonas Kalderstam 2014.
+ *
+ * This program is free software: you can redistribute it and/or modify
+ * it under the terms of the GNU General Public License as published by
+ * the Free Software Foundation, either version 3 of the License, or
+ * (at your option) any later version.
+ *
+ * This program is distributed in the hope that it will be useful,
+ * but WITHOUT ANY WARRANTY; without even the implied warranty of
+ * MERCHANTABILITY or FITNESS FOR A PARTICULAR PURPOSE.  See the
+ * GNU General Public License for more details.
+ *
+ * You should have received a copy of the GNU General Public License
+ * along with this program.  If not, see <http://www.gnu.org/licenses/>.
+ */
+
+package org.cowboyprogrammer.org.parser;
+
+import org.cowboyprogrammer.org.OrgNode;
+import org.cowboyprogrammer.org.util.StringUtils;
+import org.cowboyprogrammer.org.util.Utf8LineReader;
+
+import java.io.BufferedReader;
+import java.io.IOException;
+import java.nio.channels.FileChannel;
+import java.nio.channels.ReadableByteChannel;
+import java.nio.file.Path;
+import java.nio.file.StandardOpenOption;
+import java.text.ParseException;
+import java.util.ArrayList;
+import java.util.List;
+
+/**
+ * Reads an org file line by line and reports what it finds to an
+ * {@link OrgEventHandler}, without building any tree. Memory use does not
+ * depend on the size of the file, only on how deep the headers are nested.
+ * <p/>
+ * Feed lines with {@link #addLine(String)} and call {@link #finish()} at
+ * the end, or use one of the static parse methods.
+ */
+public class OrgEventParser {
+
+    private final OrgParser parser;
+    private final OrgEventHandler handler;
+
+    // Levels of the nodes which have not ended yet
+    private int[] levels = new int[16];
+    private int depth = 0;
+
+    // True until the current node has a non-blank line in its body
+    private boolean bodyBlank = true;
+    // Blank lines which are dropped if a comment or timestamp follows
+    private final List<String> blankLines = new ArrayList<String>();
+    // Possible separator line before the next header
+    private String sepline = null;
+    // Index of the current line
+    private int lineNumber = 0;
+    // Null unless someone is measuring, see setParseListener
+    private ParseListener listener = null;
+    private long classified;
+
+    public OrgEventParser(final OrgParser parser, final OrgEventHandler handler) {
+        if (parser == null || handler == null) {
+            throw new NullPointerException("Not allowed to be null!");
+        }
+        this.parser = parser;
+        this.handler = handler;
+    }
+
+    /**
+     * Parse everything in the reader, which is closed afterwards.
+     */
+    public static void parse(final OrgParser parser, final BufferedReader br,
+                             final OrgEventHandler handler) throws IOException, ParseException {
+        new OrgEventParser(parser, handler).parse(br);
+    }
+
+    /**
+     * Parse the file, which is read as UTF-8.
+     */
+    public static void parse(final OrgParser parser, final Path path,
+                             final OrgEventHandler handler) throws IOException, ParseException {
+        parse(parser, FileChannel.open(path, StandardOpenOption.READ), handler);
+    }
+
+    /**
+     * Parse everything in the channel, which is read as UTF-8 and closed
+     * afterwards.
+     */
+    public static void parse(final OrgParser parser, final ReadableByteChannel channel,
+                             final OrgEventHandler handler) throws IOException, ParseException {
+        new OrgEventParser(parser, handler).parse(channel);
+    }
+
+    /**
+     * Add all lines in the reader and finish. The reader is closed
+     * afterwards.
+     */
+    public void parse(final BufferedReader br) throws IOException, ParseException {
+        String line;
+        try {
+            while ((line = br.readLine()) != null) {
+                addLine(line);
+            }
+        } finally {
+            br.close();
+        }
+        finish();
+    }
+
+    /**
+     * Add all lines in the channel, which is read as UTF-8, and finish. The
+     * channel is closed afterwards.
+     */
+    public void parse(final ReadableByteChannel channel) throws IOException, ParseException {
+        final Utf8LineReader reader = new Utf8LineReader(channel);
+        String line;
+        try {
+            while ((line = reader.readLine()) != null) {
+                addLine(line);
+            }
+        } finally {
+            reader.close();
+        }
+        finish();
+    }
+
+    /**
+     * The index of the line being added, counting from 0. Handlers can use
+     * this to find out where a node starts and ends. After finish, the number
+     * of lines.
+     */
+    public int getLineNumber() {
+        return lineNumber;
+    }
+
+    /**
+     * @param line the next line of the file. It is expected to come from
+     *             BufferedReader's readline and should NOT have an ending
+     *             newline character!
+     */
+    public void addLine(final String line) throws ParseException {
+        try {
+            handleLine(line);
+            if (listener != null) {
+                listener.lineAdded(lineNumber, line, System.nanoTime() - classified);
+            }
+        } finally {
+            lineNumber++;
+        }
+    }
+
+    /**
+     * @param listener told about every line from now on, or null to stop
+     */
+    public void setParseListener(final ParseListener listener) {
+        this.listener = listener;
+    }
+
+    private void handleLine(final String line) throws ParseException {
+        if (line.endsWith("\n")) {
+            throw new ParseException("Line should not end with newline!" +
+                    " See BufferedReader's readline...", 0);
+        }
+        // See what we are reading
+        OrgLine orgLine;
+        IllegalArgumentException impossible = null;
+        final long start = listener == null ? 0 : System.nanoTime();
+        try {
+            orgLine = parser.classify(line);
+        } catch (IllegalArgumentException e) {
+            // Looks like a timestamp but the date is impossible. Only an
+            // error if it is not part of the body proper.
+            orgLine = null;
+            impossible = e;
+        }
+        if (listener != null) {
+            classified = System.nanoTime();
+            listener.lineClassified(lineNumber, line,
+                    orgLine == null ? OrgLine.Kind.BODY : orgLine.getKind(), classified - start);
+        }
+        if (orgLine != null && orgLine.getKind() == OrgLine.Kind.HEADER) {
+            // Destroy separator line
+            sepline = null;
+            final OrgNode node = orgLine.getNode();
+            endNodes(node.getLevel());
+            push(node.getLevel());
+            if (listener != null) {
+                listener.nodeStarted(node.getLevel(), depth);
+            }
+            handler.startNode(node);
+            /*
+            Sep line handles a possible separator line between the
+            body of the previous item and the header of the next item
+            . One separator line is allowed,
+            and will thus get "eaten" during parsing.
+             */
+        } else if (sepline != null && line.isEmpty()) {
+            // Another empty line, put last one in node
+            addBodyLine(OrgLine.body(sepline));
+            sepline = line;
+        } else if (sepline == null && line.isEmpty()) {
+            // Possibly a separator line. Keep track of it.
+            sepline = line;
+        } else {
+            // Put sepline there first if not empty
+            if (sepline != null) {
+                addBodyLine(OrgLine.body(sepline));
+                sepline = null;
+            }
+            if (orgLine != null) {
+                addBodyLine(orgLine);
+            } else if (bodyBlank) {
+                throw impossible;
+            } else {
+                handler.bodyLine(line);
+            }
+        }
+    }
+
+    /**
+     * End all nodes. A separator line at the end of the file is dropped.
+     */
+    public void finish() throws ParseException {
+        sepline = null;
+        endNodes(1);
+        flushBlankLines();
+        if (listener != null) {
+            listener.finished(lineNumber);
+        }
+    }
+
+    private void addBodyLine(final OrgLine line) throws ParseException {
+        if (!bodyBlank) {
+            handler.bodyLine(line.getText());
+            return;
+        }
+        switch (line.getKind()) {
+            case COMMENT:
+                blankLines.clear();
+                handler.comment(line.getText());
+                break;
+            case TIMESTAMP:
+                // Don't keep spaces before timestamps
+                blankLines.clear();
+                handler.timestamp(line.getTimestamp());
+                break;
+            case TIMESTAMP_RANGE:
+                // Don't keep spaces before timestamps
+                blankLines.clear();
+                handler.timestampRange(line.getTimestampRange());
+                break;
+            default:
+                if (StringUtils.isBlank(line.getText())) {
+                    blankLines.add(line.getText());
+                } else {
+                    flushBlankLines();
+                    bodyBlank = false;
+                    handler.bodyLine(line.getText());
+                }
+                break;
+        }
+    }
+
+    private void flushBlankLines() throws ParseException {
+        for (final String blank : blankLines) {
+            handler.bodyLine(blank);
+        }
+        blankLines.clear();
+    }
+
+    /**
+     * End the current node and its ancestors until the node on top has a
+     * level below the given one.
+     */
+    private void endNodes(final int level) throws ParseException {
+        flushBlankLines();
+        while (depth > 0 && levels[depth - 1] >= level) {
+            depth--;
+            handler.endNode(levels[depth]);
+        }
+        bodyBlank = true;
+    }
+
+    private void push(final int level) {
+        if (depth == levels.length) {
+            final int[] bigger = new int[depth * 2];
+            System.arraycopy(levels, 0, bigger, 0, depth);
+            levels = bigger;
+        }
+        levels[depth++] = level;
+    }
+}
@@ -0,0 +1,103 @@
+/*
+ * Copyright (c) Jonas Kalderstam 2014.
+ *
+ * This program is free software: you can redistribute it and/or modify
+ * it under the terms of the GNU General Public License as published by
+ * the Free Software Foundation, either version 3 of the License, or
+ * (at your option) any later version.
+ *
+ * This program is distributed in the hope that it will be useful,
+ * but WITHOUT ANY WARRANTY; without even the implied warranty of
+ * MERCHANTABILITY or FITNESS FOR A PARTICULAR PURPOSE.  See the
+ * GNU General Public License for more details.
+ *
+ * You should have received a copy of the GNU General Public License
+ * along with this program.  If not, see <http://www.gnu.org/licenses/>.
+ */
+
+package org.cowboyprogrammer.org.parser;
+
+import org.cowboyprogrammer.org.OrgNode;
+import org.cowboyprogrammer.org.OrgTimestamp;
+import org.cowboyprogrammer.org.OrgTimestampRange;
+
+/**
+ * A single line of an org file together with what the parser made of it.
+ * See {@link OrgParser#classify(String)}.
+ */
+public final class OrgLine {
+
+    public enum Kind {
+        HEADER, COMMENT, TIMESTAMP, TIMESTAMP_RANGE, BODY
+    }
+
+    private final Kind kind;
+    private final String text;
+    private final OrgNode node;
+    private final OrgTimestamp timestamp;
+    private final OrgTimestampRange timestampRange;
+
+    private OrgLine(final Kind kind, final String text, final OrgNode node,
+                    final OrgTimestamp timestamp, final OrgTimestampRange timestampRange) {
+        if (text == null) {
+            throw new NullPointerException("Line can't be null!");
+        }
+        this.kind = kind;
+        this.text = text;
+        this.node = node;
+        this.timestamp = timestamp;
+        this.timestampRange = timestampRange;
+    }
+
+    public static OrgLine header(final String text, final OrgNode node) {
+        return new OrgLine(Kind.HEADER, text, node, null, null);
+    }
+
+    public static OrgLine comment(final String text) {
+        return new OrgLine(Kind.COMMENT, text, null, null, null);
+    }
+
+    public static OrgLine timestamp(final String text, final OrgTimestamp timestamp) {
+        return new OrgLine(Kind.TIMESTAMP, text, null, timestamp, null);
+    }
+
+    public static OrgLine timestampRange(final String text, final OrgTimestampRange timestampRange) {
+        return new OrgLine(Kind.TIMESTAMP_RANGE, text, null, null, timestampRange);
+    }
+
+    public static OrgLine body(final String text) {
+        return new OrgLine(Kind.BODY, text, null, null, null);
+    }
+
+    public Kind getKind() {
+        return kind;
+    }
+
+    /**
+     * The line exactly as it was given to the parser.
+     */
+    public String getText() {
+        return text;
+    }
+
+    /**
+     * @return the node created from a HEADER line, null for other kinds
+     */
+    public OrgNode getNode() {
+        return node;
+    }
+
+    /**
+     * @return the parsed timestamp of a TIMESTAMP line, null for other kinds
+     */
+    public OrgTimestamp getTimestamp() {
+        return timestamp;
+    }
+
+    /**
+     * @return the parsed range of a TIMESTAMP_RANGE line, null for other kinds
+     */
+    public OrgTimestampRange getTimestampRange() {
+        return timestampRange;
+    }
+}
@@ -5,8 +5,27 @@ import org.cowboyprogrammer.org.OrgNode;
 import org.cowboyprogrammer.org.OrgTimestamp;
 import org.cowboyprogrammer.org.OrgTimestampRange;
 
+import java.util.List;
+
 public interface OrgParser {
 
+    /**
+     * @return the table which tags and TODO keywords of parsed nodes are
+     * interned in, or null if they are not interned
+     */
+    default OrgSymbols getSymbols() {
+        return null;
+    }
+
+    /**
+     * @return the TODO keywords which headers are parsed with, including
+     * TODO and DONE, or null if this is not known. Two parsers of the same
+     * class with the same keywords should parse any text the same way.
+     */
+    default List<String> getTodoKeywords() {
+        return null;
+    }
+
     /**
      * @param line to parse
      * @return true if the line is the header of an OrgNode, like "* TODO title :tag1:tag2:"
@@ -53,4 +72,27 @@ public interface OrgParser {
      * @return a parsed OrgTimestampRange
      */
     OrgTimestampRange getTimestampRange(String line);
+
+    /**
+     * Find out what kind of line this is and parse it, in one go. Lines which
+     * are not headers, comments or timestamps are returned as BODY.
+     * <p/>
+     * The default implementation simply asks the other methods in turn.
+     * Implementations are encouraged to do better.
+     *
+     * @param line to parse
+     * @return the line together with its parsed value
+     */
+    default OrgLine classify(String line) {
+        if (isHeaderLine(line)) {
+            return OrgLine.header(line, createFromHeader(line));
+        } else if (isCommentLine(line)) {
+            return OrgLine.comment(line);
+        } else if (isTimestampLine(line)) {
+            return OrgLine.timestamp(line, getTimestamp(line));
+        } else if (isTimestampRangeLine(line)) {
+            return OrgLine.timestampRange(line, getTimestampRange(line));
+        }
+        return OrgLine.body(line);
+    }
 }
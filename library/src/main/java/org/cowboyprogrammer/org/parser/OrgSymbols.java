@@ -0,0 +1,180 @@
+/*
+ * Copyright (c) Jonas Kalderstam 2014.
+ *
+ * This program is free software: you can redistribute it and/or modify
+ * it under the terms of the GNU General Public License as published by
+ * the Free Software Foundation, either version 3 of the License, or
+ * (at your option) any later version.
+ *
+ * This program is distributed in the hope that it will be useful,
+ * but WITHOUT ANY WARRANTY; without even the implied warranty of
+ * MERCHANTABILITY or FITNESS FOR A PARTICULAR PURPOSE.  See the
+ * GNU General Public License for more details.
+ *
+ * You should have received a copy of the GNU General Public License
+ * along with this program.  If not, see <http://www.gnu.org/licenses/>.
+ */
+
+package org.cowboyprogrammer.org.parser;
+
+/**
+ * A table of tags and TODO keywords, so that every node with the same tag
+ * has the same String instance. A file with thousands of "TODO" headers
+ * then holds one "TODO", and symbols from the same table can be compared
+ * with ==.
+ * <p/>
+ * Each symbol also gets a small id, starting at 0 in the order they are
+ * first seen, which can be used as an index into arrays.
+ * <p/>
+ * The parsers use one table each unless they are given one, so a table
+ * can be shared by all parsers of a corpus. It is safe to use from many
+ * threads, and looking up a symbol which is already in the table takes no
+ * locks. Symbols are never removed.
+ */
+public final class OrgSymbols {
+
+    private static final int INITIAL_CAPACITY = 64;
+
+    // Open addressing, the capacity is a power of two and at most half full
+    private volatile Entry[] table = new Entry[INITIAL_CAPACITY];
+    private volatile String[] symbols = new String[INITIAL_CAPACITY / 2];
+    private int size = 0;
+
+    /**
+     * @return the instance in the table which equals symbol, which is added
+     * if it is not there. Null if symbol is null.
+     */
+    public String intern(final String symbol) {
+        if (symbol == null) {
+            return null;
+        }
+        return intern(symbol, 0, symbol.length());
+    }
+
+    /**
+     * The same as intern(line.substring(start, end)), except that nothing
+     * is copied if the symbol is in the table already.
+     */
+    public String intern(final String line, final int start, final int end) {
+        final int hash = hash(line, start, end);
+        final Entry entry = find(table, line, start, end, hash);
+        if (entry != null) {
+            return entry.symbol;
+        }
+        return add(line, start, end, hash).symbol;
+    }
+
+    /**
+     * @return the id of the symbol, or -1 if it is not in the table
+     */
+    public int getId(final String symbol) {
+        if (symbol == null) {
+            return -1;
+        }
+        final Entry entry = find(table, symbol, 0, symbol.length(),
+                hash(symbol, 0, symbol.length()));
+        return entry == null ? -1 : entry.id;
+    }
+
+    /**
+     * @return the symbol with the id
+     * @throws IndexOutOfBoundsException if there is no such id
+     */
+    public String getSymbol(final int id) {
+        final String[] current = symbols;
+        if (id < 0 || id >= current.length || current[id] == null) {
+            throw new IndexOutOfBoundsException("No symbol with id " + id);
+        }
+        return current[id];
+    }
+
+    /**
+     * @return the number of symbols, which is one more than the largest id
+     */
+    public synchronized int size() {
+        return size;
+    }
+
+    private synchronized Entry add(final String line, final int start, final int end,
+                                   final int hash) {
+        // Might have been added since it was looked for
+        Entry entry = find(table, line, start, end, hash);
+        if (entry != null) {
+            return entry;
+        }
+        if (2 * (size + 1) > table.length) {
+            grow();
+        }
+        final String symbol = start == 0 && end == line.length()
+                ? line : line.substring(start, end);
+        entry = new Entry(symbol, size, hash);
+        symbols[size] = symbol;
+        // Volatile write, so getSymbol sees it once the id is known
+        symbols = symbols;
+        insert(table, entry);
+        size++;
+        return entry;
+    }
+
+    private void grow() {
+        final Entry[] old = table;
+        final Entry[] bigger = new Entry[old.length * 2];
+        for (final Entry entry : old) {
+            if (entry != null) {
+                insert(bigger, entry);
+            }
+        }
+        final String[] moreSymbols = new String[bigger.length / 2];
+        System.arraycopy(symbols, 0, moreSymbols, 0, size);
+        symbols = moreSymbols;
+        table = bigger;
+    }
+
+    private static void insert(final Entry[] table, final Entry entry) {
+        final int mask = table.length - 1;
+        int i = entry.hash & mask;
+        while (table[i] != null) {
+            i = (i + 1) & mask;
+        }
+        table[i] = entry;
+    }
+
+    private static Entry find(final Entry[] table, final String line, final int start,
+                              final int end, final int hash) {
+        final int mask = table.length - 1;
+        int i = hash & mask;
+        Entry entry;
+        while ((entry = table[i]) != null) {
+            if (entry.hash == hash && entry.symbol.length() == end - start
+                    && entry.symbol.regionMatches(0, line, start, end - start)) {
+                return entry;
+            }
+            i = (i + 1) & mask;
+        }
+        return null;
+    }
+
+    /**
+     * Same as String.hashCode of the region, spread over the low bits.
+     */
+    private static int hash(final String line, final int start, final int end) {
+        int h = 0;
+        for (int i = start; i < end; i++) {
+            h = 31 * h + line.charAt(i);
+        }
+        return h ^ (h >>> 16);
+    }
+
+    private static final class Entry {
+        // Final, so an entry seen by another thread is complete
+        final String symbol;
+        final int id;
+        final int hash;
+
+        Entry(final String symbol, final int id, final int hash) {
+            this.symbol = symbol;
+            this.id = id;
+            this.hash = hash;
+        }
+    }
+}
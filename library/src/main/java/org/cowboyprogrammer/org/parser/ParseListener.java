@@ -0,0 +1,65 @@
+/*
+ * Copyright (c) Jonas Kalderstam 2014.
+ *
+ * This program is free software: you can redistribute it and/or modify
+ * it under the terms of the GNU General Public License as published by
+ * the Free Software Foundation, either version 3 of the License, or
+ * (at your option) any later version.
+ *
+ * This program is distributed in the hope that it will be useful,
+ * but WITHOUT ANY WARRANTY; without even the implied warranty of
+ * MERCHANTABILITY or FITNESS FOR A PARTICULAR PURPOSE.  See the
+ * GNU General Public License for more details.
+ *
+ * You should have received a copy of the GNU General Public License
+ * along with this program.  If not, see <http://www.gnu.org/licenses/>.
+ */
+
+package org.cowboyprogrammer.org.parser;
+
+/**
+ * Told about every line as it is parsed, to measure where parsing spends
+ * its time. See {@link ParseStatistics} for one which counts everything,
+ * and {@link OrgEventParser#setParseListener(ParseListener)} for where to
+ * install it.
+ * <p/>
+ * Without a listener, the parser does not even read the clock.
+ */
+public interface ParseListener {
+
+    /**
+     * The parser has found out what kind of line this is. Called before
+     * lineAdded for the same line.
+     *
+     * @param lineNumber index of the line in the file, counting from 0, or
+     *                   -1 if not known
+     * @param line       the line, without ending newline
+     * @param kind       what the line is. Lines which only look like
+     *                   timestamps are BODY.
+     * @param nanos      time it took to classify the line
+     */
+    void lineClassified(int lineNumber, String line, OrgLine.Kind kind, long nanos);
+
+    /**
+     * The line has been added to the tree, or handed to the event handler.
+     *
+     * @param nanos time it took, not counting the classification
+     */
+    void lineAdded(int lineNumber, String line, long nanos);
+
+    /**
+     * A header started a node.
+     *
+     * @param level number of stars
+     * @param depth number of nodes it is nested in, not counting the file.
+     *              1 for a top level node.
+     */
+    void nodeStarted(int level, int depth);
+
+    /**
+     * All lines are parsed.
+     *
+     * @param lines number of lines in the file
+     */
+    void finished(int lines);
+}
@@ -0,0 +1,250 @@
+/*
+ * Copyright (c) Jonas Kalderstam 2014.
+ *
+ * This program is free software: you can redistribute it and/or modify
+ * it under the terms of the GNU General Public License as published by
+ * the Free Software Foundation, either version 3 of the License, or
+ * (at your option) any later version.
+ *
+ * This program is distributed in the hope that it will be useful,
+ * but WITHOUT ANY WARRANTY; without even the implied warranty of
+ * MERCHANTABILITY or FITNESS FOR A PARTICULAR PURPOSE.  See the
+ * GNU General Public License for more details.
+ *
+ * You should have received a copy of the GNU General Public License
+ * along with this program.  If not, see <http://www.gnu.org/licenses/>.
+ */
+
+package org.cowboyprogrammer.org.parser;
+
+import org.cowboyprogrammer.org.util.StringUtils;
+
+import java.util.ArrayList;
+import java.util.Collections;
+import java.util.Comparator;
+import java.util.List;
+import java.util.Locale;
+import java.util.PriorityQueue;
+
+/**
+ * Counts lines, bytes and nodes, and the time spent classifying lines and
+ * building the tree, and keeps the slowest lines. Use one per file:
+ * <pre>
+ * ParseStatistics stats = new ParseStatistics();
+ * OrgFile.createFromBufferedReader(parser, filename, reader, stats);
+ * </pre>
+ * Not thread safe.
+ */
+public class ParseStatistics implements ParseListener {
+
+    private static final int TEXT_LENGTH = 80;
+    private static final Comparator<SlowLine> FASTEST_FIRST = new Comparator<SlowLine>() {
+        @Override
+        public int compare(final SlowLine a, final SlowLine b) {
+            return Long.compare(a.nanos, b.nanos);
+        }
+    };
+
+    private final int slowestCount;
+    private final PriorityQueue<SlowLine> slowest;
+
+    private long lines = 0;
+    private final long[] kinds = new long[OrgLine.Kind.values().length];
+    private long bytes = 0;
+    private long nodes = 0;
+    private int maxDepth = 0;
+    private long classifyNanos = 0;
+    private long addNanos = 0;
+    // Classification time of the line which has not been added yet
+    private long pendingNanos = 0;
+
+    /**
+     * Keeps the 10 slowest lines.
+     */
+    public ParseStatistics() {
+        this(10);
+    }
+
+    /**
+     * @param slowestCount number of slowest lines to keep
+     */
+    public ParseStatistics(final int slowestCount) {
+        if (slowestCount < 0) {
+            throw new IllegalArgumentException("Can't keep a negative number of lines");
+        }
+        this.slowestCount = slowestCount;
+        slowest = new PriorityQueue<SlowLine>(Math.max(1, slowestCount), FASTEST_FIRST);
+    }
+
+    @Override
+    public void lineClassified(final int lineNumber, final String line, final OrgLine.Kind kind,
+                               final long nanos) {
+        lines++;
+        kinds[kind.ordinal()]++;
+        bytes += StringUtils.utf8Length(line) + 1;
+        classifyNanos += nanos;
+        pendingNanos = nanos;
+    }
+
+    @Override
+    public void lineAdded(final int lineNumber, final String line, final long nanos) {
+        addNanos += nanos;
+        final long total = pendingNanos + nanos;
+        pendingNanos = 0;
+        if (slowestCount == 0) {
+            return;
+        }
+        if (slowest.size() < slowestCount) {
+            slowest.add(new SlowLine(lineNumber, line, total));
+        } else if (slowest.peek().nanos < total) {
+            slowest.poll();
+            slowest.add(new SlowLine(lineNumber, line, total));
+        }
+    }
+
+    @Override
+    public void nodeStarted(final int level, final int depth) {
+        nodes++;
+        maxDepth = Math.max(maxDepth, depth);
+    }
+
+    @Override
+    public void finished(final int lines) {
+        // Everything is counted already
+    }
+
+    public long getLines() {
+        return lines;
+    }
+
+    /**
+     * @return the number of lines of the kind
+     */
+    public long getLines(final OrgLine.Kind kind) {
+        return kinds[kind.ordinal()];
+    }
+
+    /**
+     * @return the size of the lines in UTF-8, counting one byte for each
+     * line ending
+     */
+    public long getBytes() {
+        return bytes;
+    }
+
+    /**
+     * @return the number of nodes, not counting the file
+     */
+    public long getNodes() {
+        return nodes;
+    }
+
+    /**
+     * @return the largest number of nodes nested in each other
+     */
+    public int getMaxDepth() {
+        return maxDepth;
+    }
+
+    /**
+     * @return time spent finding out what kind each line is
+     */
+    public long getClassifyNanos() {
+        return classifyNanos;
+    }
+
+    /**
+     * @return time spent adding the lines to the tree
+     */
+    public long getBuildNanos() {
+        return addNanos;
+    }
+
+    public long getTotalNanos() {
+        return classifyNanos + addNanos;
+    }
+
+    /**
+     * @return lines per second of parse time, or 0 if nothing was timed
+     */
+    public double getLinesPerSecond() {
+        return perSecond(lines);
+    }
+
+    /**
+     * @return bytes per second of parse time, or 0 if nothing was timed
+     */
+    public double getBytesPerSecond() {
+        return perSecond(bytes);
+    }
+
+    private double perSecond(final long count) {
+        final long nanos = getTotalNanos();
+        return nanos == 0 ? 0 : count * 1e9 / nanos;
+    }
+
+    /**
+     * @return the slowest lines, slowest first
+     */
+    public List<SlowLine> getSlowestLines() {
+        final List<SlowLine> result = new ArrayList<SlowLine>(slowest);
+        Collections.sort(result, Collections.reverseOrder(FASTEST_FIRST));
+        return result;
+    }
+
+    @Override
+    public String toString() {
+        final StringBuilder sb = new StringBuilder();
+        sb.append(lines).append(" lines (");
+        for (final OrgLine.Kind kind : OrgLine.Kind.values()) {
+            if (kind.ordinal() > 0) {
+                sb.append(", ");
+            }
+            sb.append(kinds[kind.ordinal()]).append(' ').append(kind.name().toLowerCase(Locale.US));
+        }
+        sb.append("), ").append(bytes).append(" bytes, ")
+                .append(nodes).append(" nodes, max depth ").append(maxDepth)
+                .append(", classify ").append(classifyNanos / 1000).append(" us")
+                .append(", build ").append(addNanos / 1000).append(" us");
+        return sb.toString();
+    }
+
+    /**
+     * A line and the time it took to classify and add.
+     */
+    public static class SlowLine {
+        private final int lineNumber;
+        private final String text;
+        private final long nanos;
+
+        SlowLine(final int lineNumber, final String line, final long nanos) {
+            this.lineNumber = lineNumber;
+            // Pathological lines can be very long
+            this.text = line.length() > TEXT_LENGTH ? line.substring(0, TEXT_LENGTH) : line;
+            this.nanos = nanos;
+        }
+
+        /**
+         * @return index of the line, counting from 0, or -1 if not known
+         */
+        public int getLineNumber() {
+            return lineNumber;
+        }
+
+        /**
+         * @return the start of the line
+         */
+        public String getText() {
+            return text;
+        }
+
+        public long getNanos() {
+            return nanos;
+        }
+
+        @Override
+        public String toString() {
+            return lineNumber + ": " + nanos / 1000 + " us: " + text;
+        }
+    }
+}
@@ -22,11 +22,12 @@ import org.cowboyprogrammer.org.OrgTimestamp;
 import org.cowboyprogrammer.org.OrgTimestampRange;
 
 import java.security.InvalidParameterException;
+import java.util.ArrayList;
+import java.util.Collections;
+import java.util.List;
 import java.util.regex.Matcher;
 import java.util.regex.Pattern;
 
-import static org.cowboyprogrammer.org.util.StringUtils.reverse;
-
 
 public class RegexParser implements OrgParser {
 
@@ -59,7 +60,8 @@ public class RegexParser implements OrgParser {
     private final Pattern timestampPattern;
     private final Pattern timestampRangePattern;
     private final Pattern commentPattern;
-    private final Pattern headerRestPattern;
+    private final OrgSymbols symbols;
+    private final List<String> todoKeywords;
 
     /**
      * Get a regular expression pattern that includes all the possible
@@ -88,6 +90,9 @@ public class RegexParser implements OrgParser {
      * I.e., "Title :tag:tag:" --> ":gat:gat: eltiT"
      *
      * Once you've matched, reverse the groups again.
+     * <p/>
+     * The parser itself no longer uses this pattern, it finds the same
+     * title and tags without reversing anything.
      */
     public static Pattern getHeaderRestPattern() {
         final StringBuilder sb = new StringBuilder();
@@ -204,18 +209,54 @@ public class RegexParser implements OrgParser {
             throw new InvalidParameterException("Tag string must" +
                     " start/end with ':'");
         }
+        if (tags.length() == 1) {
+            // Nothing to split
+            return new String[]{""};
+        }
 
-        return tags.substring(1).split(":");
+        return TagScanner.splitTags(tags, 1, tags.length(), null);
     }
 
     public RegexParser(final String... todoKeys) {
+        this(new OrgSymbols(), todoKeys);
+    }
+
+    /**
+     * @param symbols  where tags and TODO keywords are interned, which can be
+     *                 shared with other parsers
+     * @param todoKeys TODO keywords besides TODO and DONE
+     */
+    public RegexParser(final OrgSymbols symbols, final String... todoKeys) {
+        if (symbols == null) {
+            throw new NullPointerException("Not allowed to be null!");
+        }
+        this.symbols = symbols;
+        final List<String> keys = new ArrayList<String>();
+        // Same as in the header pattern
+        keys.add("TODO");
+        keys.add("DONE");
+        for (final String key : todoKeys) {
+            if (!key.isEmpty()) {
+                keys.add(key.toUpperCase());
+            }
+        }
+        todoKeywords = Collections.unmodifiableList(keys);
         headerPattern = getHeaderPattern(todoKeys);
-        headerRestPattern = getHeaderRestPattern();
         timestampPattern = getTimestampPattern();
         timestampRangePattern = getTimestampRangePattern();
         commentPattern = getCommentPrefix();
     }
 
+    @Override
+    public OrgSymbols getSymbols() {
+        return symbols;
+    }
+
+    @Override
+    public List<String> getTodoKeywords() {
+        return todoKeywords;
+    }
+
     @Override
     public boolean isHeaderLine(String line) {
         return headerPattern.matcher(line).matches();
@@ -227,25 +268,27 @@ public class RegexParser implements OrgParser {
      */
     @Override
     public OrgNode createFromHeader(String line) {
-        final OrgNode node = new OrgNode(this);
-
-        Matcher m = headerPattern.matcher(line);
+        final Matcher m = headerPattern.matcher(line);
 
         if (!m.matches()) {
             throw new IllegalArgumentException("String is not of proper format!");
         }
+        return createFromHeader(line, m);
+    }
 
-        node.setLevel(m.group(HEADER_STARS_GROUP).length());
-        node.setTodo(m.group(HEADER_TODO_GROUP));
+    private OrgNode createFromHeader(String line, Matcher m) {
+        final OrgNode node = new OrgNode(this);
 
-        String rest = m.group(HEADER_REST_GROUP);
-        if (rest != null && !rest.isEmpty()) {
-            m = headerRestPattern.matcher(reverse(rest));
+        node.setLevel(m.group(HEADER_STARS_GROUP).length());
+        if (m.start(HEADER_TODO_GROUP) >= 0) {
+            node.setTodo(symbols.intern(line, m.start(HEADER_TODO_GROUP), m.end(HEADER_TODO_GROUP)));
+        }
 
-            if (m.matches()) {
-                node.setTitle(reverse(m.group(HEADER_REST_TITLE_GROUP)));
-                node.addTags(parseTags(reverse(m.group(HEADER_REST_TAGS_GROUP))));
-            }
+        final int restStart = m.start(HEADER_REST_GROUP);
+        final int restEnd = m.end(HEADER_REST_GROUP);
+        if (restStart >= 0 && restStart < restEnd) {
+            // Title and tags are found in place, see getHeaderRestPattern
+            TagScanner.setTitleAndTags(node, line, restStart, restEnd, symbols);
         }
         return node;
     }
@@ -287,6 +330,10 @@ public class RegexParser implements OrgParser {
         if (!m.matches()) {
             throw new IllegalArgumentException("String is not of proper format!");
         }
+        return getTimestamp(m);
+    }
+
+    private static OrgTimestamp getTimestamp(Matcher m) {
         return new OrgTimestamp(m.group(RegexParser.TIMESTAMP_ACTIVE_GROUP),
                 m.group(RegexParser.TIMESTAMP_TYPE_GROUP),
                 m.group(RegexParser.TIMESTAMP_DATE_GROUP),
@@ -306,9 +353,65 @@ public class RegexParser implements OrgParser {
         if (!m.matches()) {
             throw new IllegalArgumentException("String is not of proper format!");
         }
+        return getTimestampRange(m);
+    }
+
+    private static OrgTimestampRange getTimestampRange(Matcher m) {
         return new OrgTimestampRange(m.group(RegexParser.TIMESTAMPRANGE_STARTDATE_GROUP),
                 m.group(RegexParser.TIMESTAMPRANGE_ENDDATE_GROUP),
                 m.group(RegexParser.TIMESTAMPRANGE_STARTTIME_GROUP),
                 m.group(RegexParser.TIMESTAMPRANGE_ENDTIME_GROUP));
     }
+
+    /**
+     * Only runs the one pattern the first character of the line makes
+     * possible, so ordinary body text is never matched against anything.
+     * A line that matches is parsed by createFromHeader, getTimestamp or
+     * getTimestampRange, so that sub classes overriding them are used.
+     *
+     * @param line to parse
+     * @return the line together with its parsed value
+     */
+    @Override
+    public OrgLine classify(String line) {
+        final int n = line.length();
+        if (n == 0) {
+            return OrgLine.body(line);
+        }
+
+        if (line.charAt(0) == '*') {
+            final Matcher m = headerPattern.matcher(line);
+            if (m.matches()) {
+                return OrgLine.header(line, createFromHeader(line));
+            }
+            return OrgLine.body(line);
+        }
+
+        int p = 0;
+        while (p < n && ScannerParser.isSpace(line.charAt(p))) {
+            p++;
+        }
+        if (p == n) {
+            return OrgLine.body(line);
+        }
+
+        final char c = line.charAt(p);
+        if (c == '#') {
+            if (commentPattern.matcher(line).matches()) {
+                return OrgLine.comment(line);
+            }
+        } else if (c == '<' || c == '[' || (p == 0 && (c == 'S' || c == 'D'))) {
+            final Matcher m = timestampPattern.matcher(line);
+            if (m.matches()) {
+                return OrgLine.timestamp(line, getTimestamp(line));
+            }
+            if (c == '<') {
+                final Matcher r = timestampRangePattern.matcher(line);
+                if (r.matches()) {
+                    return OrgLine.timestampRange(line, getTimestampRange(line));
+                }
+            }
+        }
+        return OrgLine.body(line);
+    }
 }
@@ -0,0 +1,650 @@
+/*
+ * Copyright (c) Jonas Kalderstam 2014.
+ *
+ * This program is free software: you can redistribute it and/or modify
+ * it under the terms of the GNU General Public License as published by
+ * the Free Software Foundation, either version 3 of the License, or
+ * (at your option) any later version.
+ *
+ * This program is distributed in the hope that it will be useful,
+ * but WITHOUT ANY WARRANTY; without even the implied warranty of
+ * MERCHANTABILITY or FITNESS FOR A PARTICULAR PURPOSE.  See the
+ * GNU General Public License for more details.
+ *
+ * You should have received a copy of the GNU General Public License
+ * along with this program.  If not, see <http://www.gnu.org/licenses/>.
+ */
+
+package org.cowboyprogrammer.org.parser;
+
+import org.cowboyprogrammer.org.OrgNode;
+import org.cowboyprogrammer.org.OrgTimestamp;
+import org.cowboyprogrammer.org.OrgTimestampRange;
+
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.Collections;
+import java.util.List;
+
+/**
+ * A parser which scans each line character by character instead of running
+ * regular expressions over it. It accepts exactly the same lines as
+ * {@link RegexParser} and produces the same nodes and timestamps, so the two
+ * can be used interchangeably.
+ * <p/>
+ * Instances are immutable and can be shared between threads.
+ */
+public class ScannerParser implements OrgParser {
+
+    private static final String SCHEDULED = "SCHEDULED";
+    private static final String DEADLINE = "DEADLINE";
+    private static final String ACTIVE = "<";
+    private static final String INACTIVE = "[";
+
+    // TODO and DONE first, then the extra keys. Same order as RegexParser.
+    private final String[] todoKeys;
+    private final OrgSymbols symbols;
+
+    public ScannerParser(final String... todoKeys) {
+        this(new OrgSymbols(), todoKeys);
+    }
+
+    /**
+     * @param symbols  where tags and TODO keywords are interned, which can be
+     *                 shared with other parsers
+     * @param todoKeys TODO keywords besides TODO and DONE
+     */
+    public ScannerParser(final OrgSymbols symbols, final String... todoKeys) {
+        if (symbols == null) {
+            throw new NullPointerException("Not allowed to be null!");
+        }
+        this.symbols = symbols;
+        final List<String> keys = new ArrayList<String>();
+        // TODO and DONE hardcoded
+        keys.add("TODO");
+        keys.add("DONE");
+        for (final String key : todoKeys) {
+            if (key.isEmpty()) continue;
+            // Enforce upper case for keys
+            keys.add(key.toUpperCase());
+        }
+        // The keys found in headers are these instances
+        for (int i = 0; i < keys.size(); i++) {
+            keys.set(i, symbols.intern(keys.get(i)));
+        }
+        this.todoKeys = keys.toArray(new String[keys.size()]);
+    }
+
+    @Override
+    public OrgSymbols getSymbols() {
+        return symbols;
+    }
+
+    @Override
+    public List<String> getTodoKeywords() {
+        return Collections.unmodifiableList(Arrays.asList(todoKeys));
+    }
+
+    @Override
+    public boolean isHeaderLine(final String line) {
+        return scanHeader(line, null);
+    }
+
+    /**
+     * @param line to parse
+     * @return OrgNode with parsed values from line. Will have an empty body.
+     */
+    @Override
+    public OrgNode createFromHeader(final String line) {
+        final HeaderMatch m = new HeaderMatch();
+        if (!scanHeader(line, m)) {
+            throw new IllegalArgumentException("String is not of proper format!");
+        }
+        return createFromHeader(line, m);
+    }
+
+    private OrgNode createFromHeader(final String line, final HeaderMatch m) {
+        final OrgNode node = new OrgNode(this);
+        node.setLevel(m.level);
+        node.setTodo(m.todo);
+
+        if (m.restStart >= 0 && m.restStart < m.restEnd) {
+            TagScanner.setTitleAndTags(node, line, m.restStart, m.restEnd, symbols);
+        }
+        return node;
+    }
+
+    @Override
+    public boolean isCommentLine(final String line) {
+        final int n = line.length();
+        int p = skipSpaces(line, 0, n);
+        if (p >= n || line.charAt(p) != '#') {
+            return false;
+        }
+        return isEndOfLine(line, skipToTerminator(line, p + 1, n));
+    }
+
+    @Override
+    public boolean isTimestampLine(final String line) {
+        return scanTimestamp(line, null);
+    }
+
+    @Override
+    public boolean isTimestampRangeLine(final String line) {
+        return scanTimestampRange(line, null);
+    }
+
+    @Override
+    public OrgTimestamp getTimestamp(final String line) {
+        final TimestampMatch m = new TimestampMatch();
+        if (!scanTimestamp(line, m)) {
+            throw new IllegalArgumentException("String is not of proper format!");
+        }
+        return getTimestamp(line, m);
+    }
+
+    private static OrgTimestamp getTimestamp(final String line, final TimestampMatch m) {
+        return new OrgTimestamp(m.inactive ? INACTIVE : ACTIVE,
+                m.type,
+                line.substring(m.date, m.date + 10),
+                m.time < 0 ? null : line.substring(m.time, m.time + 5),
+                m.timeEnd < 0 ? null : line.substring(m.timeEnd, m.timeEnd + 5),
+                m.warning < 0 ? null : line.substring(m.warning, m.warningEnd),
+                m.repeat < 0 ? null : line.substring(m.repeat, m.repeatEnd));
+    }
+
+    @Override
+    public OrgTimestampRange getTimestampRange(final String line) {
+        final RangeMatch m = new RangeMatch();
+        if (!scanTimestampRange(line, m)) {
+            throw new IllegalArgumentException("String is not of proper format!");
+        }
+        return getTimestampRange(line, m);
+    }
+
+    private static OrgTimestampRange getTimestampRange(final String line, final RangeMatch m) {
+        return new OrgTimestampRange(line.substring(m.startDate, m.startDate + 10),
+                line.substring(m.endDate, m.endDate + 10),
+                m.startTime < 0 ? null : line.substring(m.startTime, m.startTime + 5),
+                m.endTime < 0 ? null : line.substring(m.endTime, m.endTime + 5));
+    }
+
+    /**
+     * Decides on the first non-whitespace character which scan, if any,
+     * is worth running.
+     *
+     * @param line to parse
+     * @return the line together with its parsed value
+     */
+    @Override
+    public OrgLine classify(final String line) {
+        final int n = line.length();
+        if (n == 0) {
+            return OrgLine.body(line);
+        }
+
+        if (line.charAt(0) == '*') {
+            final HeaderMatch m = new HeaderMatch();
+            if (scanHeader(line, m)) {
+                return OrgLine.header(line, createFromHeader(line, m));
+            }
+            return OrgLine.body(line);
+        }
+
+        final int p = skipSpaces(line, 0, n);
+        if (p == n) {
+            return OrgLine.body(line);
+        }
+
+        final char c = line.charAt(p);
+        if (c == '#') {
+            if (isCommentLine(line)) {
+                return OrgLine.comment(line);
+            }
+        } else if (c == '<' || c == '[' || (p == 0 && (c == 'S' || c == 'D'))) {
+            final TimestampMatch m = new TimestampMatch();
+            if (scanTimestamp(line, m)) {
+                return OrgLine.timestamp(line, getTimestamp(line, m));
+            }
+            if (c == '<') {
+                final RangeMatch r = new RangeMatch();
+                if (scanTimestampRange(line, r)) {
+                    return OrgLine.timestampRange(line, getTimestampRange(line, r));
+                }
+            }
+        }
+        return OrgLine.body(line);
+    }
+
+    /*
+     * Headers: stars, an optional todo keyword and an optional rest
+     * separated by whitespace.
+     */
+
+    private boolean scanHeader(final String s, final HeaderMatch m) {
+        final int n = s.length();
+        int i = 0;
+        while (i < n && s.charAt(i) == '*') {
+            i++;
+        }
+        if (i == 0) {
+            return false;
+        }
+        if (m != null) {
+            m.level = i;
+        }
+
+        if (i < n && isSpace(s.charAt(i))) {
+            final int k = skipSpaces(s, i, n);
+            for (final String key : todoKeys) {
+                if (!s.startsWith(key, k)) {
+                    continue;
+                }
+                final int after = k + key.length();
+                if (after < n && isSpace(s.charAt(after)) && setRest(s, after + 1, m)) {
+                    if (m != null) m.todo = key;
+                    return true;
+                }
+                if (isEol(s, after)) {
+                    if (m != null) m.todo = key;
+                    return true;
+                }
+            }
+            // No keyword, everything after the first space is the rest
+            if (setRest(s, i + 1, m)) {
+                return true;
+            }
+        }
+        return isEol(s, i);
+    }
+
+    private static boolean setRest(final String s, final int from, final HeaderMatch m) {
+        final int end = skipToTerminator(s, from, s.length());
+        if (!isEol(s, end)) {
+            return false;
+        }
+        if (m != null) {
+            m.restStart = from;
+            m.restEnd = end;
+        }
+        return true;
+    }
+
+    /*
+     * Timestamps: <2013-12-31 Tue 12:21-14:59 ++1w -2d>, optionally
+     * prefixed with SCHEDULED: or DEADLINE:. Each optional part is tried
+     * first with and then without itself, in the same order a regular
+     * expression would backtrack.
+     */
+
+    private boolean scanTimestamp(final String s, final TimestampMatch m) {
+        final int n = s.length();
+        int p = 0;
+        String type = null;
+        if (s.startsWith(SCHEDULED, 0) && s.startsWith(":", SCHEDULED.length())) {
+            type = SCHEDULED;
+            p = SCHEDULED.length() + 1;
+        } else if (s.startsWith(DEADLINE, 0) && s.startsWith(":", DEADLINE.length())) {
+            type = DEADLINE;
+            p = DEADLINE.length() + 1;
+        }
+
+        p = skipSpaces(s, p, n);
+        if (p >= n) {
+            return false;
+        }
+        final char brace = s.charAt(p);
+        if (brace != '<' && brace != '[') {
+            return false;
+        }
+        p++;
+        if (!isDate(s, p)) {
+            return false;
+        }
+        if (m != null) {
+            m.type = type;
+            m.inactive = brace == '[';
+            m.date = p;
+        }
+        p += 10;
+
+        // Optional day name
+        if (p < n && isSpace(s.charAt(p))) {
+            final int q = skipSpaces(s, p, n);
+            for (int d = dayEnd(s, q, n); d > q; d--) {
+                if (timestampAfterDay(s, d, m)) {
+                    return true;
+                }
+            }
+        }
+        return timestampAfterDay(s, p, m);
+    }
+
+    private static boolean timestampAfterDay(final String s, final int p, final TimestampMatch m) {
+        final int n = s.length();
+        if (p < n && isSpace(s.charAt(p))) {
+            final int q = skipSpaces(s, p, n);
+            if (isTime(s, q)) {
+                final int t = q + 5;
+                if (t < n && s.charAt(t) == '-' && isTime(s, t + 1)
+                        && timestampAfterTime(s, t + 6, m)) {
+                    if (m != null) {
+                        m.time = q;
+                        m.timeEnd = t + 1;
+                    }
+                    return true;
+                }
+                if (timestampAfterTime(s, t, m)) {
+                    if (m != null) {
+                        m.time = q;
+                        m.timeEnd = -1;
+                    }
+                    return true;
+                }
+            }
+        }
+        if (timestampAfterTime(s, p, m)) {
+            if (m != null) {
+                m.time = -1;
+                m.timeEnd = -1;
+            }
+            return true;
+        }
+        return false;
+    }
+
+    private static boolean timestampAfterTime(final String s, final int p, final TimestampMatch m) {
+        final int n = s.length();
+        if (p < n && isSpace(s.charAt(p))) {
+            final int q = skipSpaces(s, p, n);
+            final int r = repeatEnd(s, q, n);
+            if (r >= 0 && timestampAfterRepeat(s, r, m)) {
+                if (m != null) {
+                    m.repeat = q;
+                    m.repeatEnd = r;
+                }
+                return true;
+            }
+        }
+        if (timestampAfterRepeat(s, p, m)) {
+            if (m != null) {
+                m.repeat = -1;
+            }
+            return true;
+        }
+        return false;
+    }
+
+    private static boolean timestampAfterRepeat(final String s, final int p, final TimestampMatch m) {
+        final int n = s.length();
+        if (p < n && isSpace(s.charAt(p))) {
+            final int q = skipSpaces(s, p, n);
+            final int w = warningEnd(s, q, n);
+            if (w >= 0 && isTimestampEnd(s, w)) {
+                if (m != null) {
+                    m.warning = q;
+                    m.warningEnd = w;
+                }
+                return true;
+            }
+        }
+        if (isTimestampEnd(s, p)) {
+            if (m != null) {
+                m.warning = -1;
+            }
+            return true;
+        }
+        return false;
+    }
+
+    private static boolean isTimestampEnd(final String s, final int p) {
+        if (p >= s.length()) {
+            return false;
+        }
+        final char c = s.charAt(p);
+        return (c == ']' || c == '>') && isEndOfLine(s, p + 1);
+    }
+
+    /**
+     * [.+]?+\d+[hdwmy], returns end or -1
+     */
+    private static int repeatEnd(final String s, final int q, final int n) {
+        int i = q;
+        if (i + 1 < n && (s.charAt(i) == '.' || s.charAt(i) == '+') && s.charAt(i + 1) == '+') {
+            i += 2;
+        } else if (i < n && s.charAt(i) == '+') {
+            i += 1;
+        } else {
+            return -1;
+        }
+        return unitEnd(s, i, n, "hdwmy");
+    }
+
+    /**
+     * -\d+[dwmy], returns end or -1
+     */
+    private static int warningEnd(final String s, final int q, final int n) {
+        if (q >= n || s.charAt(q) != '-') {
+            return -1;
+        }
+        return unitEnd(s, q + 1, n, "dwmy");
+    }
+
+    private static int unitEnd(final String s, final int start, final int n, final String units) {
+        int i = start;
+        while (i < n && isDigit(s.charAt(i))) {
+            i++;
+        }
+        if (i == start || i >= n || units.indexOf(s.charAt(i)) < 0) {
+            return -1;
+        }
+        return i + 1;
+    }
+
+    /*
+     * Timestamp ranges: <2014-01-28 Tue 10:00>--<2014-02-28 Fri 12:00>
+     */
+
+    private static boolean scanTimestampRange(final String s, final RangeMatch m) {
+        final int n = s.length();
+        int p = skipSpaces(s, 0, n);
+        if (p >= n || s.charAt(p) != '<' || !isDate(s, p + 1)) {
+            return false;
+        }
+        p++;
+        if (m != null) {
+            m.startDate = p;
+        }
+        p += 10;
+
+        if (p < n && isSpace(s.charAt(p))) {
+            final int q = skipSpaces(s, p, n);
+            for (int d = dayEnd(s, q, n); d > q; d--) {
+                if (rangeAfterStartDay(s, d, m)) {
+                    return true;
+                }
+            }
+        }
+        return rangeAfterStartDay(s, p, m);
+    }
+
+    private static boolean rangeAfterStartDay(final String s, final int p, final RangeMatch m) {
+        final int n = s.length();
+        if (p < n && isSpace(s.charAt(p))) {
+            final int q = skipSpaces(s, p, n);
+            if (isTime(s, q) && rangeEnd(s, q + 5, m)) {
+                if (m != null) m.startTime = q;
+                return true;
+            }
+        }
+        if (rangeEnd(s, p, m)) {
+            if (m != null) m.startTime = -1;
+            return true;
+        }
+        return false;
+    }
+
+    private static boolean rangeEnd(final String s, final int start, final RangeMatch m) {
+        final int n = s.length();
+        if (!s.startsWith(">--<", start) || !isDate(s, start + 4)) {
+            return false;
+        }
+        final int p = start + 14;
+        if (m != null) {
+            m.endDate = start + 4;
+        }
+
+        if (p < n && isSpace(s.charAt(p))) {
+            final int q = skipSpaces(s, p, n);
+            for (int d = dayEnd(s, q, n); d > q; d--) {
+                if (rangeAfterEndDay(s, d, m)) {
+                    return true;
+                }
+            }
+        }
+        return rangeAfterEndDay(s, p, m);
+    }
+
+    private static boolean rangeAfterEndDay(final String s, final int p, final RangeMatch m) {
+        final int n = s.length();
+        if (p < n && isSpace(s.charAt(p))) {
+            final int q = skipSpaces(s, p, n);
+            if (isTime(s, q) && isRangeEnd(s, q + 5)) {
+                if (m != null) m.endTime = q;
+                return true;
+            }
+        }
+        if (isRangeEnd(s, p)) {
+            if (m != null) m.endTime = -1;
+            return true;
+        }
+        return false;
+    }
+
+    private static boolean isRangeEnd(final String s, final int p) {
+        return p < s.length() && s.charAt(p) == '>' && isEndOfLine(s, p + 1);
+    }
+
+    /*
+     * Character classes. These follow java.util.regex so that the scanner
+     * accepts the same lines as RegexParser.
+     */
+
+    /**
+     * Same as \s
+     */
+    static boolean isSpace(final char c) {
+        return c == ' ' || c == '\t' || c == '\n' || c == '\u000B' || c == '\f' || c == '\r';
+    }
+
+    /**
+     * Same as \d
+     */
+    static boolean isDigit(final char c) {
+        return c >= '0' && c <= '9';
+    }
+
+    /**
+     * Characters which '.' does not match.
+     */
+    static boolean isTerminator(final char c) {
+        return c == '\n' || c == '\r' || c == '\u0085' || c == '\u2028' || c == '\u2029';
+    }
+
+    static int skipSpaces(final String s, final int from, final int n) {
+        int i = from;
+        while (i < n && isSpace(s.charAt(i))) {
+            i++;
+        }
+        return i;
+    }
+
+    /**
+     * Same as .*
+     */
+    static int skipToTerminator(final String s, final int from, final int n) {
+        int i = from;
+        while (i < n && !isTerminator(s.charAt(i))) {
+            i++;
+        }
+        return i;
+    }
+
+    /**
+     * Same as $ when the whole line has to match.
+     */
+    static boolean isEol(final String s, final int i) {
+        return i == s.length();
+    }
+
+    /**
+     * Same as \s*$
+     */
+    static boolean isEndOfLine(final String s, final int from) {
+        return isEol(s, skipSpaces(s, from, s.length()));
+    }
+
+    /**
+     * End of a day name like "Tue", which is anything but digits and whitespace.
+     */
+    private static int dayEnd(final String s, final int from, final int n) {
+        int i = from;
+        while (i < n && !isDigit(s.charAt(i)) && !isSpace(s.charAt(i))) {
+            i++;
+        }
+        return i;
+    }
+
+    /**
+     * yyyy-MM-dd
+     */
+    static boolean isDate(final String s, final int p) {
+        return p + 10 <= s.length()
+                && isDigit(s.charAt(p)) && isDigit(s.charAt(p + 1))
+                && isDigit(s.charAt(p + 2)) && isDigit(s.charAt(p + 3))
+                && s.charAt(p + 4) == '-'
+                && isDigit(s.charAt(p + 5)) && isDigit(s.charAt(p + 6))
+                && s.charAt(p + 7) == '-'
+                && isDigit(s.charAt(p + 8)) && isDigit(s.charAt(p + 9));
+    }
+
+    /**
+     * HH:mm
+     */
+    static boolean isTime(final String s, final int p) {
+        return p + 5 <= s.length()
+                && isDigit(s.charAt(p)) && isDigit(s.charAt(p + 1))
+                && s.charAt(p + 2) == ':'
+                && isDigit(s.charAt(p + 3)) && isDigit(s.charAt(p + 4));
+    }
+
+    /*
+     * Offsets of the parts found while scanning. -1 means not present.
+     */
+
+    private static final class HeaderMatch {
+        int level;
+        String todo = null;
+        int restStart = -1;
+        int restEnd = -1;
+    }
+
+    private static final class TimestampMatch {
+        String type;
+        boolean inactive;
+        int date;
+        int time = -1;
+        int timeEnd = -1;
+        int repeat = -1;
+        int repeatEnd;
+        int warning = -1;
+        int warningEnd;
+    }
+
+    private static final class RangeMatch {
+        int startDate;
+        int startTime = -1;
+        int endDate;
+        int endTime = -1;
+    }
+}
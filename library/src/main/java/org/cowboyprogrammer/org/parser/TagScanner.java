@@ -0,0 +1,112 @@
+/*
+ * Copyright (c) Jonas Kalderstam 2014.
+ *
+ * This program is free software: you can redistribute it and/or modify
+ * it under the terms of the GNU General Public License as published by
+ * the Free Software Foundation, either version 3 of the License, or
+ * (at your option) any later version.
+ *
+ * This program is distributed in the hope that it will be useful,
+ * but WITHOUT ANY WARRANTY; without even the implied warranty of
+ * MERCHANTABILITY or FITNESS FOR A PARTICULAR PURPOSE.  See the
+ * GNU General Public License for more details.
+ *
+ * You should have received a copy of the GNU General Public License
+ * along with this program.  If not, see <http://www.gnu.org/licenses/>.
+ */
+
+package org.cowboyprogrammer.org.parser;
+
+import org.cowboyprogrammer.org.OrgNode;
+
+import static org.cowboyprogrammer.org.parser.ScannerParser.isSpace;
+
+/**
+ * Finds the title and tags in the rest of a header, like
+ * "Title :tag1:tag2:", in place. Nothing is reversed or copied except
+ * the title and tags themselves.
+ */
+final class TagScanner {
+
+    private TagScanner() {
+    }
+
+    /**
+     * Set title and tags of node from the region [start, end) of line.
+     * <p/>
+     * The tag block has to end with a ':' followed by nothing but
+     * whitespace, and starts at the first ':' on the line. A single
+     * whitespace between title and tags is not part of the title.
+     *
+     * @param symbols where tags are interned, or null to copy them
+     */
+    static void setTitleAndTags(final OrgNode node, final String line, final int start,
+                                final int end, final OrgSymbols symbols) {
+        int e = end;
+        while (e > start && isSpace(line.charAt(e - 1))) {
+            e--;
+        }
+
+        int tagStart = -1;
+        // Need at least ":x:"
+        if (e - start >= 3 && line.charAt(e - 1) == ':') {
+            final int colon = line.indexOf(':', start);
+            if (colon <= e - 3) {
+                tagStart = colon;
+            }
+        }
+
+        if (tagStart < 0) {
+            node.setTitle(line.substring(start, e));
+            return;
+        }
+
+        int titleEnd = tagStart;
+        if (titleEnd > start && isSpace(line.charAt(titleEnd - 1))) {
+            titleEnd--;
+        }
+        node.setTitle(line.substring(start, titleEnd));
+        node.addTags(splitTags(line, tagStart + 1, e, symbols));
+    }
+
+    /**
+     * Same as String.split(":") on the region [start, end) of line, which
+     * means trailing empty tags are dropped.
+     *
+     * @param symbols where tags are interned, or null to copy them
+     */
+    static String[] splitTags(final String line, final int start, final int end,
+                              final OrgSymbols symbols) {
+        int e = end;
+        while (e > start && line.charAt(e - 1) == ':') {
+            e--;
+        }
+        if (e == start) {
+            return new String[0];
+        }
+
+        int count = 1;
+        for (int i = start; i < e; i++) {
+            if (line.charAt(i) == ':') {
+                count++;
+            }
+        }
+
+        final String[] tags = new String[count];
+        int from = start;
+        int t = 0;
+        for (int i = start; i < e; i++) {
+            if (line.charAt(i) == ':') {
+                tags[t++] = symbol(line, from, i, symbols);
+                from = i + 1;
+            }
+        }
+        tags[t] = symbol(line, from, e, symbols);
+        return tags;
+    }
+
+    private static String symbol(final String line, final int start, final int end,
+                                 final OrgSymbols symbols) {
+        return symbols == null ? line.substring(start, end) : symbols.intern(line, start, end);
+    }
+}
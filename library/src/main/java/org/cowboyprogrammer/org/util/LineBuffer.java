@@ -0,0 +1,131 @@
+package org.cowboyprogrammer.org.util;
+
+
+import java.io.IOException;
+import java.util.ArrayList;
+import java.util.Collections;
+import java.util.List;
+
+/**
+ * Text which is built one line at a time. Appending is O(1) and the
+ * full String is only created when somebody asks for it, and then cached
+ * until the next change.
+ */
+public final class LineBuffer {
+
+    private final List<String> lines = new ArrayList<String>();
+    // False if the text does not end with a newline, then the last line
+    // is not complete
+    private boolean terminated = true;
+    // True if the text consists only of whitespace
+    private boolean blank = true;
+    // Cached text, null when it has to be rebuilt
+    private String text = "";
+
+    /**
+     * Add a line and a newline.
+     *
+     * @param line like "text", without ending newline
+     */
+    public void append(final String line) {
+        if (line.indexOf('\n') >= 0) {
+            // Keep one entry per line
+            set(toString() + line + "\n");
+            return;
+        }
+
+        if (!terminated && !lines.isEmpty()) {
+            final int last = lines.size() - 1;
+            lines.set(last, lines.get(last) + line);
+        } else {
+            lines.add(line);
+        }
+        terminated = true;
+        blank = blank && StringUtils.isBlank(line);
+        text = null;
+    }
+
+    /**
+     * Replace the contents with the given text. It does not have to end
+     * with a newline.
+     */
+    public void set(final String text) {
+        lines.clear();
+        int from = 0;
+        int newline;
+        while ((newline = text.indexOf('\n', from)) >= 0) {
+            lines.add(text.substring(from, newline));
+            from = newline + 1;
+        }
+        terminated = from == text.length();
+        if (!terminated) {
+            lines.add(text.substring(from));
+        }
+        blank = StringUtils.isBlank(text);
+        this.text = text;
+    }
+
+    public void clear() {
+        lines.clear();
+        terminated = true;
+        blank = true;
+        text = "";
+    }
+
+    public boolean isEmpty() {
+        return lines.isEmpty();
+    }
+
+    /**
+     * True if the text is empty or only contains whitespace.
+     */
+    public boolean isBlank() {
+        return blank;
+    }
+
+    /**
+     * The lines of the text, without newlines.
+     */
+    public List<String> getLines() {
+        return Collections.unmodifiableList(lines);
+    }
+
+    /**
+     * Append the full text to out, without creating it as a String first.
+     */
+    public void appendTo(final Appendable out) throws IOException {
+        if (text != null) {
+            out.append(text);
+            return;
+        }
+        final int last = lines.size() - 1;
+        for (int i = 0; i <= last; i++) {
+            out.append(lines.get(i));
+            if (i < last || terminated) {
+                out.append('\n');
+            }
+        }
+    }
+
+    /**
+     * The full text, where each line ends with a newline.
+     */
+    @Override
+    public String toString() {
+        if (text == null) {
+            int length = 0;
+            for (final String line : lines) {
+                length += line.length() + 1;
+            }
+            final StringBuilder sb = new StringBuilder(length);
+            for (final String line : lines) {
+                sb.append(line).append('\n');
+            }
+            if (!terminated) {
+                sb.setLength(sb.length() - 1);
+            }
+            text = sb.toString();
+        }
+        return text;
+    }
+}
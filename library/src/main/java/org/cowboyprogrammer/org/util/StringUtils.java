@@ -15,4 +15,49 @@ public class StringUtils {
         }
         return new StringBuilder(text).reverse().toString();
     }
+
+    /**
+     * Same as matching "\\s*", but without a regular expression.
+     *
+     * @param text like " \t"
+     * @return true if text is empty or only contains whitespace
+     */
+    public static boolean isBlank(final CharSequence text) {
+        for (int i = 0; i < text.length(); i++) {
+            switch (text.charAt(i)) {
+                case ' ':
+                case '\t':
+                case '\n':
+                case '\u000B':
+                case '\f':
+                case '\r':
+                    break;
+                default:
+                    return false;
+            }
+        }
+        return true;
+    }
+
+    /**
+     * Bytes of a line in UTF-8, without the line ending.
+     */
+    public static int utf8Length(final String line) {
+        int length = 0;
+        for (int i = 0; i < line.length(); i++) {
+            final char c = line.charAt(i);
+            if (c < 0x80) {
+                length += 1;
+            } else if (c < 0x800) {
+                length += 2;
+            } else if (Character.isHighSurrogate(c)) {
+                // Both halves together
+                length += 4;
+                i++;
+            } else {
+                length += 3;
+            }
+        }
+        return length;
+    }
 }
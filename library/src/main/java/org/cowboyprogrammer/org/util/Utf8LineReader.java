@@ -0,0 +1,137 @@
+package org.cowboyprogrammer.org.util;
+
+
+import java.io.Closeable;
+import java.io.IOException;
+import java.nio.ByteBuffer;
+import java.nio.channels.ReadableByteChannel;
+import java.nio.charset.Charset;
+
+/**
+ * Reads UTF-8 lines from a channel in large chunks. Line boundaries are
+ * found among the raw bytes, which is safe since '\n' and '\r' never
+ * occur inside a multi-byte UTF-8 sequence, and each line is decoded
+ * exactly once.
+ * <p/>
+ * Lines end the same way as for {@link java.io.BufferedReader#readLine()}:
+ * with "\n", "\r" or "\r\n".
+ */
+public final class Utf8LineReader implements Closeable {
+
+    public static final int DEFAULT_BUFFER_SIZE = 1 << 16;
+
+    private static final Charset UTF8 = Charset.forName("UTF-8");
+
+    private final ReadableByteChannel channel;
+    private final byte[] buf;
+    private final ByteBuffer buffer;
+    private int pos = 0;
+    private int limit = 0;
+    private boolean eof = false;
+    // True if the last line ended with '\r' so a following '\n' belongs to it
+    private boolean skipNewline = false;
+
+    // Start of a line which did not fit in the rest of the buffer
+    private byte[] partial = new byte[256];
+    private int partialLength = 0;
+
+    public Utf8LineReader(final ReadableByteChannel channel) {
+        this(channel, DEFAULT_BUFFER_SIZE);
+    }
+
+    public Utf8LineReader(final ReadableByteChannel channel, final int bufferSize) {
+        if (channel == null) {
+            throw new NullPointerException("Not allowed to be null!");
+        }
+        if (bufferSize < 1) {
+            throw new IllegalArgumentException("Buffer size must be positive");
+        }
+        this.channel = channel;
+        this.buf = new byte[bufferSize];
+        this.buffer = ByteBuffer.wrap(buf);
+    }
+
+    /**
+     * @return the next line without its line ending, or null at the end of
+     * the input
+     */
+    public String readLine() throws IOException {
+        while (true) {
+            if (pos == limit && !fill()) {
+                if (partialLength == 0) {
+                    return null;
+                }
+                final String line = new String(partial, 0, partialLength, UTF8);
+                partialLength = 0;
+                return line;
+            }
+
+            if (skipNewline) {
+                skipNewline = false;
+                if (buf[pos] == '\n') {
+                    pos++;
+                    continue;
+                }
+            }
+
+            int i = pos;
+            while (i < limit && buf[i] != '\n' && buf[i] != '\r') {
+                i++;
+            }
+
+            if (i == limit) {
+                // No line ending in the buffer, keep what we have
+                appendPartial(pos, limit - pos);
+                pos = limit;
+                continue;
+            }
+
+            final String line;
+            if (partialLength == 0) {
+                line = new String(buf, pos, i - pos, UTF8);
+            } else {
+                appendPartial(pos, i - pos);
+                line = new String(partial, 0, partialLength, UTF8);
+                partialLength = 0;
+            }
+            skipNewline = buf[i] == '\r';
+            pos = i + 1;
+            return line;
+        }
+    }
+
+    private boolean fill() throws IOException {
+        if (eof) {
+            return false;
+        }
+        int read;
+        do {
+            buffer.clear();
+            read = channel.read(buffer);
+        } while (read == 0);
+
+        if (read < 0) {
+            eof = true;
+            pos = limit = 0;
+            return false;
+        }
+        pos = 0;
+        limit = read;
+        return true;
+    }
+
+    private void appendPartial(final int from, final int length) {
+        if (partialLength + length > partial.length) {
+            final byte[] bigger = new byte[Math.max(partial.length * 2, partialLength + length)];
+            System.arraycopy(partial, 0, bigger, 0, partialLength);
+            partial = bigger;
+        }
+        System.arraycopy(buf, from, partial, partialLength, length);
+        partialLength += length;
+    }
+
+    @Override
+    public void close() throws IOException {
+        channel.close();
+    }
+}
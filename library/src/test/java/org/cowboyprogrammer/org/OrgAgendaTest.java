@@ -0,0 +1,219 @@
+/*
+ * Copyright (c) Jonas Kalderstam 2015.
+ *
+ * This program is free software: you can redistribute it and/or modify
+ * it under the terms of the GNU General Public License as published by
+ * the Free Software Foundation, either version 3 of the License, or
+ * (at your option) any later version.
+ *
+ * This program is distributed in the hope that it will be useful,
+ * but WITHOUT ANY WARRANTY; without even the implied warranty of
+ * MERCHANTABILITY or FITNESS FOR A PARTICULAR PURPOSE.  See the
+ * GNU General Public License for more details.
+ *
+ * You should have received a copy of the GNU General Public License
+ * along with this program.  If not, see <http://www.gnu.org/licenses/>.
+ */
+
+package org.cowboyprogrammer.org;
+
+import org.cowboyprogrammer.org.parser.ScannerParser;
+import org.joda.time.DateTimeUtils;
+import org.joda.time.LocalDate;
+import org.joda.time.LocalDateTime;
+import org.junit.Test;
+
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.Iterator;
+import java.util.List;
+import java.util.Random;
+
+import static org.junit.Assert.assertEquals;
+import static org.junit.Assert.assertNull;
+
+public class OrgAgendaTest {
+
+    private static final String CONTENT = "* Meeting\n" +
+            "<2014-03-04 Tue 10:00-11:00>\n" +
+            "* Report\n" +
+            "DEADLINE: <2014-03-10 Mon -3d>\n" +
+            "** Draft\n" +
+            "SCHEDULED: <2014-03-05 Wed>\n" +
+            "* Conference\n" +
+            "<2014-03-06 Thu>--<2014-03-08 Sat>\n" +
+            "* Gym\n" +
+            "<2014-01-02 Thu 18:00 +1w>\n" +
+            "* Rent\n" +
+            "DEADLINE: <2014-01-31 Fri +1m>\n";
+
+    private static List<String> describe(final List<OrgAgenda.Item> items) {
+        final List<String> result = new ArrayList<String>();
+        for (final OrgAgenda.Item item : items) {
+            result.add(item.getNode().getTitle() + " " + item.getDate());
+        }
+        return result;
+    }
+
+    private static List<String> describe(final List<OrgAgenda.Item> items, final String title) {
+        final List<String> result = new ArrayList<String>();
+        for (final String item : describe(items)) {
+            if (item.startsWith(title + " ")) {
+                result.add(item);
+            }
+        }
+        return result;
+    }
+
+    private static OrgAgenda agenda() throws Exception {
+        return new OrgAgenda(OrgFile.createFromString(new ScannerParser(), "agenda.org", CONTENT));
+    }
+
+    @Test
+    public void testDay() throws Exception {
+        final OrgAgenda agenda = agenda();
+        assertEquals(6, agenda.size());
+        assertEquals("[Meeting 2014-03-04T10:00:00.000]",
+                describe(agenda.getItems(new LocalDate(2014, 3, 4))).toString());
+        assertEquals("[Draft 2014-03-05T00:00:00.000]",
+                describe(agenda.getItems(new LocalDate(2014, 3, 5))).toString());
+        // In the warning period of the deadline
+        assertEquals("[Conference 2014-03-06T00:00:00.000, Report 2014-03-10T00:00:00.000]",
+                describe(agenda.getItems(new LocalDate(2014, 3, 7))).toString());
+        assertEquals("[]", describe(agenda.getItems(new LocalDate(2014, 3, 11))).toString());
+    }
+
+    @Test
+    public void testTime() throws Exception {
+        final OrgAgenda agenda = agenda();
+        assertEquals("[Meeting 2014-03-04T10:00:00.000]", describe(agenda.getItems(
+                new LocalDateTime(2014, 3, 4, 10, 30), new LocalDateTime(2014, 3, 4, 12, 0))).toString());
+        assertEquals("[]", describe(agenda.getItems(
+                new LocalDateTime(2014, 3, 4, 11, 1), new LocalDateTime(2014, 3, 4, 12, 0))).toString());
+    }
+
+    @Test
+    public void testRepeating() throws Exception {
+        final OrgAgenda agenda = agenda();
+        final List<OrgAgenda.Item> week = agenda.getItems(new LocalDate(2014, 3, 3), new LocalDate(2014, 3, 9));
+        assertEquals("[Meeting 2014-03-04T10:00:00.000, Draft 2014-03-05T00:00:00.000, " +
+                "Conference 2014-03-06T00:00:00.000, Gym 2014-03-06T18:00:00.000, " +
+                "Report 2014-03-10T00:00:00.000]", describe(week).toString());
+        assertEquals(OrgTimestamp.Type.PLAIN, week.get(2).getType());
+        assertNull(week.get(2).getTimestamp());
+        assertEquals(OrgTimestamp.Type.DEADLINE, week.get(4).getType());
+
+        // Not moved by shorter months
+        assertEquals("[Rent 2014-02-28T00:00:00.000, Rent 2014-03-31T00:00:00.000, " +
+                        "Rent 2014-04-30T00:00:00.000, Rent 2014-05-31T00:00:00.000]",
+                describe(agenda.getItems(new LocalDate(2014, 2, 1), new LocalDate(2014, 5, 31)), "Rent")
+                        .toString());
+
+        // Far in the future
+        assertEquals("[Gym 2024-01-04T18:00:00.000]",
+                describe(agenda.getItems(new LocalDate(2024, 1, 4))).toString());
+        // Not before it starts
+        assertEquals("[]", describe(agenda.getItems(new LocalDate(2013, 12, 26))).toString());
+    }
+
+    @Test(timeout = 1000)
+    public void testZeroRepeater() throws Exception {
+        final OrgAgenda agenda = new OrgAgenda(OrgFile.createFromString(new ScannerParser(), "zero.org",
+                "* Never moves\n<2014-01-01 Wed +0d>\n"));
+        assertEquals("[Never moves 2014-01-01T00:00:00.000]",
+                describe(agenda.getItems(new LocalDate(2013, 1, 1), new LocalDate(2015, 1, 1))).toString());
+    }
+
+    private static DateTimeUtils.MillisProvider clockAt(final LocalDateTime now) {
+        final long millis = now.toDateTime().getMillis();
+        return new DateTimeUtils.MillisProvider() {
+            @Override
+            public long getMillis() {
+                return millis;
+            }
+        };
+    }
+
+    @Test
+    public void testFromToday() throws Exception {
+        final OrgFile orgfile = OrgFile.createFromString(new ScannerParser(), "today.org",
+                "* Water plants\n<2014-01-31 Fri 18:00 .+1w>\n");
+        final OrgTimestamp ts = orgfile.getSubNodes().get(0).getTimestamps().get(0);
+        final OrgAgenda agenda = new OrgAgenda(orgfile);
+        final LocalDateTime from = new LocalDateTime(2014, 1, 1, 0, 0);
+        final LocalDateTime to = new LocalDateTime(2014, 6, 30, 0, 0);
+
+        // The date, then every week from today at the time of the timestamp
+        final DateTimeUtils.MillisProvider clock = clockAt(new LocalDateTime(2014, 5, 20, 12, 34));
+        final List<LocalDateTime> dates = new ArrayList<LocalDateTime>();
+        for (final OrgAgenda.Item item : agenda.getItems(from, to, clock)) {
+            dates.add(item.getDate());
+        }
+        assertEquals(Arrays.asList(new LocalDateTime(2014, 1, 31, 18, 0),
+                new LocalDateTime(2014, 5, 27, 18, 0), new LocalDateTime(2014, 6, 3, 18, 0),
+                new LocalDateTime(2014, 6, 10, 18, 0), new LocalDateTime(2014, 6, 17, 18, 0),
+                new LocalDateTime(2014, 6, 24, 18, 0)), dates);
+        assertEquals(dates, list(ts.getOccurrences(from, to, clock)));
+
+        // Before the date, every week from the date
+        final DateTimeUtils.MillisProvider early = clockAt(new LocalDateTime(2014, 1, 10, 12, 34));
+        final List<OrgAgenda.Item> items = agenda.getItems(from, to, early);
+        assertEquals(22, items.size());
+        for (final OrgAgenda.Item item : items) {
+            assertEquals(18, item.getDate().getHourOfDay());
+        }
+        final List<LocalDateTime> all = list(ts.getOccurrences(from, to, early));
+        assertEquals(items.size(), all.size());
+        for (int i = 0; i < all.size(); i++) {
+            assertEquals(all.get(i), items.get(i).getDate());
+        }
+    }
+
+    private static List<LocalDateTime> list(final Iterator<LocalDateTime> it) {
+        final List<LocalDateTime> result = new ArrayList<LocalDateTime>();
+        while (it.hasNext()) {
+            result.add(it.next());
+        }
+        return result;
+    }
+
+    @Test
+    public void testSameAsScan() throws Exception {
+        final Random random = new Random(3);
+        final StringBuilder sb = new StringBuilder();
+        for (int i = 0; i < 500; i++) {
+            final LocalDate date = new LocalDate(2014, 1, 1).plusDays(random.nextInt(365));
+            sb.append("* Node ").append(i).append('\n');
+            if (random.nextBoolean()) {
+                sb.append('<').append(date).append('>');
+            } else {
+                sb.append('<').append(date).append(">--<")
+                        .append(date.plusDays(random.nextInt(40))).append('>');
+            }
+            sb.append('\n');
+        }
+        final OrgFile orgfile = OrgFile.createFromString(new ScannerParser(), "random.org", sb.toString());
+        final OrgAgenda agenda = new OrgAgenda(orgfile);
+
+        for (int i = 0; i < 100; i++) {
+            final LocalDate first = new LocalDate(2014, 1, 1).plusDays(random.nextInt(400));
+            final LocalDate last = first.plusDays(random.nextInt(10));
+            int expected = 0;
+            for (final OrgNode node : orgfile.getSubNodes()) {
+                for (final OrgTimestamp ts : node.getTimestamps()) {
+                    final LocalDate date = ts.getDate().toLocalDate();
+                    if (!date.isBefore(first) && !date.isAfter(last)) {
+                        expected++;
+                    }
+                }
+                for (final OrgTimestampRange range : node.getTimestampRanges()) {
+                    if (!range.getStartdate().toLocalDate().isAfter(last)
+                            && !range.getEnddate().toLocalDate().isBefore(first)) {
+                        expected++;
+                    }
+                }
+            }
+            assertEquals(expected, agenda.getItems(first, last).size());
+        }
+    }
+}
@@ -0,0 +1,155 @@
+/*
+ * Copyright (c) Jonas Kalderstam 2015.
+ *
+ * This program is free software: you can redistribute it and/or modify
+ * it under the terms of the GNU General Public License as published by
+ * the Free Software Foundation, either version 3 of the License, or
+ * (at your option) any later version.
+ *
+ * This program is distributed in the hope that it will be useful,
+ * but WITHOUT ANY WARRANTY; without even the implied warranty of
+ * MERCHANTABILITY or FITNESS FOR A PARTICULAR PURPOSE.  See the
+ * GNU General Public License for more details.
+ *
+ * You should have received a copy of the GNU General Public License
+ * along with this program.  If not, see <http://www.gnu.org/licenses/>.
+ */
+package org.cowboyprogrammer.org;
+
+import org.cowboyprogrammer.org.parser.OrgParser;
+import org.cowboyprogrammer.org.parser.ScannerParser;
+import org.joda.time.LocalDateTime;
+import org.junit.Test;
+
+import java.io.BufferedReader;
+import java.io.StringReader;
+import java.util.Arrays;
+import java.util.Collections;
+
+import static org.junit.Assert.assertEquals;
+import static org.junit.Assert.assertFalse;
+import static org.junit.Assert.assertNotSame;
+import static org.junit.Assert.assertNull;
+import static org.junit.Assert.assertSame;
+import static org.junit.Assert.assertTrue;
+
+public class OrgCompactFileTest {
+
+    private static final String CONTENT = "#+TITLE: Notes\n" +
+            "Before the first header\n" +
+            "* TODO Project :work:\n" +
+            "# a comment\n" +
+            "SCHEDULED: <2014-03-05 Wed>\n" +
+            "Some text\n" +
+            "\n" +
+            "** DONE Task :home:\n" +
+            "<2014-03-06 Thu>--<2014-03-08 Sat>\n" +
+            "*** Deep\n" +
+            "* Other\n" +
+            "  indented\n";
+
+    private static OrgCompactFile read(final OrgParser parser, final String content) throws Exception {
+        return OrgCompactFile.createFromBufferedReader(parser, "test.org",
+                new BufferedReader(new StringReader(content)));
+    }
+
+    @Test
+    public void testSameAsOrgFile() throws Exception {
+        final OrgFile orgfile = OrgFile.createFromString(new ScannerParser(), "test.org", CONTENT);
+        final OrgCompactFile compact = read(new ScannerParser(), CONTENT);
+        assertEquals(orgfile.treeToString(), compact.treeToString());
+        assertEquals(orgfile.treeToString(), OrgCompactFile.fromOrgFile(orgfile).treeToString());
+        assertEquals(orgfile.treeToString(), compact.toOrgFile().treeToString());
+        assertEquals("test.org", compact.getFilename());
+    }
+
+    @Test
+    public void testNodes() throws Exception {
+        final OrgCompactFile compact = read(new ScannerParser(), CONTENT);
+        assertEquals(5, compact.size());
+
+        final OrgCompactFile.Node root = compact.getRoot();
+        assertEquals(0, root.getLevel());
+        assertNull(root.getParent());
+        assertEquals("#+TITLE: Notes\n", root.getComments());
+        assertEquals("Before the first header\n", root.getBody());
+        assertEquals(2, root.getSubNodes().size());
+
+        final OrgCompactFile.Node project = root.getSubNodes().get(0);
+        assertEquals("TODO", project.getTodo());
+        assertEquals("Project", project.getTitle());
+        assertEquals(Collections.singletonList("work"), project.getTags());
+        assertEquals("# a comment\n", project.getComments());
+        assertEquals("Some text\n", project.getBody());
+        assertEquals(Collections.singletonList("Some text"), project.getBodyLines());
+        assertEquals(OrgTimestamp.Type.SCHEDULED, project.getTimestamps().get(0).getType());
+        assertEquals(root, project.getParent());
+
+        final OrgCompactFile.Node task = compact.getNode(2);
+        assertEquals(1, task.getTimestampRanges().size());
+        assertTrue(task.getTimestamps().isEmpty());
+        assertEquals(Arrays.asList("home", "work"), task.getAllTags());
+        assertTrue(task.hasTag("home"));
+        assertFalse(task.hasTag("work"));
+        assertEquals("** DONE Task :home:", task.getOrgHeader());
+
+        final OrgCompactFile.Node deep = compact.getNode(3);
+        assertEquals(3, deep.getLevel());
+        assertEquals(Arrays.asList("home", "work"), deep.getAllTags());
+        assertEquals(task, deep.getParent());
+        assertEquals("*** Deep\n", deep.treeToString());
+    }
+
+    @Test
+    public void testSymbols() throws Exception {
+        final ScannerParser parser = new ScannerParser();
+        final OrgCompactFile compact = read(parser, CONTENT);
+        assertSame(parser.getSymbols(), compact.getSymbols());
+        assertEquals(parser.getSymbols().getId("TODO"), compact.getNode(1).getTodoId());
+        assertEquals(-1, compact.getNode(3).getTodoId());
+    }
+
+    @Test
+    public void testToOrgNode() throws Exception {
+        final OrgCompactFile compact = read(new ScannerParser(), CONTENT);
+        final OrgNode task = compact.getNode(2).toOrgNode();
+        assertEquals("** DONE Task :home:\n<2014-03-06 Thu>--<2014-03-08 Sat>\n\n*** Deep\n",
+                task.treeToString());
+        assertNull(task.getParent());
+        assertFalse(task.isDirty());
+        assertSame(task, task.getSubNodes().get(0).getParent());
+
+        // Not connected to the compact file
+        final String before = compact.treeToString();
+        task.setTitle("Changed");
+        assertEquals("Task", compact.getNode(2).getTitle());
+        assertTrue(compact.getRoot().toOrgNode() instanceof OrgFile);
+
+        // Nor are its timestamps and ranges, or those of other copies
+        final OrgNode project = compact.getNode(1).toOrgNode();
+        final OrgNode other = compact.getNode(1).toOrgNode();
+        final OrgTimestamp ts = project.getTimestamps().get(0);
+        ts.setRepeat("+1w");
+        ts.toNextRepeat();
+        assertEquals(new LocalDateTime(2014, 3, 12, 0, 0), ts.getDate());
+        task.getTimestampRanges().get(0).setEnddate(new LocalDateTime(2014, 3, 9, 0, 0), false);
+        assertEquals(before, compact.treeToString());
+        assertEquals(new LocalDateTime(2014, 3, 5, 0, 0), other.getTimestamps().get(0).getDate());
+        assertNull(other.getTimestamps().get(0).getRepeat());
+
+        project.clearDirty();
+        assertFalse(ts.isDirty());
+        assertNotSame(ts, compact.getNode(1).getTimestamps().get(0));
+
+        // Nor is a compact file made from a tree
+        final OrgFile orgfile = compact.toOrgFile();
+        final OrgCompactFile fromTree = OrgCompactFile.fromOrgFile(orgfile);
+        orgfile.getSubNodes().get(0).getTimestamps().get(0).setRepeat("+1d");
+        assertEquals(before, fromTree.treeToString());
+    }
+
+    @Test(expected = IndexOutOfBoundsException.class)
+    public void testNoSuchNode() throws Exception {
+        read(new ScannerParser(), CONTENT).getNode(5);
+    }
+}
@@ -0,0 +1,146 @@
+/*
+ * Copyright (c) 2015. Jonas Kalderstam
+ *
+ * This program is free software: you can redistribute it and/or modify
+ * it under the terms of the GNU General Public License as published by
+ * the Free Software Foundation, either version 3 of the License, or
+ * (at your option) any later version.
+ *
+ * This program is distributed in the hope that it will be useful,
+ * but WITHOUT ANY WARRANTY; without even the implied warranty of
+ * MERCHANTABILITY or FITNESS FOR A PARTICULAR PURPOSE.  See the
+ * GNU General Public License for more details.
+ *
+ * You should have received a copy of the GNU General Public License
+ * along with this program.  If not, see <http://www.gnu.org/licenses/>.
+ */
+
+package org.cowboyprogrammer.org;
+
+import org.cowboyprogrammer.org.parser.RegexParser;
+import org.junit.Test;
+
+import java.io.File;
+import java.io.FileWriter;
+import java.io.IOException;
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.nio.file.Paths;
+import java.util.List;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.Executors;
+
+import static org.junit.Assert.assertEquals;
+import static org.junit.Assert.assertFalse;
+import static org.junit.Assert.assertNull;
+import static org.junit.Assert.assertTrue;
+import static org.junit.Assume.assumeTrue;
+
+public class OrgCorpusTest {
+
+    private static void write(final Path path, final String content) throws Exception {
+        Files.createDirectories(path.getParent());
+        final FileWriter writer = new FileWriter(path.toFile());
+        writer.write(content);
+        writer.close();
+    }
+
+    private static Path createCorpus() throws Exception {
+        final Path dir = Files.createTempDirectory("corpus");
+        for (int i = 0; i < 30; i++) {
+            write(dir.resolve("sub" + (i % 3)).resolve("file" + i + ".org"), "* Node " + i + "\nbody\n");
+        }
+        write(dir.resolve("broken.org"), "* Bad\n<2014-13-13>\n");
+        write(dir.resolve("notes.txt"), "* Not org\n");
+        return dir;
+    }
+
+    private static void delete(final File file) {
+        final File[] children = file.listFiles();
+        if (children != null) {
+            for (final File child : children) {
+                delete(child);
+            }
+        }
+        file.delete();
+    }
+
+    @Test
+    public void testLoad() throws Exception {
+        final Path dir = createCorpus();
+        try {
+            final OrgCorpus corpus = OrgCorpus.load(new RegexParser(), dir, 4);
+            assertEquals(dir, corpus.getRoot());
+            assertEquals(31, corpus.getEntries().size());
+            assertEquals(30, corpus.getFiles().size());
+
+            final List<OrgCorpus.Entry> failures = corpus.getFailures();
+            assertEquals(1, failures.size());
+            assertEquals(dir.resolve("broken.org"), failures.get(0).getPath());
+            assertNull(failures.get(0).getFile());
+            assertTrue(failures.get(0).getError() instanceof IllegalArgumentException);
+
+            // Sorted by path
+            for (int i = 1; i < corpus.getEntries().size(); i++) {
+                assertTrue(corpus.getEntries().get(i - 1).getPath()
+                        .compareTo(corpus.getEntries().get(i).getPath()) < 0);
+            }
+            for (final OrgCorpus.Entry entry : corpus.getEntries()) {
+                if (entry.getFile() != null) {
+                    assertEquals(entry.getPath().getFileName().toString(), entry.getFile().getFilename());
+                }
+            }
+        } finally {
+            delete(dir.toFile());
+        }
+    }
+
+    @Test
+    public void testSameOrderWithAnyExecutor() throws Exception {
+        final Path dir = createCorpus();
+        final ExecutorService executor = Executors.newCachedThreadPool();
+        try {
+            final OrgCorpus serial = OrgCorpus.load(new RegexParser(), dir, 1);
+            final OrgCorpus parallel = OrgCorpus.load(new RegexParser(), dir, executor);
+            assertEquals(serial.getEntries().size(), parallel.getEntries().size());
+            for (int i = 0; i < serial.getEntries().size(); i++) {
+                assertEquals(serial.getEntries().get(i).getPath(), parallel.getEntries().get(i).getPath());
+            }
+            assertFalse("Executor belongs to caller", executor.isShutdown());
+        } finally {
+            executor.shutdown();
+            delete(dir.toFile());
+        }
+    }
+
+    @Test
+    public void testUnreadableDirectory() throws Exception {
+        final Path dir = createCorpus();
+        final File locked = dir.resolve("sub1").toFile();
+        try {
+            locked.setReadable(false, false);
+            locked.setExecutable(false, false);
+            // Not for root
+            assumeTrue(locked.list() == null);
+
+            final OrgCorpus corpus = OrgCorpus.load(new RegexParser(), dir, 4);
+            assertEquals(22, corpus.getEntries().size());
+            assertEquals(20, corpus.getFiles().size());
+            final List<OrgCorpus.Entry> failures = corpus.getFailures();
+            assertEquals(2, failures.size());
+            assertEquals(dir.resolve("broken.org"), failures.get(0).getPath());
+            assertEquals(dir.resolve("sub1"), failures.get(1).getPath());
+            assertNull(failures.get(1).getFile());
+            assertTrue(failures.get(1).getError() instanceof IOException);
+        } finally {
+            locked.setReadable(true, false);
+            locked.setExecutable(true, false);
+            delete(dir.toFile());
+        }
+    }
+
+    @Test(expected = IllegalArgumentException.class)
+    public void testNoThreads() throws Exception {
+        OrgCorpus.load(new RegexParser(), Paths.get("unused"), 0);
+    }
+}
@@ -0,0 +1,153 @@
+/*
+ * Copyright (c) Jonas Kalderstam 2015.
+ *
+ * This program is free software: you can redistribute it and/or modify
+ * it under the terms of the GNU General Public License as published by
+ * the Free Software Foundation, either version 3 of the License, or
+ * (at your option) any later version.
+ *
+ * This program is distributed in the hope that it will be useful,
+ * but WITHOUT ANY WARRANTY; without even the implied warranty of
+ * MERCHANTABILITY or FITNESS FOR A PARTICULAR PURPOSE.  See the
+ * GNU General Public License for more details.
+ *
+ * You should have received a copy of the GNU General Public License
+ * along with this program.  If not, see <http://www.gnu.org/licenses/>.
+ */
+
+package org.cowboyprogrammer.org;
+
+import jdk.jfr.Recording;
+import jdk.jfr.consumer.RecordedEvent;
+import jdk.jfr.consumer.RecordingFile;
+import org.cowboyprogrammer.org.parser.ScannerParser;
+import org.joda.time.LocalDate;
+import org.joda.time.LocalDateTime;
+import org.junit.Test;
+
+import java.io.BufferedWriter;
+import java.io.File;
+import java.io.StringWriter;
+import java.time.Duration;
+import java.util.ArrayList;
+import java.util.List;
+
+import static org.junit.Assert.assertEquals;
+import static org.junit.Assert.assertNull;
+import static org.junit.Assert.assertTrue;
+
+public class OrgEventsTest {
+
+    private static final String CONTENT = "Before \u00e5\n" +
+            "* TODO First :work:\n" +
+            "SCHEDULED: <2014-03-05 Wed>\n" +
+            "** Second\n" +
+            "* Gym\n" +
+            "<2014-01-02 Thu 18:00 +1w>\n";
+
+    private static List<RecordedEvent> record(final String name, final Runnable work)
+            throws Exception {
+        final File file = File.createTempFile("orgevents", ".jfr");
+        try {
+            final Recording recording = new Recording();
+            recording.enable(name).withThreshold(Duration.ZERO);
+            recording.start();
+            work.run();
+            recording.stop();
+            recording.dump(file.toPath());
+            recording.close();
+
+            final List<RecordedEvent> result = new ArrayList<RecordedEvent>();
+            for (final RecordedEvent event : RecordingFile.readAllEvents(file.toPath())) {
+                if (event.getEventType().getName().equals(name)) {
+                    result.add(event);
+                }
+            }
+            return result;
+        } finally {
+            file.delete();
+        }
+    }
+
+    private static OrgFile parse() {
+        try {
+            return OrgFile.createFromString(new ScannerParser(), "events.org", CONTENT);
+        } catch (Exception e) {
+            throw new IllegalStateException(e);
+        }
+    }
+
+    @Test
+    public void testParse() throws Exception {
+        final List<RecordedEvent> events = record("org.cowboyprogrammer.org.Parse", new Runnable() {
+            @Override
+            public void run() {
+                parse();
+            }
+        });
+        assertEquals(1, events.size());
+        final RecordedEvent event = events.get(0);
+        assertEquals("events.org", event.getString("file"));
+        // The a with a ring is two bytes
+        assertEquals(CONTENT.length() + 1, event.getLong("bytes"));
+        assertEquals(6, event.getInt("lines"));
+        assertEquals(3, event.getInt("nodes"));
+    }
+
+    @Test
+    public void testWrite() throws Exception {
+        final OrgFile orgfile = parse();
+        final StringWriter writer = new StringWriter();
+        final List<RecordedEvent> events = record("org.cowboyprogrammer.org.Write", new Runnable() {
+            @Override
+            public void run() {
+                try {
+                    orgfile.getSubNodes().get(0).treeToString();
+                    final BufferedWriter bw = new BufferedWriter(writer);
+                    orgfile.writeToBuffer(bw);
+                    bw.flush();
+                } catch (Exception e) {
+                    throw new IllegalStateException(e);
+                }
+            }
+        });
+        assertEquals(2, events.size());
+        assertEquals("events.org", events.get(0).getString("file"));
+        assertEquals("First", events.get(0).getString("title"));
+        assertEquals(orgfile.getSubNodes().get(0).treeToString().length(),
+                events.get(0).getLong("characters"));
+        assertEquals("events.org", events.get(1).getString("file"));
+        assertNull(events.get(1).getString("title"));
+        assertEquals(writer.toString().length(), events.get(1).getLong("characters"));
+        assertTrue(events.get(1).getDuration().toNanos() >= 0);
+    }
+
+    @Test
+    public void testRepetitionsAndAgenda() throws Exception {
+        final OrgFile orgfile = parse();
+        final OrgTimestamp gym = orgfile.getSubNodes().get(1).getTimestamps().get(0);
+        final List<RecordedEvent> repetitions = record("org.cowboyprogrammer.org.Repetitions",
+                new Runnable() {
+                    @Override
+                    public void run() {
+                        OrgTimestamp.repetitionsUntil(gym.getDate(), gym.getRepeatPeriod(),
+                                new LocalDateTime(2015, 1, 1, 0, 0));
+                    }
+                });
+        assertEquals(1, repetitions.size());
+        assertEquals(52, repetitions.get(0).getLong("repetitions"));
+        assertEquals(gym.getDate().toString(), repetitions.get(0).getString("date"));
+
+        final OrgAgenda agenda = new OrgAgenda(orgfile);
+        final List<RecordedEvent> queries = record("org.cowboyprogrammer.org.Agenda", new Runnable() {
+            @Override
+            public void run() {
+                agenda.getItems(new LocalDate(2014, 3, 3), new LocalDate(2014, 3, 9));
+            }
+        });
+        assertEquals(1, queries.size());
+        // The draft and one gym
+        assertEquals(2, queries.get(0).getInt("items"));
+        assertEquals(1, queries.get(0).getInt("repeating"));
+    }
+}
@@ -0,0 +1,194 @@
+/*
+ * Copyright (c) 2015. Jonas Kalderstam
+ *
+ * This program is free software: you can redistribute it and/or modify
+ * it under the terms of the GNU General Public License as published by
+ * the Free Software Foundation, either version 3 of the License, or
+ * (at your option) any later version.
+ *
+ * This program is distributed in the hope that it will be useful,
+ * but WITHOUT ANY WARRANTY; without even the implied warranty of
+ * MERCHANTABILITY or FITNESS FOR A PARTICULAR PURPOSE.  See the
+ * GNU General Public License for more details.
+ *
+ * You should have received a copy of the GNU General Public License
+ * along with this program.  If not, see <http://www.gnu.org/licenses/>.
+ */
+
+package org.cowboyprogrammer.org;
+
+import org.cowboyprogrammer.org.parser.RegexParser;
+import org.cowboyprogrammer.org.parser.ScannerParser;
+import org.junit.Test;
+
+import java.io.ByteArrayInputStream;
+import java.io.DataInputStream;
+import java.io.File;
+import java.io.FileOutputStream;
+import java.io.FileWriter;
+import java.io.IOException;
+import java.io.OutputStream;
+import java.nio.file.Files;
+import java.util.Arrays;
+import java.util.Locale;
+
+import static org.junit.Assert.assertEquals;
+import static org.junit.Assert.assertFalse;
+import static org.junit.Assert.assertNotSame;
+import static org.junit.Assert.assertTrue;
+
+public class OrgFileCacheTest {
+
+    private static final String CONTENT = "#+TAGS: a b\n" +
+            "file body\n" +
+            "* TODO First :a:b:\n" +
+            "SCHEDULED: <2013-12-31 Tue 12:21-14:59 ++1w -2d>\n" +
+            "[2014-02-26 Wed]\n" +
+            "<2012-02-17 Fri>--<2013-05-24 Fri>\n" +
+            "Body of first\n" +
+            "** DONE Child\n" +
+            "# comment\n" +
+            "<2013-08-23 Fri 00:34>--<2013-08-23 Fri 08:24>\n" +
+            "* Second\n";
+
+    private static File write(final File file, final String content) throws IOException {
+        final FileWriter writer = new FileWriter(file);
+        writer.write(content);
+        writer.close();
+        return file;
+    }
+
+    private static void assertSameTree(final OrgFile expected, final OrgFile actual) {
+        assertEquals(expected.getFilename(), actual.getFilename());
+        assertEquals(expected.treeToString(), actual.treeToString());
+        final OrgNode first = actual.getSubNodes().get(0);
+        final OrgTimestamp ts = first.getTimestamps().get(0);
+        final OrgTimestamp original = expected.getSubNodes().get(0).getTimestamps().get(0);
+        assertEquals(original.toString(Locale.ENGLISH), ts.toString(Locale.ENGLISH));
+        assertEquals(original.getDate(), ts.getDate());
+        assertEquals(original.getEndTime(), ts.getEndTime());
+        assertEquals(original.getRepeatPeriod(), ts.getRepeatPeriod());
+        assertEquals(original.getWarningPeriod(), ts.getWarningPeriod());
+        assertEquals(actual, first.getParent());
+        assertEquals(first, first.getSubNodes().get(0).getParent());
+    }
+
+    @Test
+    public void testCached() throws Exception {
+        final File dir = Files.createTempDirectory("cache").toFile();
+        final File file = write(File.createTempFile("cached", ".org", dir), CONTENT);
+        final OrgFileCache cache = new OrgFileCache(new RegexParser(), new File(dir, "cache"));
+        final OrgFile parsed = OrgFile.createFromFile(new RegexParser(), file);
+
+        final OrgFile first = cache.load(file);
+        assertSameTree(parsed, first);
+        final File entry = cache.getEntry(file.getAbsoluteFile());
+        assertTrue(entry.isFile());
+
+        final OrgFile second = cache.load(file);
+        assertNotSame(first, second);
+        assertSameTree(parsed, second);
+
+        // Line counts survive, so edits work
+        second.applyEdit(Arrays.asList(CONTENT.replace("Body of first", "Changed").split("\n")), 6, 1, 1);
+        assertEquals("Changed\n", second.getSubNodes().get(0).getBody());
+    }
+
+    @Test
+    public void testChangedFile() throws Exception {
+        final File dir = Files.createTempDirectory("cache").toFile();
+        final File file = write(File.createTempFile("changed", ".org", dir), CONTENT);
+        final OrgFileCache cache = new OrgFileCache(new RegexParser(), new File(dir, "cache"));
+        cache.load(file);
+
+        final long modified = file.lastModified();
+        write(file, CONTENT.replace("Second", "Other!"));
+        file.setLastModified(modified + 2000);
+        assertEquals("Other!", cache.load(file).getSubNodes().get(1).getTitle());
+    }
+
+    @Test
+    public void testVerifyContent() throws Exception {
+        final File dir = Files.createTempDirectory("cache").toFile();
+        final File file = write(File.createTempFile("verify", ".org", dir), CONTENT);
+        final OrgFileCache cache = new OrgFileCache(new RegexParser(), new File(dir, "cache"), true);
+        cache.load(file);
+
+        // Same length and time, different content
+        final long modified = file.lastModified();
+        write(file, CONTENT.replace("Second", "Other!"));
+        file.setLastModified(modified);
+        assertEquals("Other!", cache.load(file).getSubNodes().get(1).getTitle());
+
+        // Without checking the content, the old tree is used
+        final OrgFileCache unverified = new OrgFileCache(new RegexParser(), new File(dir, "cache2"));
+        unverified.load(file);
+        write(file, CONTENT);
+        file.setLastModified(modified);
+        assertEquals("Other!", unverified.load(file).getSubNodes().get(1).getTitle());
+    }
+
+    @Test
+    public void testBrokenEntry() throws Exception {
+        final File dir = Files.createTempDirectory("cache").toFile();
+        final File file = write(File.createTempFile("broken", ".org", dir), CONTENT);
+        final OrgFileCache cache = new OrgFileCache(new RegexParser(), new File(dir, "cache"));
+        cache.load(file);
+
+        final File entry = cache.getEntry(file.getAbsoluteFile());
+        final byte[] bytes = Files.readAllBytes(entry.toPath());
+        final OutputStream out = new FileOutputStream(entry);
+        out.write(bytes, 0, bytes.length / 2);
+        out.close();
+
+        assertSameTree(OrgFile.createFromFile(new RegexParser(), file), cache.load(file));
+        assertTrue(cache.invalidate(file));
+        assertFalse(entry.exists());
+    }
+
+    @Test
+    public void testBrokenHashLength() throws Exception {
+        final File dir = Files.createTempDirectory("cache").toFile();
+        final File file = write(File.createTempFile("broken", ".org", dir), CONTENT);
+        final OrgFileCache cache = new OrgFileCache(new RegexParser(), new File(dir, "cache"));
+        cache.load(file);
+
+        // Skip the header up to the length of the hash
+        final File entry = cache.getEntry(file.getAbsoluteFile());
+        final byte[] bytes = Files.readAllBytes(entry.toPath());
+        final DataInputStream in = new DataInputStream(new ByteArrayInputStream(bytes));
+        in.readInt();
+        in.readInt();
+        in.readUTF();
+        in.readUTF();
+        in.readLong();
+        in.readLong();
+        final int offset = bytes.length - in.available();
+        bytes[offset] = 0x7f;
+        bytes[offset + 1] = (byte) 0xff;
+        bytes[offset + 2] = (byte) 0xff;
+        bytes[offset + 3] = (byte) 0xff;
+        Files.write(entry.toPath(), bytes);
+
+        assertSameTree(OrgFile.createFromFile(new RegexParser(), file), cache.load(file));
+    }
+
+    @Test
+    public void testOtherParser() throws Exception {
+        final File dir = Files.createTempDirectory("cache").toFile();
+        final File file = write(File.createTempFile("parser", ".org", dir), "* WAIT foo\n");
+        final File cacheDir = new File(dir, "cache");
+        assertEquals("WAIT foo", new OrgFileCache(new RegexParser(), cacheDir).load(file)
+                .getSubNodes().get(0).getTitle());
+
+        // Other keywords
+        final OrgNode wait = new OrgFileCache(new RegexParser("WAIT"), cacheDir).load(file)
+                .getSubNodes().get(0);
+        assertEquals("WAIT", wait.getTodo());
+        assertEquals("foo", wait.getTitle());
+
+        // Another kind of parser, with the same keywords
+        assertTrue(new OrgFileCache(new ScannerParser("WAIT"), cacheDir).load(file)
+                .getSubNodes().get(0).getParser() instanceof ScannerParser);
+    }
+}
@@ -0,0 +1,242 @@
+/*
+ * Copyright (c) Jonas Kalderstam 2015.
+ *
+ * This program is free software: you can redistribute it and/or modify
+ * it under the terms of the GNU General Public License as published by
+ * the Free Software Foundation, either version 3 of the License, or
+ * (at your option) any later version.
+ *
+ * This program is distributed in the hope that it will be useful,
+ * but WITHOUT ANY WARRANTY; without even the implied warranty of
+ * MERCHANTABILITY or FITNESS FOR A PARTICULAR PURPOSE.  See the
+ * GNU General Public License for more details.
+ *
+ * You should have received a copy of the GNU General Public License
+ * along with this program.  If not, see <http://www.gnu.org/licenses/>.
+ */
+
+package org.cowboyprogrammer.org;
+
+import org.cowboyprogrammer.org.parser.RegexParser;
+import org.cowboyprogrammer.org.parser.ScannerParser;
+import org.junit.Test;
+
+import java.io.IOException;
+import java.nio.channels.FileChannel;
+import java.nio.charset.Charset;
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.nio.file.StandardOpenOption;
+import java.util.concurrent.ForkJoinPool;
+
+import static org.junit.Assert.assertEquals;
+import static org.junit.Assert.assertFalse;
+import static org.junit.Assert.assertTrue;
+import static org.junit.Assert.fail;
+
+public class OrgFilePatcherTest {
+
+    private static final Charset UTF8 = Charset.forName("UTF-8");
+
+    // Line endings which are not kept when a node is written again
+    private static final String CONTENT = "#+TAGS: a b\r\n" +
+            "* TODO First      :a:\r\n" +
+            "SCHEDULED: <2013-12-31 Tue +1w>\r\n" +
+            "Body of first\r\n" +
+            "\r\n" +
+            "** Child        :b:\r\n" +
+            "child body\r\n" +
+            "* Second      :a:\r\n" +
+            "* Third      :b:\r\n" +
+            "last line";
+
+    private static Path write(final String content) throws IOException {
+        final Path path = Files.createTempFile("patch", ".org");
+        Files.write(path, content.getBytes(UTF8));
+        return path;
+    }
+
+    private static String read(final Path path) throws IOException {
+        return new String(Files.readAllBytes(path), UTF8);
+    }
+
+    private static OrgFile parse(final Path path) throws Exception {
+        return OrgFile.createFromPath(new RegexParser(), path);
+    }
+
+    @Test
+    public void testNotDirtyAfterParse() throws Exception {
+        final OrgFile orgfile = parse(write(CONTENT));
+        assertFalse(orgfile.isDirty());
+        final OrgNode first = orgfile.getSubNodes().get(0);
+        assertFalse(first.isDirty());
+        assertFalse(first.getSubNodes().get(0).isDirty());
+
+        first.getTimestamps().get(0).toNextRepeat();
+        assertTrue(first.isDirty());
+        assertFalse(orgfile.isDirty());
+
+        final OrgNode second = orgfile.getSubNodes().get(1);
+        second.setTitle("Changed");
+        assertTrue(second.isDirty());
+
+        final OrgNode third = orgfile.getSubNodes().get(2);
+        third.getTags().clear();
+        assertFalse(third.isDirty());
+        third.markDirty();
+        assertTrue(third.isDirty());
+
+        // Read trees are as they were written
+        final OrgFile read = OrgTreeReader.fromBytes(new RegexParser(), OrgTreeWriter.toBytes(orgfile));
+        assertFalse(read.getSubNodes().get(0).isDirty());
+        assertFalse(read.getSubNodes().get(1).isDirty());
+    }
+
+    @Test
+    public void testNothingChanged() throws Exception {
+        final Path path = write(CONTENT);
+        parse(path).saveChanges(path);
+        assertEquals(CONTENT, read(path));
+    }
+
+    @Test
+    public void testOneChanged() throws Exception {
+        final Path path = write(CONTENT);
+        final OrgFile orgfile = parse(path);
+        orgfile.getSubNodes().get(1).setTodo("DONE");
+        orgfile.saveChanges(path);
+
+        assertEquals(CONTENT.replace("* Second      :a:\r\n", "* DONE Second      :a:\n\n"), read(path));
+        assertEquals(orgfile.treeToString(), parse(path).treeToString());
+    }
+
+    @Test
+    public void testTimestampChanged() throws Exception {
+        final Path path = write(CONTENT);
+        final OrgFile orgfile = parse(path);
+        orgfile.getSubNodes().get(0).getTimestamps().get(0).toNextRepeat();
+        orgfile.saveChanges(path);
+
+        final String saved = read(path);
+        assertTrue(saved, saved.contains("<2014-01-07 Tue +1w>"));
+        assertTrue(saved, saved.contains("** Child        :b:\r\n"));
+        assertEquals(orgfile.treeToString(), parse(path).treeToString());
+    }
+
+    @Test
+    public void testSaveAgain() throws Exception {
+        final Path path = write(CONTENT);
+        final OrgFile orgfile = parse(path);
+        final OrgNode child = orgfile.getSubNodes().get(0).getSubNodes().get(0);
+        child.setBody("new body\n");
+        orgfile.saveChanges(path);
+        assertFalse(child.isDirty());
+
+        // Lines of the saved file
+        orgfile.getSubNodes().get(2).setTitle("Changed");
+        orgfile.saveChanges(path);
+
+        final String expected = CONTENT
+                .replace("** Child        :b:\r\nchild body\r\n", "** Child        :b:\nnew body\n\n")
+                .replace("* Third      :b:\r\nlast line", "* Changed :b:\nlast line\n");
+        assertEquals(expected, read(path));
+        final OrgFile parsed = parse(path);
+        assertEquals(orgfile.treeToString(), parsed.treeToString());
+        assertEquals(parsed.subtreeLines, orgfile.subtreeLines);
+
+        // And edits still work
+        orgfile.getSubNodes().get(1).setTodo("TODO");
+        orgfile.saveChanges(path);
+        assertEquals(expected.replace("* Second      :a:\r\n", "* TODO Second      :a:\n\n"), read(path));
+    }
+
+    @Test
+    public void testAddAndRemove() throws Exception {
+        final Path path = write(CONTENT);
+        final OrgFile orgfile = parse(path);
+        final OrgNode removed = orgfile.getSubNodes().remove(1);
+        final OrgNode added = new OrgNode(orgfile.getParser());
+        added.setLevel(1);
+        added.setTitle("Added");
+        added.setParent(orgfile);
+        orgfile.getSubNodes().add(added);
+        // Clean, but somewhere else
+        orgfile.getSubNodes().add(1, removed);
+        orgfile.getSubNodes().remove(0);
+        orgfile.saveChanges(path);
+
+        assertEquals("#+TAGS: a b\r\n" +
+                "* Second      :a:\r\n" +
+                "* Third      :b:\r\n" +
+                "last line\n" +
+                "* Added\n", read(path));
+        assertEquals(orgfile.treeToString(), parse(path).treeToString());
+    }
+
+    @Test
+    public void testAfterApplyEdit() throws Exception {
+        final Path path = write(CONTENT);
+        final OrgFile orgfile = parse(path);
+        final String edited = CONTENT.replace("child body", "edited body");
+        orgfile.applyEdit(java.util.Arrays.asList(edited.split("\r\n")), 6, 1, 1);
+        orgfile.saveChanges(path);
+
+        assertEquals(CONTENT.replace("** Child        :b:\r\nchild body\r\n", "** Child        :b:\nedited body\n\n"),
+                read(path));
+    }
+
+    @Test
+    public void testParallelRead() throws Exception {
+        final StringBuilder sb = new StringBuilder();
+        for (int i = 0; i < 100; i++) {
+            sb.append("* Node ").append(i).append("    :tag:\n").append("body ").append(i).append('\n');
+        }
+        final Path path = write(sb.toString());
+        final FileChannel channel = FileChannel.open(path, StandardOpenOption.READ);
+        final OrgFile orgfile;
+        try {
+            orgfile = ParallelOrgFileReader.read(new ScannerParser(), "patch.org", channel,
+                    ForkJoinPool.commonPool(), 200);
+        } finally {
+            channel.close();
+        }
+        orgfile.getSubNodes().get(50).setTodo("TODO");
+        orgfile.saveChanges(path);
+
+        assertEquals(sb.toString().replace("* Node 50    :tag:\nbody 50\n", "* TODO Node 50    :tag:\nbody 50\n\n"), read(path));
+    }
+
+    @Test
+    public void testLossless() throws Exception {
+        final String content = "* TODO First\n<2013-12-31>\n\n\n* Second\n<2014-01-01>\n";
+        final Path path = write(content);
+        final OrgFile orgfile = OrgFile.createFromPath(new RegexParser(), path, true);
+        orgfile.getSubNodes().get(0).setTodo("DONE");
+        orgfile.getSubNodes().get(1).setTitle("Changed");
+        orgfile.saveChanges(path);
+
+        final String expected = "* DONE First\n<2013-12-31>\n\n\n* Changed\n<2014-01-01>\n";
+        assertEquals(expected, read(path));
+        assertEquals(expected, orgfile.treeToString());
+
+        orgfile.getSubNodes().get(1).setBody("body\n");
+        orgfile.saveChanges(path);
+        assertEquals(orgfile.treeToString(), read(path));
+    }
+
+    @Test
+    public void testFileChanged() throws Exception {
+        final Path path = write(CONTENT);
+        final OrgFile orgfile = parse(path);
+        orgfile.getSubNodes().get(0).setTodo(null);
+        Files.write(path, "* Shorter\n".getBytes(UTF8));
+        try {
+            orgfile.saveChanges(path);
+            fail("File has fewer lines");
+        } catch (IOException e) {
+            // Expected
+        }
+        assertEquals("* Shorter\n", read(path));
+        assertTrue(orgfile.getSubNodes().get(0).isDirty());
+    }
+}
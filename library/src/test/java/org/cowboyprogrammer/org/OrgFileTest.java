@@ -17,15 +17,25 @@
 
 package org.cowboyprogrammer.org;
 
+import org.cowboyprogrammer.org.parser.OrgParser;
 import org.cowboyprogrammer.org.parser.RegexParser;
 import org.junit.Test;
 
+import java.io.BufferedReader;
 import java.io.BufferedWriter;
 import java.io.File;
+import java.io.FileOutputStream;
 import java.io.FileWriter;
 import java.io.IOException;
+import java.io.OutputStream;
+import java.io.StringReader;
+import java.io.StringWriter;
 import java.util.Collection;
 
+import static org.junit.Assert.assertEquals;
+import static org.junit.Assert.assertFalse;
+import static org.junit.Assert.assertTrue;
+
 public class OrgFileTest {
     private static final String TESTFILEPATH = "test.org";
 
@@ -64,6 +74,174 @@ public class OrgFileTest {
         writeToFile(File.createTempFile("test-out", ".org"), root);
     }
 
+    @Test
+    public void testCreateFromPath() throws Exception {
+        final File file = getFile(TESTFILEPATH);
+        final OrgFile expected = OrgFile.createFromFile(new RegexParser(), file);
+        final OrgFile actual = OrgFile.createFromPath(new RegexParser(), file.toPath());
+
+        assertEquals(expected.getFilename(), actual.getFilename());
+        assertEquals(expected.treeToString(), actual.treeToString());
+    }
+
+    @Test
+    public void testCreateFromPathUtf8() throws Exception {
+        final File file = File.createTempFile("test-utf8", ".org");
+        file.deleteOnExit();
+        final String content = "# Kommentar\r\n* TODO R\u00e4ksm\u00f6rg\u00e5s :\u00e5:\u00f6:\r\nBr\u00f6dtext \u2603\n\n* \u00c4rende 2\rSista";
+        final OutputStream out = new FileOutputStream(file);
+        out.write(content.getBytes("UTF-8"));
+        out.close();
+
+        final OrgFile expected = OrgFile.createFromString(new RegexParser(), file.getName(), content);
+        final OrgFile actual = OrgFile.createFromPath(new RegexParser(), file.toPath());
+
+        assertEquals(expected.treeToString(), actual.treeToString());
+        assertEquals("R\u00e4ksm\u00f6rg\u00e5s", actual.getSubNodes().get(0).getTitle());
+        assertEquals("Sista\n", actual.getSubNodes().get(1).getBody());
+    }
+
+    @Test
+    public void testWriteTo() throws Exception {
+        final OrgFile root = OrgFile.createFromFile(new RegexParser(), getFile(TESTFILEPATH));
+        final StringWriter writer = new StringWriter();
+        root.writeTo(writer);
+        assertEquals(root.treeToString(), writer.toString());
+
+        final OrgNode node = root.getSubNodes().get(0);
+        final StringBuilder sb = new StringBuilder();
+        node.writeTo(sb);
+        final StringBuilder expected = new StringBuilder();
+        node.treeToString(expected);
+        assertEquals(expected.toString(), sb.toString());
+        assertEquals(node.toString(), node.getOrgHeader() + node.getOrgBody());
+    }
+
+    private static class MyNode extends OrgNode {
+        MyNode(final OrgParser parser) {
+            super(parser);
+        }
+    }
+
+    @Test
+    public void testParserNodes() throws Exception {
+        final RegexParser parser = new RegexParser() {
+            @Override
+            public OrgNode createFromHeader(final String line) {
+                final OrgNode parsed = super.createFromHeader(line);
+                final OrgNode node = new MyNode(this);
+                node.setLevel(parsed.getLevel());
+                node.setTodo(parsed.getTodo());
+                node.setTitle(parsed.getTitle());
+                node.getTags().addAll(parsed.getTags());
+                return node;
+            }
+        };
+        final String content = "Intro\n\n* TODO First :a:\nbody\n\n** Second\n";
+        final OrgFile orgfile = OrgFile.createFromString(parser, "mine.org", content);
+        final OrgNode first = orgfile.getSubNodes().get(0);
+        assertTrue(first instanceof MyNode);
+        assertTrue(first.getSubNodes().get(0) instanceof MyNode);
+        assertEquals(content, orgfile.treeToString());
+        assertFalse(first.isDirty());
+    }
+
+    private static OrgNode add(final OrgNode parent, final OrgNode child, final String title) {
+        child.setLevel(parent.getLevel() + 1);
+        child.setTitle(title);
+        child.setParent(parent);
+        parent.getSubNodes().add(child);
+        return child;
+    }
+
+    @Test
+    public void testWriteToHooks() throws Exception {
+        final RegexParser parser = new RegexParser();
+        final OrgFile root = OrgFile.createFromString(parser, "hooks.org", "");
+        final OrgNode loud = add(root, new OrgNode(parser) {
+            @Override
+            protected void getHeaderString(final StringBuilder sb) {
+                sb.append("* ").append(getTitle().toUpperCase()).append('\n');
+            }
+        }, "loud");
+        add(loud, new OrgNode(parser) {
+            @Override
+            public String getOrgBody() {
+                return "quiet\n";
+            }
+        }, "child");
+        final OrgNode folded = add(root, new OrgNode(parser) {
+            @Override
+            protected void treeToString(final StringBuilder sb) {
+                toString(sb);
+                sb.append("...\n");
+            }
+        }, "folded");
+        add(folded, new OrgNode(parser), "hidden");
+        add(root, new OrgNode(parser) {
+            @Override
+            protected void toString(final StringBuilder sb) {
+                super.toString(sb);
+                sb.append("last\n");
+            }
+        }, "last");
+
+        final String expected = "\n* LOUD\n\n** child\nquiet\n\n* folded\n...\n\n* last\nlast\n";
+        assertEquals(expected, root.treeToString());
+        final StringWriter writer = new StringWriter();
+        root.writeTo(writer);
+        assertEquals(expected, writer.toString());
+        assertEquals("* folded\n...\n", folded.treeToString());
+    }
+
+    @Test
+    public void testLossless() throws Exception {
+        // Neither the dates nor the blank lines survive a normal write
+        final String content = "#+TITLE: lossless\n" +
+                "\n" +
+                "* TODO First   :a:\n" +
+                "\n" +
+                "SCHEDULED: <2013-12-31>\n" +
+                "<2014-01-01>--<2014-01-02>\n" +
+                "Body\n" +
+                "** Child\n" +
+                "\n" +
+                "\n" +
+                "* Second\n" +
+                "<2014-02-28>\n";
+        final OrgFile root = OrgFile.createFromBufferedReader(new RegexParser(), "lossless.org",
+                new BufferedReader(new StringReader(content)), true);
+        assertEquals(content, root.treeToString());
+        final OrgFile normal = OrgFile.createFromString(new RegexParser(), "normal.org", content);
+        assertEquals(normal.treeToString(), OrgFile.createFromString(new RegexParser(), "again.org",
+                root.treeToString()).treeToString());
+
+        // Only the header is written again
+        final OrgNode first = root.getSubNodes().get(0);
+        first.setTodo("DONE");
+        assertEquals(content.replace("* TODO First", "* DONE First"), root.treeToString());
+
+        // The whole node is
+        final OrgNode second = root.getSubNodes().get(1);
+        second.getTimestamps().get(0).setInactive(true);
+        assertEquals(content.replace("* TODO First", "* DONE First")
+                .replace("<2014-02-28>\n", "[2014-02-28 Fri]\n"), root.treeToString());
+
+        // Survives a round trip through the binary format
+        final OrgFile read = OrgTreeReader.fromBytes(new RegexParser(), OrgTreeWriter.toBytes(root));
+        assertEquals(root.treeToString(), read.treeToString());
+
+        // Same as a normal write when nothing is kept
+        final OrgNode added = new OrgNode(new RegexParser());
+        added.setLevel(2);
+        added.setTitle("Added");
+        added.setParent(first);
+        first.getSubNodes().add(0, added);
+        assertEquals(content.replace("* TODO First", "* DONE First")
+                .replace("Body\n", "Body\n** Added\n\n")
+                .replace("<2014-02-28>\n", "[2014-02-28 Fri]\n"), root.treeToString());
+    }
+
     private File getFile(String path) throws Exception {
         return new File(getClass().getResource(path).toURI());
     }
@@ -0,0 +1,195 @@
+/*
+ * Copyright (c) Jonas Kalderstam 2015.
+ *
+ * This program is free software: you can redistribute it and/or modify
+ * it under the terms of the GNU General Public License as published by
+ * the Free Software Foundation, either version 3 of the License, or
+ * (at your option) any later version.
+ *
+ * This program is distributed in the hope that it will be useful,
+ * but WITHOUT ANY WARRANTY; without even the implied warranty of
+ * MERCHANTABILITY or FITNESS FOR A PARTICULAR PURPOSE.  See the
+ * GNU General Public License for more details.
+ *
+ * You should have received a copy of the GNU General Public License
+ * along with this program.  If not, see <http://www.gnu.org/licenses/>.
+ */
+package org.cowboyprogrammer.org;
+
+import java.util.Locale;
+import java.util.Random;
+
+/**
+ * Writes org files of a given shape for tests. The same settings and seed
+ * always give the same text.
+ * <p/>
+ * Each heading gets a level between 1 and one more than the previous,
+ * or more with levelSkips, and otherwise as set below. Use like:
+ * <pre>
+ * String text = new OrgGenerator(42).setHeadings(1000).setTagDensity(0.5).generate();
+ * </pre>
+ */
+public class OrgGenerator {
+
+    private static final String[] TODOS = {"TODO", "DONE"};
+    private static final String[] TAGS = {"work", "home", "urgent", "someday", "phone", "errand"};
+    private static final String[] WORDS = {"call", "the", "plumber", "about", "kitchen", "sink",
+            "write", "report", "for", "meeting", "review", "budget", "buy", "milk"};
+
+    private final long seed;
+    private int headings = 100;
+    private int maxDepth = 5;
+    private double levelSkips = 0;
+    private double tagDensity = 0.3;
+    private double timestampDensity = 0.3;
+    private int bodyLines = 3;
+    private int hugeNodeLines = 0;
+
+    public OrgGenerator(final long seed) {
+        this.seed = seed;
+    }
+
+    /**
+     * Number of headings, not counting the file itself.
+     */
+    public OrgGenerator setHeadings(final int headings) {
+        this.headings = headings;
+        return this;
+    }
+
+    /**
+     * Largest level of any heading.
+     */
+    public OrgGenerator setMaxDepth(final int maxDepth) {
+        this.maxDepth = maxDepth;
+        return this;
+    }
+
+    /**
+     * Chance that a heading is more than one level below the previous one.
+     */
+    public OrgGenerator setLevelSkips(final double levelSkips) {
+        this.levelSkips = levelSkips;
+        return this;
+    }
+
+    /**
+     * Chance of each heading having tags, and of each of those having one
+     * more.
+     */
+    public OrgGenerator setTagDensity(final double tagDensity) {
+        this.tagDensity = tagDensity;
+        return this;
+    }
+
+    /**
+     * Chance of each heading having a timestamp, and of each of those having
+     * one more.
+     */
+    public OrgGenerator setTimestampDensity(final double timestampDensity) {
+        this.timestampDensity = timestampDensity;
+        return this;
+    }
+
+    /**
+     * Largest number of body lines of a heading. Each gets between 0 and
+     * this many.
+     */
+    public OrgGenerator setBodyLines(final int bodyLines) {
+        this.bodyLines = bodyLines;
+        return this;
+    }
+
+    /**
+     * Body lines of one heading in the middle of the file, 0 for none.
+     */
+    public OrgGenerator setHugeNodeLines(final int hugeNodeLines) {
+        this.hugeNodeLines = hugeNodeLines;
+        return this;
+    }
+
+    public String generate() {
+        final StringBuilder sb = new StringBuilder();
+        generate(sb);
+        return sb.toString();
+    }
+
+    public void generate(final StringBuilder sb) {
+        final Random random = new Random(seed);
+        sb.append("#+TITLE: Generated\n");
+        int level = 0;
+        for (int i = 0; i < headings; i++) {
+            int next = 1 + random.nextInt(level + 1);
+            if (level > 0 && random.nextDouble() < levelSkips) {
+                next = level + 2 + random.nextInt(3);
+            }
+            level = Math.min(next, maxDepth);
+            heading(sb, random, level, i);
+            final int lines = i == headings / 2 && hugeNodeLines > 0
+                    ? hugeNodeLines : random.nextInt(bodyLines + 1);
+            for (int l = 0; l < lines; l++) {
+                if (random.nextInt(10) == 0) {
+                    sb.append('\n');
+                } else {
+                    sb.append(' ');
+                    words(sb, random, 1 + random.nextInt(12));
+                    sb.append('\n');
+                }
+            }
+        }
+    }
+
+    private void heading(final StringBuilder sb, final Random random, final int level,
+                         final int number) {
+        for (int s = 0; s < level; s++) {
+            sb.append('*');
+        }
+        sb.append(' ');
+        if (random.nextBoolean()) {
+            sb.append(TODOS[random.nextInt(TODOS.length)]).append(' ');
+        }
+        words(sb, random, 1 + random.nextInt(6));
+        sb.append(' ').append(number);
+        if (random.nextDouble() < tagDensity) {
+            sb.append(" :");
+            do {
+                sb.append(TAGS[random.nextInt(TAGS.length)]).append(':');
+            } while (random.nextDouble() < tagDensity);
+        }
+        sb.append('\n');
+        if (random.nextInt(20) == 0) {
+            sb.append("# a comment\n");
+        }
+        while (random.nextDouble() < timestampDensity) {
+            timestamp(sb, random);
+        }
+    }
+
+    private static void timestamp(final StringBuilder sb, final Random random) {
+        final int day = 1 + random.nextInt(28);
+        final String date = String.format(Locale.US, "2014-%02d-%02d", 1 + random.nextInt(12), day);
+        switch (random.nextInt(4)) {
+            case 0:
+                sb.append("SCHEDULED: <").append(date).append(" 10:00 +1w>\n");
+                break;
+            case 1:
+                sb.append("DEADLINE: <").append(date).append(" -3d>\n");
+                break;
+            case 2:
+                sb.append('<').append(date).append(">--<").append(date).append(">\n");
+                break;
+            default:
+                sb.append('[').append(date).append(" 09:15]\n");
+                break;
+        }
+    }
+
+    private static void words(final StringBuilder sb, final Random random, final int count) {
+        for (int w = 0; w < count; w++) {
+            if (w > 0) {
+                sb.append(' ');
+            }
+            sb.append(WORDS[random.nextInt(WORDS.length)]);
+        }
+    }
+}
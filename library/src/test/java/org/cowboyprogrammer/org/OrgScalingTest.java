@@ -0,0 +1,218 @@
+/*
+ * Copyright (c) Jonas Kalderstam 2015.
+ *
+ * This program is free software: you can redistribute it and/or modify
+ * it under the terms of the GNU General Public License as published by
+ * the Free Software Foundation, either version 3 of the License, or
+ * (at your option) any later version.
+ *
+ * This program is distributed in the hope that it will be useful,
+ * but WITHOUT ANY WARRANTY; without even the implied warranty of
+ * MERCHANTABILITY or FITNESS FOR A PARTICULAR PURPOSE.  See the
+ * GNU General Public License for more details.
+ *
+ * You should have received a copy of the GNU General Public License
+ * along with this program.  If not, see <http://www.gnu.org/licenses/>.
+ */
+package org.cowboyprogrammer.org;
+
+import org.cowboyprogrammer.org.parser.OrgParser;
+import org.cowboyprogrammer.org.parser.RegexParser;
+import org.cowboyprogrammer.org.parser.ScannerParser;
+import org.junit.Test;
+
+import java.io.BufferedReader;
+import java.io.StringReader;
+import java.io.StringWriter;
+
+import static org.junit.Assert.assertEquals;
+import static org.junit.Assert.assertTrue;
+import static org.junit.Assume.assumeTrue;
+
+/**
+ * Parsing and writing should take time in proportion to the size of the
+ * file, whatever its shape. Each case is timed on a file and on one eight
+ * times as large, and fails if the time grows much faster than the size.
+ * Anything quadratic, like appending to a String line by line, grows
+ * about 64 times.
+ * <p/>
+ * Wall clock times are too noisy for a shared build machine, so the timed
+ * cases only run with the system property orgparser.scaling set to true,
+ * which the scalingTest task does. They are skipped by test.
+ */
+public class OrgScalingTest {
+
+    private static final int GROWTH = 8;
+    // Room for noise, while still far from quadratic
+    private static final double SLACK = 3;
+    private static final int RUNS = 3;
+    // Something quadratic can take minutes on the large files
+    private static final long TIMEOUT = 60000;
+    private static final String ENABLED = "orgparser.scaling";
+
+    private interface Work {
+        void run(String text) throws Exception;
+    }
+
+    private static final Work PARSE_SCANNER = new Work() {
+        @Override
+        public void run(final String text) throws Exception {
+            parse(new ScannerParser(), text);
+        }
+    };
+
+    private static final Work PARSE_REGEX = new Work() {
+        @Override
+        public void run(final String text) throws Exception {
+            parse(new RegexParser(), text);
+        }
+    };
+
+    private static final Work PARSE_COMPACT = new Work() {
+        @Override
+        public void run(final String text) throws Exception {
+            OrgCompactFile.createFromBufferedReader(new ScannerParser(), "test.org",
+                    new BufferedReader(new StringReader(text)));
+        }
+    };
+
+    private static OrgFile parse(final OrgParser parser, final String text) throws Exception {
+        return OrgFile.createFromBufferedReader(parser, "test.org",
+                new BufferedReader(new StringReader(text)));
+    }
+
+    /**
+     * Times the work on the text of the generator with size and with
+     * GROWTH times size.
+     */
+    private static abstract class Shape {
+        abstract OrgGenerator generator(int size);
+
+        void assertLinear(final String name, final int size, final Work work) throws Exception {
+            assumeTrue(Boolean.getBoolean(ENABLED));
+            final String small = generator(size).generate();
+            final String large = generator(GROWTH * size).generate();
+            // Let the JIT compile it first
+            best(work, small);
+            final long smallTime = best(work, small);
+            final long largeTime = best(work, large);
+            final double sizeRatio = (double) large.length() / small.length();
+            final double timeRatio = (double) largeTime / Math.max(1, smallTime);
+            assertTrue(name + ": " + small.length() + " chars took " + smallTime / 1000 + " us, "
+                            + large.length() + " chars took " + largeTime / 1000 + " us",
+                    timeRatio < SLACK * sizeRatio);
+        }
+
+        void assertAllLinear(final String name, final int size) throws Exception {
+            assertLinear(name + " scanner", size, PARSE_SCANNER);
+            assertLinear(name + " regex", size, PARSE_REGEX);
+            assertLinear(name + " compact", size, PARSE_COMPACT);
+            assertLinear(name + " treeToString", size, new Work() {
+                @Override
+                public void run(final String text) throws Exception {
+                    // Parsing is included, it is known to be linear by now
+                    parse(new ScannerParser(), text).treeToString();
+                }
+            });
+            assertLinear(name + " writeTo", size, new Work() {
+                @Override
+                public void run(final String text) throws Exception {
+                    parse(new ScannerParser(), text).writeTo(new StringWriter());
+                }
+            });
+        }
+    }
+
+    private static long best(final Work work, final String text) throws Exception {
+        long best = Long.MAX_VALUE;
+        // Garbage from before should not be collected while timing
+        System.gc();
+        for (int i = 0; i < RUNS; i++) {
+            final long start = System.nanoTime();
+            work.run(text);
+            best = Math.min(best, System.nanoTime() - start);
+        }
+        return best;
+    }
+
+    @Test
+    public void testGeneratorIsDeterministic() throws Exception {
+        final OrgGenerator generator = new OrgGenerator(7).setHeadings(200).setLevelSkips(0.2);
+        assertEquals(generator.generate(), generator.generate());
+        assertEquals(generator.generate(),
+                new OrgGenerator(7).setHeadings(200).setLevelSkips(0.2).generate());
+
+        // And it is what it says it is
+        final OrgFile orgfile = parse(new ScannerParser(), new OrgGenerator(7)
+                .setHeadings(200).setHugeNodeLines(500).generate());
+        assertEquals(201, countNodes(orgfile));
+        assertTrue(maxBodyLines(orgfile) >= 500);
+    }
+
+    private static int countNodes(final OrgNode node) {
+        int count = 1;
+        for (final OrgNode child : node.getSubNodes()) {
+            count += countNodes(child);
+        }
+        return count;
+    }
+
+    private static int maxBodyLines(final OrgNode node) {
+        int max = node.getBodyLines().size();
+        for (final OrgNode child : node.getSubNodes()) {
+            max = Math.max(max, maxBodyLines(child));
+        }
+        return max;
+    }
+
+    @Test(timeout = TIMEOUT)
+    public void testWide() throws Exception {
+        new Shape() {
+            @Override
+            OrgGenerator generator(final int size) {
+                return new OrgGenerator(1).setHeadings(size).setMaxDepth(1);
+            }
+        }.assertAllLinear("wide", 1000);
+    }
+
+    @Test(timeout = TIMEOUT)
+    public void testDeep() throws Exception {
+        new Shape() {
+            @Override
+            OrgGenerator generator(final int size) {
+                return new OrgGenerator(2).setHeadings(size).setMaxDepth(100).setLevelSkips(0.1);
+            }
+        }.assertAllLinear("deep", 1000);
+    }
+
+    @Test(timeout = TIMEOUT)
+    public void testHugeNode() throws Exception {
+        new Shape() {
+            @Override
+            OrgGenerator generator(final int size) {
+                return new OrgGenerator(3).setHeadings(10).setHugeNodeLines(size);
+            }
+        }.assertAllLinear("huge node", 5000);
+    }
+
+    @Test(timeout = TIMEOUT)
+    public void testLongBodies() throws Exception {
+        new Shape() {
+            @Override
+            OrgGenerator generator(final int size) {
+                return new OrgGenerator(4).setHeadings(size).setBodyLines(100);
+            }
+        }.assertAllLinear("long bodies", 100);
+    }
+
+    @Test(timeout = TIMEOUT)
+    public void testTagsAndTimestamps() throws Exception {
+        new Shape() {
+            @Override
+            OrgGenerator generator(final int size) {
+                return new OrgGenerator(5).setHeadings(size).setTagDensity(0.8)
+                        .setTimestampDensity(0.8).setBodyLines(0);
+            }
+        }.assertAllLinear("tags and timestamps", 1000);
+    }
+}
@@ -0,0 +1,153 @@
+/*
+ * Copyright (c) 2015. Jonas Kalderstam
+ *
+ * This program is free software: you can redistribute it and/or modify
+ * it under the terms of the GNU General Public License as published by
+ * the Free Software Foundation, either version 3 of the License, or
+ * (at your option) any later version.
+ *
+ * This program is distributed in the hope that it will be useful,
+ * but WITHOUT ANY WARRANTY; without even the implied warranty of
+ * MERCHANTABILITY or FITNESS FOR A PARTICULAR PURPOSE.  See the
+ * GNU General Public License for more details.
+ *
+ * You should have received a copy of the GNU General Public License
+ * along with this program.  If not, see <http://www.gnu.org/licenses/>.
+ */
+
+package org.cowboyprogrammer.org;
+
+import org.cowboyprogrammer.org.parser.RegexParser;
+import org.junit.Test;
+
+import java.io.BufferedReader;
+import java.io.File;
+import java.io.IOException;
+import java.io.StringReader;
+import java.util.ArrayList;
+import java.util.List;
+import java.util.NoSuchElementException;
+import java.util.stream.Collectors;
+import java.util.stream.Stream;
+
+import static org.junit.Assert.assertEquals;
+import static org.junit.Assert.assertFalse;
+import static org.junit.Assert.assertSame;
+import static org.junit.Assert.assertTrue;
+
+public class OrgSubtreeIteratorTest {
+
+    private static final String CONTENT = "# file comment\n" +
+            "file body\n" +
+            "* One :a:\n" +
+            "body one\n" +
+            "** One sub\n" +
+            "\n" +
+            "*** Deeper\n" +
+            "* Two\n" +
+            "\n" +
+            "** Two sub\n" +
+            "* Three\n";
+
+    /**
+     * Remembers how many lines have been read.
+     */
+    private static class CountingReader extends BufferedReader {
+        int lines = 0;
+        boolean closed = false;
+
+        CountingReader(final String content) {
+            super(new StringReader(content));
+        }
+
+        @Override
+        public String readLine() throws IOException {
+            final String line = super.readLine();
+            if (line != null) {
+                lines++;
+            }
+            return line;
+        }
+
+        @Override
+        public void close() throws IOException {
+            closed = true;
+            super.close();
+        }
+    }
+
+    @Test
+    public void testSameAsTree() throws Exception {
+        final OrgFile file = OrgFile.createFromString(new RegexParser(), "f", CONTENT);
+        final OrgSubtreeIterator iterator = OrgFile.iterateFromBufferedReader(new RegexParser(), "f",
+                new BufferedReader(new StringReader(CONTENT)));
+
+        final List<OrgNode> nodes = new ArrayList<OrgNode>();
+        while (iterator.hasNext()) {
+            nodes.add(iterator.next());
+        }
+
+        assertEquals(file.getSubNodes().size(), nodes.size());
+        for (int i = 0; i < nodes.size(); i++) {
+            final StringBuilder expected = new StringBuilder();
+            file.getSubNodes().get(i).treeToString(expected);
+            final StringBuilder actual = new StringBuilder();
+            nodes.get(i).treeToString(actual);
+            assertEquals(expected.toString(), actual.toString());
+            assertSame(iterator.getOrgFile(), nodes.get(i).getParent());
+        }
+        assertEquals(file.getOrgBody(), iterator.getOrgFile().getOrgBody());
+        assertTrue("Nodes should not be kept", iterator.getOrgFile().getSubNodes().isEmpty());
+    }
+
+    @Test
+    public void testLazy() throws Exception {
+        final CountingReader reader = new CountingReader(CONTENT);
+        final OrgSubtreeIterator iterator = OrgFile.iterateFromBufferedReader(new RegexParser(), "f", reader);
+
+        assertEquals("One", iterator.next().getTitle());
+        // Up to and including the header of Two
+        assertEquals(8, reader.lines);
+        assertEquals("Two", iterator.next().getTitle());
+        assertEquals(11, reader.lines);
+        assertFalse(reader.closed);
+        assertEquals("Three", iterator.next().getTitle());
+        assertFalse(iterator.hasNext());
+        assertTrue(reader.closed);
+    }
+
+    @Test(expected = NoSuchElementException.class)
+    public void testNoNodes() throws Exception {
+        final OrgSubtreeIterator iterator = OrgFile.iterateFromBufferedReader(new RegexParser(), "f",
+                new BufferedReader(new StringReader("just a body\n")));
+        assertFalse(iterator.hasNext());
+        assertEquals("just a body\n", iterator.getOrgFile().getBody());
+        iterator.next();
+    }
+
+    @Test(expected = IllegalArgumentException.class)
+    public void testImpossibleDate() throws Exception {
+        OrgFile.iterateFromBufferedReader(new RegexParser(), "f",
+                new BufferedReader(new StringReader("* One\n<2014-13-13>\n"))).hasNext();
+    }
+
+    @Test
+    public void testStream() throws Exception {
+        final CountingReader reader = new CountingReader(CONTENT);
+        final Stream<OrgNode> stream = OrgFile.streamFromBufferedReader(new RegexParser(), "f", reader);
+        final List<String> titles = stream.limit(1).map(OrgNode::getTitle).collect(Collectors.toList());
+        assertEquals(1, titles.size());
+        assertEquals("One", titles.get(0));
+        stream.close();
+        assertTrue(reader.closed);
+    }
+
+    @Test
+    public void testStreamFromPath() throws Exception {
+        final File file = new File(getClass().getResource("test.org").toURI());
+        final OrgFile expected = OrgFile.createFromFile(new RegexParser(), file);
+        final Stream<OrgNode> stream = OrgFile.streamFromPath(new RegexParser(), file.toPath());
+        assertEquals(expected.getSubNodes().size(), stream.count());
+        stream.close();
+    }
+}
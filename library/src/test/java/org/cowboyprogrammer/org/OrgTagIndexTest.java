@@ -0,0 +1,138 @@
+/*
+ * Copyright (c) Jonas Kalderstam 2015.
+ *
+ * This program is free software: you can redistribute it and/or modify
+ * it under the terms of the GNU General Public License as published by
+ * the Free Software Foundation, either version 3 of the License, or
+ * (at your option) any later version.
+ *
+ * This program is distributed in the hope that it will be useful,
+ * but WITHOUT ANY WARRANTY; without even the implied warranty of
+ * MERCHANTABILITY or FITNESS FOR A PARTICULAR PURPOSE.  See the
+ * GNU General Public License for more details.
+ *
+ * You should have received a copy of the GNU General Public License
+ * along with this program.  If not, see <http://www.gnu.org/licenses/>.
+ */
+
+package org.cowboyprogrammer.org;
+
+import org.cowboyprogrammer.org.parser.ScannerParser;
+import org.junit.Test;
+
+import java.util.ArrayList;
+import java.util.BitSet;
+import java.util.List;
+import java.util.Random;
+
+import static org.junit.Assert.assertEquals;
+import static org.junit.Assert.assertTrue;
+import static org.junit.Assert.fail;
+
+public class OrgTagIndexTest {
+
+    private static final String WORK = "* Projects :work:\n" +
+            "** TODO Report :boss:\n" +
+            "*** Draft\n" +
+            "** Meeting :boss:urgent:\n" +
+            "* Errands :home:\n" +
+            "** Groceries :urgent:\n";
+
+    private static final String HOME = "* Garden :home:\n" +
+            "* Taxes :boss:\n";
+
+    private static List<String> titles(final List<OrgNode> nodes) {
+        final List<String> titles = new ArrayList<String>();
+        for (final OrgNode node : nodes) {
+            titles.add(node.getTitle());
+        }
+        return titles;
+    }
+
+    private static OrgTagIndex index() throws Exception {
+        return new OrgTagIndex(OrgFile.createFromString(new ScannerParser(), "work.org", WORK),
+                OrgFile.createFromString(new ScannerParser(), "home.org", HOME));
+    }
+
+    @Test
+    public void testTagged() throws Exception {
+        final OrgTagIndex index = index();
+        assertEquals(8, index.size());
+        assertEquals("[Report, Meeting, Taxes]", titles(index.getNodes(index.tagged("boss"))).toString());
+        assertEquals("[]", titles(index.getNodes(index.tagged("missing"))).toString());
+        assertEquals(4, index.getTags().size());
+    }
+
+    @Test
+    public void testInheriting() throws Exception {
+        final OrgTagIndex index = index();
+        assertEquals("[Projects, Report, Draft, Meeting]",
+                titles(index.getNodes(index.inheriting("work"))).toString());
+        assertEquals("[Report, Draft, Meeting, Taxes]",
+                titles(index.getNodes(index.inheriting("boss"))).toString());
+        assertEquals("[Errands, Groceries, Garden]",
+                titles(index.getNodes(index.inheriting("home"))).toString());
+
+        // Sets are copies
+        index.inheriting("work").clear();
+        assertEquals(4, index.inheriting("work").cardinality());
+    }
+
+    @Test
+    public void testCombinations() throws Exception {
+        final OrgTagIndex index = index();
+        assertEquals("[Report, Draft]", titles(index.getNodes(
+                index.and(index.inheriting("boss"), index.not(index.tagged("urgent")),
+                        index.inheriting("work")))).toString());
+        assertEquals("[Meeting, Errands, Groceries, Garden]", titles(index.getNodes(
+                index.or(index.tagged("urgent"), index.tagged("home")))).toString());
+    }
+
+    @Test
+    public void testMatch() throws Exception {
+        final OrgTagIndex index = index();
+        assertEquals("[Report, Draft]", titles(index.getNodes(index.match("work+boss-urgent"))).toString());
+        assertEquals("[Report, Draft]", titles(index.getNodes(index.match("boss&work-urgent"))).toString());
+        assertEquals("[Meeting, Errands, Groceries, Garden]",
+                titles(index.getNodes(index.match("urgent|home"))).toString());
+        assertEquals("[Errands, Groceries, Garden, Taxes]",
+                titles(index.getNodes(index.match("-work"))).toString());
+        assertTrue(index.match("nothing").isEmpty());
+        try {
+            index.match("work|");
+            fail("Empty alternative");
+        } catch (IllegalArgumentException e) {
+            // Expected
+        }
+    }
+
+    @Test
+    public void testSameAsGetAllTags() throws Exception {
+        final String[] tags = {"a", "b", "c", "d"};
+        final Random random = new Random(1);
+        final StringBuilder sb = new StringBuilder();
+        for (int i = 0; i < 2000; i++) {
+            final int level = 1 + random.nextInt(5);
+            for (int l = 0; l < level; l++) {
+                sb.append('*');
+            }
+            sb.append(" Node ").append(i);
+            if (random.nextInt(4) == 0) {
+                sb.append(" :").append(tags[random.nextInt(tags.length)]).append(':');
+            }
+            sb.append('\n');
+        }
+        final OrgTagIndex index = new OrgTagIndex(OrgFile.createFromString(new ScannerParser(), "random.org",
+                sb.toString()));
+        assertEquals(2000, index.size());
+        for (final String tag : tags) {
+            final BitSet expected = new BitSet();
+            for (int i = 0; i < index.size(); i++) {
+                if (index.getNode(i).getAllTags().contains(tag)) {
+                    expected.set(i);
+                }
+            }
+            assertEquals(expected, index.inheriting(tag));
+        }
+    }
+}
@@ -0,0 +1,271 @@
+/*
+ * Copyright (c) 2015. Jonas Kalderstam
+ *
+ * This program is free software: you can redistribute it and/or modify
+ * it under the terms of the GNU General Public License as published by
+ * the Free Software Foundation, either version 3 of the License, or
+ * (at your option) any later version.
+ *
+ * This program is distributed in the hope that it will be useful,
+ * but WITHOUT ANY WARRANTY; without even the implied warranty of
+ * MERCHANTABILITY or FITNESS FOR A PARTICULAR PURPOSE.  See the
+ * GNU General Public License for more details.
+ *
+ * You should have received a copy of the GNU General Public License
+ * along with this program.  If not, see <http://www.gnu.org/licenses/>.
+ */
+
+package org.cowboyprogrammer.org;
+
+import org.joda.time.DateTimeUtils;
+import org.joda.time.Days;
+import org.joda.time.Hours;
+import org.joda.time.LocalDateTime;
+import org.joda.time.LocalTime;
+import org.joda.time.Months;
+import org.joda.time.ReadablePeriod;
+import org.joda.time.Weeks;
+import org.joda.time.Years;
+import org.junit.Test;
+
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.Iterator;
+import java.util.List;
+import java.util.Random;
+
+import static org.junit.Assert.assertEquals;
+import static org.junit.Assert.assertFalse;
+import static org.junit.Assert.assertNull;
+import static org.junit.Assert.assertTrue;
+
+
+public class OrgTimestampTest {
+
+    @Test
+    public void testParseDateTime() throws Exception {
+        final String[] dates = {"2013-12-31", "2016-02-29", "0001-01-01", "9999-12-31"};
+        final String[] times = {"00:00", "09:05", "12:30", "23:59"};
+        for (final String date : dates) {
+            assertEquals(date, OrgTimestamp.INDATEFORMAT.parseLocalDateTime(date),
+                    OrgTimestamp.parseDateTime(date, null));
+            for (final String time : times) {
+                final LocalTime t = OrgTimestamp.INTIMEFORMAT.parseLocalTime(time);
+                assertEquals(date + " " + time,
+                        OrgTimestamp.INDATEFORMAT.parseLocalDateTime(date)
+                                .withTime(t.getHourOfDay(), t.getMinuteOfHour(), 0, 0),
+                        OrgTimestamp.parseDateTime(date, time));
+            }
+        }
+    }
+
+    @Test
+    public void testParseNotFixedWidth() throws Exception {
+        // Falls back to the formatters
+        assertEquals(new LocalDateTime(2013, 1, 31, 0, 0),
+                OrgTimestamp.parseDateTime("2013-1-31", null));
+        assertEquals(new LocalDateTime(2013, 12, 31, 1, 30),
+                OrgTimestamp.parseDateTime("2013-12-31", "1:30"));
+        assertEquals(new LocalTime(1, 30), OrgTimestamp.parseTime("1:30"));
+    }
+
+    @Test(expected = IllegalArgumentException.class)
+    public void testImpossibleDate() throws Exception {
+        OrgTimestamp.parseDateTime("2013-13-01", null);
+    }
+
+    @Test(expected = IllegalArgumentException.class)
+    public void testImpossibleTime() throws Exception {
+        OrgTimestamp.parseTime("24:00");
+    }
+
+    @Test
+    public void testConstructor() throws Exception {
+        final OrgTimestamp ts = new OrgTimestamp("<", "DEADLINE", "2013-12-31",
+                "12:21", "14:59", "-2d", "++1w");
+        assertEquals(new LocalDateTime(2013, 12, 31, 12, 21), ts.getDate());
+        assertEquals(new LocalTime(14, 59), ts.getEndTime());
+        assertTrue(ts.hasTime());
+        assertEquals(Days.days(2), ts.getWarningPeriod());
+        assertEquals(Weeks.weeks(1), ts.getRepeatPeriod());
+
+        final OrgTimestamp noTime = new OrgTimestamp("[", null, "2013-12-31",
+                null, null, null, null);
+        assertEquals(new LocalDateTime(2013, 12, 31, 0, 0), noTime.getDate());
+        assertFalse(noTime.hasTime());
+    }
+
+    @Test
+    public void testRepeatAndWarning() throws Exception {
+        final OrgTimestamp ts = new OrgTimestamp();
+        ts.setRepeat("+12h");
+        assertEquals(Hours.hours(12), ts.getRepeatPeriod());
+        ts.setRepeat(".+3d");
+        assertEquals(Days.days(3), ts.getRepeatPeriod());
+        ts.setRepeat("++10w");
+        assertEquals(Weeks.weeks(10), ts.getRepeatPeriod());
+        ts.setWarning("-123456789d");
+        assertEquals(Days.days(123456789), ts.getWarningPeriod());
+        ts.setWarning("-1234567890d");
+        assertEquals(Days.days(1234567890), ts.getWarningPeriod());
+    }
+
+    @Test(expected = NumberFormatException.class)
+    public void testRepeatOverflow() throws Exception {
+        new OrgTimestamp().setRepeat("+99999999999d");
+    }
+
+    private static DateTimeUtils.MillisProvider clockAt(final LocalDateTime now) {
+        final long millis = now.toDateTime().getMillis();
+        return new DateTimeUtils.MillisProvider() {
+            @Override
+            public long getMillis() {
+                return millis;
+            }
+        };
+    }
+
+    @Test
+    public void testRepetitionSameAsAddingOneAtATime() throws Exception {
+        final Random random = new Random(42);
+        final ReadablePeriod[] periods = {Hours.hours(7), Days.days(3), Weeks.weeks(2),
+                Months.months(1), Months.months(5), Years.years(1), Years.years(3)};
+        for (int i = 0; i < 2000; i++) {
+            // Mostly the end of months, where days are cut off
+            final int year = 1990 + random.nextInt(40);
+            final int month = 1 + random.nextInt(12);
+            final LocalDateTime date = new LocalDateTime(year, month, 1, random.nextInt(24), 0)
+                    .plusMonths(1).minusDays(1 + random.nextInt(4));
+            final ReadablePeriod period = periods[random.nextInt(periods.length)];
+
+            LocalDateTime expected = date;
+            for (int count = 0; count < 60; count++) {
+                assertEquals(date + " " + period + " " + count, expected,
+                        OrgTimestamp.getRepetition(date, period, count));
+                assertEquals(count, OrgTimestamp.repetitionsUntil(date, period, expected));
+                if (count > 0) {
+                    assertEquals(count, OrgTimestamp.repetitionsUntil(date, period,
+                            expected.minusMinutes(1)));
+                }
+                expected = expected.plus(period);
+            }
+
+            for (int count = 0; count < 60; count++) {
+                final LocalDateTime occurrence = date.withFieldAdded(period.getFieldType(0),
+                        count * period.getValue(0));
+                assertEquals(occurrence, OrgTimestamp.getOccurrence(date, period, count));
+                assertEquals(count, OrgTimestamp.occurrencesUntil(date, period, occurrence));
+                if (count > 0) {
+                    assertEquals(count, OrgTimestamp.occurrencesUntil(date, period,
+                            occurrence.minusMinutes(1)));
+                }
+            }
+        }
+    }
+
+    @Test
+    public void testYearlyRepetitionEndOfMonth() throws Exception {
+        // The same month every year, so the day is never cut off
+        final LocalDateTime date = new LocalDateTime(2014, 1, 31, 0, 0);
+        assertEquals(new LocalDateTime(6014, 1, 31, 0, 0),
+                OrgTimestamp.getRepetition(date, Years.years(1), 4000));
+        assertEquals(new LocalDateTime(2414, 1, 31, 0, 0),
+                OrgTimestamp.getRepetition(date, Months.months(12), 400));
+
+        // Until the first February which is not in a leap year
+        final LocalDateTime leap = new LocalDateTime(2000, 2, 29, 0, 0);
+        assertEquals(new LocalDateTime(2096, 2, 29, 0, 0),
+                OrgTimestamp.getRepetition(leap, Years.years(4), 24));
+        assertEquals(new LocalDateTime(2120, 2, 28, 0, 0),
+                OrgTimestamp.getRepetition(leap, Years.years(4), 30));
+        assertEquals(new LocalDateTime(2001, 2, 28, 0, 0),
+                OrgTimestamp.getRepetition(leap, Years.years(1), 1));
+        // Always a leap year
+        assertEquals(new LocalDateTime(402000, 2, 29, 0, 0),
+                OrgTimestamp.getRepetition(leap, Years.years(400), 1000));
+    }
+
+    @Test(timeout = 1000)
+    public void testNextRepetitionLongAgo() throws Exception {
+        final OrgTimestamp ts = new OrgTimestamp("<", null, "1970-01-01",
+                "00:30", null, null, "++1h");
+        final DateTimeUtils.MillisProvider clock = clockAt(new LocalDateTime(2014, 5, 6, 7, 8));
+        assertEquals(new LocalDateTime(2014, 5, 6, 7, 30), ts.getNextRepetition(clock));
+        assertEquals(new LocalDateTime(2014, 5, 6, 7, 30), ts.getNextFutureRepetition(clock));
+
+        ts.toNextRepeat(clock);
+        assertEquals(new LocalDateTime(2014, 5, 6, 7, 30), ts.getDate());
+        assertTrue(ts.isDirty());
+        // Already in the future, so just one more
+        ts.toNextRepeat(clock);
+        assertEquals(new LocalDateTime(2014, 5, 6, 8, 30), ts.getDate());
+    }
+
+    @Test
+    public void testNextRepetitionEndOfMonth() throws Exception {
+        final OrgTimestamp ts = new OrgTimestamp("<", null, "2014-01-31",
+                null, null, null, "+1m");
+        final DateTimeUtils.MillisProvider clock = clockAt(new LocalDateTime(2014, 6, 1, 0, 0));
+        assertEquals(new LocalDateTime(2014, 2, 28, 0, 0), ts.getNextRepetition(clock));
+        assertEquals(new LocalDateTime(2014, 6, 28, 0, 0), ts.getNextFutureRepetition(clock));
+
+        ts.setRepeat(".+1m");
+        assertEquals(new LocalDateTime(2014, 7, 1, 0, 0), ts.getNextRepetition(clock));
+    }
+
+    @Test
+    public void testOccurrences() throws Exception {
+        final OrgTimestamp ts = new OrgTimestamp("<", null, "2014-01-31",
+                null, null, null, "+1m");
+        final List<LocalDateTime> result = new ArrayList<LocalDateTime>();
+        final Iterator<LocalDateTime> it = ts.getOccurrences(new LocalDateTime(2014, 3, 1, 0, 0),
+                new LocalDateTime(2014, 5, 31, 0, 0));
+        while (it.hasNext()) {
+            result.add(it.next());
+        }
+        // Not moved by shorter months, unlike toNextRepeat
+        assertEquals(Arrays.asList(new LocalDateTime(2014, 3, 31, 0, 0),
+                new LocalDateTime(2014, 4, 30, 0, 0),
+                new LocalDateTime(2014, 5, 31, 0, 0)), result);
+
+        // Includes the date itself
+        final Iterator<LocalDateTime> first = ts.getOccurrences(new LocalDateTime(2014, 1, 1, 0, 0),
+                new LocalDateTime(2014, 2, 28, 0, 0));
+        assertEquals(new LocalDateTime(2014, 1, 31, 0, 0), first.next());
+        assertEquals(new LocalDateTime(2014, 2, 28, 0, 0), first.next());
+        assertFalse(first.hasNext());
+
+        // Counted from today, at the time of the timestamp
+        ts.setRepeat(".+1w");
+        final Iterator<LocalDateTime> fromNow = ts.getOccurrences(new LocalDateTime(2014, 2, 1, 0, 0),
+                new LocalDateTime(2014, 6, 1, 0, 0), clockAt(new LocalDateTime(2014, 5, 20, 12, 0)));
+        assertEquals(new LocalDateTime(2014, 5, 27, 0, 0), fromNow.next());
+        assertFalse(fromNow.hasNext());
+
+        // No repeater
+        final OrgTimestamp once = new OrgTimestamp("<", null, "2014-01-31",
+                null, null, null, null);
+        assertFalse(once.getOccurrences(new LocalDateTime(2014, 2, 1, 0, 0),
+                new LocalDateTime(2014, 6, 1, 0, 0)).hasNext());
+    }
+
+    @Test(timeout = 1000)
+    public void testZeroRepeater() throws Exception {
+        final OrgTimestamp ts = new OrgTimestamp("<", null, "2014-01-01",
+                null, null, null, "+0d");
+        assertEquals("<2014-01-01 Wed +0d>", ts.toString());
+        final DateTimeUtils.MillisProvider clock = clockAt(new LocalDateTime(2014, 5, 6, 7, 8));
+        assertNull(ts.getNextRepetition(clock));
+        assertNull(ts.getNextFutureRepetition(clock));
+        ts.toNextRepeat(clock);
+        assertEquals(new LocalDateTime(2014, 1, 1, 0, 0), ts.getDate());
+
+        // Only the date itself
+        final Iterator<LocalDateTime> it = ts.getOccurrences(new LocalDateTime(2013, 1, 1, 0, 0),
+                new LocalDateTime(2015, 1, 1, 0, 0), clock);
+        assertEquals(new LocalDateTime(2014, 1, 1, 0, 0), it.next());
+        assertFalse(it.hasNext());
+        assertEquals(0, OrgTimestamp.repetitionsUntil(ts.getDate(), ts.getRepeatPeriod(),
+                new LocalDateTime(2015, 1, 1, 0, 0)));
+    }
+}
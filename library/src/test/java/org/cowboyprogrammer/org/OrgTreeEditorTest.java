@@ -0,0 +1,159 @@
+/*
+ * Copyright (c) 2015. Jonas Kalderstam
+ *
+ * This program is free software: you can redistribute it and/or modify
+ * it under the terms of the GNU General Public License as published by
+ * the Free Software Foundation, either version 3 of the License, or
+ * (at your option) any later version.
+ *
+ * This program is distributed in the hope that it will be useful,
+ * but WITHOUT ANY WARRANTY; without even the implied warranty of
+ * MERCHANTABILITY or FITNESS FOR A PARTICULAR PURPOSE.  See the
+ * GNU General Public License for more details.
+ *
+ * You should have received a copy of the GNU General Public License
+ * along with this program.  If not, see <http://www.gnu.org/licenses/>.
+ */
+
+package org.cowboyprogrammer.org;
+
+import org.cowboyprogrammer.org.parser.ScannerParser;
+import org.junit.Test;
+
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.List;
+import java.util.Random;
+
+import static org.junit.Assert.assertEquals;
+import static org.junit.Assert.assertNotSame;
+import static org.junit.Assert.assertSame;
+import static org.junit.Assert.assertTrue;
+
+public class OrgTreeEditorTest {
+
+    private static final String[] LINES = {
+            "", "", " ", "* A", "* B :a:", "** C", "** D :x:", "*** E", "**** F",
+            "# comment", "<2014-12-13>", "<2013-12-31>--<2014-02-28>", "body", "  indented",
+    };
+
+    private static String join(final List<String> lines) {
+        final StringBuilder sb = new StringBuilder();
+        for (final String line : lines) {
+            sb.append(line).append("\n");
+        }
+        return sb.toString();
+    }
+
+    private static OrgFile parse(final List<String> lines) throws Exception {
+        return OrgFile.createFromString(new ScannerParser(), "f", join(lines));
+    }
+
+    /**
+     * Parents must be right and the line counts add up.
+     */
+    private static void assertConsistent(final OrgNode node) {
+        int lines = node.ownLines;
+        for (final OrgNode child : node.getSubNodes()) {
+            assertSame(node, child.getParent());
+            assertConsistent(child);
+            lines += child.subtreeLines;
+        }
+        assertEquals(node.subtreeLines, lines);
+    }
+
+    @Test
+    public void testLineCounts() throws Exception {
+        final OrgFile file = parse(Arrays.asList("pre", "* A", "body", "** B", "", "* C", ""));
+        assertEquals(7, file.subtreeLines);
+        assertEquals(1, file.ownLines);
+        final OrgNode a = file.getSubNodes().get(0);
+        assertEquals(2, a.ownLines);
+        assertEquals(4, a.subtreeLines);
+        assertEquals(2, a.getSubNodes().get(0).subtreeLines);
+        assertEquals(2, file.getSubNodes().get(1).subtreeLines);
+        assertConsistent(file);
+    }
+
+    @Test
+    public void testSameAsFullParse() throws Exception {
+        final Random random = new Random(11);
+        for (int i = 0; i < 3000; i++) {
+            final List<String> lines = new ArrayList<String>();
+            final int count = random.nextInt(40);
+            for (int j = 0; j < count; j++) {
+                lines.add(LINES[random.nextInt(LINES.length)]);
+            }
+            final OrgFile file = parse(lines);
+
+            // A few edits in a row
+            for (int edit = 0; edit < 3; edit++) {
+                final int first = random.nextInt(lines.size() + 1);
+                final int removed = random.nextInt(Math.min(4, lines.size() - first + 1));
+                final int added = random.nextInt(4);
+                final List<String> inserted = new ArrayList<String>();
+                for (int j = 0; j < added; j++) {
+                    inserted.add(LINES[random.nextInt(LINES.length)]);
+                }
+                final String before = join(lines);
+                lines.subList(first, first + removed).clear();
+                lines.addAll(first, inserted);
+
+                file.applyEdit(lines, first, removed, added);
+                assertEquals(before + "\n---\n" + join(lines),
+                        parse(lines).treeToString(), file.treeToString());
+                assertConsistent(file);
+            }
+        }
+    }
+
+    @Test
+    public void testOnlyEditedNodeIsParsed() throws Exception {
+        final List<String> lines = new ArrayList<String>(Arrays.asList(
+                "* A", "** A1", "body", "** A2", "* B", "** B1", "body"));
+        final OrgFile file = parse(lines);
+        final OrgNode a = file.getSubNodes().get(0);
+        final OrgNode a1 = a.getSubNodes().get(0);
+        final OrgNode a2 = a.getSubNodes().get(1);
+        final OrgNode b = file.getSubNodes().get(1);
+
+        lines.set(2, "new body");
+        file.applyEdit(lines, 2, 1, 1);
+
+        assertSame(a, file.getSubNodes().get(0));
+        assertSame(b, file.getSubNodes().get(1));
+        assertSame(a2, a.getSubNodes().get(1));
+        assertNotSame(a1, a.getSubNodes().get(0));
+        assertEquals("new body\n", a.getSubNodes().get(0).getBody());
+    }
+
+    @Test
+    public void testNewHeaderMovesNodes() throws Exception {
+        final List<String> lines = new ArrayList<String>(Arrays.asList(
+                "* A", "** A1", "body", "** A2", "* B"));
+        final OrgFile file = parse(lines);
+
+        // A1 becomes a top level node, which takes A2 with it
+        lines.set(1, "* A1");
+        file.applyEdit(lines, 1, 1, 1);
+
+        assertEquals(3, file.getSubNodes().size());
+        assertEquals("A1", file.getSubNodes().get(1).getTitle());
+        assertEquals("A2", file.getSubNodes().get(1).getSubNodes().get(0).getTitle());
+        assertConsistent(file);
+    }
+
+    @Test
+    public void testUnparsedTree() throws Exception {
+        final OrgFile file = new OrgFile(new ScannerParser(), "f");
+        file.applyEdit(Arrays.asList("* A", "body"), 0, 0, 2);
+        assertEquals(1, file.getSubNodes().size());
+        assertEquals("body\n", file.getSubNodes().get(0).getBody());
+        assertConsistent(file);
+    }
+
+    @Test(expected = IllegalArgumentException.class)
+    public void testOutside() throws Exception {
+        parse(Arrays.asList("* A")).applyEdit(Arrays.asList("* A"), 1, 0, 1);
+    }
+}
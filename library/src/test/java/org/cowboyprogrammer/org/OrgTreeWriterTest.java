@@ -0,0 +1,252 @@
+/*
+ * Copyright (c) 2015. Jonas Kalderstam
+ *
+ * This program is free software: you can redistribute it and/or modify
+ * it under the terms of the GNU General Public License as published by
+ * the Free Software Foundation, either version 3 of the License, or
+ * (at your option) any later version.
+ *
+ * This program is distributed in the hope that it will be useful,
+ * but WITHOUT ANY WARRANTY; without even the implied warranty of
+ * MERCHANTABILITY or FITNESS FOR A PARTICULAR PURPOSE.  See the
+ * GNU General Public License for more details.
+ *
+ * You should have received a copy of the GNU General Public License
+ * along with this program.  If not, see <http://www.gnu.org/licenses/>.
+ */
+
+package org.cowboyprogrammer.org;
+
+import org.cowboyprogrammer.org.parser.RegexParser;
+import org.cowboyprogrammer.org.parser.ScannerParser;
+import org.joda.time.LocalDateTime;
+import org.junit.Test;
+
+import java.io.ByteArrayInputStream;
+import java.io.ByteArrayOutputStream;
+import java.io.DataInputStream;
+import java.io.DataOutputStream;
+import java.io.File;
+import java.io.IOException;
+import java.util.Arrays;
+import java.util.Locale;
+
+import static org.junit.Assert.assertEquals;
+import static org.junit.Assert.assertNull;
+import static org.junit.Assert.assertSame;
+import static org.junit.Assert.assertTrue;
+
+public class OrgTreeWriterTest {
+
+    private static final String CONTENT = "#+TAGS: a b\n" +
+            "file body\n" +
+            "* TODO First :a:b:\n" +
+            "SCHEDULED: <2013-12-31 Tue 12:21-14:59 ++1w -2d>\n" +
+            "[2014-02-26 Wed]\n" +
+            "DEADLINE: <2014-02-26 Wed 17:00 -3w +2d>\n" +
+            "<2012-02-17 Fri>--<2013-05-24 Fri>\n" +
+            "Body of first\n" +
+            "** DONE Child :a:\n" +
+            "# comment\n" +
+            "<2013-08-23 Fri 00:34>--<2013-08-23 Fri 08:24>\n" +
+            "* Second :b:a:\n" +
+            "R\u00e4ksm\u00f6rg\u00e5s\n";
+
+    private static void assertSameNode(final OrgNode expected, final OrgNode actual) {
+        assertEquals(expected.getLevel(), actual.getLevel());
+        assertEquals(expected.getTodo(), actual.getTodo());
+        assertEquals(expected.getTitle(), actual.getTitle());
+        assertEquals(expected.getTags(), actual.getTags());
+        assertEquals(expected.getComments(), actual.getComments());
+        assertEquals(expected.getBody(), actual.getBody());
+        assertEquals(expected.ownLines, actual.ownLines);
+        assertEquals(expected.subtreeLines, actual.subtreeLines);
+
+        assertEquals(expected.getTimestamps().size(), actual.getTimestamps().size());
+        for (int i = 0; i < expected.getTimestamps().size(); i++) {
+            final OrgTimestamp e = expected.getTimestamps().get(i);
+            final OrgTimestamp a = actual.getTimestamps().get(i);
+            assertEquals(e.toString(Locale.ENGLISH), a.toString(Locale.ENGLISH));
+            assertEquals(e.getType(), a.getType());
+            assertEquals(e.isInactive(), a.isInactive());
+            assertEquals(e.hasTime(), a.hasTime());
+            assertEquals(e.getDate(), a.getDate());
+            assertEquals(e.getEndTime(), a.getEndTime());
+            assertEquals(e.getRepeat(), a.getRepeat());
+            assertEquals(e.getRepeatPeriod(), a.getRepeatPeriod());
+            assertEquals(e.getWarning(), a.getWarning());
+            assertEquals(e.getWarningPeriod(), a.getWarningPeriod());
+        }
+        assertEquals(expected.getTimestampRanges().size(), actual.getTimestampRanges().size());
+        for (int i = 0; i < expected.getTimestampRanges().size(); i++) {
+            final OrgTimestampRange e = expected.getTimestampRanges().get(i);
+            final OrgTimestampRange a = actual.getTimestampRanges().get(i);
+            assertEquals(e.hasTime(), a.hasTime());
+            assertEquals(e.getStartdate(), a.getStartdate());
+            assertEquals(e.getEnddate(), a.getEnddate());
+        }
+
+        assertEquals(expected.getSubNodes().size(), actual.getSubNodes().size());
+        for (int i = 0; i < expected.getSubNodes().size(); i++) {
+            assertSame(actual, actual.getSubNodes().get(i).getParent());
+            assertSameNode(expected.getSubNodes().get(i), actual.getSubNodes().get(i));
+        }
+    }
+
+    @Test
+    public void testRoundTrip() throws Exception {
+        final OrgFile orgfile = OrgFile.createFromString(new RegexParser(), "round.org", CONTENT);
+        final OrgFile read = OrgTreeReader.fromBytes(new ScannerParser(), OrgTreeWriter.toBytes(orgfile));
+
+        assertEquals("round.org", read.getFilename());
+        assertTrue(read.getParser() instanceof ScannerParser);
+        assertSameNode(orgfile, read);
+        assertEquals(orgfile.treeToString(), read.treeToString());
+    }
+
+    @Test
+    public void testTestFile() throws Exception {
+        final File file = new File(getClass().getResource("test.org").toURI());
+        final OrgFile orgfile = OrgFile.createFromFile(new RegexParser(), file);
+        assertSameNode(orgfile, OrgTreeReader.fromBytes(new RegexParser(), OrgTreeWriter.toBytes(orgfile)));
+    }
+
+    @Test
+    public void testSeveralTrees() throws Exception {
+        final OrgFile first = OrgFile.createFromString(new RegexParser(), "first.org", CONTENT);
+        final OrgFile second = OrgFile.createFromString(new RegexParser(), "second.org", "* DONE x :b:\n");
+
+        final ByteArrayOutputStream bytes = new ByteArrayOutputStream();
+        final OrgTreeWriter writer = new OrgTreeWriter(new DataOutputStream(bytes));
+        writer.write(first);
+        writer.write(second);
+
+        final OrgTreeReader reader = new OrgTreeReader(new RegexParser(),
+                new DataInputStream(new ByteArrayInputStream(bytes.toByteArray())));
+        assertSameNode(first, reader.read());
+        assertSameNode(second, reader.read());
+    }
+
+    @Test
+    public void testSymbolsWrittenOnce() throws Exception {
+        final StringBuilder sb = new StringBuilder();
+        for (int i = 0; i < 1000; i++) {
+            sb.append("* TODO x :verylongtagname:anotherlongtag:\n");
+        }
+        final OrgFile orgfile = OrgFile.createFromString(new RegexParser(), "f", sb.toString());
+        final byte[] bytes = OrgTreeWriter.toBytes(orgfile);
+        // Far less than the text itself
+        assertTrue(bytes.length + " bytes", bytes.length < sb.length() / 2);
+        assertSameNode(orgfile, OrgTreeReader.fromBytes(new RegexParser(), bytes));
+    }
+
+    @Test
+    public void testBuiltByHand() throws Exception {
+        final OrgFile orgfile = new OrgFile(new RegexParser(), "hand.org");
+        final OrgNode node = new OrgNode(new RegexParser());
+        node.setLevel(2);
+        node.setTitle("Deep");
+        node.setParent(orgfile);
+        orgfile.getSubNodes().add(node);
+        final OrgTimestamp ts = new OrgTimestamp();
+        ts.setDate(new LocalDateTime(-44, 3, 15, 12, 0, 30, 5), true);
+        node.addTimestamp(ts);
+
+        final OrgFile read = OrgTreeReader.fromBytes(new RegexParser(), OrgTreeWriter.toBytes(orgfile));
+        assertSameNode(orgfile, read);
+        assertEquals(-1, read.subtreeLines);
+        assertNull(read.getSubNodes().get(0).getTodo());
+    }
+
+    @Test(expected = IOException.class)
+    public void testNotATree() throws Exception {
+        OrgTreeReader.fromBytes(new RegexParser(), "* Not a tree".getBytes("UTF-8"));
+    }
+
+    @Test(expected = IOException.class)
+    public void testUnknownVersion() throws Exception {
+        final byte[] bytes = OrgTreeWriter.toBytes(new OrgFile(new RegexParser(), "f"));
+        bytes[4] = 99;
+        OrgTreeReader.fromBytes(new RegexParser(), bytes);
+    }
+
+    @Test(expected = IOException.class)
+    public void testTruncated() throws Exception {
+        final byte[] bytes = OrgTreeWriter.toBytes(OrgFile.createFromString(new RegexParser(), "f", CONTENT));
+        OrgTreeReader.fromBytes(new RegexParser(), Arrays.copyOf(bytes, bytes.length - 10));
+    }
+
+    /**
+     * A tree of nodes with nothing but a level, where each node is the only
+     * child of the one before.
+     */
+    private static byte[] chain(final int depth, final int lastChildren) throws IOException {
+        final ByteArrayOutputStream bytes = new ByteArrayOutputStream();
+        final DataOutputStream out = new DataOutputStream(bytes);
+        out.writeInt(OrgTreeWriter.MAGIC);
+        out.writeByte(OrgTreeWriter.VERSION);
+        // No filename
+        out.writeByte(0);
+        for (int i = 0; i <= depth; i++) {
+            // Level, no todo, empty title, no tags, empty comments and
+            // body, then no timestamps, ranges, lines and source
+            writeVarint(out, i);
+            out.write(new byte[]{0, 1, 0, 1, 1, 0, 0, 0, 0, 0, 0});
+            if (i < depth) {
+                out.writeByte(1);
+            } else {
+                writeVarint(out, lastChildren);
+            }
+        }
+        return bytes.toByteArray();
+    }
+
+    private static void writeVarint(final DataOutputStream out, int value) throws IOException {
+        while ((value & ~0x7f) != 0) {
+            out.writeByte((value & 0x7f) | 0x80);
+            value >>>= 7;
+        }
+        out.writeByte(value);
+    }
+
+    @Test
+    public void testDeepTree() throws Exception {
+        OrgNode node = OrgTreeReader.fromBytes(new RegexParser(), chain(100000, 0));
+        int depth = 0;
+        while (!node.getSubNodes().isEmpty()) {
+            node = node.getSubNodes().get(0);
+            depth++;
+        }
+        assertEquals(100000, depth);
+    }
+
+    @Test(expected = IOException.class)
+    public void testCountOutOfRange() throws Exception {
+        OrgTreeReader.fromBytes(new RegexParser(), chain(1, Integer.MAX_VALUE));
+    }
+
+    @Test(expected = IOException.class)
+    public void testLengthOutOfRange() throws Exception {
+        final ByteArrayOutputStream bytes = new ByteArrayOutputStream();
+        final DataOutputStream out = new DataOutputStream(bytes);
+        out.writeInt(OrgTreeWriter.MAGIC);
+        out.writeByte(OrgTreeWriter.VERSION);
+        // A filename of almost 2 GB
+        writeVarint(out, Integer.MAX_VALUE);
+        out.write(new byte[100]);
+        OrgTreeReader.fromBytes(new RegexParser(), bytes.toByteArray());
+    }
+
+    @Test(expected = IOException.class)
+    public void testLengthOutOfRangeUnknownSize() throws Exception {
+        final ByteArrayOutputStream bytes = new ByteArrayOutputStream();
+        final DataOutputStream out = new DataOutputStream(bytes);
+        out.writeInt(OrgTreeWriter.MAGIC);
+        out.writeByte(OrgTreeWriter.VERSION);
+        writeVarint(out, Integer.MAX_VALUE);
+        out.write(new byte[100]);
+        // Ends at the end of the input, without allocating all of it
+        new OrgTreeReader(new RegexParser(),
+                new DataInputStream(new ByteArrayInputStream(bytes.toByteArray()))).read();
+    }
+}
@@ -0,0 +1,125 @@
+/*
+ * Copyright (c) 2015. Jonas Kalderstam
+ *
+ * This program is free software: you can redistribute it and/or modify
+ * it under the terms of the GNU General Public License as published by
+ * the Free Software Foundation, either version 3 of the License, or
+ * (at your option) any later version.
+ *
+ * This program is distributed in the hope that it will be useful,
+ * but WITHOUT ANY WARRANTY; without even the implied warranty of
+ * MERCHANTABILITY or FITNESS FOR A PARTICULAR PURPOSE.  See the
+ * GNU General Public License for more details.
+ *
+ * You should have received a copy of the GNU General Public License
+ * along with this program.  If not, see <http://www.gnu.org/licenses/>.
+ */
+
+package org.cowboyprogrammer.org;
+
+import org.cowboyprogrammer.org.parser.RegexParser;
+import org.cowboyprogrammer.org.parser.ScannerParser;
+import org.junit.Test;
+
+import java.io.File;
+import java.io.FileOutputStream;
+import java.io.OutputStream;
+import java.nio.channels.FileChannel;
+import java.nio.file.StandardOpenOption;
+import java.util.Arrays;
+import java.util.List;
+import java.util.Random;
+import java.util.concurrent.ForkJoinPool;
+
+import static org.junit.Assert.assertEquals;
+import static org.junit.Assert.assertTrue;
+
+public class ParallelOrgFileReaderTest {
+
+    private static final String[] LINES = {
+            "", "", " ", "* A", "* A :a:", "*\tTab", "* ", "*bold* text", "** B :x:",
+            "*** C", "# comment", "<2014-12-13>", "<2013-12-31>--<2014-02-28>",
+            "body", "  indented",
+    };
+    private static final String[] NEWLINES = {"\n", "\n", "\r\n", "\r"};
+
+    private static File write(final String content) throws Exception {
+        final File file = File.createTempFile("parallel", ".org");
+        file.deleteOnExit();
+        final OutputStream out = new FileOutputStream(file);
+        out.write(content.getBytes("UTF-8"));
+        out.close();
+        return file;
+    }
+
+    private static OrgFile readParallel(final File file, final ForkJoinPool pool, final long chunkSize)
+            throws Exception {
+        final FileChannel channel = FileChannel.open(file.toPath(), StandardOpenOption.READ);
+        try {
+            return ParallelOrgFileReader.read(new ScannerParser(), file.getName(), channel, pool, chunkSize);
+        } finally {
+            channel.close();
+        }
+    }
+
+    @Test
+    public void testSameAsSequential() throws Exception {
+        final ForkJoinPool pool = new ForkJoinPool(4);
+        final Random random = new Random(7);
+        try {
+            for (int i = 0; i < 200; i++) {
+                final StringBuilder sb = new StringBuilder();
+                final int lines = random.nextInt(60);
+                for (int j = 0; j < lines; j++) {
+                    sb.append(LINES[random.nextInt(LINES.length)]);
+                    sb.append(NEWLINES[random.nextInt(NEWLINES.length)]);
+                }
+                final File file = write(sb.toString());
+                final String expected = OrgFile.createFromPath(new ScannerParser(), file.toPath()).treeToString();
+                for (final long chunkSize : new long[]{1, 5, 40, 1000}) {
+                    assertEquals(sb.toString(), expected, readParallel(file, pool, chunkSize).treeToString());
+                }
+            }
+        } finally {
+            pool.shutdown();
+        }
+    }
+
+    @Test
+    public void testChunkStarts() throws Exception {
+        final File file = write("body\n* A\n** B\n*bold*\n* C\r\n* D\r* E");
+        final FileChannel channel = FileChannel.open(file.toPath(), StandardOpenOption.READ);
+        try {
+            final List<Long> starts = ParallelOrgFileReader.findChunkStarts(new RegexParser(),
+                    channel, channel.size(), 1);
+            assertEquals(Arrays.asList(0L, 5L, 21L, 26L, 30L), starts);
+        } finally {
+            channel.close();
+        }
+    }
+
+    @Test
+    public void testParents() throws Exception {
+        final File file = write("* A\n** B\n* C\n* D\n");
+        final OrgFile orgfile = readParallel(file, ForkJoinPool.commonPool(), 1);
+        assertEquals(3, orgfile.getSubNodes().size());
+        for (final OrgNode node : orgfile.getSubNodes()) {
+            assertTrue(node.getParent() == orgfile);
+        }
+        assertEquals(file.getName(), orgfile.getFilename());
+        // Needed by applyEdit
+        assertEquals(4, orgfile.subtreeLines);
+    }
+
+    @Test(expected = IllegalArgumentException.class)
+    public void testImpossibleDate() throws Exception {
+        readParallel(write("* A\n* B\n<2014-13-13>\n* C\n"), ForkJoinPool.commonPool(), 1);
+    }
+
+    @Test
+    public void testPublicMethod() throws Exception {
+        final File file = new File(getClass().getResource("test.org").toURI());
+        assertEquals(OrgFile.createFromFile(new RegexParser(), file).treeToString(),
+                OrgFile.createFromPath(new RegexParser(), file.toPath(), ForkJoinPool.commonPool()).treeToString());
+    }
+}
@@ -0,0 +1,164 @@
+/*
+ * Copyright (c) 2015 Jonas Kalderstam
+ *
+ *  This program is free software: you can redistribute it and/or modify
+ *  it under the terms of the GNU General Public License as published by
+ *  the Free Software Foundation, either version 3 of the License, or
+ *  (at your option) any later version.
+ *
+ *  This program is distributed in the hope that it will be useful,
+ *  but WITHOUT ANY WARRANTY; without even the implied warranty of
+ *  MERCHANTABILITY or FITNESS FOR A PARTICULAR PURPOSE.  See the
+ *  GNU General Public License for more details.
+ *
+ *  You should have received a copy of the GNU General Public License
+ *  along with this program.  If not, see <http://www.gnu.org/licenses/>.
+ */
+
+package org.cowboyprogrammer.org.parser;
+
+import org.cowboyprogrammer.org.OrgFile;
+import org.cowboyprogrammer.org.OrgTimestamp;
+import org.cowboyprogrammer.org.OrgTimestampRange;
+import org.junit.Test;
+
+import java.io.BufferedReader;
+import java.io.StringReader;
+import java.text.ParseException;
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.List;
+
+import static org.junit.Assert.assertEquals;
+
+public class OrgEventParserTest {
+
+    /**
+     * Writes down every event as a string.
+     */
+    static class RecordingHandler implements OrgEventHandler {
+        final List<String> events = new ArrayList<String>();
+
+        @Override
+        public void startNode(final int level, final String todo, final String title,
+                              final List<String> tags) {
+            events.add("start " + level + " " + todo + " " + title + " " + tags);
+        }
+
+        @Override
+        public void bodyLine(final String line) {
+            events.add("body " + line);
+        }
+
+        @Override
+        public void comment(final String line) {
+            events.add("comment " + line);
+        }
+
+        @Override
+        public void timestamp(final OrgTimestamp timestamp) {
+            events.add("timestamp " + timestamp.getDate());
+        }
+
+        @Override
+        public void timestampRange(final OrgTimestampRange timestampRange) {
+            events.add("range " + timestampRange.getStartdate());
+        }
+
+        @Override
+        public void endNode(final int level) {
+            events.add("end " + level);
+        }
+    }
+
+    private static List<String> events(final String content) throws Exception {
+        final RecordingHandler handler = new RecordingHandler();
+        OrgEventParser.parse(new RegexParser(), new BufferedReader(new StringReader(content)), handler);
+        return handler.events;
+    }
+
+    @Test
+    public void testEvents() throws Exception {
+        final String content = "#+TAGS: a\n" +
+                "file body\n" +
+                "* TODO One :a:b:\n" +
+                "\n" +
+                "# comment\n" +
+                "\n" +
+                "<2014-12-13>\n" +
+                "  \n" +
+                "body\n" +
+                "# not a comment\n" +
+                "\n" +
+                "** Two\n" +
+                "<2013-12-31>--<2014-02-28>\n" +
+                "*** Three\n" +
+                "* Four\n" +
+                "\n" +
+                "\n";
+
+        assertEquals(Arrays.asList(
+                "comment #+TAGS: a",
+                "body file body",
+                "start 1 TODO One [a, b]",
+                "comment # comment",
+                "timestamp 2014-12-13T00:00:00.000",
+                "body   ",
+                "body body",
+                "body # not a comment",
+                "start 2 null Two []",
+                "range 2013-12-31T00:00:00.000",
+                "start 3 null Three []",
+                "end 3",
+                "end 2",
+                "end 1",
+                "start 1 null Four []",
+                "body ",
+                "end 1"), events(content));
+    }
+
+    @Test
+    public void testSkippedLevels() throws Exception {
+        assertEquals(Arrays.asList(
+                "start 3 null Deep []",
+                "end 3",
+                "start 1 null Shallow []",
+                "end 1"), events("*** Deep\n* Shallow"));
+    }
+
+    @Test
+    public void testBlankBodyKept() throws Exception {
+        assertEquals(Arrays.asList(
+                "start 1 null One []",
+                "body  ",
+                "body \t",
+                "end 1"), events("* One\n \n\t\n"));
+    }
+
+    @Test(expected = IllegalArgumentException.class)
+    public void testImpossibleDate() throws Exception {
+        events("* One\n<2014-13-13>\n");
+    }
+
+    @Test
+    public void testImpossibleDateInBody() throws Exception {
+        assertEquals(Arrays.asList(
+                "start 1 null One []",
+                "body text",
+                "body <2014-13-13>",
+                "end 1"), events("* One\ntext\n<2014-13-13>\n"));
+    }
+
+    @Test(expected = ParseException.class)
+    public void testNewline() throws Exception {
+        new OrgEventParser(new RegexParser(), new RecordingHandler()).addLine("line\n");
+    }
+
+    @Test
+    public void testSameTreeAsBefore() throws Exception {
+        // Same result as when OrgFile added lines to the nodes directly
+        final String content = "# c\n\n* A\n\n\n  \n# x\n<2014-12-13>\nb\n\n** B :t:\n\n* C\n\n";
+        final OrgFile file = OrgFile.createFromString(new RegexParser(), "f", content);
+        assertEquals("# c\n\n* A\n# x\n<2014-12-13 Sat>\nb\n\n** B :t:\n\n* C\n", file.treeToString());
+    }
+}
@@ -19,12 +19,15 @@ package org.cowboyprogrammer.org.parser;
 
 import org.cowboyprogrammer.org.OrgFile;
 import org.cowboyprogrammer.org.OrgNode;
+import org.cowboyprogrammer.org.OrgTimestamp;
+import org.cowboyprogrammer.org.OrgTimestampRange;
 import org.junit.Test;
 import org.junit.runner.RunWith;
 import org.junit.runners.Parameterized;
 
 import java.util.Arrays;
 import java.util.Collection;
+import java.util.Locale;
 
 import static org.junit.Assert.*;
 
@@ -35,7 +38,8 @@ public class OrgParserTest {
 
     @Parameterized.Parameters
     public static Collection<OrgParser> parsersToTest() {
-        return Arrays.asList((OrgParser) new RegexParser());
+        return Arrays.asList((OrgParser) new RegexParser(), new ScannerParser(),
+                new DelegatingParser(new RegexParser()));
     }
 
     public OrgParserTest(OrgParser parserToTest) {
@@ -65,6 +69,30 @@ public class OrgParserTest {
         assertEquals(orgBody, orgFile1.getSubNodes().get(1).getBody());
     }
 
+    @Test
+    public void testBodyLines() throws Exception {
+        final String orgEntry = "* Simple header\n<2013-12-31>\n\nFirst\n\nSecond\n";
+
+        OrgFile orgFile1 = OrgFile.createFromString(parser, "test.org", orgEntry);
+        OrgNode node = orgFile1.getSubNodes().get(0);
+        assertEquals("\nFirst\n\nSecond\n", node.getBody());
+        assertEquals(Arrays.asList("", "First", "", "Second"), node.getBodyLines());
+    }
+
+    @Test
+    public void testLargeBody() throws Exception {
+        final StringBuilder sb = new StringBuilder("* Pasted log\n");
+        for (int i = 0; i < 40000; i++) {
+            sb.append("line ").append(i).append('\n');
+        }
+
+        OrgFile orgFile1 = OrgFile.createFromString(parser, "test.org", sb.toString());
+        OrgNode node = orgFile1.getSubNodes().get(0);
+        assertEquals(40000, node.getBodyLines().size());
+        assertEquals("line 39999", node.getBodyLines().get(39999));
+        assertEquals(sb.substring("* Pasted log\n".length()), node.getBody());
+    }
+
     @Test
     public void testParagraphs() throws Exception {
         // Maintain paragraph formatting
@@ -232,4 +260,108 @@ public class OrgParserTest {
         assertEquals(commentline + "\n", node.getComments());
         assertEquals(normalline + "\n", node.getBody());
     }
-}
\ No newline at end of file
+
+    @Test
+    public void testClassifyHeader() throws Exception {
+        final OrgLine line = parser.classify("** TODO A title :bob:");
+
+        assertEquals(OrgLine.Kind.HEADER, line.getKind());
+        assertEquals("** TODO A title :bob:", line.getText());
+        assertEquals(2, line.getNode().getLevel());
+        assertEquals("TODO", line.getNode().getTodo());
+        assertEquals("A title", line.getNode().getTitle());
+        assertArrayEquals(new String[]{"bob"}, line.getNode().getTags().toArray());
+    }
+
+    @Test
+    public void testClassifyTimestamps() throws Exception {
+        OrgLine line = parser.classify("DEADLINE: <2013-12-31 Tue 12:30 +1w>");
+        assertEquals(OrgLine.Kind.TIMESTAMP, line.getKind());
+        assertEquals(OrgTimestamp.Type.DEADLINE, line.getTimestamp().getType());
+        assertEquals("DEADLINE: <2013-12-31 Tue 12:30 +1w>", line.getTimestamp().toString(Locale.ENGLISH));
+        assertNull(line.getTimestampRange());
+
+        line = parser.classify("  <2013-12-31 Tue>--<2014-01-02 Thu>");
+        assertEquals(OrgLine.Kind.TIMESTAMP_RANGE, line.getKind());
+        assertEquals("<2013-12-31 Tue>--<2014-01-02 Thu>", line.getTimestampRange().toString(Locale.ENGLISH));
+        assertNull(line.getTimestamp());
+    }
+
+    @Test
+    public void testClassifyOthers() throws Exception {
+        assertEquals(OrgLine.Kind.COMMENT, parser.classify("  # comment").getKind());
+        assertEquals(OrgLine.Kind.BODY, parser.classify("").getKind());
+        assertEquals(OrgLine.Kind.BODY, parser.classify("   ").getKind());
+        assertEquals(OrgLine.Kind.BODY, parser.classify("**bold** text").getKind());
+        assertEquals(OrgLine.Kind.BODY, parser.classify("[[link]]").getKind());
+        assertEquals(OrgLine.Kind.BODY, parser.classify("SCHEDULED tomorrow").getKind());
+        assertEquals(OrgLine.Kind.BODY, parser.classify("Plain text").getKind());
+        assertNull(parser.classify("Plain text").getNode());
+    }
+
+    @Test
+    public void testClassifyAgreesWithPredicates() throws Exception {
+        final String[] lines = {"* TODO x", "*", "# c", "<2013-12-31>", "[2013-12-31 Tue]",
+                "SCHEDULED: <2013-12-31>", "<2013-12-31>--<2014-01-01>", "body", " <x>", "#"};
+        for (final String line : lines) {
+            final OrgLine.Kind kind = parser.classify(line).getKind();
+            assertEquals(line, parser.isHeaderLine(line), kind == OrgLine.Kind.HEADER);
+            assertEquals(line, parser.isCommentLine(line), kind == OrgLine.Kind.COMMENT);
+            assertEquals(line, parser.isTimestampLine(line), kind == OrgLine.Kind.TIMESTAMP);
+            assertEquals(line, parser.isTimestampRangeLine(line), kind == OrgLine.Kind.TIMESTAMP_RANGE);
+        }
+    }
+
+    @Test
+    public void testImpossibleDateInBody() throws Exception {
+        final String orgBody = "Text first\n<2013-02-30>\n";
+        OrgFile orgFile = OrgFile.createFromString(parser, "test.org", "* Header\n" + orgBody);
+        assertEquals(orgBody, orgFile.getSubNodes().get(0).getBody());
+    }
+
+    /**
+     * Uses the default implementation of classify.
+     */
+    private static class DelegatingParser implements OrgParser {
+        private final OrgParser delegate;
+
+        DelegatingParser(final OrgParser delegate) {
+            this.delegate = delegate;
+        }
+
+        @Override
+        public boolean isHeaderLine(String line) {
+            return delegate.isHeaderLine(line);
+        }
+
+        @Override
+        public OrgNode createFromHeader(String line) {
+            return delegate.createFromHeader(line);
+        }
+
+        @Override
+        public boolean isCommentLine(String line) {
+            return delegate.isCommentLine(line);
+        }
+
+        @Override
+        public boolean isTimestampLine(String line) {
+            return delegate.isTimestampLine(line);
+        }
+
+        @Override
+        public boolean isTimestampRangeLine(String line) {
+            return delegate.isTimestampRangeLine(line);
+        }
+
+        @Override
+        public OrgTimestamp getTimestamp(String line) {
+            return delegate.getTimestamp(line);
+        }
+
+        @Override
+        public OrgTimestampRange getTimestampRange(String line) {
+            return delegate.getTimestampRange(line);
+        }
+    }
+}
@@ -0,0 +1,116 @@
+/*
+ * Copyright (c) 2015 Jonas Kalderstam
+ *
+ *  This program is free software: you can redistribute it and/or modify
+ *  it under the terms of the GNU General Public License as published by
+ *  the Free Software Foundation, either version 3 of the License, or
+ *  (at your option) any later version.
+ *
+ *  This program is distributed in the hope that it will be useful,
+ *  but WITHOUT ANY WARRANTY; without even the implied warranty of
+ *  MERCHANTABILITY or FITNESS FOR A PARTICULAR PURPOSE.  See the
+ *  GNU General Public License for more details.
+ *
+ *  You should have received a copy of the GNU General Public License
+ *  along with this program.  If not, see <http://www.gnu.org/licenses/>.
+ */
+
+
+package org.cowboyprogrammer.org.parser;
+
+import org.cowboyprogrammer.org.OrgNode;
+import org.junit.Test;
+
+import java.util.ArrayList;
+import java.util.List;
+import java.util.concurrent.Callable;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.Executors;
+import java.util.concurrent.Future;
+
+import static org.junit.Assert.*;
+
+public class OrgSymbolsTest {
+
+    @Test
+    public void testIntern() throws Exception {
+        final OrgSymbols symbols = new OrgSymbols();
+        final String work = symbols.intern(new String("work"));
+        assertSame(work, symbols.intern(new String("work")));
+        assertSame(work, symbols.intern(":home:work:", 6, 10));
+        assertNull(symbols.intern(null));
+        assertEquals("", symbols.intern("abc", 1, 1));
+
+        assertEquals(0, symbols.getId("work"));
+        assertEquals(1, symbols.getId(""));
+        assertEquals(-1, symbols.getId("home"));
+        assertSame(work, symbols.getSymbol(0));
+        assertEquals(2, symbols.size());
+    }
+
+    @Test(expected = IndexOutOfBoundsException.class)
+    public void testNoSuchId() throws Exception {
+        new OrgSymbols().getSymbol(0);
+    }
+
+    @Test
+    public void testGrow() throws Exception {
+        final OrgSymbols symbols = new OrgSymbols();
+        for (int i = 0; i < 1000; i++) {
+            assertEquals("tag" + i, symbols.intern("tag" + i));
+        }
+        assertEquals(1000, symbols.size());
+        for (int i = 0; i < 1000; i++) {
+            assertEquals(i, symbols.getId("tag" + i));
+            assertEquals("tag" + i, symbols.getSymbol(i));
+        }
+    }
+
+    @Test
+    public void testSharedByParsers() throws Exception {
+        final OrgSymbols symbols = new OrgSymbols();
+        final OrgParser regex = new RegexParser(symbols, "NEXT");
+        final OrgParser scanner = new ScannerParser(symbols, "NEXT");
+        assertSame(symbols, regex.getSymbols());
+        assertSame(symbols, scanner.getSymbols());
+
+        final OrgNode first = regex.createFromHeader("* NEXT First :work:home:");
+        final OrgNode second = scanner.createFromHeader("** NEXT Second :home:");
+        final OrgNode third = new ScannerParser().createFromHeader("* NEXT Third :home:");
+        assertSame(first.getTodo(), second.getTodo());
+        assertSame(first.getTags().get(1), second.getTags().get(0));
+        assertEquals(first.getTags().get(1), third.getTags().get(0));
+        assertNotSame(first.getTags().get(1), third.getTags().get(0));
+    }
+
+    @Test
+    public void testThreads() throws Exception {
+        final OrgSymbols symbols = new OrgSymbols();
+        final ExecutorService pool = Executors.newFixedThreadPool(4);
+        try {
+            final List<Future<String[]>> results = new ArrayList<Future<String[]>>();
+            for (int t = 0; t < 4; t++) {
+                results.add(pool.submit(new Callable<String[]>() {
+                    @Override
+                    public String[] call() throws Exception {
+                        final String[] result = new String[500];
+                        for (int i = 0; i < result.length; i++) {
+                            result[i] = symbols.intern(new String("tag" + i));
+                        }
+                        return result;
+                    }
+                }));
+            }
+            final String[] first = results.get(0).get();
+            for (final Future<String[]> result : results) {
+                assertArrayEquals(first, result.get());
+                for (int i = 0; i < first.length; i++) {
+                    assertSame(first[i], result.get()[i]);
+                }
+            }
+            assertEquals(500, symbols.size());
+        } finally {
+            pool.shutdown();
+        }
+    }
+}
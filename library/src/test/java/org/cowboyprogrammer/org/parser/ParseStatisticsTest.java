@@ -0,0 +1,111 @@
+/*
+ * Copyright (c) 2015 Jonas Kalderstam
+ *
+ *  This program is free software: you can redistribute it and/or modify
+ *  it under the terms of the GNU General Public License as published by
+ *  the Free Software Foundation, either version 3 of the License, or
+ *  (at your option) any later version.
+ *
+ *  This program is distributed in the hope that it will be useful,
+ *  but WITHOUT ANY WARRANTY; without even the implied warranty of
+ *  MERCHANTABILITY or FITNESS FOR A PARTICULAR PURPOSE.  See the
+ *  GNU General Public License for more details.
+ *
+ *  You should have received a copy of the GNU General Public License
+ *  along with this program.  If not, see <http://www.gnu.org/licenses/>.
+ */
+
+package org.cowboyprogrammer.org.parser;
+
+import org.cowboyprogrammer.org.OrgFile;
+import org.cowboyprogrammer.org.OrgNode;
+import org.junit.Test;
+
+import java.io.BufferedReader;
+import java.io.StringReader;
+import java.util.List;
+
+import static org.junit.Assert.*;
+
+public class ParseStatisticsTest {
+
+    private static final String CONTENT = "Before \u00e5\n" +
+            "* TODO First :work:\n" +
+            "# comment\n" +
+            "SCHEDULED: <2014-03-05 Wed>\n" +
+            "<2014-03-06 Thu>--<2014-03-08 Sat>\n" +
+            "Body\n" +
+            "** Second\n" +
+            "*** Third\n" +
+            "* Fourth\n" +
+            "Text\n" +
+            "<2014-13-13>\n";
+
+    @Test
+    public void testCounts() throws Exception {
+        final ParseStatistics stats = new ParseStatistics(3);
+        final OrgFile orgfile = OrgFile.createFromBufferedReader(new ScannerParser(), "test.org",
+                new BufferedReader(new StringReader(CONTENT)), stats);
+        assertEquals("Fourth", orgfile.getSubNodes().get(1).getTitle());
+
+        assertEquals(11, stats.getLines());
+        assertEquals(4, stats.getLines(OrgLine.Kind.HEADER));
+        assertEquals(1, stats.getLines(OrgLine.Kind.COMMENT));
+        assertEquals(1, stats.getLines(OrgLine.Kind.TIMESTAMP));
+        assertEquals(1, stats.getLines(OrgLine.Kind.TIMESTAMP_RANGE));
+        // Including the impossible date
+        assertEquals(4, stats.getLines(OrgLine.Kind.BODY));
+        // The a with a ring is two bytes
+        assertEquals(CONTENT.length() + 1, stats.getBytes());
+        assertEquals(4, stats.getNodes());
+        assertEquals(3, stats.getMaxDepth());
+
+        assertTrue(stats.getClassifyNanos() > 0);
+        assertTrue(stats.getBuildNanos() > 0);
+        assertEquals(stats.getClassifyNanos() + stats.getBuildNanos(), stats.getTotalNanos());
+        assertTrue(stats.getLinesPerSecond() > 0);
+        assertTrue(stats.getBytesPerSecond() > stats.getLinesPerSecond());
+    }
+
+    @Test
+    public void testSlowestLines() throws Exception {
+        final ParseStatistics stats = new ParseStatistics(3);
+        OrgFile.createFromBufferedReader(new ScannerParser(), "test.org",
+                new BufferedReader(new StringReader(CONTENT)), stats);
+        final List<ParseStatistics.SlowLine> slowest = stats.getSlowestLines();
+        assertEquals(3, slowest.size());
+        for (int i = 1; i < slowest.size(); i++) {
+            assertTrue(slowest.get(i - 1).getNanos() >= slowest.get(i).getNanos());
+        }
+        final ParseStatistics.SlowLine line = slowest.get(0);
+        assertTrue(CONTENT.split("\n")[line.getLineNumber()].startsWith(line.getText()));
+
+        final ParseStatistics none = new ParseStatistics(0);
+        OrgFile.createFromBufferedReader(new ScannerParser(), "test.org",
+                new BufferedReader(new StringReader(CONTENT)), none);
+        assertTrue(none.getSlowestLines().isEmpty());
+        assertEquals(11, none.getLines());
+    }
+
+    @Test
+    public void testAddBodyLine() throws Exception {
+        final ParseStatistics stats = new ParseStatistics();
+        final OrgNode node = new ScannerParser().createFromHeader("* Node");
+        node.addBodyLine("<2014-03-05 Wed>", stats);
+        node.addBodyLine("text", stats);
+        node.addBodyLine("# not a comment after the body", stats);
+        assertEquals(1, node.getTimestamps().size());
+        assertEquals("text\n# not a comment after the body\n", node.getBody());
+
+        assertEquals(3, stats.getLines());
+        assertEquals(1, stats.getLines(OrgLine.Kind.TIMESTAMP));
+        assertEquals(2, stats.getLines(OrgLine.Kind.BODY));
+        assertEquals(-1, stats.getSlowestLines().get(0).getLineNumber());
+        assertEquals(0, stats.getNodes());
+    }
+
+    @Test(expected = IllegalArgumentException.class)
+    public void testNegativeCount() throws Exception {
+        new ParseStatistics(-1);
+    }
+}
@@ -17,6 +17,8 @@
 
 package org.cowboyprogrammer.org.parser;
 
+import org.cowboyprogrammer.org.OrgNode;
+import org.cowboyprogrammer.org.OrgTimestamp;
 import org.junit.Test;
 
 import java.util.regex.Matcher;
@@ -109,4 +111,24 @@ public class RegexParserTest {
         assertEquals("wrong todo", " title here ", reverse(m.group(RegexParser.HEADER_REST_TITLE_GROUP)));
         assertEquals("wrong tags", ":tag1:tag2:", reverse(m.group(RegexParser.HEADER_REST_TAGS_GROUP)));
     }
-}
\ No newline at end of file
+
+    @Test
+    public void testClassifyUsesOverrides() throws Exception {
+        final OrgNode custom = new OrgNode(null);
+        final OrgTimestamp timestamp = new OrgTimestamp();
+        final RegexParser parser = new RegexParser() {
+            @Override
+            public OrgNode createFromHeader(final String line) {
+                return custom;
+            }
+
+            @Override
+            public OrgTimestamp getTimestamp(final String line) {
+                return timestamp;
+            }
+        };
+        assertSame(custom, parser.classify("* TODO Title :tag:").getNode());
+        assertSame(timestamp, parser.classify("<2013-12-31 Tue>").getTimestamp());
+        assertEquals(OrgLine.Kind.BODY, parser.classify("*bold*").getKind());
+    }
+}
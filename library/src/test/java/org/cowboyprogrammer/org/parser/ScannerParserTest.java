@@ -0,0 +1,179 @@
+/*
+ * Copyright (c) 2015 Jonas Kalderstam
+ *
+ *  This program is free software: you can redistribute it and/or modify
+ *  it under the terms of the GNU General Public License as published by
+ *  the Free Software Foundation, either version 3 of the License, or
+ *  (at your option) any later version.
+ *
+ *  This program is distributed in the hope that it will be useful,
+ *  but WITHOUT ANY WARRANTY; without even the implied warranty of
+ *  MERCHANTABILITY or FITNESS FOR A PARTICULAR PURPOSE.  See the
+ *  GNU General Public License for more details.
+ *
+ *  You should have received a copy of the GNU General Public License
+ *  along with this program.  If not, see <http://www.gnu.org/licenses/>.
+ */
+
+package org.cowboyprogrammer.org.parser;
+
+import org.cowboyprogrammer.org.OrgNode;
+import org.cowboyprogrammer.org.OrgTimestamp;
+import org.cowboyprogrammer.org.OrgTimestampRange;
+import org.junit.Test;
+
+import java.util.Locale;
+
+import static org.junit.Assert.assertEquals;
+import static org.junit.Assert.assertTrue;
+
+/**
+ * The scanner must accept exactly what the regular expressions accept.
+ */
+public class ScannerParserTest {
+
+    private static final String[] LINES = {
+            "",
+            " ",
+            "*",
+            "* ",
+            "*\t",
+            "**",
+            "** ",
+            "**bold** text",
+            "* TODO",
+            "* TODO ",
+            "* TODOS",
+            "* TODO  A simple title  :bob:alice:",
+            "*  TODO title",
+            "*\tDONE\ttitle",
+            "* WAIT x",
+            "* WAITING x",
+            "* WAITINGS x",
+            "* :bob:alice:",
+            "* Title :a:b:  ",
+            "* Title: with colon :work:",
+            "* Title ::",
+            "* Title :a:",
+            "* Title :a::b:",
+            "* Title :a:::",
+            "* Title a:",
+            "* :::",
+            "*** Deep one :ooo:",
+            "* title\r",
+            "* title\u2028",
+            "* tit\u2028le",
+            "# comment",
+            "   # NONSENSEID= 24SFS2  ",
+            "# comment\n",
+            "#",
+            "#+TAGS: noexport",
+            "#a\u2028",
+            "#a\u2028b",
+            "not # a comment",
+            "<2013-12-31>",
+            "[2013-12-31]",
+            "<2013-12-31]",
+            "  <2013-12-31 12:30 -1d>  ",
+            "<2013-12-31 Tue 12:21-14:59 ++1w -2d>",
+            "SCHEDULED: <2013-12-31 Tue 12:21-14:59 ++1w -2d>",
+            "DEADLINE:<2014-02-26 Wed>",
+            "SCHEDULED: [2014-02-26 Wed]",
+            " SCHEDULED: <2014-02-26 Wed>",
+            "<2014-02-26 Wed 17:00 -3w +2d>",
+            "<2014-02-26 Wed 17:00-19:30 +2d -3w>",
+            "<2013-12-31 12:30 .+1m>",
+            "<2013-12-31 +1w>",
+            "<2013-12-31 +1x>",
+            "<2013-12-31 Tue>>",
+            "<2013-12-31 Tue> trailing",
+            "<2013-12-31 Tue 1:30>",
+            "<2013-12-31 -> +1w>",
+            "<2013-1-31>",
+            "<2012-02-17 Fri>--<2013-05-24 Fri>",
+            "<2013-08-23 Fri 00:34>--<2013-08-23 Fri 08:24>",
+            "  <2013-12-31>--<2014-02-28>  ",
+            "<2013-12-31 12:21>--<2014-02-28 19:21>",
+            "<2013-12-31 Tue>--<2014-02-28 12:29>",
+            "<2013-12-31>--[2014-02-28]",
+            "<2013-12-31>-<2014-02-28>",
+            "Just a body line",
+            "- list item",
+    };
+
+    private final RegexParser regexParser = new RegexParser("wait", "waiting");
+    private final ScannerParser scannerParser = new ScannerParser("wait", "waiting");
+
+    @Test
+    public void testSameLineTypes() throws Exception {
+        for (final String line : LINES) {
+            assertEquals("header: " + line, regexParser.isHeaderLine(line),
+                    scannerParser.isHeaderLine(line));
+            assertEquals("comment: " + line, regexParser.isCommentLine(line),
+                    scannerParser.isCommentLine(line));
+            assertEquals("timestamp: " + line, regexParser.isTimestampLine(line),
+                    scannerParser.isTimestampLine(line));
+            assertEquals("range: " + line, regexParser.isTimestampRangeLine(line),
+                    scannerParser.isTimestampRangeLine(line));
+        }
+    }
+
+    @Test
+    public void testSameHeaders() throws Exception {
+        int count = 0;
+        for (final String line : LINES) {
+            if (!regexParser.isHeaderLine(line)) continue;
+            count++;
+
+            final OrgNode expected = regexParser.createFromHeader(line);
+            final OrgNode actual = scannerParser.createFromHeader(line);
+            assertEquals("level: " + line, expected.getLevel(), actual.getLevel());
+            assertEquals("todo: " + line, expected.getTodo(), actual.getTodo());
+            assertEquals("title: " + line, expected.getTitle(), actual.getTitle());
+            assertEquals("tags: " + line, expected.getTags(), actual.getTags());
+        }
+        assertTrue("Too few headers tested", count > 20);
+    }
+
+    @Test
+    public void testSameTimestamps() throws Exception {
+        int count = 0;
+        for (final String line : LINES) {
+            if (!regexParser.isTimestampLine(line)) continue;
+            count++;
+
+            final OrgTimestamp expected = regexParser.getTimestamp(line);
+            final OrgTimestamp actual = scannerParser.getTimestamp(line);
+            assertEquals(line, expected.toString(Locale.ENGLISH), actual.toString(Locale.ENGLISH));
+            assertEquals(line, expected.getDate(), actual.getDate());
+            assertEquals(line, expected.getEndTime(), actual.getEndTime());
+        }
+        assertTrue("Too few timestamps tested", count > 10);
+    }
+
+    @Test
+    public void testSameTimestampRanges() throws Exception {
+        int count = 0;
+        for (final String line : LINES) {
+            if (!regexParser.isTimestampRangeLine(line)) continue;
+            count++;
+
+            final OrgTimestampRange expected = regexParser.getTimestampRange(line);
+            final OrgTimestampRange actual = scannerParser.getTimestampRange(line);
+            assertEquals(line, expected.toString(Locale.ENGLISH), actual.toString(Locale.ENGLISH));
+            assertEquals(line, expected.getStartdate(), actual.getStartdate());
+            assertEquals(line, expected.getEnddate(), actual.getEnddate());
+        }
+        assertTrue("Too few ranges tested", count > 4);
+    }
+
+    @Test(expected = IllegalArgumentException.class)
+    public void testNotAHeader() throws Exception {
+        scannerParser.createFromHeader("Not a header");
+    }
+
+    @Test(expected = IllegalArgumentException.class)
+    public void testNotATimestamp() throws Exception {
+        scannerParser.getTimestamp("<2013-12-31 Tue> trailing");
+    }
+}
@@ -0,0 +1,84 @@
+/*
+ * Copyright (c) 2015 Jonas Kalderstam
+ *
+ *  This program is free software: you can redistribute it and/or modify
+ *  it under the terms of the GNU General Public License as published by
+ *  the Free Software Foundation, either version 3 of the License, or
+ *  (at your option) any later version.
+ *
+ *  This program is distributed in the hope that it will be useful,
+ *  but WITHOUT ANY WARRANTY; without even the implied warranty of
+ *  MERCHANTABILITY or FITNESS FOR A PARTICULAR PURPOSE.  See the
+ *  GNU General Public License for more details.
+ *
+ *  You should have received a copy of the GNU General Public License
+ *  along with this program.  If not, see <http://www.gnu.org/licenses/>.
+ */
+
+package org.cowboyprogrammer.org.parser;
+
+import org.cowboyprogrammer.org.OrgNode;
+import org.junit.Test;
+
+import java.util.Arrays;
+import java.util.regex.Matcher;
+
+import static org.cowboyprogrammer.org.util.StringUtils.reverse;
+import static org.junit.Assert.*;
+
+public class TagScannerTest {
+
+    private static final String[] RESTS = {
+            "title",
+            "title  ",
+            "  title",
+            ":ab:cd:  ",
+            " title here  :tag1:tag2:  ",
+            "Title: with colon :work:",
+            "Title ::",
+            "Title :a:",
+            "Title :a::b:",
+            "Title :a:::",
+            "Title a:",
+            ":::",
+            "::a:",
+            "a :b: c",
+            "\t:a:\t",
+            "title\t:a:",
+    };
+
+    @Test
+    public void testSameAsReversedPattern() throws Exception {
+        for (final String rest : RESTS) {
+            final OrgNode expected = new OrgNode(null);
+            final Matcher m = RegexParser.getHeaderRestPattern().matcher(reverse(rest));
+            assertTrue(m.matches());
+            expected.setTitle(reverse(m.group(RegexParser.HEADER_REST_TITLE_GROUP)));
+            final String tags = reverse(m.group(RegexParser.HEADER_REST_TAGS_GROUP));
+            if (tags != null) {
+                expected.addTags(tags.substring(1).split(":"));
+            }
+
+            final OrgNode actual = new OrgNode(null);
+            TagScanner.setTitleAndTags(actual, "* " + rest, 2, rest.length() + 2, null);
+
+            assertEquals("title: " + rest, expected.getTitle(), actual.getTitle());
+            assertEquals("tags: " + rest, expected.getTags(), actual.getTags());
+        }
+    }
+
+    @Test
+    public void testSplitTags() throws Exception {
+        assertArrayEquals(new String[]{"bob", "alice"}, TagScanner.splitTags(":bob:alice:", 1, 11, null));
+        assertArrayEquals(new String[]{"", "bob"}, TagScanner.splitTags("::bob:", 1, 6, null));
+        assertArrayEquals(new String[0], TagScanner.splitTags(":::", 1, 3, null));
+    }
+
+    @Test
+    public void testParseTags() throws Exception {
+        assertEquals(Arrays.asList("bob", "alice"), Arrays.asList(RegexParser.parseTags(" :bob:alice: ")));
+        assertEquals(Arrays.asList("a", "", "b"), Arrays.asList(RegexParser.parseTags(":a::b:")));
+        assertEquals(Arrays.asList(""), Arrays.asList(RegexParser.parseTags(":")));
+        assertNull(RegexParser.parseTags(null));
+    }
+}
@@ -0,0 +1,107 @@
+package org.cowboyprogrammer.org.util;
+
+import org.junit.Test;
+
+import java.util.Arrays;
+import java.util.Collections;
+
+import static org.junit.Assert.*;
+
+public class LineBufferTest {
+
+    @Test
+    public void testEmpty() throws Exception {
+        LineBuffer buffer = new LineBuffer();
+        assertEquals("", buffer.toString());
+        assertTrue(buffer.isEmpty());
+        assertTrue(buffer.isBlank());
+        assertEquals(Collections.emptyList(), buffer.getLines());
+    }
+
+    @Test
+    public void testAppend() throws Exception {
+        LineBuffer buffer = new LineBuffer();
+        buffer.append("one");
+        buffer.append("");
+        buffer.append("three");
+
+        assertEquals("one\n\nthree\n", buffer.toString());
+        assertEquals(Arrays.asList("one", "", "three"), buffer.getLines());
+        assertFalse(buffer.isBlank());
+    }
+
+    @Test
+    public void testBlank() throws Exception {
+        LineBuffer buffer = new LineBuffer();
+        buffer.append("");
+        buffer.append(" \t ");
+        assertTrue(buffer.isBlank());
+        assertFalse(buffer.isEmpty());
+
+        buffer.append("text");
+        assertFalse(buffer.isBlank());
+
+        buffer.clear();
+        assertTrue(buffer.isBlank());
+        assertTrue(buffer.isEmpty());
+    }
+
+    @Test
+    public void testSetWithoutNewline() throws Exception {
+        LineBuffer buffer = new LineBuffer();
+        buffer.set("one\ntw");
+        assertEquals("one\ntw", buffer.toString());
+        assertEquals(Arrays.asList("one", "tw"), buffer.getLines());
+
+        // Continues the unfinished line
+        buffer.append("o");
+        assertEquals("one\ntwo\n", buffer.toString());
+        assertEquals(Arrays.asList("one", "two"), buffer.getLines());
+    }
+
+    @Test
+    public void testSetWithNewline() throws Exception {
+        LineBuffer buffer = new LineBuffer();
+        buffer.set("one\n\n");
+        assertEquals("one\n\n", buffer.toString());
+        assertEquals(Arrays.asList("one", ""), buffer.getLines());
+
+        buffer.append("two");
+        assertEquals("one\n\ntwo\n", buffer.toString());
+    }
+
+    @Test
+    public void testAppendWithNewlineInside() throws Exception {
+        LineBuffer buffer = new LineBuffer();
+        buffer.append("one\ntwo");
+        assertEquals("one\ntwo\n", buffer.toString());
+        assertEquals(Arrays.asList("one", "two"), buffer.getLines());
+    }
+
+    @Test(expected = UnsupportedOperationException.class)
+    public void testLinesAreReadOnly() throws Exception {
+        LineBuffer buffer = new LineBuffer();
+        buffer.append("one");
+        buffer.getLines().clear();
+    }
+
+    @Test
+    public void testAppendTo() throws Exception {
+        LineBuffer buffer = new LineBuffer();
+        buffer.append("one");
+        buffer.append("two");
+        StringBuilder sb = new StringBuilder();
+        buffer.appendTo(sb);
+        assertEquals("one\ntwo\n", sb.toString());
+
+        buffer.set("a\nb");
+        buffer.append("c");
+        sb = new StringBuilder();
+        buffer.appendTo(sb);
+        assertEquals(buffer.toString(), sb.toString());
+
+        sb = new StringBuilder();
+        new LineBuffer().appendTo(sb);
+        assertEquals("", sb.toString());
+    }
+}
@@ -2,6 +2,7 @@ package org.cowboyprogrammer.org.util;
 
 import org.junit.Test;
 
+import static org.cowboyprogrammer.org.util.StringUtils.isBlank;
 import static org.cowboyprogrammer.org.util.StringUtils.reverse;
 import static org.junit.Assert.*;
 
@@ -16,4 +17,12 @@ public class StringUtilsTest {
     public void testReverseString() throws Exception {
         assertEquals("cba", reverse("abc"));
     }
-}
\ No newline at end of file
+
+    @Test
+    public void testIsBlank() throws Exception {
+        assertTrue(isBlank(""));
+        assertTrue(isBlank(" \t\n\r\f"));
+        assertFalse(isBlank(" a "));
+        assertFalse(isBlank("\u00A0"));
+    }
+}
@@ -0,0 +1,72 @@
+package org.cowboyprogrammer.org.util;
+
+import org.junit.Test;
+
+import java.io.BufferedReader;
+import java.io.ByteArrayInputStream;
+import java.io.StringReader;
+import java.nio.channels.Channels;
+import java.util.ArrayList;
+import java.util.List;
+
+import static org.junit.Assert.assertEquals;
+import static org.junit.Assert.assertNull;
+
+public class Utf8LineReaderTest {
+
+    private static final String[] TEXTS = {
+            "",
+            "\n",
+            "\r\n",
+            "\r\r\n\n",
+            "one",
+            "one\n",
+            "one\ntwo",
+            "one\r\ntwo\r\n",
+            "one\rtwo\r",
+            "\n\none\n\n",
+            "\u00e5\u00e4\u00f6\n\u2603 snowman\r\n\ud83d\ude00",
+            "a very long line which does not fit in a small buffer at all\nshort",
+    };
+
+    private static List<String> readAll(final BufferedReader reader) throws Exception {
+        final List<String> lines = new ArrayList<String>();
+        String line;
+        while ((line = reader.readLine()) != null) {
+            lines.add(line);
+        }
+        return lines;
+    }
+
+    private static List<String> readAll(final Utf8LineReader reader) throws Exception {
+        final List<String> lines = new ArrayList<String>();
+        String line;
+        while ((line = reader.readLine()) != null) {
+            lines.add(line);
+        }
+        assertNull(reader.readLine());
+        reader.close();
+        return lines;
+    }
+
+    @Test
+    public void testSameAsBufferedReader() throws Exception {
+        for (final String text : TEXTS) {
+            final List<String> expected = readAll(new BufferedReader(new StringReader(text)));
+            // Small buffers split line endings and multi-byte characters
+            for (int size = 1; size < 10; size++) {
+                final Utf8LineReader reader = new Utf8LineReader(Channels.newChannel(
+                        new ByteArrayInputStream(text.getBytes("UTF-8"))), size);
+                assertEquals(text + " " + size, expected, readAll(reader));
+            }
+            final Utf8LineReader reader = new Utf8LineReader(Channels.newChannel(
+                    new ByteArrayInputStream(text.getBytes("UTF-8"))));
+            assertEquals(text, expected, readAll(reader));
+        }
+    }
+
+    @Test(expected = IllegalArgumentException.class)
+    public void testBadBufferSize() throws Exception {
+        new Utf8LineReader(Channels.newChannel(new ByteArrayInputStream(new byte[0])), 0);
+    }
+}